@@ -0,0 +1,73 @@
+package raytracer.bench;
+
+import java.lang.management.ManagementFactory;
+
+import raytracer.core.Camera;
+import raytracer.core.Renderer;
+import raytracer.core.Scene;
+import raytracer.core.Trace;
+import raytracer.core.def.Main;
+import raytracer.math.Ray;
+
+/**
+ * Reports the heap allocated per primary ray of the Main demo scene, measured
+ * on the rendering thread: for casting the rays, for finding their hits and
+ * for rendering the whole image (which includes shading and the shadow rays),
+ * along with the time of the fastest of several runs. The optional argument
+ * is the number of runs.
+ */
+public class AllocationBenchmark {
+
+	private static final int X_RES = 640, Y_RES = 480, TILE = 16, SUPER_SAMPLE = 2;
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	public static void main(final String[] args) throws Exception {
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		final Scene scene = Main.createScene();
+		final Camera cam = scene.getCamera();
+		final long rays = (long) X_RES * Y_RES;
+		final long samples = rays * SUPER_SAMPLE * SUPER_SAMPLE;
+
+		// the cast rays are kept, otherwise the JIT removes their allocation:
+		final Ray[] last = new Ray[1];
+		report("cast", rays, runs, () -> {
+			for (int y = 0; y < Y_RES; y++)
+				for (int x = 0; x < X_RES; x++)
+					last[0] = cam.cast(x / (float) X_RES, y / (float) Y_RES);
+		});
+		report("cast + hit", rays, runs, () -> {
+			for (int y = 0; y < Y_RES; y++)
+				for (int x = 0; x < X_RES; x++)
+					scene.hit(cam.cast(x / (float) X_RES, y / (float) Y_RES));
+		});
+		report("cast + shade", rays, runs, () -> {
+			for (int y = 0; y < Y_RES; y++)
+				for (int x = 0; x < X_RES; x++)
+					Trace.primary(scene, cam.cast(x / (float) X_RES, y / (float) Y_RES)).shade();
+		});
+		final Renderer renderer = new Renderer(scene, X_RES, Y_RES, SUPER_SAMPLE);
+		report("frame", samples, runs, () -> {
+			for (int x = 0; x < X_RES; x += TILE)
+				for (int y = 0; y < Y_RES; y += TILE)
+					try {
+						renderer.render(x, y, TILE, TILE).call();
+					} catch (final Exception e) {
+						throw new IllegalStateException(e);
+					}
+		});
+	}
+
+	private static void report(final String name, final long rays, final int runs, final Runnable task) {
+		long time = Long.MAX_VALUE, bytes = Long.MAX_VALUE;
+		for (int run = 0; run < runs; run++) {
+			final long allocated = THREADS.getCurrentThreadAllocatedBytes();
+			final long start = System.nanoTime();
+			task.run();
+			time = Math.min(time, System.nanoTime() - start);
+			bytes = Math.min(bytes, THREADS.getCurrentThreadAllocatedBytes() - allocated);
+		}
+		System.out.printf("%-13s %7.1f bytes/ray  %5d ms%n", name, (double) bytes / rays, time / 1000000);
+	}
+}
@@ -0,0 +1,69 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+import java.util.Random;
+
+import raytracer.core.OBJReader;
+import raytracer.core.def.BVH4;
+import raytracer.core.def.BVH4Kernel;
+import raytracer.core.def.SAHBVH;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Times closest-hit queries on the bunny collapsed into a BVH4, once with the
+ * scalar kernel and once with the vector kernel. The vector kernel is only
+ * timed when the JVM runs with {@code --add-modules jdk.incubator.vector} and
+ * the source folder vector is compiled. Reports the fastest of several runs;
+ * the optional argument is the number of runs.
+ */
+public class BVH4Benchmark {
+
+	private static final float SCALE = 25;
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		final SAHBVH bvh = new SAHBVH();
+		OBJReader.read("obj/bunny.obj", bvh, new SingleColor(Color.WHITE), SCALE, Vec3.ZERO);
+		bvh.commit();
+		final Ray[] rays = rays(200000);
+
+		time(new BVH4(bvh, BVH4Kernel.SCALAR), rays, runs);
+		final BVH4Kernel vector = BVH4Kernel.vector();
+		if (vector == null) {
+			System.out.println("vector kernel not available, run with --add-modules jdk.incubator.vector");
+			return;
+		}
+		time(new BVH4(bvh, vector), rays, runs);
+	}
+
+	// rays from in front of the bunny at random spots of it:
+	private static Ray[] rays(final int n) {
+		final Random rnd = new Random(42);
+		final Ray[] rays = new Ray[n];
+		for (int i = 0; i < n; i++) {
+			final Point base = new Point(rnd.nextFloat() * 10 - 5, rnd.nextFloat() * 10, -10);
+			final Point target = new Point(rnd.nextFloat() * 4 - 2, rnd.nextFloat() * 4, rnd.nextFloat() * 4 - 2);
+			rays[i] = new Ray(base, target.sub(base).normalized());
+		}
+		return rays;
+	}
+
+	private static void time(final BVH4 bvh4, final Ray[] rays, final int runs) {
+		long best = Long.MAX_VALUE;
+		int hits = 0;
+		for (int run = 0; run < runs; run++) {
+			hits = 0;
+			final long start = System.nanoTime();
+			for (final Ray ray : rays)
+				if (bvh4.hit(ray, null, 0, Float.POSITIVE_INFINITY).hits())
+					hits++;
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-7s kernel  %5d ms for %d rays  (%d hits)%n", bvh4.getKernel(), best / 1000000,
+				rays.length, hits);
+	}
+}
@@ -0,0 +1,60 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+
+import raytracer.core.OBJReader;
+import raytracer.core.def.BVH;
+import raytracer.core.def.BVHStats;
+import raytracer.core.def.LBVH;
+import raytracer.core.def.SAHBVH;
+import raytracer.core.def.SBVH;
+import raytracer.math.Color;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Prints the statistics (see {@link BVHStats}) of the hierarchies built by the
+ * midpoint, SAH, spatial split and LBVH builders for the given OBJ files (the
+ * bundled models by default). A first argument of the form
+ * {@code --builder=name} restricts the report to one builder.
+ */
+public class BVHStatsReport {
+
+	private static final String[] BUILDERS = { "midpoint", "sah", "sbvh", "lbvh" };
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		String[] builders = BUILDERS;
+		int first = 0;
+		if (args.length > 0 && args[0].startsWith("--builder=")) {
+			builders = new String[] { args[0].substring("--builder=".length()) };
+			first = 1;
+		}
+		final String[] files = args.length > first ? Arrays.copyOfRange(args, first, args.length)
+				: new String[] { "obj/pyramid.obj", "obj/bunny.obj" };
+		for (final String file : files) {
+			for (final String builder : builders) {
+				final BVH bvh = create(builder);
+				OBJReader.read(file, bvh, new SingleColor(Color.WHITE), 1, Vec3.ZERO);
+				bvh.commit();
+				System.out.printf("%s, %s%n%s%n", file, builder, new BVHStats(bvh));
+			}
+		}
+	}
+
+	private static BVH create(final String builder) {
+		switch (builder) {
+		case "midpoint":
+			return new BVH();
+		case "sah":
+			return new SAHBVH();
+		case "sbvh":
+			return new SBVH();
+		case "lbvh":
+			return new LBVH();
+		default:
+			throw new IllegalArgumentException("unknown builder " + builder + ", expected one of "
+					+ String.join(", ", BUILDERS));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+import java.util.Random;
+
+import raytracer.core.OBJReader;
+import raytracer.core.def.BVH;
+import raytracer.core.def.Instance;
+import raytracer.core.def.SAHBVH;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Transform;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Compares placing copies of the bunny by reading the model once per copy with
+ * placing instances of a single bottom-level hierarchy: heap usage, build time
+ * and tracing time. The optional argument is the number of copies.
+ */
+public class InstanceBenchmark {
+
+	private static final float SCALE = 25;
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		final int copies = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		final int side = (int) Math.ceil(Math.sqrt(copies));
+		final SingleColor shader = new SingleColor(Color.WHITE);
+		final Ray[] rays = rays(side, 100000);
+
+		long before = usedMemory();
+		long start = System.nanoTime();
+		final BVH copied = new SAHBVH();
+		for (int i = 0; i < copies; i++)
+			OBJReader.read("obj/bunny.obj", copied, shader, SCALE, offset(i, side));
+		copied.buildBVH();
+		report("copies", copies, before, start, copied, rays);
+
+		before = usedMemory();
+		start = System.nanoTime();
+		final BVH mesh = new SAHBVH();
+		OBJReader.read("obj/bunny.obj", mesh, shader, SCALE, Vec3.ZERO);
+		mesh.buildBVH();
+		final BVH instanced = new SAHBVH();
+		for (int i = 0; i < copies; i++)
+			instanced.add(new Instance(mesh, Transform.translate(offset(i, side))));
+		instanced.buildBVH();
+		report("instances", copies, before, start, instanced, rays);
+	}
+
+	private static Vec3 offset(final int i, final int side) {
+		return new Vec3(4 * (i % side), 0, 4 * (i / side));
+	}
+
+	// rays from above the grid of copies, looking down at random spots:
+	private static Ray[] rays(final int side, final int n) {
+		final Random rnd = new Random(42);
+		final Ray[] rays = new Ray[n];
+		for (int i = 0; i < n; i++) {
+			final Point target = new Point(rnd.nextFloat() * 4 * side, 0, rnd.nextFloat() * 4 * side);
+			final Point base = new Point(target.x() + 5, 20, target.z() - 10);
+			rays[i] = new Ray(base, target.sub(base).normalized());
+		}
+		return rays;
+	}
+
+	private static long usedMemory() {
+		System.gc();
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void report(final String name, final int copies, final long before, final long start,
+			final BVH bvh, final Ray[] rays) {
+		final long build = (System.nanoTime() - start) / 1000000;
+		final long memory = (usedMemory() - before) / (1024 * 1024);
+		int hits = 0;
+		final long trace = System.nanoTime();
+		for (final Ray ray : rays)
+			if (bvh.hit(ray, null, 0, Float.POSITIVE_INFINITY).hits())
+				hits++;
+		System.out.printf("%-10s %5d copies  heap %5d MB  build %6d ms  trace %6d ms  (%d hits)%n", name, copies,
+				memory, build, (System.nanoTime() - trace) / 1000000, hits);
+	}
+}
@@ -0,0 +1,78 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+import raytracer.core.Hit;
+import raytracer.core.OBJReader;
+import raytracer.core.Obj;
+import raytracer.core.def.Accelerator;
+import raytracer.core.def.BVH;
+import raytracer.core.def.LBVH;
+import raytracer.core.def.SAH;
+import raytracer.geom.BBox;
+import raytracer.math.Color;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Compares the build time and the SAH cost of the LBVH builder with
+ * BVH.buildBVH() on copies of the bunny placed on a grid. The optional argument
+ * is the number of copies (200 copies are about one million triangles).
+ */
+public class LBVHBenchmark {
+
+	/**
+	 * Only collects the objects it is given
+	 */
+	private static class Collector extends Accelerator {
+		private final List<Obj> objects = new ArrayList<>();
+
+		@Override
+		public BBox bbox() {
+			throw new UnsupportedOperationException("not implemented");
+		}
+
+		@Override
+		public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+			throw new UnsupportedOperationException("not implemented");
+		}
+
+		@Override
+		public void add(final Obj prim) {
+			objects.add(prim);
+		}
+	}
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		final int copies = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		final int side = (int) Math.ceil(Math.sqrt(copies));
+		final Collector collector = new Collector();
+		for (int i = 0; i < copies; i++) {
+			final Vec3 translate = new Vec3(4 * (i % side), 0, 4 * (i / side));
+			OBJReader.read("obj/bunny.obj", collector, new SingleColor(Color.WHITE), 25, translate);
+		}
+		System.out.printf("%d triangles%n", collector.objects.size());
+
+		run("BVH.buildBVH", new BVH(), collector.objects);
+		run("LBVH 30 bit", new LBVH(LBVH.CODE_BITS_30, 0), collector.objects);
+		run("LBVH 63 bit", new LBVH(LBVH.CODE_BITS_63, 0), collector.objects);
+		run("LBVH 63 bit + 2 treelet rounds", new LBVH(LBVH.CODE_BITS_63, 2), collector.objects);
+	}
+
+	private static void run(final String name, final BVH bvh, final List<Obj> objects) {
+		for (final Obj obj : objects) {
+			bvh.add(obj);
+		}
+		// one warm-up build so the JIT has compiled the builder, and a collection
+		// so the garbage of earlier builds is not charged to this one:
+		bvh.buildBVH();
+		System.gc();
+		final long start = System.nanoTime();
+		bvh.buildBVH();
+		final long millis = (System.nanoTime() - start) / 1000000;
+		System.out.printf("%-32s build %6d ms  SAH cost %8.3f%n", name, millis, SAH.cost(bvh));
+	}
+}
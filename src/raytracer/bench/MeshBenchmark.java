@@ -0,0 +1,84 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+import java.util.Random;
+
+import raytracer.core.OBJReader;
+import raytracer.core.Obj;
+import raytracer.core.def.SAHBVH;
+import raytracer.core.def.TriangleMesh;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Compares the bunny read as one object per triangle into a SAH BVH with the
+ * bunny read as a TriangleMesh: heap per triangle, build time and tracing
+ * time. The optional argument is the number of copies kept alive at once,
+ * which makes the heap measurement less noisy.
+ */
+public class MeshBenchmark {
+
+	private static final float SCALE = 25;
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		final int copies = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		final SingleColor shader = new SingleColor(Color.WHITE);
+		final Ray[] rays = rays(200000);
+
+		long before = usedMemory();
+		long start = System.nanoTime();
+		final SAHBVH[] bvhs = new SAHBVH[copies];
+		for (int i = 0; i < copies; i++) {
+			bvhs[i] = new SAHBVH();
+			OBJReader.read("obj/bunny.obj", bvhs[i], shader, SCALE, Vec3.ZERO);
+			bvhs[i].commit();
+		}
+		report("triangles", bvhs[0].getObjects().size(), copies, before, start, bvhs[0], rays);
+
+		before = usedMemory();
+		start = System.nanoTime();
+		final TriangleMesh[] meshes = new TriangleMesh[copies];
+		for (int i = 0; i < copies; i++)
+			meshes[i] = OBJReader.readMesh("obj/bunny.obj", shader, SCALE, Vec3.ZERO);
+		report("mesh", meshes[0].getTriangleCount(), copies, before, start, meshes[0], rays);
+	}
+
+	// rays from in front of the bunny at random spots of it:
+	private static Ray[] rays(final int n) {
+		final Random rnd = new Random(42);
+		final Ray[] rays = new Ray[n];
+		for (int i = 0; i < n; i++) {
+			final Point base = new Point(rnd.nextFloat() * 10 - 5, rnd.nextFloat() * 10, -10);
+			final Point target = new Point(rnd.nextFloat() * 4 - 2, rnd.nextFloat() * 4, rnd.nextFloat() * 4 - 2);
+			rays[i] = new Ray(base, target.sub(base).normalized());
+		}
+		return rays;
+	}
+
+	private static long usedMemory() {
+		System.gc();
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void report(final String name, final int triangles, final int copies, final long before,
+			final long start, final Obj obj, final Ray[] rays) {
+		final long build = (System.nanoTime() - start) / 1000000 / copies;
+		final long memory = usedMemory() - before;
+		long trace = Long.MAX_VALUE;
+		int hits = 0;
+		for (int run = 0; run < 5; run++) {
+			hits = 0;
+			final long t = System.nanoTime();
+			for (final Ray ray : rays)
+				if (obj.hit(ray, null, 0, Float.POSITIVE_INFINITY).hits())
+					hits++;
+			trace = Math.min(trace, System.nanoTime() - t);
+		}
+		System.out.printf("%-10s %6d triangles  heap %6.1f bytes/triangle  build %5d ms  trace %5d ms  (%d hits)%n",
+				name, triangles, (double) memory / copies / triangles, build, trace / 1000000, hits);
+	}
+}
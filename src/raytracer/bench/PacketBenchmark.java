@@ -0,0 +1,93 @@
+package raytracer.bench;
+
+import java.util.Arrays;
+
+import raytracer.core.Camera;
+import raytracer.core.RayPacket;
+import raytracer.core.Renderer;
+import raytracer.core.Scene;
+import raytracer.core.def.Main;
+
+/**
+ * Compares tracing the primary rays of the Main demo scene one at a time with
+ * tracing them in packets of 4x4 and 8x8 pixels. It checks that all modes
+ * render the same image and reports the fastest of several interleaved runs,
+ * both for finding the primary hits alone and for rendering the whole image
+ * (on a single thread in the tiles Main uses). The optional argument is the
+ * number of runs.
+ */
+public class PacketBenchmark {
+
+	private static final int X_RES = 640, Y_RES = 480, TILE = 16, SUPER_SAMPLE = 2;
+	private static final int[] SIZES = { 1, 4, 8 };
+
+	public static void main(final String[] args) throws Exception {
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		final Scene scene = Main.createScene();
+
+		final int[] reference = render(scene, 1);
+		for (final int size : SIZES) {
+			if (!Arrays.equals(reference, render(scene, size)))
+				System.out.printf("packets %dx%d: IMAGE DIFFERS%n", size, size);
+		}
+
+		final long[] hits = new long[SIZES.length], frames = new long[SIZES.length];
+		Arrays.fill(hits, Long.MAX_VALUE);
+		Arrays.fill(frames, Long.MAX_VALUE);
+		for (int run = 0; run < runs; run++) {
+			for (int i = 0; i < SIZES.length; i++) {
+				long start = System.nanoTime();
+				hit(scene, SIZES[i]);
+				hits[i] = Math.min(hits[i], System.nanoTime() - start);
+				start = System.nanoTime();
+				render(scene, SIZES[i]);
+				frames[i] = Math.min(frames[i], System.nanoTime() - start);
+			}
+		}
+
+		for (int i = 0; i < SIZES.length; i++) {
+			System.out.printf("%-12s primary hits %5d ms (speedup %.2f)  frame %5d ms (speedup %.2f)%n",
+					SIZES[i] == 1 ? "single rays" : String.format("packets %dx%d", SIZES[i], SIZES[i]),
+					hits[i] / 1000000, (double) hits[0] / hits[i], frames[i] / 1000000,
+					(double) frames[0] / frames[i]);
+		}
+	}
+
+	// finds the primary hits of one sample per pixel:
+	private static int hit(final Scene scene, final int packetSize) {
+		final Camera cam = scene.getCamera();
+		final RayPacket packet = new RayPacket();
+		int hits = 0;
+		for (int py = 0; py < Y_RES; py += packetSize) {
+			for (int px = 0; px < X_RES; px += packetSize) {
+				if (packetSize == 1) {
+					if (scene.hit(cam.cast(px / (float) X_RES, py / (float) Y_RES)).hits())
+						hits++;
+					continue;
+				}
+				packet.clear();
+				for (int y = py; y < py + packetSize; y++)
+					for (int x = px; x < px + packetSize; x++)
+						packet.add(cam.cast(x / (float) X_RES, y / (float) Y_RES));
+				scene.hit(packet);
+				for (int i = 0; i < packet.size(); i++)
+					if (packet.record(i).hits())
+						hits++;
+			}
+		}
+		return hits;
+	}
+
+	private static int[] render(final Scene scene, final int packetSize) throws Exception {
+		final Renderer r = new Renderer(scene, X_RES, Y_RES, SUPER_SAMPLE, packetSize);
+		final int[] image = new int[X_RES * Y_RES];
+		for (int x = 0; x < X_RES; x += TILE) {
+			for (int y = 0; y < Y_RES; y += TILE) {
+				final Renderer.Work w = r.render(x, y, TILE, TILE).call();
+				for (int row = 0; row < TILE; row++)
+					System.arraycopy(w.pixels, row * TILE, image, (y + row) * X_RES + x, TILE);
+			}
+		}
+		return image;
+	}
+}
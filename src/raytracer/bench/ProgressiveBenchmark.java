@@ -0,0 +1,53 @@
+package raytracer.bench;
+
+import java.util.Arrays;
+
+import raytracer.core.FrameBuffer;
+import raytracer.core.ProgressiveRenderer;
+import raytracer.core.RenderScheduler;
+import raytracer.core.RenderScheduler.Tile;
+import raytracer.core.Renderer;
+import raytracer.core.Scene;
+import raytracer.core.def.Main;
+
+/**
+ * Renders the Main demo scene progressively as a preview tool would, starting
+ * with a cold JIT: the time of the preview and of every pass and when they
+ * were shown, then the time of rendering the image at once and whether both
+ * images are the same. The optional arguments are the super
+ * sampling and the block size of the preview.
+ */
+public class ProgressiveBenchmark {
+
+	private static final int X_RES = 640, Y_RES = 480;
+
+	public static void main(final String[] args) throws Exception {
+		final int superSample = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		final int previewBlock = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		final Scene scene = Main.createScene();
+		final Renderer renderer = new Renderer(scene, X_RES, Y_RES, superSample);
+		final RenderScheduler scheduler = new RenderScheduler(renderer);
+
+		final long start = System.nanoTime();
+		final ProgressiveRenderer progressive = new ProgressiveRenderer(scheduler, previewBlock);
+		progressive.render(new ProgressiveRenderer.Listener() {
+			@Override
+			public void tileDone(final Tile tile, final int[] pixels) {
+			}
+
+			@Override
+			public void passDone(final int samples, final long nanos) {
+				System.out.printf("%-8s  %5.1f ms  (%6.1f ms since the start)%n",
+						samples == 0 ? "preview" : "pass " + samples, nanos / 1e6, (System.nanoTime() - start) / 1e6);
+			}
+		}, Long.MAX_VALUE, Integer.MAX_VALUE);
+		final int[] passes = progressive.getImage().resolve();
+
+		final FrameBuffer image = new FrameBuffer(X_RES, Y_RES);
+		final long once = System.nanoTime();
+		scheduler.render(image, 0, renderer.getSamples(), null);
+		System.out.printf("at once   %5.1f ms%n", (System.nanoTime() - once) / 1e6);
+		scheduler.shutdown();
+		System.out.println(Arrays.equals(passes, image.resolve()) ? "same image" : "images differ");
+	}
+}
@@ -0,0 +1,51 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+
+import raytracer.core.OBJReader;
+import raytracer.core.def.BVH;
+import raytracer.core.def.BVHBase;
+import raytracer.core.def.ParallelBVHBuilder;
+import raytracer.core.def.SAH;
+import raytracer.core.def.SAHBVH;
+import raytracer.math.Color;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Prints the estimated SAH cost and the build time of the hierarchies built by
+ * the midpoint, the SAH and the parallel SAH builder for the given OBJ files
+ * (the bundled models by default)
+ */
+public class SAHReport {
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		final String[] files = args.length > 0 ? args
+				: new String[] { "obj/pyramid.obj", "obj/bunny.obj" };
+		for (final String file : files) {
+			System.out.println(file);
+			report("midpoint", new BVH(), file);
+			report("sah-16", new SAHBVH(16), file);
+			report("sah-32", new SAHBVH(32), file);
+			reportParallel(new ParallelBVHBuilder(), file);
+		}
+	}
+
+	private static void reportParallel(final ParallelBVHBuilder builder, final String file)
+			throws FileNotFoundException {
+		final SAHBVH bvh = new SAHBVH();
+		OBJReader.read(file, bvh, new SingleColor(Color.WHITE), 1, Vec3.ZERO);
+		builder.build(bvh);
+		System.out.printf("  %-10s SAH cost %10.3f  build %6d ms%n", "parallel", SAH.cost(bvh),
+				builder.getBuildTime() / 1000000);
+	}
+
+	private static void report(final String name, final BVHBase bvh, final String file)
+			throws FileNotFoundException {
+		OBJReader.read(file, bvh, new SingleColor(Color.WHITE), 1, Vec3.ZERO);
+		final long start = System.nanoTime();
+		bvh.buildBVH();
+		final long millis = (System.nanoTime() - start) / 1000000;
+		System.out.printf("  %-10s SAH cost %10.3f  build %6d ms%n", name, SAH.cost(bvh), millis);
+	}
+}
@@ -0,0 +1,49 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+
+import raytracer.core.OBJReader;
+import raytracer.core.def.BVH;
+import raytracer.core.def.BVHBase;
+import raytracer.core.def.SAH;
+import raytracer.core.def.SAHBVH;
+import raytracer.core.def.SBVH;
+import raytracer.math.Color;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Prints the SAH cost, the overlap of sibling nodes and the number of object
+ * references of the SAH builder and the spatial split builder for the given
+ * OBJ files (the bundled models by default)
+ */
+public class SBVHReport {
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		final String[] files = args.length > 0 ? args
+				: new String[] { "obj/simple.obj", "obj/pyramid.obj", "obj/bunny.obj" };
+		for (final String file : files) {
+			System.out.println(file);
+			report("sah", new SAHBVH(), file);
+			report("sbvh-0.1", new SBVH(0.1f), file);
+			report("sbvh-0.3", new SBVH(0.3f), file);
+			report("sbvh-1.0", new SBVH(1.0f), file);
+		}
+	}
+
+	private static void report(final String name, final BVH bvh, final String file) throws FileNotFoundException {
+		OBJReader.read(file, bvh, new SingleColor(Color.WHITE), 1, Vec3.ZERO);
+		final int objects = bvh.getObjects().size();
+		final long start = System.nanoTime();
+		bvh.buildBVH();
+		final long millis = (System.nanoTime() - start) / 1000000;
+		System.out.printf("  %-10s SAH cost %8.3f  overlap %8.4f  references %7d / %7d  build %5d ms%n", name,
+				SAH.cost(bvh), SAH.overlap(bvh), references(bvh), objects, millis);
+	}
+
+	private static int references(final BVHBase node) {
+		if (node.getLeft() == null)
+			return node.getObjects().size();
+		return references(node.getLeft()) + references(node.getRight());
+	}
+}
@@ -0,0 +1,109 @@
+package raytracer.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import raytracer.core.RenderScheduler;
+import raytracer.core.RenderScheduler.Tile;
+import raytracer.core.Renderer;
+import raytracer.core.Scene;
+import raytracer.core.def.Main;
+
+/**
+ * Compares rendering the Main demo scene in fixed 16x16 tiles on a fixed
+ * thread pool (as Main used to) with the RenderScheduler: the time of the
+ * fastest of several interleaved runs, the tiles and the busy time of every
+ * worker. The optional arguments are the number of runs and of workers.
+ */
+public class SchedulerBenchmark {
+
+	private static final int X_RES = 640, Y_RES = 480, TILE = 16, SUPER_SAMPLE = 2;
+
+	public static void main(final String[] args) throws Exception {
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		final int workers = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		final Scene scene = Main.createScene();
+		final Renderer renderer = new Renderer(scene, X_RES, Y_RES, SUPER_SAMPLE);
+		final ExecutorService fixed = Executors.newFixedThreadPool(workers);
+		final RenderScheduler scheduler = new RenderScheduler(renderer, workers, 8, 64);
+
+		final int[] fixedImage = new int[X_RES * Y_RES], scheduledImage = new int[X_RES * Y_RES];
+		long fixedTime = Long.MAX_VALUE, scheduledTime = Long.MAX_VALUE;
+		List<Tile> tiles = null;
+		for (int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			final CompletionService<Renderer.Work> ecs = new ExecutorCompletionService<Renderer.Work>(fixed);
+			int num = 0;
+			for (int x = 0; x < X_RES; x += TILE)
+				for (int y = 0; y < Y_RES; y += TILE, num++)
+					ecs.submit(renderer.render(x, y, TILE, TILE));
+			for (int i = 0; i < num; i++) {
+				final Renderer.Work w = ecs.take().get();
+				copy(w.x, w.y, w.w, w.h, w.pixels, fixedImage);
+			}
+			fixedTime = Math.min(fixedTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			tiles = scheduler.render(new RenderScheduler.Listener() {
+				@Override
+				public void tileDone(final Tile tile, final int[] pixels) {
+					copy(tile.x, tile.y, tile.w, tile.h, pixels, scheduledImage);
+				}
+			});
+			scheduledTime = Math.min(scheduledTime, System.nanoTime() - start);
+		}
+		fixed.shutdown();
+		scheduler.shutdown();
+
+		System.out.printf("fixed %dx%d tiles  %d workers  %5d ms%n", TILE, TILE, workers, fixedTime / 1000000);
+		System.out.printf("scheduler          %d workers  %5d ms  (speedup %.2f)%n", scheduler.getWorkers(),
+				scheduledTime / 1000000, (double) fixedTime / scheduledTime);
+
+		// the tiles and the busy time of the workers of the last run:
+		int smallest = Integer.MAX_VALUE, largest = 0;
+		long slowest = 0;
+		final Map<Integer, Long> busy = new TreeMap<Integer, Long>();
+		for (final Tile tile : tiles) {
+			smallest = Math.min(smallest, tile.w * tile.h);
+			largest = Math.max(largest, tile.w * tile.h);
+			slowest = Math.max(slowest, tile.nanos);
+			final Long time = busy.get(tile.worker);
+			busy.put(tile.worker, (time == null ? 0 : time) + tile.nanos);
+		}
+		System.out.printf("%d tiles of %d to %d pixels, slowest %.2f ms%n", tiles.size(), smallest, largest,
+				slowest / 1e6);
+		long total = 0, most = 0;
+		for (final Map.Entry<Integer, Long> entry : busy.entrySet()) {
+			System.out.printf("  %-9s busy %5d ms%n", entry.getKey() < 0 ? "caller" : "worker " + entry.getKey(),
+					entry.getValue() / 1000000);
+			total += entry.getValue();
+			most = Math.max(most, entry.getValue());
+		}
+		System.out.printf("imbalance (busiest / average) %.2f%n", most / ((double) total / busy.size()));
+
+		// the sample positions are accumulated from the corner of a tile, so
+		// other tiles round some of them differently:
+		int differ = 0, channel = 0;
+		for (int i = 0; i < fixedImage.length; i++) {
+			if (fixedImage[i] == scheduledImage[i])
+				continue;
+			differ++;
+			for (int shift = 0; shift < 24; shift += 8)
+				channel = Math.max(channel,
+						Math.abs((fixedImage[i] >> shift & 0xFF) - (scheduledImage[i] >> shift & 0xFF)));
+		}
+		System.out.printf("%d pixels differ from the fixed tiles, by at most %d%n", differ, channel);
+	}
+
+	private static void copy(final int x, final int y, final int w, final int h, final int[] pixels,
+			final int[] image) {
+		for (int j = 0; j < h; j++)
+			System.arraycopy(pixels, j * w, image, (y + j) * X_RES + x, w);
+	}
+}
@@ -0,0 +1,45 @@
+package raytracer.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import raytracer.core.OBJReader;
+import raytracer.core.def.BVH;
+import raytracer.core.def.BVHSnapshot;
+import raytracer.core.def.FlatBVH;
+import raytracer.math.Color;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Measures the startup cost of getting a hierarchy over the bunny: reading the
+ * model and building a BVH as Main does, versus loading it through a
+ * BVHSnapshot. Run it twice in fresh JVMs, the first run writes the snapshot
+ * (to the file given as argument, bunny.bvh by default) and the second one
+ * maps it.
+ */
+public class SnapshotBenchmark {
+
+	public static void main(final String[] args) throws IOException {
+		final Path snapshot = Paths.get(args.length > 0 ? args[0] : "bunny.bvh");
+		final Path model = Paths.get("obj/bunny.obj");
+		final SingleColor shader = new SingleColor(Color.WHITE);
+		final Vec3 translate = new Vec3(-3, 0, 0);
+		final boolean cached = Files.exists(snapshot);
+
+		long start = System.nanoTime();
+		final FlatBVH flat = BVHSnapshot.load(model, snapshot, shader, 25, translate);
+		final long load = (System.nanoTime() - start) / 1000000;
+
+		start = System.nanoTime();
+		final BVH bvh = new BVH();
+		OBJReader.read(model.toString(), bvh, shader, 25, translate);
+		bvh.buildBVH();
+		final long build = (System.nanoTime() - start) / 1000000;
+
+		System.out.printf("snapshot %s: %d ms (%d nodes), read and build: %d ms%n",
+				cached ? "mapped" : "written", load, flat.getNodeCount(), build);
+	}
+}
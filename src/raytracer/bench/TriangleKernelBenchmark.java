@@ -0,0 +1,82 @@
+package raytracer.bench;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Random;
+
+import raytracer.core.OBJReader;
+import raytracer.core.def.SAHBVH;
+import raytracer.geom.TriangleKernel;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+import raytracer.shade.SingleColor;
+
+/**
+ * Compares the triangle kernels on the bunny read into a SAH BVH: heap per
+ * triangle, build time and tracing time (the fastest of several interleaved
+ * runs). The optional argument is the number of runs.
+ */
+public class TriangleKernelBenchmark {
+
+	private static final float SCALE = 25;
+
+	public static void main(final String[] args) throws FileNotFoundException {
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		final SingleColor shader = new SingleColor(Color.WHITE);
+		final Ray[] rays = rays(200000);
+		final TriangleKernel[] kernels = TriangleKernel.values();
+
+		final SAHBVH[] bvhs = new SAHBVH[kernels.length];
+		final long[] memory = new long[kernels.length], build = new long[kernels.length];
+		for (int i = 0; i < kernels.length; i++) {
+			final long before = usedMemory();
+			final long start = System.nanoTime();
+			bvhs[i] = new SAHBVH();
+			OBJReader.read("obj/bunny.obj", bvhs[i], shader, SCALE, Vec3.ZERO, kernels[i]);
+			bvhs[i].commit();
+			build[i] = System.nanoTime() - start;
+			memory[i] = usedMemory() - before;
+		}
+
+		final long[] trace = new long[kernels.length];
+		final int[] hits = new int[kernels.length];
+		Arrays.fill(trace, Long.MAX_VALUE);
+		for (int run = 0; run < runs; run++) {
+			for (int i = 0; i < kernels.length; i++) {
+				hits[i] = 0;
+				final long start = System.nanoTime();
+				for (final Ray ray : rays)
+					if (bvhs[i].hit(ray, null, 0, Float.POSITIVE_INFINITY).hits())
+						hits[i]++;
+				trace[i] = Math.min(trace[i], System.nanoTime() - start);
+			}
+		}
+
+		final int triangles = bvhs[0].getObjects().size();
+		for (int i = 0; i < kernels.length; i++) {
+			System.out.printf("%-16s heap %6.1f bytes/triangle  build %5d ms  trace %5d ms (speedup %.2f)  (%d hits)%n",
+					kernels[i], (double) memory[i] / triangles, build[i] / 1000000, trace[i] / 1000000,
+					(double) trace[0] / trace[i], hits[i]);
+		}
+	}
+
+	// rays from in front of the bunny at random spots of it:
+	private static Ray[] rays(final int n) {
+		final Random rnd = new Random(42);
+		final Ray[] rays = new Ray[n];
+		for (int i = 0; i < n; i++) {
+			final Point base = new Point(rnd.nextFloat() * 10 - 5, rnd.nextFloat() * 10, -10);
+			final Point target = new Point(rnd.nextFloat() * 4 - 2, rnd.nextFloat() * 4, rnd.nextFloat() * 4 - 2);
+			rays[i] = new Ray(base, target.sub(base).normalized());
+		}
+		return rays;
+	}
+
+	private static long usedMemory() {
+		System.gc();
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,75 @@
+package raytracer.bench;
+
+import java.util.Random;
+
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Vec3;
+
+/**
+ * Times vector-heavy loops which use the operations of several vector types
+ * at the same call sites of the math package (as a render does): blending
+ * colors, bounding points, and normalizing and reflecting vectors. Reports the
+ * fastest of several runs per loop; the optional argument is the number of
+ * runs.
+ */
+public class VectorBenchmark {
+
+	private static final int N = 1 << 16, REPEAT = 40;
+
+	public static void main(final String[] args) {
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		final Random rnd = new Random(7);
+		final Vec3[] vecs = new Vec3[N];
+		final Point[] points = new Point[N];
+		final Color[] colors = new Color[N];
+		for (int i = 0; i < N; i++) {
+			vecs[i] = new Vec3(rnd.nextFloat() - 0.5f, rnd.nextFloat() - 0.5f, rnd.nextFloat() - 0.5f);
+			points[i] = new Point(rnd.nextFloat() * 10, rnd.nextFloat() * 10, rnd.nextFloat() * 10);
+			colors[i] = new Color(rnd.nextFloat(), rnd.nextFloat(), rnd.nextFloat());
+		}
+
+		long colorTime = Long.MAX_VALUE, boundsTime = Long.MAX_VALUE, vecTime = Long.MAX_VALUE;
+		float sink = 0;
+		for (int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			for (int r = 0; r < REPEAT; r++) {
+				Color c = Color.BLACK;
+				for (int i = 0; i < N; i++)
+					c = c.avg(colors[i].mul(colors[N - 1 - i]).scale(0.5f).add(colors[i]), i % 16);
+				sink += c.x();
+			}
+			colorTime = Math.min(colorTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int r = 0; r < REPEAT; r++) {
+				Point min = points[0], max = points[0];
+				for (int i = 0; i < N; i++) {
+					final Point p = points[i].add(vecs[i]);
+					min = min.min(p);
+					max = max.max(p, points[i].sub(vecs[i]));
+				}
+				sink += min.x() + max.x();
+			}
+			boundsTime = Math.min(boundsTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int r = 0; r < REPEAT; r++) {
+				Vec3 sum = Vec3.ZERO;
+				for (int i = 0; i < N; i++) {
+					final Vec3 n = vecs[i].normalized();
+					sum = sum.add(vecs[N - 1 - i].reflect(n)).combine(0.5f, n.cross(vecs[i]));
+				}
+				sink += sum.x();
+			}
+			vecTime = Math.min(vecTime, System.nanoTime() - start);
+		}
+
+		final double ops = (double) N * REPEAT;
+		System.out.printf("colors   %6.2f ns/iteration%n", colorTime / ops);
+		System.out.printf("bounds   %6.2f ns/iteration%n", boundsTime / ops);
+		System.out.printf("vectors  %6.2f ns/iteration%n", vecTime / ops);
+		if (sink == 42)
+			System.out.println();
+	}
+}
@@ -0,0 +1,209 @@
+package raytracer.core;
+
+import java.util.Arrays;
+
+import raytracer.math.Color;
+
+/**
+ * A float RGB image accumulating the samples of its pixels. Every pixel keeps
+ * the unclamped sum of its samples and their count in primitive arrays, so
+ * adding a sample allocates nothing and further samples can be added at any
+ * time (for progressive or multi-pass rendering). Averaging, tone mapping and
+ * the conversion to packed RGB happen only when the pixels are resolved.
+ *
+ * Samples of different pixels may be added by different threads; the samples
+ * of one pixel must be added by one thread at a time.
+ */
+public class FrameBuffer {
+
+	private final int width, height;
+	private final ToneMap toneMap;
+	// the sums of red, green and blue of every pixel, one after another:
+	private final float[] sums;
+	private final int[] counts;
+
+	/**
+	 * Creates a new black frame buffer without samples which clamps its pixels
+	 *
+	 * @param width
+	 *            The width in pixels
+	 * @param height
+	 *            The height in pixels
+	 */
+	public FrameBuffer(final int width, final int height) {
+		this(width, height, ToneMap.CLAMP);
+	}
+
+	/**
+	 * Creates a new black frame buffer without samples
+	 *
+	 * @param width
+	 *            The width in pixels
+	 * @param height
+	 *            The height in pixels
+	 * @param toneMap
+	 *            The mapping of averaged radiance to [0, 1]
+	 * @throws IllegalArgumentException
+	 *             If width or height is negative or toneMap is null
+	 */
+	public FrameBuffer(final int width, final int height, final ToneMap toneMap) {
+		if (width < 0 || height < 0)
+			throw new IllegalArgumentException("width and height must not be negative");
+		if (toneMap == null)
+			throw new IllegalArgumentException("toneMap must not be null");
+		this.width = width;
+		this.height = height;
+		this.toneMap = toneMap;
+		this.sums = new float[3 * width * height];
+		this.counts = new int[width * height];
+	}
+
+	/**
+	 * Returns the width of the frame buffer
+	 *
+	 * @return The width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the frame buffer
+	 *
+	 * @return The height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the tone map applied when the pixels are resolved
+	 *
+	 * @return The mapping of averaged radiance to [0, 1]
+	 */
+	public ToneMap getToneMap() {
+		return toneMap;
+	}
+
+	/**
+	 * Adds a sample to a pixel
+	 *
+	 * @param x
+	 *            The x coordinate of the pixel
+	 * @param y
+	 *            The y coordinate of the pixel
+	 * @param c
+	 *            The color of the sample
+	 */
+	public void add(final int x, final int y, final Color c) {
+		add(x, y, c.x(), c.y(), c.z());
+	}
+
+	/**
+	 * Adds a sample to a pixel
+	 *
+	 * @param x
+	 *            The x coordinate of the pixel
+	 * @param y
+	 *            The y coordinate of the pixel
+	 * @param r
+	 *            The red radiance of the sample
+	 * @param g
+	 *            The green radiance of the sample
+	 * @param b
+	 *            The blue radiance of the sample
+	 */
+	public void add(final int x, final int y, final float r, final float g, final float b) {
+		final int p = y * width + x;
+		final int ofs = 3 * p;
+		sums[ofs] += r;
+		sums[ofs + 1] += g;
+		sums[ofs + 2] += b;
+		counts[p]++;
+	}
+
+	/**
+	 * Returns the number of samples added to a pixel
+	 *
+	 * @param x
+	 *            The x coordinate of the pixel
+	 * @param y
+	 *            The y coordinate of the pixel
+	 * @return The number of samples
+	 */
+	public int getSamples(final int x, final int y) {
+		return counts[y * width + x];
+	}
+
+	/**
+	 * Returns the average of the samples of a pixel, without tone mapping
+	 *
+	 * @param x
+	 *            The x coordinate of the pixel
+	 * @param y
+	 *            The y coordinate of the pixel
+	 * @param channel
+	 *            The channel, red=0, green=1, blue=2
+	 * @return The average radiance of the channel, 0 for a pixel without
+	 *         samples
+	 */
+	public float getAverage(final int x, final int y, final int channel) {
+		final int p = y * width + x;
+		return counts[p] == 0 ? 0.0f : sums[3 * p + channel] / counts[p];
+	}
+
+	/**
+	 * Removes all samples
+	 */
+	public void clear() {
+		Arrays.fill(sums, 0.0f);
+		Arrays.fill(counts, 0);
+	}
+
+	/**
+	 * Resolves the whole image into packed RGB, see
+	 * {@link #resolve(int, int, int, int, int[])}
+	 *
+	 * @return The pixels row by row
+	 */
+	public int[] resolve() {
+		final int[] pixels = new int[width * height];
+		resolve(0, 0, width, height, pixels);
+		return pixels;
+	}
+
+	/**
+	 * Resolves a rectangle of the image into packed RGB: averages the samples
+	 * of every pixel, maps the average with the tone map and converts it like
+	 * {@link Color#rgb()}. Pixels without samples are black.
+	 *
+	 * @param sx
+	 *            The x coordinate of the rectangle
+	 * @param sy
+	 *            The y coordinate of the rectangle
+	 * @param w
+	 *            The width of the rectangle
+	 * @param h
+	 *            The height of the rectangle
+	 * @param pixels
+	 *            The array receiving the w x h pixels row by row
+	 */
+	public void resolve(final int sx, final int sy, final int w, final int h, final int[] pixels) {
+		int out = 0;
+		for (int y = sy; y < sy + h; y++) {
+			for (int x = sx; x < sx + w; x++) {
+				final int p = y * width + x;
+				final int n = counts[p];
+				if (n == 0) {
+					pixels[out++] = 0;
+					continue;
+				}
+				final int ofs = 3 * p;
+				final int r = (int) (toneMap.map(sums[ofs] / n) * 255.0);
+				final int g = (int) (toneMap.map(sums[ofs + 1] / n) * 255.0);
+				final int b = (int) (toneMap.map(sums[ofs + 2] / n) * 255.0);
+				pixels[out++] = (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+}
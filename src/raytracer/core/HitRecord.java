@@ -0,0 +1,195 @@
+package raytracer.core;
+
+import raytracer.geom.Primitive;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a reusable record of the closest hit found so far. Primitives
+ * write the distance, their surface parameters, the normal and the hit object
+ * into the record (see {@link Primitive#intersect(Ray, Obj, float, HitRecord)})
+ * instead of allocating a {@link Hit} per test, and only the final closest hit
+ * is turned into a {@link Hit} by {@link #toHit(Ray)}.
+ *
+ * A record is not thread-safe, every thread tracing rays needs its own.
+ */
+public final class HitRecord {
+
+	private float t;
+	private boolean hits;
+	private float u, v;
+	private float nx, ny, nz;
+	private Primitive primitive;
+	private Obj obj;
+	private Hit hit;
+
+	/**
+	 * Creates a new record accepting hits at any distance
+	 */
+	public HitRecord() {
+		reset(Float.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Creates a new record
+	 *
+	 * @param tmax
+	 *            The maximum distance
+	 */
+	public HitRecord(final float tmax) {
+		reset(tmax);
+	}
+
+	/**
+	 * Forgets the recorded hit, so that the record can be used for the next
+	 * ray
+	 *
+	 * @param tmax
+	 *            The maximum distance
+	 * @return This record
+	 */
+	public HitRecord reset(final float tmax) {
+		t = tmax;
+		hits = false;
+		primitive = null;
+		obj = null;
+		hit = null;
+		return this;
+	}
+
+	/**
+	 * Returns true if a hit has been recorded
+	 *
+	 * @return True if a hit has been recorded
+	 */
+	public boolean hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the distance of the recorded hit, which is the maximum distance
+	 * of all further hits
+	 *
+	 * @return The distance of the recorded hit or the maximum distance if
+	 *         nothing has been hit yet
+	 */
+	public float getParameter() {
+		return t;
+	}
+
+	/**
+	 * Checks whether a hit at the given distance would replace the recorded
+	 * one. Until something is hit the maximum distance itself is accepted, from
+	 * then on only strictly closer hits are, so the first of two equally close
+	 * hits is kept.
+	 *
+	 * @param distance
+	 *            The distance of the hit
+	 * @return True if the hit should be recorded
+	 */
+	public boolean accepts(final float distance) {
+		return distance < t || (distance == t && !hits);
+	}
+
+	/**
+	 * Records a hit computed without allocation. The primitive turns the
+	 * record into a {@link Hit} if it stays the closest one.
+	 *
+	 * @param distance
+	 *            The distance of the hit
+	 * @param u
+	 *            The first surface parameter of the primitive
+	 * @param v
+	 *            The second surface parameter of the primitive
+	 * @param nx
+	 *            The x component of the normal
+	 * @param ny
+	 *            The y component of the normal
+	 * @param nz
+	 *            The z component of the normal
+	 * @param primitive
+	 *            The hit primitive
+	 * @param obj
+	 *            The hit object
+	 */
+	public void set(final float distance, final float u, final float v, final float nx, final float ny,
+			final float nz, final Primitive primitive, final Obj obj) {
+		this.t = distance;
+		this.hits = true;
+		this.u = u;
+		this.v = v;
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		this.primitive = primitive;
+		this.obj = obj;
+		this.hit = null;
+	}
+
+	/**
+	 * Records an already computed hit, for primitives without an allocation
+	 * free intersection test
+	 *
+	 * @param hit
+	 *            The hit
+	 */
+	public void set(final Hit hit) {
+		this.t = hit.getParameter();
+		this.hits = true;
+		this.primitive = null;
+		this.obj = hit.get();
+		this.hit = hit;
+	}
+
+	/**
+	 * Returns the first surface parameter of the recorded hit (for triangles
+	 * the first barycentric coordinate)
+	 *
+	 * @return The first surface parameter
+	 */
+	public float getU() {
+		return u;
+	}
+
+	/**
+	 * Returns the second surface parameter of the recorded hit (for triangles
+	 * the second barycentric coordinate)
+	 *
+	 * @return The second surface parameter
+	 */
+	public float getV() {
+		return v;
+	}
+
+	/**
+	 * Returns the normal of the recorded hit
+	 *
+	 * @return The normal
+	 */
+	public Vec3 getNormal() {
+		return hit != null ? hit.getNormal() : new Vec3(nx, ny, nz);
+	}
+
+	/**
+	 * Returns the hit object
+	 *
+	 * @return The hit object or null if nothing has been hit
+	 */
+	public Obj get() {
+		return obj;
+	}
+
+	/**
+	 * Turns the recorded hit into a {@link Hit}
+	 *
+	 * @param ray
+	 *            The ray the record was filled with
+	 * @return The recorded hit or {@link Hit.No} if nothing has been hit
+	 */
+	public Hit toHit(final Ray ray) {
+		if (!hits) {
+			return Hit.No.get();
+		}
+		return hit != null ? hit : primitive.toHit(ray, this);
+	}
+}
@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Scanner;
@@ -12,7 +13,9 @@ import raytracer.geom.GeomFactory;
 
 import raytracer.core.def.Accelerator;
 import raytracer.core.def.StandardObj;
+import raytracer.core.def.TriangleMesh;
 import raytracer.geom.Primitive;
+import raytracer.geom.TriangleKernel;
 import raytracer.math.Point;
 import raytracer.math.Vec3;
 
@@ -24,7 +27,8 @@ public class OBJReader {
 	/**
 	 * Reads an OBJ file and uses the given shader for all triangles. While
 	 * loading the triangles they are inserted into the given acceleration
-	 * structure accelerator.
+	 * structure accelerator as one batch; committing the accelerator is left
+	 * to the caller, so several models can be read into the same structure.
 	 *
 	 * @param filename
 	 *                    The file to read the data from
@@ -58,7 +62,8 @@ public class OBJReader {
 	/**
 	 * Reads an OBJ file and uses the given shader for all triangles. While
 	 * loading the triangles they are inserted into the given acceleration
-	 * structure accelerator.
+	 * structure accelerator as one batch; committing the accelerator is left
+	 * to the caller, so several models can be read into the same structure.
 	 *
 	 * @param in
 	 *                    The InputStream of the data to be read.
@@ -85,6 +90,66 @@ public class OBJReader {
 	public static void read(final InputStream in,
 			final Accelerator accelerator, final Shader shader, final float scale,
 			final Vec3 translate) throws FileNotFoundException {
+		read(in, accelerator, shader, scale, translate, TriangleKernel.MOLLER_TRUMBORE);
+	}
+
+	/**
+	 * Reads an OBJ file like {@link #read(String, Accelerator, Shader, float, Vec3)}
+	 * and creates the triangles with the given intersection kernel
+	 *
+	 * @param filename
+	 *                    The file to read the data from
+	 * @param accelerator
+	 *                    The target acceleration structure
+	 * @param shader
+	 *                    The shader which is used by all triangles
+	 * @param scale
+	 *                    The scale factor which is responsible for scaling the
+	 *                    model
+	 * @param translate
+	 *                    A vector representing the translation coordinate with
+	 *                    which all coordinates have to be translated
+	 * @param kernel
+	 *                    The intersection test of the triangles
+	 * @throws IllegalArgumentException
+	 *                                  If an argument is null or invalid, see
+	 *                                  {@link #read(String, Accelerator, Shader, float, Vec3)}
+	 */
+	public static void read(final String filename,
+			final Accelerator accelerator, final Shader shader, final float scale,
+			final Vec3 translate, final TriangleKernel kernel) throws FileNotFoundException {
+		read(new BufferedInputStream(new FileInputStream(filename)), accelerator, shader, scale, translate,
+				kernel);
+	}
+
+	/**
+	 * Reads an OBJ file like {@link #read(InputStream, Accelerator, Shader, float, Vec3)}
+	 * and creates the triangles with the given intersection kernel
+	 *
+	 * @param in
+	 *                    The InputStream of the data to be read.
+	 * @param accelerator
+	 *                    The target acceleration structure
+	 * @param shader
+	 *                    The shader which is used by all triangles
+	 * @param scale
+	 *                    The scale factor which is responsible for scaling the
+	 *                    model
+	 * @param translate
+	 *                    A vector representing the translation coordinate with
+	 *                    which all coordinates have to be translated
+	 * @param kernel
+	 *                    The intersection test of the triangles
+	 * @throws IllegalArgumentException
+	 *                                  If an argument is null or invalid, see
+	 *                                  {@link #read(InputStream, Accelerator, Shader, float, Vec3)}
+	 */
+	public static void read(final InputStream in,
+			final Accelerator accelerator, final Shader shader, final float scale,
+			final Vec3 translate, final TriangleKernel kernel) throws FileNotFoundException {
+		if (kernel == null) {
+			throw new IllegalArgumentException("The kernel is null");
+		}
 		if (in == null || accelerator == null) {
 			throw new IllegalArgumentException("The input stream is null or the accelerator is null ");
 		}
@@ -99,12 +164,161 @@ public class OBJReader {
 		if (!Float.isFinite(scale)) {
 			throw new IllegalArgumentException("The scale is not a (finite) floating-point number");
 		}
+		final float[] triangles = readTriangles(in, scale, translate);
+
+		// Create triangles using the collected data and insert them into the
+		// accelerator as one batch
+		final List<Obj> objects = new ArrayList<>(triangles.length / 9);
+		for (int i = 0; i < triangles.length; i += 9) {
+			Point vert1 = new Point(triangles[i], triangles[i + 1], triangles[i + 2]);
+			Point vert2 = new Point(triangles[i + 3], triangles[i + 4], triangles[i + 5]);
+			Point vert3 = new Point(triangles[i + 6], triangles[i + 7], triangles[i + 8]);
+
+			Primitive triangle = GeomFactory.createTriangle(vert1, vert2, vert3, kernel);
+			objects.add(new StandardObj(triangle, shader));
+		}
+		accelerator.addAll(objects);
+
+	}
+
+	/**
+	 * Reads the triangles of an OBJ file without creating any objects. Faces
+	 * with more than three vertices contribute their first three vertices,
+	 * faces referring to missing vertices are skipped.
+	 *
+	 * @param in
+	 *                  The InputStream of the data to be read.
+	 * @param scale
+	 *                  The scale factor which is responsible for scaling the
+	 *                  model
+	 * @param translate
+	 *                  A vector representing the translation coordinate with
+	 *                  which all coordinates have to be translated
+	 * @return The scaled and translated vertices, nine floats (three points)
+	 *         per triangle
+	 * @throws IllegalArgumentException
+	 *                                  If the InputStream is null, the translate
+	 *                                  vector is null or not finite or scale
+	 *                                  does not represent a legal (finite)
+	 *                                  floating point number
+	 */
+	public static float[] readTriangles(final InputStream in, final float scale, final Vec3 translate) {
+		if (in == null) {
+			throw new IllegalArgumentException("The input stream is null");
+		}
+		if (translate == null || translate.isInfinity()) {
+			throw new IllegalArgumentException("The translate vector is null");
+		}
+		if (!Float.isFinite(scale)) {
+			throw new IllegalArgumentException("The scale is not a (finite) floating-point number");
+		}
+		final Model model = parse(in, scale, translate);
+
+		// Collect the vertices of the faces
+		float[] triangles = new float[3 * model.indices.length];
+		int count = 0;
+		for (int index : model.indices) {
+			triangles[count++] = model.positions[3 * index];
+			triangles[count++] = model.positions[3 * index + 1];
+			triangles[count++] = model.positions[3 * index + 2];
+		}
+
+		return triangles;
+	}
+
+	/**
+	 * Reads an OBJ file into a {@link TriangleMesh}, which stores every vertex
+	 * once and uses the given shader for all triangles. Faces are read like in
+	 * {@link #readTriangles(InputStream, float, Vec3)}.
+	 *
+	 * @param filename
+	 *                  The file to read the data from
+	 * @param shader
+	 *                  The shader which is used by all triangles
+	 * @param scale
+	 *                  The scale factor which is responsible for scaling the
+	 *                  model
+	 * @param translate
+	 *                  A vector representing the translation coordinate with
+	 *                  which all coordinates have to be translated
+	 * @return The mesh
+	 * @throws IllegalArgumentException
+	 *                                  If the filename is null, the shader is
+	 *                                  null, the translate vector is null or not
+	 *                                  finite or scale does not represent a
+	 *                                  legal (finite) floating point number
+	 */
+	public static TriangleMesh readMesh(final String filename, final Shader shader, final float scale,
+			final Vec3 translate) throws FileNotFoundException {
+		if (filename == null || filename.isEmpty()) {
+			throw new IllegalArgumentException("The filename is null or empty");
+		}
+		return readMesh(new BufferedInputStream(new FileInputStream(filename)), shader, scale, translate);
+	}
+
+	/**
+	 * Reads an OBJ file into a {@link TriangleMesh}, which stores every vertex
+	 * once and uses the given shader for all triangles. Faces are read like in
+	 * {@link #readTriangles(InputStream, float, Vec3)}.
+	 *
+	 * @param in
+	 *                  The InputStream of the data to be read.
+	 * @param shader
+	 *                  The shader which is used by all triangles
+	 * @param scale
+	 *                  The scale factor which is responsible for scaling the
+	 *                  model
+	 * @param translate
+	 *                  A vector representing the translation coordinate with
+	 *                  which all coordinates have to be translated
+	 * @return The mesh
+	 * @throws IllegalArgumentException
+	 *                                  If the InputStream is null, the shader is
+	 *                                  null, the translate vector is null or not
+	 *                                  finite or scale does not represent a
+	 *                                  legal (finite) floating point number
+	 */
+	public static TriangleMesh readMesh(final InputStream in, final Shader shader, final float scale,
+			final Vec3 translate) {
+		if (shader == null) {
+			throw new IllegalArgumentException("The shader is null");
+		}
+		if (in == null) {
+			throw new IllegalArgumentException("The input stream is null");
+		}
+		if (translate == null || translate.isInfinity()) {
+			throw new IllegalArgumentException("The translate vector is null");
+		}
+		if (!Float.isFinite(scale)) {
+			throw new IllegalArgumentException("The scale is not a (finite) floating-point number");
+		}
+		final Model model = parse(in, scale, translate);
+		return new TriangleMesh(model.positions, model.indices, shader);
+	}
+
+	/**
+	 * The vertices of a model and the vertex indices of its triangles
+	 */
+	private static final class Model {
+		private final float[] positions;
+		private final int[] indices;
+
+		private Model(final float[] positions, final int[] indices) {
+			this.positions = positions;
+			this.indices = indices;
+		}
+	}
+
+	// reads the scaled and translated vertices and the faces referring to
+	// existing vertices (their first three vertices, counted from zero):
+	private static Model parse(final InputStream in, final float scale, final Vec3 translate) {
 		// the scanner object that we need as followsss:
 		Scanner scan = new Scanner(in);
 		scan.useLocale(Locale.ENGLISH);
-		// the array lists where we store the vertices and the faces, do not mind the
+		// the arrays where we store the vertices and the faces, do not mind the
 		// names :D:
-		List<Point> verticesLOL = new ArrayList<>();
+		float[] verticesLOL = new float[3 * 1024];
+		int vertexCount = 0;
 		List<int[]> faces = new ArrayList<>();
 
 		while (scan.hasNextLine()) {
@@ -129,11 +343,13 @@ public class OBJReader {
 
 			if (type.equals("v") && tokeyyy.length >= 4) {
 				// Vertex definition:
-				float xxx = Float.parseFloat(tokeyyy[1]) * scale + translate.x();
-				float yyy = Float.parseFloat(tokeyyy[2]) * scale + translate.y();
-				float zzz = Float.parseFloat(tokeyyy[3]) * scale + translate.z();
-				Point vertex = new Point(xxx, yyy, zzz);
-				verticesLOL.add(vertex);
+				if (3 * vertexCount == verticesLOL.length) {
+					verticesLOL = Arrays.copyOf(verticesLOL, 2 * verticesLOL.length);
+				}
+				verticesLOL[3 * vertexCount] = Float.parseFloat(tokeyyy[1]) * scale + translate.x();
+				verticesLOL[3 * vertexCount + 1] = Float.parseFloat(tokeyyy[2]) * scale + translate.y();
+				verticesLOL[3 * vertexCount + 2] = Float.parseFloat(tokeyyy[3]) * scale + translate.z();
+				vertexCount++;
 			} else if (type.equals("f") && tokeyyy.length >= 4) {
 				// Face definition:
 				int[] faceIndices = new int[tokeyyy.length - 1];
@@ -146,8 +362,9 @@ public class OBJReader {
 
 		scan.close();
 
-		// Create triangles using the collected data and insert them into the
-		// accelerator
+		// Collect the indices of the faces, skipping faces with missing vertices
+		int[] indices = new int[3 * faces.size()];
+		int count = 0;
 		for (int[] faceIndices : faces) {
 			if (faceIndices.length >= 3) {
 
@@ -156,23 +373,17 @@ public class OBJReader {
 				ind2 = faceIndices[1] - 1;// Subtract 1 since OBJ indices start from 1
 				ind3 = faceIndices[2] - 1;// Subtract 1 since OBJ indices start from 1
 
-				if (ind1 >= 0 && ind1 < verticesLOL.size() &&
-						ind2 >= 0 && ind2 < verticesLOL.size() &&
-						ind3 >= 0 && ind3 < verticesLOL.size()) {
-
-					Point vert1;
-					vert1 = verticesLOL.get(ind1);
-					Point vert2;
-					vert2 = verticesLOL.get(ind2);
-					Point vert3;
-					vert3 = verticesLOL.get(ind3);
-
-					Primitive triangle = GeomFactory.createTriangle(vert1, vert2, vert3);
-					accelerator.add(new StandardObj(triangle, shader));
-
+				if (ind1 >= 0 && ind1 < vertexCount &&
+						ind2 >= 0 && ind2 < vertexCount &&
+						ind3 >= 0 && ind3 < vertexCount) {
+					indices[count++] = ind1;
+					indices[count++] = ind2;
+					indices[count++] = ind3;
 				}
 			}
 		}
 
+		return new Model(Arrays.copyOf(verticesLOL, 3 * vertexCount),
+				count == indices.length ? indices : Arrays.copyOf(indices, count));
 	}
 }
@@ -4,14 +4,17 @@ import raytracer.math.ONB;
 import raytracer.math.Point;
 import raytracer.math.Ray;
 import raytracer.math.Vec3;
+import raytracer.math.VecMath;
 
 /**
  * A perspective field of view camera
  */
 public class PerspectiveCamera implements Camera {
 
-	private final Point pos, corner;
-	private final Vec3 across, up;
+	private final Point pos;
+	// the components of the corner of the projection plane and of its
+	// spanning vectors, for the allocation-free cast:
+	private final float cx, cy, cz, ax, ay, az, ux, uy, uz;
 
 	/**
 	 * Creates a new perspective camera
@@ -52,9 +55,18 @@ public class PerspectiveCamera implements Camera {
 			final float width, final float height) {
 		this.pos = pos;
 		final ONB uvw = ONB.fromWV(gaze.neg(), up.neg());
-		this.corner = pos.add(uvw.combine(-width / 2, -height / 2, -distance));
-		this.across = uvw.u().scale(width);
-		this.up = uvw.v().scale(height);
+		final Point corner = pos.add(uvw.combine(-width / 2, -height / 2, -distance));
+		final Vec3 across = uvw.u().scale(width);
+		final Vec3 vertical = uvw.v().scale(height);
+		this.cx = corner.x();
+		this.cy = corner.y();
+		this.cz = corner.z();
+		this.ax = across.x();
+		this.ay = across.y();
+		this.az = across.z();
+		this.ux = vertical.x();
+		this.uy = vertical.y();
+		this.uz = vertical.z();
 	}
 
 	/**
@@ -64,9 +76,12 @@ public class PerspectiveCamera implements Camera {
 	 */
 	@Override
 	public Ray cast(final float x, final float y) {
-		final Point pixel = corner.combine(x, across).combine(y, up);
-		final Vec3 /* normalized */dir = pixel.sub(pos).normalized();
-		return new Ray(pos, dir);
+		// the pixel corner + x * across + y * up relative to the origin:
+		final float dx = (cx + x * ax + y * ux) - pos.x();
+		final float dy = (cy + x * ay + y * uy) - pos.y();
+		final float dz = (cz + x * az + y * uz) - pos.z();
+		final float factor = 1.0f / VecMath.norm(dx, dy, dz);
+		return new Ray(pos, new Vec3(factor * dx, factor * dy, factor * dz));
 	}
 
 }
@@ -0,0 +1,185 @@
+package raytracer.core;
+
+/**
+ * Renders an image progressively in passes into a frame buffer of the whole
+ * image. Before the first pass a coarse preview traces one ray per block of
+ * pixels and fills the block with its color; the preview is only passed to
+ * the listener and not added to the image. The first pass adds one sample to
+ * every pixel, so a complete image is there after a fraction of the time of a
+ * full render. Every further pass
+ * adds the next of the renderer's superSample x superSample stratified
+ * samples to every pixel. After the last pass the image is the one the
+ * renderer renders at once, since the passes add the same samples in the
+ * same order.
+ *
+ * Rendering can stop after a time or a sample budget and continue later;
+ * pixels always have the same number of samples between two passes.
+ */
+public class ProgressiveRenderer {
+
+	/**
+	 * Receives the pixels of the rendered tiles and the finished passes
+	 */
+	public interface Listener extends RenderScheduler.Listener {
+
+		/**
+		 * Called by the rendering thread after the preview and after every
+		 * complete pass
+		 *
+		 * @param samples
+		 *            The samples every pixel has now, 0 for the preview
+		 * @param nanos
+		 *            The time the pass took in nanoseconds
+		 */
+		void passDone(int samples, long nanos);
+	}
+
+	private final RenderScheduler scheduler;
+	private final Renderer renderer;
+	private final FrameBuffer image;
+	private final int previewBlock;
+	// the complete passes, which is the number of samples of every pixel:
+	private int passes;
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new progressive renderer with a preview of one ray per 8x8
+	 * pixels
+	 *
+	 * @param scheduler
+	 *            The scheduler rendering the passes with its renderer
+	 */
+	public ProgressiveRenderer(final RenderScheduler scheduler) {
+		this(scheduler, 8);
+	}
+
+	/**
+	 * Creates a new progressive renderer
+	 *
+	 * @param scheduler
+	 *            The scheduler rendering the passes with its renderer
+	 * @param previewBlock
+	 *            The width and height of the pixel blocks of the preview, 0
+	 *            for no preview
+	 * @throws IllegalArgumentException
+	 *             If scheduler is null or previewBlock is negative
+	 */
+	public ProgressiveRenderer(final RenderScheduler scheduler, final int previewBlock) {
+		if (scheduler == null)
+			throw new IllegalArgumentException("scheduler must not be null");
+		if (previewBlock < 0)
+			throw new IllegalArgumentException("previewBlock must not be negative");
+		this.scheduler = scheduler;
+		this.renderer = scheduler.getRenderer();
+		this.image = new FrameBuffer(renderer.getXRes(), renderer.getYRes());
+		this.previewBlock = previewBlock;
+	}
+
+	/**
+	 * Returns the frame buffer the passes are added to
+	 *
+	 * @return The image
+	 */
+	public FrameBuffer getImage() {
+		return image;
+	}
+
+	/**
+	 * Returns the number of samples every pixel has
+	 *
+	 * @return The number of complete passes
+	 */
+	public int getSamples() {
+		return passes;
+	}
+
+	/**
+	 * Checks whether every pixel has all the samples of the renderer
+	 *
+	 * @return True if there are no passes left
+	 */
+	public boolean isDone() {
+		return passes == renderer.getSamples();
+	}
+
+	/**
+	 * Renders passes until every pixel has the given number of samples (or
+	 * all samples of the renderer) or the time budget is used up. The budget
+	 * is checked before every pass, except for the first pass of the image
+	 * which is always rendered (after the preview). Calling this method again
+	 * continues with the next pass.
+	 *
+	 * @param listener
+	 *            The listener receiving the pixels of every tile and the
+	 *            finished passes, or null
+	 * @param budget
+	 *            The time in nanoseconds after which no further pass is
+	 *            started, Long.MAX_VALUE for no limit
+	 * @param samples
+	 *            The number of samples per pixel to stop at
+	 * @return The number of samples every pixel has
+	 * @throws IllegalStateException
+	 *             If a pass was cancelled and the image was not reset
+	 */
+	public int render(final Listener listener, final long budget, final int samples) {
+		if (cancelled)
+			throw new IllegalStateException("the image must be reset after a cancelled pass");
+		final long start = System.nanoTime();
+		final int last = Math.min(samples, renderer.getSamples());
+		if (passes == 0 && last > 0 && previewBlock > 0 && listener != null)
+			preview(listener);
+		while (passes < last) {
+			if (cancelled || passes > 0 && budget != Long.MAX_VALUE && System.nanoTime() - start >= budget)
+				break;
+			final long pass = System.nanoTime();
+			scheduler.render(image, passes, 1, listener);
+			if (cancelled)
+				break;
+			passes++;
+			if (listener != null)
+				listener.passDone(passes, System.nanoTime() - pass);
+		}
+		return passes;
+	}
+
+	// traces the first sample of the top left pixel of every block and passes
+	// the image of blocks filled with them to the listener:
+	private void preview(final Listener listener) {
+		final long start = System.nanoTime();
+		final int w = renderer.getXRes(), h = renderer.getYRes();
+		final int bw = (w + previewBlock - 1) / previewBlock, bh = (h + previewBlock - 1) / previewBlock;
+		final FrameBuffer blocks = new FrameBuffer(bw, bh, image.getToneMap());
+		for (int by = 0; by < bh; by++)
+			for (int bx = 0; bx < bw; bx++)
+				blocks.add(bx, by, renderer.sample(bx * previewBlock, by * previewBlock, 0));
+		final int[] colors = blocks.resolve();
+		final int[] pixels = new int[w * h];
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+				pixels[y * w + x] = colors[y / previewBlock * bw + x / previewBlock];
+		final long nanos = System.nanoTime() - start;
+		listener.tileDone(new RenderScheduler.Tile(0, 0, w, h, -1, nanos), pixels);
+		listener.passDone(0, nanos);
+	}
+
+	/**
+	 * Stops a render running in another thread: the tiles in progress are
+	 * finished and no further ones are started. As the pixels of the
+	 * cancelled pass have different numbers of samples, the image has to be
+	 * reset before rendering again.
+	 */
+	public void cancel() {
+		cancelled = true;
+		scheduler.cancel();
+	}
+
+	/**
+	 * Removes all samples from the image, e.g. after the scene or the camera
+	 * changed or a pass was cancelled
+	 */
+	public void reset() {
+		image.clear();
+		passes = 0;
+		cancelled = false;
+	}
+}
@@ -0,0 +1,268 @@
+package raytracer.core;
+
+import raytracer.geom.BBox;
+import raytracer.geom.Primitive;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a packet of up to {@link #CAPACITY} coherent rays (like the
+ * primary rays of a block of pixels) which are traced through the scene
+ * together, see {@link Primitive#intersect(RayPacket, long, Obj, float)}.
+ * Every ray has its own {@link HitRecord}, and the rays taking part in a test
+ * are given as a bit mask of their indices.
+ *
+ * Besides the rays the packet keeps the interval of their origins and inverse
+ * directions, so that a box missed by every ray can be culled with a single
+ * test (interval arithmetic) instead of one test per ray.
+ *
+ * A packet is not thread-safe, every thread tracing packets needs its own.
+ */
+public final class RayPacket {
+
+	/**
+	 * The maximum number of rays in a packet (the number of bits of a mask)
+	 */
+	public static final int CAPACITY = 64;
+
+	private final Ray[] rays = new Ray[CAPACITY];
+	private final HitRecord[] records = new HitRecord[CAPACITY];
+	private int size;
+	// the origins and inverse directions of the rays as arrays of components,
+	// for the per-ray box tests:
+	private final float[] ox = new float[CAPACITY], oy = new float[CAPACITY], oz = new float[CAPACITY];
+	private final float[] ix = new float[CAPACITY], iy = new float[CAPACITY], iz = new float[CAPACITY];
+	private final boolean[] nx = new boolean[CAPACITY], ny = new boolean[CAPACITY], nz = new boolean[CAPACITY];
+
+	// the intervals of the origins and inverse directions, min x, y, z
+	// followed by max x, y, z:
+	private final float[] base = new float[6];
+	private final float[] inv = new float[6];
+	// the direction signs of the first ray (see Vec3.isNeg) and whether all
+	// rays share them, otherwise the packet is never culled as a whole:
+	private final int[] neg = new int[3];
+	private boolean coherent;
+
+	// the smallest entry distance of the rays found by the last cull:
+	private float entry;
+
+	/**
+	 * Creates a new empty packet
+	 */
+	public RayPacket() {
+		for (int i = 0; i < CAPACITY; i++)
+			records[i] = new HitRecord();
+		clear();
+	}
+
+	/**
+	 * Removes all rays from the packet
+	 *
+	 * @return This packet
+	 */
+	public RayPacket clear() {
+		size = 0;
+		coherent = true;
+		for (int i = 0; i < 3; i++) {
+			base[i] = inv[i] = Float.POSITIVE_INFINITY;
+			base[3 + i] = inv[3 + i] = Float.NEGATIVE_INFINITY;
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a ray to the packet and resets its record to accept hits at any
+	 * distance
+	 *
+	 * @param ray
+	 *            The ray to add
+	 * @return The index of the ray in the packet
+	 * @throws IllegalStateException
+	 *             If the packet is full
+	 */
+	public int add(final Ray ray) {
+		if (size == CAPACITY)
+			throw new IllegalStateException("the packet is full");
+		final Point b = ray.base();
+		final Vec3 dir = ray.dir();
+		for (int i = 0; i < 3; i++) {
+			if (size == 0)
+				neg[i] = dir.isNeg(i);
+			else if (neg[i] != dir.isNeg(i))
+				coherent = false;
+			base[i] = Math.min(base[i], b.get(i));
+			base[3 + i] = Math.max(base[3 + i], b.get(i));
+			inv[i] = Math.min(inv[i], ray.inv(i));
+			inv[3 + i] = Math.max(inv[3 + i], ray.inv(i));
+		}
+		ox[size] = b.x();
+		oy[size] = b.y();
+		oz[size] = b.z();
+		ix[size] = ray.invX();
+		iy[size] = ray.invY();
+		iz[size] = ray.invZ();
+		nx[size] = dir.isNeg(0) == 1;
+		ny[size] = dir.isNeg(1) == 1;
+		nz[size] = dir.isNeg(2) == 1;
+		rays[size] = ray;
+		records[size].reset(Float.POSITIVE_INFINITY);
+		return size++;
+	}
+
+	/**
+	 * Returns the number of rays
+	 *
+	 * @return The number of rays
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the mask of all rays in the packet
+	 *
+	 * @return The mask with one bit set per ray
+	 */
+	public long all() {
+		return size == CAPACITY ? -1L : (1L << size) - 1;
+	}
+
+	/**
+	 * Returns a ray of the packet
+	 *
+	 * @param i
+	 *            The index of the ray
+	 * @return The ray
+	 */
+	public Ray ray(final int i) {
+		return rays[i];
+	}
+
+	/**
+	 * Returns the record of the closest hit of a ray
+	 *
+	 * @param i
+	 *            The index of the ray
+	 * @return The record of the ray
+	 */
+	public HitRecord record(final int i) {
+		return records[i];
+	}
+
+	/**
+	 * Returns the smallest distance at which a ray found by the last call to
+	 * {@link #cull} enters the box
+	 *
+	 * @return The smallest entry distance, or NaN if no ray enters the box
+	 */
+	public float entry() {
+		return entry;
+	}
+
+	/**
+	 * Determines which of the given rays enter the box before their closest
+	 * hit so far (see {@link BBox#entry(Ray, float, float)})
+	 *
+	 * @param box
+	 *            The box
+	 * @param active
+	 *            The mask of the rays to test
+	 * @param tmin
+	 *            The minimum distance
+	 * @return The mask of the rays entering the box
+	 */
+	public long cull(final BBox box, final long active, final float tmin) {
+		final Point min = box.getMin(), max = box.getMax();
+		return cull(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), active, tmin);
+	}
+
+	/**
+	 * Determines which of the given rays enter the box with the given corners
+	 * before their closest hit so far. A box the whole packet misses is culled
+	 * with one interval test, otherwise every active ray is tested on its own.
+	 *
+	 * @return The mask of the rays entering the box
+	 */
+	public long cull(final float minX, final float minY, final float minZ, final float maxX, final float maxY,
+			final float maxZ, final long active, final float tmin) {
+		entry = Float.NaN;
+		if (coherent && missed(minX, maxX, minY, maxY, minZ, maxZ, tmin))
+			return 0;
+
+		long hits = 0;
+		for (long rest = active; rest != 0; rest &= rest - 1) {
+			final int i = Long.numberOfTrailingZeros(rest);
+			float near = tmin;
+			float far = records[i].getParameter();
+			// the slab test of BBox.entry, the near plane is the max plane for
+			// a negative direction:
+			float t0 = (minX - ox[i]) * ix[i];
+			float t1 = (maxX - ox[i]) * ix[i];
+			if (nx[i]) {
+				final float t = t0;
+				t0 = t1;
+				t1 = t;
+			}
+			if (t0 > near)
+				near = t0;
+			if (t1 < far)
+				far = t1;
+			t0 = (minY - oy[i]) * iy[i];
+			t1 = (maxY - oy[i]) * iy[i];
+			if (ny[i]) {
+				final float t = t0;
+				t0 = t1;
+				t1 = t;
+			}
+			if (t0 > near)
+				near = t0;
+			if (t1 < far)
+				far = t1;
+			t0 = (minZ - oz[i]) * iz[i];
+			t1 = (maxZ - oz[i]) * iz[i];
+			if (nz[i]) {
+				final float t = t0;
+				t0 = t1;
+				t1 = t;
+			}
+			if (t0 > near)
+				near = t0;
+			if (t1 < far)
+				far = t1;
+			if (near <= far) {
+				hits |= 1L << i;
+				if (!(near >= entry))
+					entry = near;
+			}
+		}
+		return hits;
+	}
+
+	// the interval test: bounds the entry and exit distances of all rays at
+	// once and checks whether the packet misses the box as a whole. The
+	// products of two intervals are bounded by the products of their ends, an
+	// undefined product (zero times infinity) never culls.
+	private boolean missed(final float minX, final float maxX, final float minY, final float maxY,
+			final float minZ, final float maxZ, final float tmin) {
+		float near = tmin;
+		float far = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < 3; i++) {
+			final float lo = i == 0 ? minX : i == 1 ? minY : minZ;
+			final float hi = i == 0 ? maxX : i == 1 ? maxY : maxZ;
+			final float nearPlane = neg[i] == 0 ? lo : hi;
+			final float farPlane = neg[i] == 0 ? hi : lo;
+			final float n0 = (nearPlane - base[3 + i]) * inv[i], n1 = (nearPlane - base[3 + i]) * inv[3 + i];
+			final float n2 = (nearPlane - base[i]) * inv[i], n3 = (nearPlane - base[i]) * inv[3 + i];
+			final float f0 = (farPlane - base[3 + i]) * inv[i], f1 = (farPlane - base[3 + i]) * inv[3 + i];
+			final float f2 = (farPlane - base[i]) * inv[i], f3 = (farPlane - base[i]) * inv[3 + i];
+			final float nearLow = Math.min(Math.min(n0, n1), Math.min(n2, n3));
+			final float farHigh = Math.max(Math.max(f0, f1), Math.max(f2, f3));
+			if (Float.isNaN(nearLow) || Float.isNaN(farHigh))
+				return false;
+			near = Math.max(near, nearLow);
+			far = Math.min(far, farHigh);
+		}
+		return near > far;
+	}
+}
@@ -0,0 +1,310 @@
+package raytracer.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders whole images with a renderer on a work-stealing pool of one worker
+ * per core. The image is split recursively into tiles: a region larger than
+ * the maximum tile size is always split, a region between the minimum and the
+ * maximum tile size only while few tasks are queued for the idle workers. So
+ * most of an image is rendered in large tiles, while the regions still being
+ * rendered when the other workers run out of work (the expensive ones) are
+ * subdivided and spread over the workers. The buffers the tiles are rendered
+ * into are reused.
+ */
+public class RenderScheduler {
+
+	/**
+	 * Receives the pixels of the rendered tiles
+	 */
+	public interface Listener {
+
+		/**
+		 * Called by the worker which rendered a tile. Calls for different
+		 * tiles may happen at the same time.
+		 *
+		 * @param tile
+		 *            The rendered tile
+		 * @param pixels
+		 *            The w x h pixels of the tile row by row. The array is
+		 *            reused for other tiles once the call returns, and it may
+		 *            be longer than w x h.
+		 */
+		void tileDone(Tile tile, int[] pixels);
+	}
+
+	/**
+	 * A rendered tile: its part of the image, the worker which rendered it
+	 * (numbered from 0 in the order the workers were started, -1 for the thread
+	 * which started the render) and the time that took
+	 */
+	public static final class Tile {
+
+		public final int x, y, w, h;
+		public final int worker;
+		public final long nanos;
+
+		Tile(final int x, final int y, final int w, final int h, final int worker, final long nanos) {
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+			this.worker = worker;
+			this.nanos = nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("[%d %d %dx%d worker %d %.3f ms]", x, y, w, h, worker, nanos / 1e6);
+		}
+	}
+
+	// the number of tasks a worker keeps queued for the others before it
+	// stops splitting tiles below the maximum size:
+	private static final int SURPLUS = 2;
+
+	private final Renderer renderer;
+	private final int minTile, maxTile;
+	private final ForkJoinPool pool;
+	// the tile buffers currently not in use:
+	private final ConcurrentLinkedQueue<TileBuffer> buffers = new ConcurrentLinkedQueue<TileBuffer>();
+	// the render in progress, null if there is none:
+	private volatile Job running;
+
+	/**
+	 * Creates a new scheduler with one worker per available core and tiles
+	 * between 8x8 and 64x64 pixels
+	 *
+	 * @param renderer
+	 *            The renderer to render the tiles with
+	 */
+	public RenderScheduler(final Renderer renderer) {
+		this(renderer, Runtime.getRuntime().availableProcessors(), 8, 64);
+	}
+
+	/**
+	 * Creates a new scheduler
+	 *
+	 * @param renderer
+	 *            The renderer to render the tiles with
+	 * @param workers
+	 *            The number of worker threads
+	 * @param minTile
+	 *            The width and height below which tiles are not split
+	 * @param maxTile
+	 *            The largest width and height of a tile
+	 * @throws IllegalArgumentException
+	 *             If renderer is null, workers is not positive or the tile
+	 *             sizes are not 1 <= minTile <= maxTile
+	 */
+	public RenderScheduler(final Renderer renderer, final int workers, final int minTile, final int maxTile) {
+		if (renderer == null)
+			throw new IllegalArgumentException("renderer must not be null");
+		if (workers < 1)
+			throw new IllegalArgumentException("there must be at least one worker");
+		if (minTile < 1 || maxTile < minTile)
+			throw new IllegalArgumentException("the tile sizes must be 1 <= minTile <= maxTile");
+		this.renderer = renderer;
+		this.minTile = minTile;
+		this.maxTile = maxTile;
+		final AtomicInteger started = new AtomicInteger();
+		this.pool = new ForkJoinPool(workers, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+				return new Worker(pool, started.getAndIncrement());
+			}
+		}, null, false);
+	}
+
+	/**
+	 * Returns the number of worker threads
+	 *
+	 * @return The number of workers
+	 */
+	public int getWorkers() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Returns the renderer the tiles are rendered with
+	 *
+	 * @return The renderer
+	 */
+	public Renderer getRenderer() {
+		return renderer;
+	}
+
+	/**
+	 * Renders the whole image and waits until all tiles are done
+	 *
+	 * @param listener
+	 *            The listener receiving the pixels of every tile, or null
+	 * @return The rendered tiles in the order they were finished
+	 */
+	public List<Tile> render(final Listener listener) {
+		return run(new Job(null, 0, renderer.getSamples(), listener));
+	}
+
+	/**
+	 * Adds some of the samples of every pixel to a frame buffer of the whole
+	 * image (see
+	 * {@link Renderer#accumulate(int, int, int, int, FrameBuffer, int, int, int, int)})
+	 * and waits until all tiles are done. Every tile is resolved from all
+	 * samples the buffer has for it.
+	 *
+	 * @param image
+	 *            The frame buffer of the whole image
+	 * @param first
+	 *            The number of the first sample to add
+	 * @param count
+	 *            The number of samples to add per pixel
+	 * @param listener
+	 *            The listener receiving the pixels of every tile, or null
+	 * @return The rendered tiles in the order they were finished
+	 * @throws IllegalArgumentException
+	 *             If the image is smaller than the renderer's resolution
+	 */
+	public List<Tile> render(final FrameBuffer image, final int first, final int count,
+			final Listener listener) {
+		if (image.getWidth() < renderer.getXRes() || image.getHeight() < renderer.getYRes())
+			throw new IllegalArgumentException("the image must cover the renderer's resolution");
+		return run(new Job(image, first, count, listener));
+	}
+
+	private List<Tile> run(final Job job) {
+		running = job;
+		try {
+			pool.invoke(new Region(0, 0, renderer.getXRes(), renderer.getYRes(), job));
+		} finally {
+			running = null;
+		}
+		return new ArrayList<Tile>(job.tiles);
+	}
+
+	/**
+	 * Stops the running render: the tiles in progress are finished, no further
+	 * ones are started and the render returns the tiles done so far. Does
+	 * nothing if no render is running.
+	 */
+	public void cancel() {
+		final Job job = running;
+		if (job != null)
+			job.cancelled = true;
+	}
+
+	/**
+	 * Stops the worker threads once the running render is done
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	// the number of the worker running the calling task, -1 if the thread
+	// waiting for a render runs it:
+	private static int worker() {
+		final Thread thread = Thread.currentThread();
+		return thread instanceof Worker ? ((Worker) thread).number : -1;
+	}
+
+	// a worker thread numbered in the order the pool started them:
+	private static final class Worker extends ForkJoinWorkerThread {
+
+		final int number;
+
+		Worker(final ForkJoinPool pool, final int number) {
+			super(pool);
+			this.number = number;
+			setName("render-worker-" + number);
+		}
+	}
+
+	// the sample buffer and the pixels of a tile of at most maxTile x maxTile:
+	private final class TileBuffer {
+		final FrameBuffer samples = new FrameBuffer(maxTile, maxTile);
+		final int[] pixels = new int[maxTile * maxTile];
+	}
+
+	// the samples a render adds and where to:
+	private static final class Job {
+
+		// the frame buffer of the whole image, null to render into the
+		// tile buffers:
+		final FrameBuffer image;
+		final int first, count;
+		final Listener listener;
+		final List<Tile> tiles = Collections.synchronizedList(new ArrayList<Tile>());
+		volatile boolean cancelled;
+
+		Job(final FrameBuffer image, final int first, final int count, final Listener listener) {
+			this.image = image;
+			this.first = first;
+			this.count = count;
+			this.listener = listener;
+		}
+	}
+
+	// a part of the image, split or rendered as one tile:
+	private final class Region extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int x, y, w, h;
+		private final Job job;
+
+		Region(final int x, final int y, final int w, final int h, final Job job) {
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+			this.job = job;
+		}
+
+		@Override
+		protected void compute() {
+			if (job.cancelled)
+				return;
+			final int size = Math.max(w, h);
+			if (size > maxTile || (size > minTile && getSurplusQueuedTaskCount() <= SURPLUS)) {
+				// split the longer side, at a multiple of the minimum tile size:
+				if (w >= h) {
+					final int half = Math.max(minTile, w / 2 / minTile * minTile);
+					invokeAll(new Region(x, y, half, h, job),
+							new Region(x + half, y, w - half, h, job));
+				} else {
+					final int half = Math.max(minTile, h / 2 / minTile * minTile);
+					invokeAll(new Region(x, y, w, half, job),
+							new Region(x, y + half, w, h - half, job));
+				}
+				return;
+			}
+
+			TileBuffer buffer = buffers.poll();
+			if (buffer == null)
+				buffer = new TileBuffer();
+			try {
+				final long start = System.nanoTime();
+				if (job.image == null) {
+					buffer.samples.clear();
+					renderer.accumulate(x, y, w, h, buffer.samples, 0, 0, job.first, job.count);
+					buffer.samples.resolve(0, 0, w, h, buffer.pixels);
+				} else {
+					renderer.accumulate(x, y, w, h, job.image, x, y, job.first, job.count);
+					job.image.resolve(x, y, w, h, buffer.pixels);
+				}
+				final Tile tile = new Tile(x, y, w, h, worker(), System.nanoTime() - start);
+				job.tiles.add(tile);
+				if (job.listener != null)
+					job.listener.tileDone(tile, buffer.pixels);
+			} finally {
+				buffers.add(buffer);
+			}
+		}
+	}
+}
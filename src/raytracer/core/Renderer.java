@@ -12,7 +12,9 @@ public class Renderer {
 
 	private final Scene scene;
 	private final Camera cam;
+	private final int xRes, yRes;
 	private final int superSample;
+	private final int packetSize;
 	private final float dx, dy, sdx, sdy;
 
 	/**
@@ -28,15 +30,62 @@ public class Renderer {
 	 *            The amount of sumper sampling to use
 	 */
 	public Renderer(final Scene scene, final int xRes, final int yRes, final int superSample) {
+		this(scene, xRes, yRes, superSample, 1);
+	}
+
+	/**
+	 * Creates a new renderer tracing the primary rays in packets of
+	 * packetSize x packetSize rays, which are the samples of neighboring
+	 * pixels. The image is the same as the one rendered one ray at a time.
+	 *
+	 * @param scene
+	 *            The scene to render
+	 * @param xRes
+	 *            The X target resolution to render the image with
+	 * @param yRes
+	 *            The Y target resolution to render the image with
+	 * @param superSample
+	 *            The amount of sumper sampling to use
+	 * @param packetSize
+	 *            The width and height of the packets, 1 traces one ray at a
+	 *            time
+	 * @throws IllegalArgumentException
+	 *             If packetSize is not between 1 and 8
+	 */
+	public Renderer(final Scene scene, final int xRes, final int yRes, final int superSample,
+			final int packetSize) {
+		if (packetSize < 1 || packetSize * packetSize > RayPacket.CAPACITY)
+			throw new IllegalArgumentException("packetSize must be between 1 and 8");
 		this.scene = scene;
 		this.cam = scene.getCamera();
+		this.xRes = xRes;
+		this.yRes = yRes;
 		this.superSample = superSample;
+		this.packetSize = packetSize;
 		this.dx = 1.0f / xRes;
 		this.dy = 1.0f / yRes;
 		this.sdx = dx / superSample;
 		this.sdy = dy / superSample;
 	}
 
+	/**
+	 * Returns the X target resolution
+	 *
+	 * @return The width of the image
+	 */
+	public int getXRes() {
+		return xRes;
+	}
+
+	/**
+	 * Returns the Y target resolution
+	 *
+	 * @return The height of the image
+	 */
+	public int getYRes() {
+		return yRes;
+	}
+
 	/**
 	 * Represents a work instance containing data to compute a part of an image.
 	 * The idea of the work class is to split the actual rendering task into
@@ -75,37 +124,211 @@ public class Renderer {
 		return new Callable<Work>() {
 			@Override
 			public Work call() throws Exception {
+				final FrameBuffer tile = new FrameBuffer(w, h);
+				accumulate(sx, sy, w, h, tile, 0, 0);
 				final Work work = new Work(sx, sy, w, h);
-				int ofs = 0;
-				float bx = sx * dx;
-				float by = sy * dy;
-				for (int y = 0; y < h; y++) {
-					bx = sx * dx;
-					for (int x = 0; x < w; x++) {
-
-						Color res = Color.BLACK;
-						int n = 0;
-						float suy = by - superSample / 2.0f * sdy;
-						for (int j = 0; j < superSample; j++) {
-							float sux = bx - superSample / 2.0f * sdx;
-							for (int i = 0; i < superSample; i++) {
-								final Ray r = cam.cast(sux, suy);
-								final Trace trace = Trace.primary(scene, r);
-								final Color c = trace.shade();
-								res = res.avg(c, n);
-								sux += sdx;
-								n++;
-							}
-							suy += sdy;
+				tile.resolve(0, 0, w, h, work.pixels);
+				return work;
+			}
+		};
+	}
+
+	/**
+	 * Returns a Callable<Work> object which adds the samples of a part of the
+	 * image to a frame buffer of the whole image and resolves the part, which
+	 * then shows all samples the buffer has for it. Rendering a part several
+	 * times accumulates the samples of every pass. Tasks for different parts
+	 * may run in parallel.
+	 *
+	 * @param sx
+	 *            The x point to start
+	 * @param sy
+	 *            The y point to start
+	 * @param w
+	 *            The width to use
+	 * @param h
+	 *            The height to use
+	 * @param image
+	 *            The frame buffer of the whole image
+	 * @return Callable<Work> object which describes the callable task
+	 */
+	public Callable<Work> render(final int sx, final int sy, final int w, final int h,
+			final FrameBuffer image) {
+		return new Callable<Work>() {
+			@Override
+			public Work call() throws Exception {
+				accumulate(sx, sy, w, h, image, sx, sy);
+				final Work work = new Work(sx, sy, w, h);
+				image.resolve(sx, sy, w, h, work.pixels);
+				return work;
+			}
+		};
+	}
+
+	/**
+	 * Traces the samples of a part of the image in the calling thread and adds
+	 * them to a frame buffer
+	 *
+	 * @param sx
+	 *            The x point to start
+	 * @param sy
+	 *            The y point to start
+	 * @param w
+	 *            The width to use
+	 * @param h
+	 *            The height to use
+	 * @param fb
+	 *            The frame buffer receiving the samples
+	 * @param ox
+	 *            The x coordinate in fb of the pixel sx
+	 * @param oy
+	 *            The y coordinate in fb of the pixel sy
+	 */
+	public void accumulate(final int sx, final int sy, final int w, final int h, final FrameBuffer fb,
+			final int ox, final int oy) {
+		accumulate(sx, sy, w, h, fb, ox, oy, 0, getSamples());
+	}
+
+	/**
+	 * Traces some of the samples of every pixel of a part of the image in the
+	 * calling thread and adds them to a frame buffer. The samples of a pixel
+	 * are its superSample x superSample subpixels numbered row by row, so
+	 * adding the samples of a pixel in several calls in ascending order gives
+	 * the same sums as adding them all at once.
+	 *
+	 * @param sx
+	 *            The x point to start
+	 * @param sy
+	 *            The y point to start
+	 * @param w
+	 *            The width to use
+	 * @param h
+	 *            The height to use
+	 * @param fb
+	 *            The frame buffer receiving the samples
+	 * @param ox
+	 *            The x coordinate in fb of the pixel sx
+	 * @param oy
+	 *            The y coordinate in fb of the pixel sy
+	 * @param first
+	 *            The number of the first sample to trace
+	 * @param count
+	 *            The number of samples to trace per pixel
+	 * @throws IllegalArgumentException
+	 *             If the samples are not between 0 and getSamples()
+	 */
+	public void accumulate(final int sx, final int sy, final int w, final int h, final FrameBuffer fb,
+			final int ox, final int oy, final int first, final int count) {
+		if (first < 0 || count < 0 || first + count > getSamples())
+			throw new IllegalArgumentException("the samples must be between 0 and " + getSamples());
+		if (count == 0)
+			return;
+		if (packetSize > 1) {
+			tracePackets(sx, sy, w, h, fb, ox, oy, first, count);
+			return;
+		}
+		final float[] xs = samples(sx, dx, sdx, w);
+		final float[] ys = samples(sy, dy, sdy, h);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				for (int s = first; s < first + count; s++) {
+					final Ray r = cam.cast(xs[x * superSample + s % superSample],
+							ys[y * superSample + s / superSample]);
+					final Trace trace = Trace.primary(scene, r);
+					fb.add(ox + x, oy + y, trace.shade());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Traces one sample of a pixel in the calling thread
+	 *
+	 * @param x
+	 *            The x coordinate of the pixel
+	 * @param y
+	 *            The y coordinate of the pixel
+	 * @param s
+	 *            The number of the sample, see
+	 *            {@link #accumulate(int, int, int, int, FrameBuffer, int, int, int, int)}
+	 * @return The color of the sample
+	 */
+	public Color sample(final int x, final int y, final int s) {
+		// the positions computed like samples() does:
+		final float px = x * dx - superSample / 2.0f * sdx + s % superSample * sdx;
+		final float py = y * dy - superSample / 2.0f * sdy + s / superSample * sdy;
+		return Trace.primary(scene, cam.cast(px, py)).shade();
+	}
+
+	/**
+	 * Returns the number of samples of every pixel
+	 *
+	 * @return superSample x superSample
+	 */
+	public int getSamples() {
+		return superSample * superSample;
+	}
+
+	/**
+	 * Traces the samples of a part of the image in packets. A packet is filled
+	 * with the rays of a block of pixels in the order the single ray path
+	 * casts them, so both add the same samples.
+	 */
+	private void tracePackets(final int sx, final int sy, final int w, final int h, final FrameBuffer fb,
+			final int ox, final int oy, final int first, final int count) {
+		final float[] xs = samples(sx, dx, sdx, w);
+		final float[] ys = samples(sy, dy, sdy, h);
+		final RayPacket packet = new RayPacket();
+		// the pixel of the buffer of every ray in the packet, as x and y:
+		final int[] targets = new int[2 * packetSize * packetSize];
+		// the width of the pixel blocks whose samples fill a packet:
+		int block = 1;
+		while (block < packetSize && (block + 1) * (block + 1) * count <= packetSize * packetSize)
+			block++;
+
+		for (int by = 0; by < h; by += block) {
+			for (int bx = 0; bx < w; bx += block) {
+				for (int y = by; y < Math.min(by + block, h); y++) {
+					for (int x = bx; x < Math.min(bx + block, w); x++) {
+						for (int s = first; s < first + count; s++) {
+							final int k = packet.add(cam.cast(xs[x * superSample + s % superSample],
+									ys[y * superSample + s / superSample]));
+							targets[2 * k] = ox + x;
+							targets[2 * k + 1] = oy + y;
+							if (2 * packet.size() == targets.length)
+								shade(packet, targets, fb);
 						}
-						work.pixels[ofs++] = res.rgb();
-						bx += dx;
 					}
-					by += dy;
 				}
-				return work;
+				shade(packet, targets, fb);
 			}
-		};
+		}
+	}
+
+	// traces the packet, adds the colors of its rays to their pixels and
+	// empties it:
+	private void shade(final RayPacket packet, final int[] targets, final FrameBuffer fb) {
+		if (packet.size() == 0)
+			return;
+		scene.hit(packet);
+		for (int k = 0; k < packet.size(); k++) {
+			final Ray r = packet.ray(k);
+			final Trace trace = Trace.primary(scene, r, packet.record(k).toHit(r));
+			fb.add(targets[2 * k], targets[2 * k + 1], trace.shade());
+		}
+		packet.clear();
+	}
+
+	// the sample positions along one axis of a part, computed from the index
+	// of the pixel so that they do not depend on how the image is split:
+	private float[] samples(final int first, final float step, final float subStep, final int count) {
+		final float[] samples = new float[count * superSample];
+		for (int p = 0; p < count; p++) {
+			final float s = (first + p) * step - superSample / 2.0f * subStep;
+			for (int i = 0; i < superSample; i++)
+				samples[p * superSample + i] = s + i * subStep;
+		}
+		return samples;
 	}
 
 }
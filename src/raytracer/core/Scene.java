@@ -40,4 +40,37 @@ public interface Scene {
 	 */
 	Hit hit(Ray ray);
 
+	/**
+	 * Computes the closest hits of all rays of the packet and stores them in
+	 * the records of the rays. The default computes one hit after the other,
+	 * scenes should trace the packet as a whole instead.
+	 *
+	 * @param packet
+	 *            The packet of rays, whose records accept hits at any distance
+	 */
+	default void hit(final RayPacket packet) {
+		for (int i = 0; i < packet.size(); i++) {
+			final Hit hit = hit(packet.ray(i));
+			if (hit.hits())
+				packet.record(i).set(hit);
+		}
+	}
+
+	/**
+	 * Checks whether the given ray hits anything before the given distance, as
+	 * needed for shadow rays. The default computes the closest hit, scenes
+	 * should stop at the first hit found instead.
+	 *
+	 * @param ray
+	 *            The ray used for intersection computation
+	 * @param tmax
+	 *            The maximum distance (for shadow rays the distance to the
+	 *            light)
+	 * @return True if anything is hit before tmax
+	 */
+	default boolean occluded(final Ray ray, final float tmax) {
+		final Hit hit = hit(ray);
+		return hit.hits() && hit.getParameter() <= tmax;
+	}
+
 }
@@ -0,0 +1,39 @@
+package raytracer.core;
+
+/**
+ * The mappings of averaged radiance to the displayable range [0, 1] a
+ * {@link FrameBuffer} resolves its pixels with
+ */
+public enum ToneMap {
+
+	/**
+	 * Clamps every channel to [0, 1], which is what {@link raytracer.math.Color}
+	 * does
+	 */
+	CLAMP {
+		@Override
+		float map(final float v) {
+			if (v > 1.0f)
+				return 1.0f;
+			if (v < 0.0f)
+				return 0.0f;
+			return v;
+		}
+	},
+
+	/**
+	 * Maps every channel v to v / (1 + v) (Reinhard), which keeps the detail of
+	 * channels above 1 instead of cutting it off
+	 */
+	REINHARD {
+		@Override
+		float map(final float v) {
+			return v <= 0.0f ? 0.0f : v / (1.0f + v);
+		}
+	};
+
+	/**
+	 * Maps one averaged channel into [0, 1]
+	 */
+	abstract float map(float v);
+}
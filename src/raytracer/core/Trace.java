@@ -40,8 +40,12 @@ public abstract class Trace {
 		private final Hit hit;
 
 		public NormalTrace(final int gen, final Ray ray, final Scene scene) {
+			this(gen, ray, scene, scene.hit(ray));
+		}
+
+		public NormalTrace(final int gen, final Ray ray, final Scene scene, final Hit hit) {
 			super(gen, ray, scene);
-			this.hit = scene.hit(ray);
+			this.hit = hit;
 		}
 
 		@Override
@@ -125,6 +129,22 @@ public abstract class Trace {
 		return new NormalTrace(0, ray, scene);
 	}
 
+	/**
+	 * Returns a primary trace (with generation 0) whose hit has already been
+	 * computed, for rays traced in packets (see {@link Scene#hit(RayPacket)})
+	 *
+	 * @param scene
+	 *            The used scene
+	 * @param ray
+	 *            The initial ray
+	 * @param hit
+	 *            The closest hit of the ray with the scene
+	 * @return A primary trace (with generation 0)
+	 */
+	public static Trace primary(final Scene scene, final Ray ray, final Hit hit) {
+		return new NormalTrace(0, ray, scene, hit);
+	}
+
 	/**
 	 * Returns the hit of the trace.
 	 * 
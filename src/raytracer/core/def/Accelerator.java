@@ -1,9 +1,16 @@
 package raytracer.core.def;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import raytracer.core.Hit;
 import raytracer.core.Obj;
 import raytracer.core.Trace;
+import raytracer.geom.BBox;
 import raytracer.math.Color;
+import raytracer.math.Point;
 
 /**
  * A base class for all intersection acceleration structures
@@ -26,4 +33,83 @@ public abstract class Accelerator implements Obj {
 	 */
 	public abstract void add(Obj prim);
 
+	/**
+	 * Adds all given objects to the acceleration structure. Structures override
+	 * this to reserve their storage and compute their bounds once per batch
+	 * instead of once per object; the default adds the objects one by one.
+	 *
+	 * @param prims
+	 *            The objects to add
+	 * @throws IllegalArgumentException
+	 *             If prims is null
+	 */
+	public void addAll(final Collection<? extends Obj> prims) {
+		if (prims == null)
+			throw new IllegalArgumentException("prims must not be null");
+		for (final Obj prim : prims)
+			add(prim);
+	}
+
+	/**
+	 * Adds all given objects to the acceleration structure
+	 *
+	 * @param prims
+	 *            The objects to add
+	 * @throws IllegalArgumentException
+	 *             If prims is null
+	 */
+	public final void addAll(final Obj... prims) {
+		if (prims == null)
+			throw new IllegalArgumentException("prims must not be null");
+		addAll(Arrays.asList(prims));
+	}
+
+	/**
+	 * Adds all objects of the given stream to the acceleration structure, the
+	 * stream is consumed before the first object is added
+	 *
+	 * @param prims
+	 *            The objects to add
+	 * @throws IllegalArgumentException
+	 *             If prims is null
+	 */
+	public final void addAll(final Stream<? extends Obj> prims) {
+		if (prims == null)
+			throw new IllegalArgumentException("prims must not be null");
+		addAll(prims.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Finishes a batch of additions, doing all build work the structure needs
+	 * before it can be traced. Structures without such work do nothing.
+	 */
+	public void commit() {
+	}
+
+	/**
+	 * Computes the box surrounding all given objects in a single pass, without
+	 * creating a box per object
+	 *
+	 * @param prims
+	 *            The objects
+	 * @return The surrounding box or null if there are no objects
+	 */
+	static BBox surround(final Collection<? extends Obj> prims) {
+		if (prims.isEmpty())
+			return null;
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (final Obj prim : prims) {
+			final BBox box = prim.bbox();
+			final Point min = box.getMin(), max = box.getMax();
+			minX = Math.min(minX, min.x());
+			minY = Math.min(minY, min.y());
+			minZ = Math.min(minZ, min.z());
+			maxX = Math.max(maxX, max.x());
+			maxY = Math.max(maxY, max.y());
+			maxZ = Math.max(maxZ, max.z());
+		}
+		return BBox.create(new Point(minX, minY, minZ), new Point(maxX, maxY, maxZ));
+	}
+
 }
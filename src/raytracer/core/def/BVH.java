@@ -1,10 +1,13 @@
 package raytracer.core.def;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
+import raytracer.core.RayPacket;
 import raytracer.geom.BBox;
 import raytracer.math.Point;
 import raytracer.math.Ray;
@@ -16,8 +19,12 @@ import raytracer.math.Vec3;
 public class BVH extends BVHBase {
     private BBox boundingB;
     private List<Obj> objects;
-    private BVHBase leftBVH;
-    private BVHBase rightBVH;
+    private BVH leftBVH;
+    private BVH rightBVH;
+    // the objects without a finite box, only the root has any:
+    private final List<Obj> unbounded = new ArrayList<>();
+    // the SAH cost of the hierarchy as built, taken by the first refit:
+    private float builtCost = Float.NaN;
 
     // the constructor for the class:
 
@@ -26,45 +33,230 @@ public class BVH extends BVHBase {
         objects = new ArrayList<>();
     }
 
-    // the bounding bix that is just returned as it is:
+    /**
+     * Creates a node over the given objects, which are used without copying
+     *
+     * @param objects The objects of the node
+     * @param box     The bounding box of the objects
+     */
+    protected BVH(final List<Obj> objects, final BBox box) {
+        this.boundingB = box;
+        this.objects = objects;
+    }
+
+    // the bounding box, which is infinite as soon as there are unbounded objects:
     @Override
     public BBox bbox() {
+        return unbounded.isEmpty() ? boundingB : BBox.INF;
+    }
+
+    @Override
+    public BBox getBounds() {
         return boundingB;
     }
 
+    @Override
+    public List<Obj> getUnbounded() {
+        return unbounded;
+    }
+
     /**
-     * Adds an object to the acceleration structure
+     * Adds an object to the acceleration structure. Objects without a finite
+     * bounding box (like planes) are not put into the hierarchy but kept in a
+     * separate list that every ray is tested against.
      *
      * @param prim The object to add
      */
     @Override
     public void add(final Obj prim) {
+        // an infinite box would inflate every box above it, keep the object aside:
+        if (!prim.bbox().isFinite()) {
+            unbounded.add(prim);
+            return;
+        }
         objects.add(prim);
 
-        // Update the bounding box as follows:
+        // Update the bounding box as follows (growing it is enough, no need to
+        // look at all the other objects again):
         if (boundingB == null) {
             boundingB = prim.bbox();
         } else {
-            boundingB = calculateBoundingBox(objects);
+            boundingB = BBox.surround(boundingB, prim.bbox());
+        }
+    }
+
+    /**
+     * Adds all given objects to the acceleration structure, growing the object
+     * list and the bounding box once for the whole batch. Unbounded objects are
+     * kept out of the hierarchy like in {@link #add(Obj)}.
+     *
+     * @param prims The objects to add
+     */
+    @Override
+    public void addAll(final Collection<? extends Obj> prims) {
+        if (prims == null) {
+            throw new IllegalArgumentException("prims must not be null");
         }
+        final List<Obj> bounded = new ArrayList<>(prims.size());
+        for (final Obj prim : prims) {
+            (prim.bbox().isFinite() ? bounded : unbounded).add(prim);
+        }
+        if (bounded.isEmpty()) {
+            return;
+        }
+        objects.addAll(bounded);
+        final BBox added = surround(bounded);
+        boundingB = boundingB == null ? added : BBox.surround(boundingB, added);
+    }
+
+    /**
+     * Builds the hierarchy over all objects added so far
+     */
+    @Override
+    public void commit() {
+        buildBVH();
     }
 
     /**
-     * Builds the actual bounding volume hierarchy
+     * Builds the actual bounding volume hierarchy, top-down through
+     * {@link #split(BVH, BVH)} or by {@link #buildWhole()} if the hierarchy
+     * does not build top-down. Subclasses customize the build only through
+     * these methods, so that {@link ParallelBVHBuilder} builds the same tree.
      */
     @Override
-    public void buildBVH() {
+    public final void buildBVH() {
+        if (buildsTopDown()) {
+            buildTopDown();
+        } else {
+            buildWhole();
+        }
+    }
+
+    // splits this node and builds both children:
+    private void buildTopDown() {
+        if (partition()) {
+            leftBVH.buildBVH();
+            rightBVH.buildBVH();
+        }
+    }
+
+    /**
+     * Builds the whole hierarchy at once, called by {@link #buildBVH()} if
+     * {@link #buildsTopDown()} returns false. The default builds it top-down;
+     * hierarchies with a builder of their own override this and may call it
+     * for the cases their builder does not handle.
+     */
+    protected void buildWhole() {
+        buildTopDown();
+    }
+
+    /**
+     * Tells whether buildBVH() builds this hierarchy top-down, splitting every
+     * node with {@link #split(BVH, BVH)} and then building its two children
+     * independently of each other. Only such hierarchies have their subtrees
+     * built as parallel tasks by {@link ParallelBVHBuilder}. Hierarchies with a
+     * builder of their own return false and are built by {@link #buildWhole()}.
+     *
+     * @return True if the hierarchy is built top-down by its split strategy
+     */
+    protected boolean buildsTopDown() {
+        return true;
+    }
+
+    /**
+     * Computes the bounding box of this node and splits it once, without
+     * building the children
+     *
+     * @return True if the node got two children which still have to be built
+     */
+    final boolean partition() {
+        // forget the children of a previous build, this node is a leaf until split:
+        leftBVH = null;
+        rightBVH = null;
+        builtCost = Float.NaN;
         // if the objects is empty we set the bounding to null and return nothing:
         if (objects.isEmpty()) {
             boundingB = null;
-            return;
+            return false;
         }
         // calculate the bounding box i guess :D :
         boundingB = calculateBoundingBox(objects);
+
+        final BVH left = createSubBVH();
+
+        final BVH right = createSubBVH();
+        // distribute the objects >_> (or stay a leaf if the split strategy says so):
+        if (!split(left, right)) {
+            return false;
+        }
+
+        // all objects ended up on one side, splitting again would never terminate:
+        if (left.objects.isEmpty() || right.objects.isEmpty()) {
+            return false;
+        }
+
+        leftBVH = left;
+        rightBVH = right;
+        return true;
+    }
+
+    /**
+     * Updates the boxes of all nodes bottom-up after objects have moved, keeping
+     * the topology of the hierarchy. The hierarchy stays correct, but its quality
+     * may degrade the further the objects move.
+     */
+    public void refit() {
+        // remember how good the hierarchy was before its boxes start to drift:
+        if (Float.isNaN(builtCost)) {
+            builtCost = SAH.cost(this);
+        }
+        refitNodes();
+    }
+
+    private void refitNodes() {
+        if (leftBVH == null) {
+            boundingB = calculateBoundingBox(objects);
+            return;
+        }
+        leftBVH.refitNodes();
+        rightBVH.refitNodes();
+        boundingB = BBox.surround(leftBVH.boundingB, rightBVH.boundingB);
+    }
+
+    /**
+     * Refits the hierarchy after objects have moved and rebuilds it instead if
+     * its SAH cost (see {@link SAH#cost(BVHBase)}) has grown beyond the given
+     * factor of the cost it had when it was built.
+     *
+     * @param threshold The factor the cost may grow by, at least 1
+     * @return True if the hierarchy was rebuilt
+     */
+    public boolean refitOrRebuild(final float threshold) {
+        if (!(threshold >= 1)) {
+            throw new IllegalArgumentException("threshold must be at least 1");
+        }
+        refit();
+        if (SAH.cost(this) <= threshold * builtCost) {
+            return false;
+        }
+        buildBVH();
+        return true;
+    }
+
+    /**
+     * Distributes the objects of this node into the two given sub-BVHs. The
+     * default strategy splits the longest axis at half of the maximum of the
+     * minimum points.
+     *
+     * @param left  The sub-BVH receiving the objects left of the split
+     * @param right The sub-BVH receiving the objects right of the split
+     * @return False if this node should stay a leaf
+     */
+    protected boolean split(final BVH left, final BVH right) {
         // check if the size does not exceed the threshold:
 
         if (objects.size() <= BVHBase.THRESHOLD) {
-            return;
+            return false;
         }
 
         Point maxofmiiiinpoints;
@@ -80,14 +272,8 @@ public class BVH extends BVHBase {
         float splitPos = boundingB.getMin().get(splitdim)
                 + (maxofmiiiinpoints.sub(boundingB.getMin()).get(splitdim) * 0.5f);
 
-        leftBVH = createSubBVH();
-
-        rightBVH = createSubBVH();
-        // distribute the objects >_> :
-        distributeObjects(leftBVH, rightBVH, splitdim, splitPos);
-
-        leftBVH.buildBVH();
-        rightBVH.buildBVH();
+        distributeObjects(left, right, splitdim, splitPos);
+        return true;
     }
 
     @Override
@@ -128,26 +314,166 @@ public class BVH extends BVHBase {
 
     @Override
     public final Hit hit(final Ray ray, final Obj obj, final float tMin, final float tMax) {
+        final HitRecord record = new HitRecord(tMax);
+        return intersect(ray, obj, tMin, record) ? record.toHit(ray) : Hit.No.get();
+    }
 
-        Boolean ishit = boundingB.intersects(obj.bbox());
+    /**
+     * Records the closest hit of the ray with the unbounded objects and the
+     * hierarchy, see {@link raytracer.geom.Primitive#intersect(Ray, Obj, float, HitRecord)}
+     */
+    @Override
+    public final boolean intersect(final Ray ray, final Obj obj, final float tMin, final HitRecord record) {
+        boolean found = false;
+        for (Obj childObj : unbounded) {
+            if (childObj.intersect(ray, childObj, tMin, record)) {
+                found = true;
+            }
+        }
 
-        if (!ishit) {
-            return Hit.No.get();
+        // an empty hierarchy or a ray missing the root box cannot hit anything:
+        if (boundingB == null || Float.isNaN(boundingB.entry(ray, tMin, record.getParameter()))) {
+            return found;
         }
 
-        Hit closestHit = Hit.No.get();
-        float closestT;
-        closestT = tMax;
+        // the hierarchy only records hits closer than the unbounded ones:
+        return traverse(ray, tMin, record) || found;
+    }
+
+    /**
+     * Records the closest hits of the active rays of the packet. The packet
+     * descends the hierarchy as a whole, every node is visited once for all
+     * rays entering its box, and the rays missing a box drop out of the mask
+     * below it.
+     */
+    @Override
+    public final long intersect(final RayPacket packet, final long active, final Obj obj, final float tMin) {
+        long found = 0;
+        for (Obj childObj : unbounded) {
+            found |= childObj.intersect(packet, active, childObj, tMin);
+        }
+        if (boundingB == null) {
+            return found;
+        }
+        final long entering = packet.cull(boundingB, active, tMin);
+        return entering == 0 ? found : found | traverse(packet, entering, tMin);
+    }
 
-        for (Obj childObj : objects) {
-            Hit hit = childObj.hit(ray, this, tMin, closestT);
-            if (hit.hits() && hit != Hit.No.get()) {
-                closestHit = hit;
-                closestT = closestHit.getParameter();
+    /**
+     * Checks whether any object is hit between tMin and tMax. The children are
+     * visited in any order and the search stops at the first hit found.
+     */
+    @Override
+    public final boolean occluded(final Ray ray, final float tMin, final float tMax) {
+        for (Obj childObj : unbounded) {
+            if (childObj.occluded(ray, tMin, tMax)) {
+                return true;
             }
         }
+        return boundingB != null && !Float.isNaN(boundingB.entry(ray, tMin, tMax)) && occludedBelow(ray, tMin, tMax);
+    }
 
-        return closestHit;
+    // the occlusion test below this node, whose box is known to be hit:
+    private boolean occludedBelow(final Ray ray, final float tMin, final float tMax) {
+        if (leftBVH == null) {
+            for (Obj childObj : objects) {
+                if (childObj.occluded(ray, tMin, tMax)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return (!Float.isNaN(leftBVH.boundingB.entry(ray, tMin, tMax)) && leftBVH.occludedBelow(ray, tMin, tMax))
+                || (!Float.isNaN(rightBVH.boundingB.entry(ray, tMin, tMax)) && rightBVH.occludedBelow(ray, tMin, tMax));
+    }
+
+    /**
+     * Descends into the hierarchy below this node, whose box is already known to be
+     * hit by the ray. The nearer child is visited first and a child is pruned when
+     * the ray enters its box beyond the closest hit found so far.
+     */
+    private boolean traverse(final Ray ray, final float tMin, final HitRecord record) {
+        boolean found = false;
+
+        // a leaf tests its objects just like the simple accelerator does:
+        if (leftBVH == null) {
+            for (Obj childObj : objects) {
+                if (childObj.intersect(ray, childObj, tMin, record)) {
+                    found = true;
+                }
+            }
+            return found;
+        }
+
+        BVH near = leftBVH, far = rightBVH;
+        float tNear = near.boundingB.entry(ray, tMin, record.getParameter());
+        float tFar = far.boundingB.entry(ray, tMin, record.getParameter());
+
+        // swap so that we look into the closer box first (a missed box has NaN):
+        if (Float.isNaN(tNear) || tFar < tNear) {
+            BVH node = near;
+            near = far;
+            far = node;
+            float t = tNear;
+            tNear = tFar;
+            tFar = t;
+        }
+
+        if (tNear <= record.getParameter() && near.traverse(ray, tMin, record)) {
+            found = true;
+        }
+
+        // the far box may have become unreachable after the near one was visited:
+        if (tFar <= record.getParameter() && far.traverse(ray, tMin, record)) {
+            found = true;
+        }
+
+        return found;
+    }
+
+    /**
+     * Descends into the hierarchy below this node with the rays of the packet
+     * known to enter its box. The child entered first by any of the rays is
+     * visited first, and every child only with the rays still entering it.
+     */
+    private long traverse(final RayPacket packet, final long active, final float tMin) {
+        long found = 0;
+
+        if (leftBVH == null) {
+            for (Obj childObj : objects) {
+                found |= childObj.intersect(packet, active, childObj, tMin);
+            }
+            return found;
+        }
+
+        BVH near = leftBVH, far = rightBVH;
+        long nearRays = packet.cull(near.boundingB, active, tMin);
+        final float tNear = packet.entry();
+        long farRays = packet.cull(far.boundingB, active, tMin);
+        final float tFar = packet.entry();
+
+        if (nearRays == 0 || tFar < tNear) {
+            BVH node = near;
+            near = far;
+            far = node;
+            long rays = nearRays;
+            nearRays = farRays;
+            farRays = rays;
+        }
+
+        if (nearRays != 0) {
+            found |= near.traverse(packet, nearRays, tMin);
+        }
+
+        // hits in the near box may have made the far one unreachable for some rays:
+        if (farRays != 0) {
+            farRays = packet.cull(far.boundingB, farRays, tMin);
+            if (farRays != 0) {
+                found |= far.traverse(packet, farRays, tMin);
+            }
+        }
+
+        return found;
     }
 
     // returning the objects as it is:
@@ -156,6 +482,17 @@ public class BVH extends BVHBase {
         return objects;
     }
 
+    // the children are null as long as this node is a leaf:
+    @Override
+    public BVHBase getLeft() {
+        return leftBVH;
+    }
+
+    @Override
+    public BVHBase getRight() {
+        return rightBVH;
+    }
+
     // the bounds of the box being calculated:
     private BBox calculateBoundingBox(List<Obj> objects) {
         if (objects.isEmpty()) {
@@ -185,8 +522,26 @@ public class BVH extends BVHBase {
         return BBox.create(minPoint, maxPoint);
     }
 
-    // create a sub bounding box as follows:
-    private BVHBase createSubBVH() {
+    /**
+     * Turns this node into an inner node with the given, already built children
+     * and a box surrounding both of them
+     *
+     * @param left  The left child
+     * @param right The right child
+     */
+    protected final void setChildren(final BVH left, final BVH right) {
+        leftBVH = left;
+        rightBVH = right;
+        boundingB = BBox.surround(left.boundingB, right.boundingB);
+        builtCost = Float.NaN;
+    }
+
+    /**
+     * Creates an empty sub-BVH of the same kind as this node
+     *
+     * @return The new sub-BVH
+     */
+    protected BVH createSubBVH() {
         return new BVH();
     }
 }
@@ -0,0 +1,324 @@
+package raytracer.core.def;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.geom.BBox;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a frozen four-wide bounding volume hierarchy collapsed from a
+ * binary one. Every node stores the boxes of its four children as six planes
+ * of four lanes each (structure of arrays), so one slab test covers all four
+ * children at once (see {@link BVH4Kernel}). Unused lanes hold an empty box
+ * which no ray can enter.
+ */
+public class BVH4 extends Accelerator {
+
+    /**
+     * The number of children per node
+     */
+    public static final int WIDTH = 4;
+
+    // every node stores min x, y, z and max x, y, z, each for the four lanes:
+    private static final int BOUNDS = 6 * WIDTH;
+
+    // children are inner nodes (>= 0), leaves (~index of the leaf) or unused:
+    private static final int UNUSED = Integer.MIN_VALUE;
+
+    private final float[] bounds;
+    private final int[] children;
+    // every leaf stores the index of its first object and the number of objects:
+    private final int[] leaves;
+    private final Obj[] objects;
+    // the objects without a finite box, tested by every ray:
+    private final Obj[] unbounded;
+    private final BBox box;
+    private final int depth;
+    private final BVH4Kernel kernel;
+
+    /**
+     * Collapses an already built binary hierarchy, testing the boxes with the
+     * best kernel available (see {@link BVH4Kernel#best()})
+     *
+     * @param bvh
+     *            The built hierarchy
+     */
+    public BVH4(final BVHBase bvh) {
+        this(bvh, BVH4Kernel.best());
+    }
+
+    /**
+     * Collapses an already built binary hierarchy
+     *
+     * @param bvh
+     *            The built hierarchy
+     * @param kernel
+     *            The kernel testing the boxes of the nodes
+     * @throws IllegalArgumentException
+     *             If the kernel is null
+     */
+    public BVH4(final BVHBase bvh, final BVH4Kernel kernel) {
+        if (kernel == null) {
+            throw new IllegalArgumentException("The kernel is null");
+        }
+        this.kernel = kernel;
+        final Builder builder = new Builder();
+        if (bvh.getBounds() != null) {
+            // the root is a node of its own, even if it holds a single leaf:
+            builder.collapse(bvh.getLeft() == null ? new BVHBase[] { bvh } : children(bvh), 1);
+        }
+        this.bounds = Arrays.copyOf(builder.bounds, BOUNDS * builder.nodes);
+        this.children = Arrays.copyOf(builder.children, WIDTH * builder.nodes);
+        this.leaves = Arrays.copyOf(builder.leaves, 2 * builder.leafCount);
+        this.objects = builder.objects.toArray(new Obj[0]);
+        this.unbounded = bvh.getUnbounded().toArray(new Obj[0]);
+        this.box = bvh.getBounds() != null ? bvh.getBounds() : BBox.EMPTY;
+        this.depth = builder.depth;
+    }
+
+    // pulls up grandchildren of the largest inner child until all lanes are used:
+    private static BVHBase[] children(final BVHBase node) {
+        final List<BVHBase> lanes = new ArrayList<>(WIDTH);
+        lanes.add(node.getLeft());
+        lanes.add(node.getRight());
+        while (lanes.size() < WIDTH) {
+            int largest = -1;
+            for (int k = 0; k < lanes.size(); k++) {
+                final BVHBase lane = lanes.get(k);
+                if (lane.getLeft() != null
+                        && (largest < 0 || lane.getBounds().area() > lanes.get(largest).getBounds().area())) {
+                    largest = k;
+                }
+            }
+            if (largest < 0) {
+                break;
+            }
+            final BVHBase expanded = lanes.remove(largest);
+            lanes.add(expanded.getLeft());
+            lanes.add(expanded.getRight());
+        }
+        return lanes.toArray(new BVHBase[0]);
+    }
+
+    /**
+     * Collects the nodes while walking the binary hierarchy depth-first
+     */
+    private static final class Builder {
+        private float[] bounds = new float[BOUNDS * 16];
+        private int[] children = new int[WIDTH * 16];
+        private int[] leaves = new int[2 * 16];
+        private int nodes = 0;
+        private int leafCount = 0;
+        private int depth = 0;
+        private final List<Obj> objects = new ArrayList<>();
+
+        // appends a node over the given lanes and returns its index:
+        private int collapse(final BVHBase[] lanes, final int level) {
+            final int node = nodes++;
+            if (BOUNDS * nodes > bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                children = Arrays.copyOf(children, 2 * children.length);
+            }
+            depth = Math.max(depth, level);
+
+            for (int k = 0; k < WIDTH; k++) {
+                final int b = BOUNDS * node + k;
+                if (k >= lanes.length) {
+                    for (int dim = 0; dim < 3; dim++) {
+                        bounds[b + WIDTH * dim] = Float.POSITIVE_INFINITY;
+                        bounds[b + WIDTH * (3 + dim)] = Float.NEGATIVE_INFINITY;
+                    }
+                    children[WIDTH * node + k] = UNUSED;
+                    continue;
+                }
+
+                final BBox laneBox = lanes[k].getBounds();
+                for (int dim = 0; dim < 3; dim++) {
+                    bounds[b + WIDTH * dim] = laneBox.getMin().get(dim);
+                    bounds[b + WIDTH * (3 + dim)] = laneBox.getMax().get(dim);
+                }
+
+                final int child;
+                if (lanes[k].getLeft() == null) {
+                    child = ~leaf(lanes[k].getObjects());
+                } else {
+                    child = collapse(children(lanes[k]), level + 1);
+                }
+                // the arrays may grow while collapsing, so store the result afterwards:
+                children[WIDTH * node + k] = child;
+            }
+            return node;
+        }
+
+        private int leaf(final List<Obj> leafObjects) {
+            final int leaf = leafCount++;
+            if (2 * leafCount > leaves.length) {
+                leaves = Arrays.copyOf(leaves, 2 * leaves.length);
+            }
+            leaves[2 * leaf] = objects.size();
+            leaves[2 * leaf + 1] = leafObjects.size();
+            objects.addAll(leafObjects);
+            return leaf;
+        }
+    }
+
+    /**
+     * Returns the bounding box of the root node (infinite if there are unbounded
+     * objects)
+     */
+    @Override
+    public BBox bbox() {
+        return unbounded.length == 0 ? box : BBox.INF;
+    }
+
+    /**
+     * Throws an IllegalStateException, the hierarchy cannot be changed once it
+     * has been collapsed
+     */
+    @Override
+    public void add(final Obj prim) {
+        throw new IllegalStateException("add called on a frozen BVH");
+    }
+
+    /**
+     * Returns the number of nodes
+     *
+     * @return The number of nodes
+     */
+    public int getNodeCount() {
+        return children.length / WIDTH;
+    }
+
+    /**
+     * Returns the kernel testing the boxes of the nodes
+     *
+     * @return The kernel
+     */
+    public BVH4Kernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Computes a hit point with the given parameters
+     *
+     * @param ray
+     *            The ray to compute the intersection with
+     * @param obj
+     *            The object to compute the intersection with
+     * @param tmin
+     *            The minimum distance
+     * @param tmax
+     *            The maximum distance
+     * @return The computed hit
+     */
+    @Override
+    public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+        final HitRecord record = new HitRecord(tmax);
+        return intersect(ray, obj, tmin, record) ? record.toHit(ray) : Hit.No.get();
+    }
+
+    /**
+     * Records the closest hit of the ray with the objects, only testing the
+     * objects the ray may reach before the closest hit found so far
+     */
+    @Override
+    public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+        return traverse(ray, tmin, record.getParameter(), record);
+    }
+
+    /**
+     * Checks whether any object is hit between tmin and tmax, stopping at the
+     * first hit found
+     */
+    @Override
+    public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+        return traverse(ray, tmin, tmax, null);
+    }
+
+    // records the closest hit, or only looks for any hit if record is null:
+    private boolean traverse(final Ray ray, final float tmin, float tmax, final HitRecord record) {
+        boolean found = false;
+        for (final Obj p : unbounded) {
+            if (record == null) {
+                if (p.occluded(ray, tmin, tmax)) {
+                    return true;
+                }
+            } else if (p.intersect(ray, p, tmin, record)) {
+                found = true;
+                tmax = record.getParameter();
+            }
+        }
+        if (children.length == 0 || Float.isNaN(box.entry(ray, tmin, tmax))) {
+            return found;
+        }
+
+        final Point base = ray.base();
+        final Vec3 dir = ray.dir();
+        final float ox = base.x(), oy = base.y(), oz = base.z();
+        final float ix = ray.invX(), iy = ray.invY(), iz = ray.invZ();
+        // the lane offsets of the near planes, the far planes are 3 planes further:
+        final int nx = WIDTH * (dir.isNeg(0) * 3), ny = WIDTH * (1 + dir.isNeg(1) * 3),
+                nz = WIDTH * (2 + dir.isNeg(2) * 3);
+
+        // every node pushes at most three children besides the one it continues with:
+        final int[] stack = new int[(WIDTH - 1) * depth + 1];
+        final float[] entries = new float[stack.length];
+        final float[] lanes = new float[WIDTH];
+        stack[0] = 0;
+        entries[0] = tmin;
+        int top = 1;
+
+        while (top > 0) {
+            final int child = stack[--top];
+            if (entries[top] > tmax) {
+                continue;
+            }
+
+            if (child < 0) {
+                final int leaf = ~child;
+                final int first = leaves[2 * leaf];
+                final int last = first + leaves[2 * leaf + 1];
+                for (int i = first; i < last; i++) {
+                    final Obj p = objects[i];
+                    if (record == null) {
+                        if (p.occluded(ray, tmin, tmax)) {
+                            return true;
+                        }
+                    } else if (p.intersect(ray, p, tmin, record)) {
+                        found = true;
+                        tmax = record.getParameter();
+                    }
+                }
+                continue;
+            }
+
+            kernel.entries(bounds, BOUNDS * child, ox, oy, oz, ix, iy, iz, nx, ny, nz, tmin, tmax, lanes);
+
+            // push the entered lanes so that the nearest one is popped first:
+            final int bottom = top;
+            for (int k = 0; k < WIDTH; k++) {
+                final float t = lanes[k];
+                if (!(t <= tmax)) {
+                    continue;
+                }
+                int pos = top++;
+                while (pos > bottom && entries[pos - 1] < t) {
+                    stack[pos] = stack[pos - 1];
+                    entries[pos] = entries[pos - 1];
+                    pos--;
+                }
+                stack[pos] = children[WIDTH * child + k];
+                entries[pos] = t;
+            }
+        }
+
+        return found;
+    }
+}
@@ -0,0 +1,132 @@
+package raytracer.core.def;
+
+/**
+ * The slab test a {@link BVH4} runs on the four child boxes of a node. The
+ * scalar kernel is a fixed-width loop over the four lanes. The vector kernel
+ * tests the lanes with a single FloatVector per plane. {@link #best()} picks
+ * it once if the module is present and falls back to the scalar kernel
+ * otherwise. Both kernels compute the same entry distances.
+ * <p>
+ * The vector kernel lives in the source folder vector, which is not part of
+ * the Eclipse project because it needs the incubator module. It is compiled
+ * into the same output folder after src and test, and the module has to be
+ * added when running, for example for the benchmark:
+ *
+ * <pre>
+ * javac -cp junit.jar -d bin $(find src test -name '*.java')
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin vector/raytracer/core/def/VectorBVH4Kernel.java
+ * java --add-modules jdk.incubator.vector -cp bin raytracer.bench.BVH4Benchmark
+ * </pre>
+ *
+ * Without the second step or without the option when running, the scalar
+ * kernel is used.
+ */
+public abstract class BVH4Kernel {
+
+    /**
+     * The scalar kernel, available on every JVM
+     */
+    public static final BVH4Kernel SCALAR = new BVH4Kernel() {
+        @Override
+        public void entries(final float[] bounds, final int b, final float ox, final float oy, final float oz,
+                final float ix, final float iy, final float iz, final int nx, final int ny, final int nz,
+                final float tmin, final float tmax, final float[] lanes) {
+            final int fx = BVH4.WIDTH * 3 - nx, fy = BVH4.WIDTH * 5 - ny, fz = BVH4.WIDTH * 7 - nz;
+            for (int k = 0; k < BVH4.WIDTH; k++) {
+                float near = tmin;
+                float far = tmax;
+                float t = (bounds[b + nx + k] - ox) * ix;
+                near = t > near ? t : near;
+                t = (bounds[b + ny + k] - oy) * iy;
+                near = t > near ? t : near;
+                t = (bounds[b + nz + k] - oz) * iz;
+                near = t > near ? t : near;
+                t = (bounds[b + fx + k] - ox) * ix;
+                far = t < far ? t : far;
+                t = (bounds[b + fy + k] - oy) * iy;
+                far = t < far ? t : far;
+                t = (bounds[b + fz + k] - oz) * iz;
+                far = t < far ? t : far;
+                lanes[k] = near <= far ? near : Float.NaN;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    };
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "raytracer.core.def.VectorBVH4Kernel";
+
+    private static final BVH4Kernel VECTOR = loadVector();
+
+    // the vector kernel, if the module is resolved and the kernel was compiled:
+    private static BVH4Kernel loadVector() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return (BVH4Kernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (final ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the vector kernel
+     *
+     * @return The vector kernel or null if it is not available on this JVM
+     */
+    public static BVH4Kernel vector() {
+        return VECTOR;
+    }
+
+    /**
+     * Returns the fastest kernel available, the vector kernel if there is one
+     *
+     * @return The kernel to use
+     */
+    public static BVH4Kernel best() {
+        return VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    /**
+     * Computes the entry distances of a ray into the four boxes of a node, the
+     * slab test of {@link raytracer.geom.BBox#entry(raytracer.math.Ray, float, float)}
+     * for every lane. The boxes are stored as six planes (min x, y, z and max
+     * x, y, z) of four floats each.
+     *
+     * @param bounds
+     *            The planes of all nodes
+     * @param b
+     *            The index of the first plane of the node
+     * @param ox
+     *            The x coordinate of the ray origin
+     * @param oy
+     *            The y coordinate of the ray origin
+     * @param oz
+     *            The z coordinate of the ray origin
+     * @param ix
+     *            The inverse x component of the ray direction
+     * @param iy
+     *            The inverse y component of the ray direction
+     * @param iz
+     *            The inverse z component of the ray direction
+     * @param nx
+     *            The offset of the near x plane, the far plane is the other one
+     * @param ny
+     *            The offset of the near y plane
+     * @param nz
+     *            The offset of the near z plane
+     * @param tmin
+     *            The minimum distance
+     * @param tmax
+     *            The maximum distance
+     * @param lanes
+     *            Receives the entry distance per lane, NaN if the box is missed
+     */
+    public abstract void entries(float[] bounds, int b, float ox, float oy, float oz, float ix, float iy,
+            float iz, int nx, int ny, int nz, float tmin, float tmax, float[] lanes);
+}
@@ -1,8 +1,10 @@
 package raytracer.core.def;
 
+import java.util.Collections;
 import java.util.List;
 
 import raytracer.core.Obj;
+import raytracer.geom.BBox;
 import raytracer.math.Point;
 import raytracer.math.Vec3;
 
@@ -23,6 +25,46 @@ public abstract class BVHBase extends Accelerator {
      */
     public abstract List<Obj> getObjects();
 
+    /**
+     * Returns the objects without a finite bounding box. They are kept out of
+     * the hierarchy, so they cannot inflate its boxes, and are tested by every
+     * ray.
+     *
+     * @return The unbounded objects (none by default)
+     */
+    public List<Obj> getUnbounded() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the bounding box of the hierarchy. Unlike {@link #bbox()} it leaves
+     * out the unbounded objects (see {@link #getUnbounded()}).
+     *
+     * @return The bounding box of the bounded objects or null if there are none
+     */
+    public BBox getBounds() {
+        return bbox();
+    }
+
+    /**
+     * Returns the left sub-BVH. Hierarchies which do not expose their children
+     * keep this default and are treated as one leaf holding all objects.
+     *
+     * @return The left sub-BVH or null if this BVH is a leaf
+     */
+    public BVHBase getLeft() {
+        return null;
+    }
+
+    /**
+     * Returns the right sub-BVH, see {@link #getLeft()}
+     *
+     * @return The right sub-BVH or null if this BVH is a leaf
+     */
+    public BVHBase getRight() {
+        return null;
+    }
+
     /**
      * Builds the actual bounding volume hierarchy
      */
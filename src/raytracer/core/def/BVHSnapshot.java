@@ -0,0 +1,296 @@
+package raytracer.core.def;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import raytracer.core.OBJReader;
+import raytracer.core.Obj;
+import raytracer.core.Shader;
+import raytracer.geom.GeomFactory;
+import raytracer.math.Point;
+import raytracer.math.Vec3;
+
+/**
+ * Stores a built {@link FlatBVH} over the triangles of an OBJ file in a binary
+ * file, so that later runs can map it into memory instead of parsing the model
+ * and building the hierarchy again. A snapshot is keyed by a SHA-256 hash of
+ * the model file, the scale and the translation; a snapshot with a different
+ * key, version or layout is ignored and replaced, and so is a snapshot whose
+ * nodes do not form a valid hierarchy.
+ *
+ * The file consists of a header (magic, version, key, node count, depth,
+ * triangle count and reference count) followed by the node bounds, the node
+ * links, the triangle index of every reference in leaf order and the vertices
+ * of the triangles. All values are little-endian.
+ */
+public final class BVHSnapshot {
+
+    /**
+     * The version of the file layout, snapshots of other versions are rebuilt
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x48425452; // "RTBH"
+    private static final int KEY_LENGTH = 32;
+    private static final int HEADER = 4 + 4 + KEY_LENGTH + 4 * 4;
+
+    private BVHSnapshot() {
+    }
+
+    /**
+     * Loads the hierarchy of the given model from the snapshot file if it
+     * matches the model, scale and translation. Otherwise the model is read and
+     * built and the snapshot file is (re)written.
+     *
+     * @param model
+     *            The OBJ file
+     * @param snapshot
+     *            The snapshot file
+     * @param shader
+     *            The shader which is used by all triangles
+     * @param scale
+     *            The scale factor of the model
+     * @param translate
+     *            The translation of the model
+     * @return The hierarchy over the triangles of the model
+     * @throws IOException
+     *             If the model cannot be read or the snapshot cannot be written
+     */
+    public static FlatBVH load(final Path model, final Path snapshot, final Shader shader, final float scale,
+            final Vec3 translate) throws IOException {
+        if (shader == null) {
+            throw new IllegalArgumentException("The shader is null");
+        }
+        final byte[] mesh = Files.readAllBytes(model);
+        final byte[] key = key(mesh, scale, translate);
+
+        try {
+            final FlatBVH mapped = read(snapshot, key, shader);
+            if (mapped != null) {
+                return mapped;
+            }
+        } catch (final IOException e) {
+            // a truncated or corrupt snapshot is replaced like a stale one
+        }
+
+        final float[] vertices = OBJReader.readTriangles(new ByteArrayInputStream(mesh), scale, translate);
+        final Obj[] triangles = triangles(vertices, shader);
+        final FlatBVH bvh = new FlatBVH(Arrays.asList(triangles));
+        write(snapshot, key, bvh, triangles, vertices);
+        return bvh;
+    }
+
+    /**
+     * Computes the key of a model
+     *
+     * @param mesh
+     *            The contents of the OBJ file
+     * @param scale
+     *            The scale factor of the model
+     * @param translate
+     *            The translation of the model
+     * @return The SHA-256 hash of the contents, the scale and the translation
+     */
+    public static byte[] key(final byte[] mesh, final float scale, final Vec3 translate) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(mesh);
+            digest.update(ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putFloat(scale)
+                    .putFloat(translate.x()).putFloat(translate.y()).putFloat(translate.z()).array());
+            return digest.digest();
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256:
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Obj[] triangles(final float[] vertices, final Shader shader) {
+        final Obj[] triangles = new Obj[vertices.length / 9];
+        for (int i = 0; i < triangles.length; i++) {
+            final int v = 9 * i;
+            triangles[i] = new StandardObj(GeomFactory.createTriangle(
+                    new Point(vertices[v], vertices[v + 1], vertices[v + 2]),
+                    new Point(vertices[v + 3], vertices[v + 4], vertices[v + 5]),
+                    new Point(vertices[v + 6], vertices[v + 7], vertices[v + 8])), shader);
+        }
+        return triangles;
+    }
+
+    /**
+     * Maps the snapshot file and creates the hierarchy from it
+     *
+     * @param snapshot
+     *            The snapshot file
+     * @param key
+     *            The expected key
+     * @param shader
+     *            The shader which is used by all triangles
+     * @return The hierarchy or null if there is no snapshot matching the key
+     * @throws IOException
+     *             If the snapshot exists but cannot be read, or its links,
+     *             references or depth do not describe a valid hierarchy
+     */
+    public static FlatBVH read(final Path snapshot, final byte[] key, final Shader shader) throws IOException {
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            final byte[] stored = new byte[KEY_LENGTH];
+            buffer.get(stored);
+            if (!Arrays.equals(stored, key)) {
+                return null;
+            }
+            final int nodes = buffer.getInt(), depth = buffer.getInt();
+            final int triangleCount = buffer.getInt(), references = buffer.getInt();
+            final long expected = HEADER + 4L * (6L * nodes + 2L * nodes + references + 9L * triangleCount);
+            if (nodes < 0 || triangleCount < 0 || references < 0 || depth < 0 || size != expected) {
+                return null;
+            }
+
+            final float[] bounds = new float[6 * nodes];
+            final int[] links = new int[2 * nodes];
+            final int[] order = new int[references];
+            final float[] vertices = new float[9 * triangleCount];
+            buffer.asFloatBuffer().get(bounds);
+            buffer.position(buffer.position() + 4 * bounds.length);
+            buffer.asIntBuffer().get(links);
+            buffer.position(buffer.position() + 4 * links.length);
+            buffer.asIntBuffer().get(order);
+            buffer.position(buffer.position() + 4 * order.length);
+            buffer.asFloatBuffer().get(vertices);
+
+            checkLinks(links, references, depth);
+            for (int i = 0; i < references; i++) {
+                if (order[i] < 0 || order[i] >= triangleCount) {
+                    throw new IOException("Reference " + i + " refers to a missing triangle");
+                }
+            }
+
+            final Obj[] triangles = triangles(vertices, shader);
+            final Obj[] objects = new Obj[references];
+            for (int i = 0; i < references; i++) {
+                objects[i] = triangles[order[i]];
+            }
+            return new FlatBVH(bounds, links, objects, depth);
+        }
+    }
+
+    // checks that the links describe a depth-first hierarchy FlatBVH can traverse:
+    private static void checkLinks(final int[] links, final int references, final int depth) throws IOException {
+        final int nodes = links.length / FlatBVH.LINKS;
+        // the level of every node, 0 until its parent claims it. Children always
+        // follow their parent, so a node still at 0 when visited is unreachable:
+        final int[] levels = new int[nodes];
+        if (nodes > 0) {
+            levels[0] = 1;
+        }
+        for (int node = 0; node < nodes; node++) {
+            final int offset = links[FlatBVH.LINKS * node], count = links[FlatBVH.LINKS * node + 1];
+            if (levels[node] == 0) {
+                throw new IOException("Node " + node + " is not reached from the root");
+            }
+            if (levels[node] > depth) {
+                throw new IOException("Node " + node + " lies below the depth of " + depth);
+            }
+            if (count >= 0) {
+                if (offset < 0 || (long) offset + count > references) {
+                    throw new IOException("Leaf " + node + " refers to objects beyond " + references);
+                }
+            } else if (count != -1 || offset <= node + 1 || offset >= nodes) {
+                throw new IOException("Inner node " + node + " has a child outside of the hierarchy");
+            } else if (levels[node + 1] != 0 || levels[offset] != 0) {
+                throw new IOException("Inner node " + node + " claims a child of another node");
+            } else {
+                levels[node + 1] = levels[node] + 1;
+                levels[offset] = levels[node] + 1;
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given hierarchy. The file is written next to the
+     * target and moved into place, so concurrent readers never see a partial
+     * snapshot.
+     *
+     * @param snapshot
+     *            The snapshot file
+     * @param key
+     *            The key of the model
+     * @param bvh
+     *            The hierarchy over the given triangles
+     * @param triangles
+     *            The triangles
+     * @param vertices
+     *            The vertices of the triangles, nine floats per triangle
+     * @throws IOException
+     *             If the snapshot cannot be written
+     */
+    public static void write(final Path snapshot, final byte[] key, final FlatBVH bvh, final Obj[] triangles,
+            final float[] vertices) throws IOException {
+        if (key.length != KEY_LENGTH || vertices.length != 9 * triangles.length) {
+            throw new IllegalArgumentException("The key or the vertices do not match the snapshot layout");
+        }
+        final Map<Obj, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < triangles.length; i++) {
+            indices.put(triangles[i], i);
+        }
+
+        final float[] bounds = bvh.getBounds();
+        final int[] links = bvh.getLinks();
+        final Obj[] objects = bvh.getObjects();
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER
+                + 4 * (bounds.length + links.length + objects.length + vertices.length))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).put(key);
+        buffer.putInt(links.length / 2).putInt(bvh.getDepth()).putInt(triangles.length).putInt(objects.length);
+        buffer.asFloatBuffer().put(bounds);
+        buffer.position(buffer.position() + 4 * bounds.length);
+        buffer.asIntBuffer().put(links);
+        buffer.position(buffer.position() + 4 * links.length);
+        for (final Obj obj : objects) {
+            final Integer index = indices.get(obj);
+            if (index == null) {
+                throw new IllegalArgumentException("The hierarchy contains an object that is not a given triangle");
+            }
+            buffer.putInt(index);
+        }
+        buffer.asFloatBuffer().put(vertices);
+        buffer.position(buffer.position() + 4 * vertices.length);
+        buffer.flip();
+
+        final Path absolute = snapshot.toAbsolutePath();
+        final Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
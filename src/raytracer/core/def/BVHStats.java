@@ -0,0 +1,307 @@
+package raytracer.core.def;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+
+import raytracer.geom.BBox;
+
+/**
+ * Describes the shape and the estimated quality of a built bounding volume
+ * hierarchy: how deep its leaves are, how many objects they hold, how the SAH
+ * cost (see {@link SAH}) is distributed over the levels, how much sibling boxes
+ * overlap and roughly how much memory the nodes take.
+ */
+public final class BVHStats {
+
+    // the assumed sizes (in bytes) of the objects of a pointer-based node on a
+    // 64-bit JVM with compressed references: the node itself, its box with the
+    // point array and two points, and its object list without the elements
+    private static final int NODE_BYTES = 40;
+    private static final int BBOX_BYTES = 16 + 24 + 2 * 32;
+    private static final int LIST_BYTES = 24 + 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    // a node of a FlatBVH: six floats of bounds and two ints of links
+    private static final int FLAT_NODE_BYTES = 32;
+
+    private final int nodes;
+    private final int leaves;
+    private final int emptyNodes;
+    private final int references;
+    private final int storedReferences;
+    private final int[] leafDepths;
+    private final int[] leafSizes;
+    private final float[] levelCosts;
+    private final float cost;
+    private final float overlap;
+    private final float siblingOverlap;
+
+    /**
+     * Analyzes the given hierarchy
+     *
+     * @param bvh
+     *            The (built) hierarchy to analyze
+     * @throws IllegalArgumentException
+     *             If bvh is null
+     */
+    public BVHStats(final BVHBase bvh) {
+        if (bvh == null) {
+            throw new IllegalArgumentException("bvh must not be null");
+        }
+        final BBox root = bvh.getBounds();
+        final float rootArea = root == null ? 0 : root.area();
+
+        int nodes = 0, leaves = 0, emptyNodes = 0, references = 0, storedReferences = 0, inner = 0;
+        int[] leafDepths = new int[8], leafSizes = new int[8];
+        float[] levelCosts = new float[8];
+        float siblingOverlap = 0;
+
+        // an explicit stack, degenerate hierarchies may be very deep:
+        final Deque<BVHBase> stack = new ArrayDeque<>();
+        final Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(bvh);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            final BVHBase node = stack.pop();
+            final int depth = depths.pop();
+            final int size = node.getObjects().size();
+            final float area = node.getBounds() == null ? 0 : node.getBounds().area();
+            nodes++;
+            storedReferences += size;
+            if (depth >= levelCosts.length) {
+                levelCosts = Arrays.copyOf(levelCosts, 2 * depth);
+            }
+
+            if (node.getLeft() == null) {
+                leaves++;
+                references += size;
+                if (size == 0) {
+                    emptyNodes++;
+                }
+                leafDepths = increment(leafDepths, depth);
+                leafSizes = increment(leafSizes, size);
+                levelCosts[depth] += SAH.INTERSECTION_COST * size * area;
+                continue;
+            }
+
+            inner++;
+            levelCosts[depth] += SAH.TRAVERSAL_COST * area;
+            final BBox left = node.getLeft().getBounds(), right = node.getRight().getBounds();
+            if (left != null && right != null) {
+                final float smaller = Math.min(left.area(), right.area());
+                if (smaller > 0) {
+                    siblingOverlap += BBox.intersection(left, right).area() / smaller;
+                }
+            }
+            stack.push(node.getRight());
+            depths.push(depth + 1);
+            stack.push(node.getLeft());
+            depths.push(depth + 1);
+        }
+
+        final int levels = lastNonZero(leafDepths) + 1;
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.emptyNodes = emptyNodes;
+        this.references = references;
+        this.storedReferences = storedReferences;
+        this.leafDepths = Arrays.copyOf(leafDepths, levels);
+        this.leafSizes = Arrays.copyOf(leafSizes, lastNonZero(leafSizes) + 1);
+        this.levelCosts = Arrays.copyOf(levelCosts, levels);
+        this.cost = SAH.cost(bvh);
+        this.overlap = SAH.overlap(bvh);
+        this.siblingOverlap = inner == 0 ? 0 : siblingOverlap / inner;
+
+        // normalize like SAH.cost, a flat root is charged for all its objects:
+        if (rootArea > 0 && Float.isFinite(rootArea)) {
+            for (int i = 0; i < levels; i++) {
+                this.levelCosts[i] /= rootArea;
+            }
+        } else {
+            Arrays.fill(this.levelCosts, 0);
+            if (levels > 0) {
+                this.levelCosts[0] = cost;
+            }
+        }
+    }
+
+    private static int[] increment(int[] histogram, final int index) {
+        if (index >= histogram.length) {
+            histogram = Arrays.copyOf(histogram, Math.max(2 * histogram.length, index + 1));
+        }
+        histogram[index]++;
+        return histogram;
+    }
+
+    private static int lastNonZero(final int[] histogram) {
+        int last = histogram.length - 1;
+        while (last >= 0 && histogram[last] == 0) {
+            last--;
+        }
+        return last;
+    }
+
+    /**
+     * Returns the number of nodes
+     *
+     * @return The number of inner nodes and leaves
+     */
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of leaves
+     *
+     * @return The number of leaves
+     */
+    public int getLeafCount() {
+        return leaves;
+    }
+
+    /**
+     * Returns the number of nodes without objects
+     *
+     * @return The number of empty leaves (including an empty root)
+     */
+    public int getEmptyNodeCount() {
+        return emptyNodes;
+    }
+
+    /**
+     * Returns the number of object references in the leaves, which exceeds the
+     * number of objects if the builder duplicates references
+     *
+     * @return The number of references in all leaves
+     */
+    public int getReferenceCount() {
+        return references;
+    }
+
+    /**
+     * Returns the depth of the deepest leaf
+     *
+     * @return The depth, 0 if the root is a leaf
+     */
+    public int getDepth() {
+        return leafDepths.length - 1;
+    }
+
+    /**
+     * Returns the depth histogram
+     *
+     * @return The number of leaves at every depth, indexed by depth
+     */
+    public int[] getDepthHistogram() {
+        return leafDepths.clone();
+    }
+
+    /**
+     * Returns the leaf size distribution
+     *
+     * @return The number of leaves holding a given number of objects, indexed
+     *         by that number
+     */
+    public int[] getLeafSizeHistogram() {
+        return leafSizes.clone();
+    }
+
+    /**
+     * Returns the average number of objects per leaf
+     *
+     * @return The average leaf size
+     */
+    public float getMeanLeafSize() {
+        return leaves == 0 ? 0 : (float) references / leaves;
+    }
+
+    /**
+     * Returns the estimated SAH cost of the hierarchy, see
+     * {@link SAH#cost(BVHBase)}
+     *
+     * @return The estimated cost
+     */
+    public float getCost() {
+        return cost;
+    }
+
+    /**
+     * Returns the share of every level in the SAH cost, the shares sum up to
+     * {@link #getCost()}
+     *
+     * @return The cost of the nodes at every depth, indexed by depth
+     */
+    public float[] getLevelCosts() {
+        return levelCosts.clone();
+    }
+
+    /**
+     * Returns the summed overlap of sibling boxes relative to the root area,
+     * see {@link SAH#overlap(BVHBase)}
+     *
+     * @return The normalized overlap
+     */
+    public float getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Returns the child-overlap ratio: the area of the intersection of the two
+     * children of an inner node relative to the area of the smaller child,
+     * averaged over all inner nodes
+     *
+     * @return The average ratio between 0 (disjoint) and 1 (nested)
+     */
+    public float getChildOverlapRatio() {
+        return siblingOverlap;
+    }
+
+    /**
+     * Estimates the heap size of the pointer-based hierarchy, assuming a 64-bit
+     * JVM with compressed references. Inner nodes keep the object lists they
+     * were split from, so every stored reference is counted.
+     *
+     * @return The estimated size in bytes
+     */
+    public long getMemoryEstimate() {
+        return (long) nodes * (NODE_BYTES + BBOX_BYTES + LIST_BYTES) + (long) storedReferences * REFERENCE_BYTES;
+    }
+
+    /**
+     * Estimates the size of the hierarchy once flattened into a
+     * {@link FlatBVH}
+     *
+     * @return The estimated size in bytes
+     */
+    public long getFlatMemoryEstimate() {
+        return (long) nodes * FLAT_NODE_BYTES + (long) references * REFERENCE_BYTES;
+    }
+
+    /**
+     * Formats all statistics as a multi-line report
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ENGLISH, "nodes %d  leaves %d  empty %d  references %d  depth %d%n", nodes,
+                leaves, emptyNodes, references, getDepth()));
+        sb.append(String.format(Locale.ENGLISH, "SAH cost %.3f  overlap %.4f  child overlap ratio %.4f%n", cost,
+                overlap, siblingOverlap));
+        sb.append(String.format(Locale.ENGLISH, "memory %d KB (flattened %d KB)%n", getMemoryEstimate() / 1024,
+                getFlatMemoryEstimate() / 1024));
+        sb.append(String.format(Locale.ENGLISH, "leaf size: mean %.2f%n", getMeanLeafSize()));
+        for (int size = 0; size < leafSizes.length; size++) {
+            if (leafSizes[size] > 0) {
+                sb.append(String.format(Locale.ENGLISH, "  %4d objects %8d leaves%n", size, leafSizes[size]));
+            }
+        }
+        sb.append(String.format("depth: leaves, SAH cost%n"));
+        for (int depth = 0; depth < leafDepths.length; depth++) {
+            sb.append(String.format(Locale.ENGLISH, "  %4d %8d %10.3f%n", depth, leafDepths[depth],
+                    levelCosts[depth]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,496 @@
+package raytracer.core.def;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.core.RayPacket;
+import raytracer.geom.BBox;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a frozen bounding volume hierarchy stored in flat arrays. The
+ * nodes are laid out in depth-first order, so the left child of an inner node
+ * directly follows it, and the objects are reordered so that every leaf refers
+ * to a contiguous range of them. Traversal needs no allocation per node.
+ */
+public class FlatBVH extends Accelerator {
+
+    // every node stores its box as min x, y, z followed by max x, y, z:
+    static final int BOUNDS = 6;
+
+    // every node stores an offset and a count: inner nodes keep the index of
+    // the right child and a count of -1, leaves the index of their first object
+    // and the number of objects
+    static final int LINKS = 2;
+
+    private final float[] bounds;
+    private final int[] links;
+    private final Obj[] objects;
+    // the objects without a finite box, tested by every ray:
+    private final Obj[] unbounded;
+    private final BBox box;
+    private final int depth;
+    private final Leaf leaves = this::testLeaf;
+
+    /**
+     * Flattens an already built hierarchy
+     *
+     * @param bvh
+     *            The built hierarchy
+     */
+    public FlatBVH(final BVHBase bvh) {
+        final Builder builder = new Builder();
+        if (bvh.getBounds() != null) {
+            builder.flatten(bvh, 1);
+        }
+        this.bounds = builder.bounds();
+        this.links = builder.links();
+        this.objects = builder.objects.toArray(new Obj[0]);
+        this.unbounded = bvh.getUnbounded().toArray(new Obj[0]);
+        this.box = bvh.getBounds() != null ? bvh.getBounds() : BBox.EMPTY;
+        this.depth = builder.depth;
+    }
+
+    /**
+     * Builds a hierarchy for the given objects using the SAH builder and
+     * flattens it
+     *
+     * @param objects
+     *            The objects to insert
+     */
+    public FlatBVH(final Collection<? extends Obj> objects) {
+        this(build(objects));
+    }
+
+    /**
+     * Creates a hierarchy from already flattened arrays, which are used without
+     * copying (see {@link BVHSnapshot})
+     */
+    FlatBVH(final float[] bounds, final int[] links, final Obj[] objects, final int depth) {
+        this.bounds = bounds;
+        this.links = links;
+        this.objects = objects;
+        this.unbounded = new Obj[0];
+        this.depth = depth;
+        this.box = links.length == 0 ? BBox.EMPTY
+                : BBox.create(new Point(bounds[0], bounds[1], bounds[2]), new Point(bounds[3], bounds[4], bounds[5]));
+    }
+
+    private static BVHBase build(final Collection<? extends Obj> objects) {
+        final BVHBase bvh = new SAHBVH();
+        bvh.addAll(objects);
+        bvh.commit();
+        return bvh;
+    }
+
+    /**
+     * Collects the nodes while walking the hierarchy depth-first (also used by
+     * {@link SAHBVH#build(BBox[], int[], Builder)} for {@link TriangleMesh})
+     */
+    static final class Builder {
+        private float[] bounds = new float[BOUNDS * 64];
+        private int[] links = new int[LINKS * 64];
+        private int nodes = 0;
+        int depth = 0;
+        final List<Obj> objects = new ArrayList<>();
+
+        // appends the node and its subtree and returns the index of the node:
+        int flatten(final BVHBase bvh, final int level) {
+            final int node = node(bvh.getBounds(), level);
+            if (bvh.getLeft() == null) {
+                leaf(node, objects.size(), bvh.getObjects().size());
+                objects.addAll(bvh.getObjects());
+            } else {
+                flatten(bvh.getLeft(), level + 1);
+                inner(node, flatten(bvh.getRight(), level + 1));
+            }
+            return node;
+        }
+
+        // appends a node with the given box, whose links are set once its
+        // subtree is known, and returns its index:
+        int node(final BBox nodeBox, final int level) {
+            final int node = nodes++;
+            if (BOUNDS * nodes > bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                links = Arrays.copyOf(links, 2 * links.length);
+            }
+            for (int dim = 0; dim < 3; dim++) {
+                bounds[BOUNDS * node + dim] = nodeBox.getMin().get(dim);
+                bounds[BOUNDS * node + 3 + dim] = nodeBox.getMax().get(dim);
+            }
+            depth = Math.max(depth, level);
+            return node;
+        }
+
+        // makes the node a leaf over count objects starting at first:
+        void leaf(final int node, final int first, final int count) {
+            links[LINKS * node] = first;
+            links[LINKS * node + 1] = count;
+        }
+
+        // makes the node an inner node, its left child directly follows it:
+        void inner(final int node, final int right) {
+            links[LINKS * node] = right;
+            links[LINKS * node + 1] = -1;
+        }
+
+        float[] bounds() {
+            return Arrays.copyOf(bounds, BOUNDS * nodes);
+        }
+
+        int[] links() {
+            return Arrays.copyOf(links, LINKS * nodes);
+        }
+    }
+
+    /**
+     * Returns the bounding box of the root node (infinite if there are unbounded
+     * objects)
+     */
+    @Override
+    public BBox bbox() {
+        return unbounded.length == 0 ? box : BBox.INF;
+    }
+
+    /**
+     * Throws an IllegalStateException, the hierarchy cannot be changed once it
+     * has been flattened
+     */
+    @Override
+    public void add(final Obj prim) {
+        throw new IllegalStateException("add called on a frozen BVH");
+    }
+
+    /**
+     * Returns the number of nodes
+     *
+     * @return The number of nodes
+     */
+    public int getNodeCount() {
+        return links.length / LINKS;
+    }
+
+    // the flattened arrays, for writing snapshots:
+
+    float[] getBounds() {
+        return bounds;
+    }
+
+    int[] getLinks() {
+        return links;
+    }
+
+    Obj[] getObjects() {
+        return objects;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Computes a hit point with the given parameters
+     *
+     * @param ray
+     *            The ray to compute the intersection with
+     * @param obj
+     *            The object to compute the intersection with
+     * @param tmin
+     *            The minimum distance
+     * @param tmax
+     *            The maximum distance
+     * @return The computed hit
+     */
+    @Override
+    public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+        final HitRecord record = new HitRecord(tmax);
+        return intersect(ray, obj, tmin, record) ? record.toHit(ray) : Hit.No.get();
+    }
+
+    /**
+     * Records the closest hit of the ray with the objects, only testing the
+     * objects the ray may reach before the closest hit found so far
+     */
+    @Override
+    public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+        return traverse(ray, tmin, record.getParameter(), record);
+    }
+
+    /**
+     * Checks whether any object is hit between tmin and tmax, stopping at the
+     * first hit found
+     */
+    @Override
+    public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+        return traverse(ray, tmin, tmax, null);
+    }
+
+    // records the closest hit, or only looks for any hit if record is null:
+    private boolean traverse(final Ray ray, final float tmin, float tmax, final HitRecord record) {
+        boolean found = false;
+        for (final Obj p : unbounded) {
+            if (record == null) {
+                if (p.occluded(ray, tmin, tmax)) {
+                    return true;
+                }
+            } else if (p.intersect(ray, p, tmin, record)) {
+                found = true;
+                tmax = record.getParameter();
+            }
+        }
+        return traverse(bounds, links, depth, ray, tmin, tmax, record, leaves) || found;
+    }
+
+    // the leaf test of the traversal, see Leaf:
+    private boolean testLeaf(final int first, final int count, final Ray ray, final float tmin, float tmax,
+            final HitRecord record) {
+        boolean found = false;
+        for (int i = first; i < first + count; i++) {
+            final Obj p = objects[i];
+            if (record == null) {
+                if (p.occluded(ray, tmin, tmax)) {
+                    return true;
+                }
+            } else if (p.intersect(ray, p, tmin, record)) {
+                found = true;
+                tmax = record.getParameter();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Tests the objects of a leaf for
+     * {@link FlatBVH#traverse(float[], int[], int, Ray, float, float, HitRecord, Leaf)}
+     */
+    interface Leaf {
+        /**
+         * Tests the objects of a leaf
+         *
+         * @param first
+         *            The index of the first object of the leaf
+         * @param count
+         *            The number of objects of the leaf
+         * @param ray
+         *            The ray
+         * @param tmin
+         *            The minimum distance
+         * @param tmax
+         *            The maximum distance
+         * @param record
+         *            The record of the closest hit, or null if any hit will do
+         * @return True if the record has been updated, or anything is hit if
+         *         there is no record
+         */
+        boolean test(int first, int count, Ray ray, float tmin, float tmax, HitRecord record);
+    }
+
+    /**
+     * Walks a hierarchy in the layout of FlatBVH front to back and hands the
+     * leaves the ray enters to the given test. The closest hit is recorded,
+     * or the walk stops at the first hit if record is null.
+     *
+     * @param bounds
+     *            The boxes of the nodes
+     * @param links
+     *            The links of the nodes
+     * @param depth
+     *            The number of levels of the hierarchy
+     * @param ray
+     *            The ray
+     * @param tmin
+     *            The minimum distance
+     * @param tmax
+     *            The maximum distance
+     * @param record
+     *            The record of the closest hit, or null if any hit will do
+     * @param leaf
+     *            The test of the objects of a leaf
+     * @return True if the record has been updated, or anything is hit if there
+     *         is no record
+     */
+    static boolean traverse(final float[] bounds, final int[] links, final int depth, final Ray ray,
+            final float tmin, float tmax, final HitRecord record, final Leaf leaf) {
+        if (links.length == 0) {
+            return false;
+        }
+
+        final Point base = ray.base();
+        final Vec3 dir = ray.dir();
+        final float ox = base.x(), oy = base.y(), oz = base.z();
+        final float ix = ray.invX(), iy = ray.invY(), iz = ray.invZ();
+        // the offsets of the near planes, the far planes are 3 further:
+        final int nx = dir.isNeg(0) * 3, ny = 1 + dir.isNeg(1) * 3, nz = 2 + dir.isNeg(2) * 3;
+
+        // the stack holds nodes whose box is entered but not yet visited:
+        final int[] stack = new int[depth];
+        final float[] entries = new float[depth];
+        int top = 0;
+        int node = 0;
+        boolean found = false;
+        if (Float.isNaN(entry(bounds, 0, ox, oy, oz, ix, iy, iz, nx, ny, nz, tmin, tmax))) {
+            return false;
+        }
+
+        while (true) {
+            final int count = links[LINKS * node + 1];
+            if (count >= 0) {
+                if (leaf.test(links[LINKS * node], count, ray, tmin, tmax, record)) {
+                    if (record == null) {
+                        return true;
+                    }
+                    found = true;
+                    tmax = record.getParameter();
+                }
+            } else {
+                int near = node + 1;
+                int far = links[LINKS * node];
+                float tNear = entry(bounds, near, ox, oy, oz, ix, iy, iz, nx, ny, nz, tmin, tmax);
+                float tFar = entry(bounds, far, ox, oy, oz, ix, iy, iz, nx, ny, nz, tmin, tmax);
+                if (Float.isNaN(tNear) || tFar < tNear) {
+                    final int n = near;
+                    near = far;
+                    far = n;
+                    final float t = tNear;
+                    tNear = tFar;
+                    tFar = t;
+                }
+                if (tNear <= tmax) {
+                    if (tFar <= tmax) {
+                        stack[top] = far;
+                        entries[top++] = tFar;
+                    }
+                    node = near;
+                    continue;
+                }
+            }
+
+            // pop the next node, skipping those a closer hit has made unreachable:
+            node = -1;
+            while (top > 0) {
+                if (entries[--top] <= tmax) {
+                    node = stack[top];
+                    break;
+                }
+            }
+            if (node < 0) {
+                return found;
+            }
+        }
+    }
+
+    /**
+     * Records the closest hits of the active rays of the packet. The packet
+     * walks the nodes as a whole, like a single ray does, keeping the mask of
+     * the rays entering each node on the stack.
+     */
+    @Override
+    public long intersect(final RayPacket packet, final long active, final Obj obj, final float tmin) {
+        long found = 0;
+        for (final Obj p : unbounded) {
+            found |= p.intersect(packet, active, p, tmin);
+        }
+        if (links.length == 0) {
+            return found;
+        }
+
+        final int[] stack = new int[depth];
+        final long[] masks = new long[depth];
+        int top = 0;
+        int node = 0;
+        long rays = cull(packet, 0, active, tmin);
+        if (rays == 0) {
+            return found;
+        }
+
+        while (true) {
+            final int count = links[LINKS * node + 1];
+            if (count >= 0) {
+                final int first = links[LINKS * node];
+                for (int i = first; i < first + count; i++) {
+                    final Obj p = objects[i];
+                    found |= p.intersect(packet, rays, p, tmin);
+                }
+            } else {
+                int near = node + 1;
+                int far = links[LINKS * node];
+                long nearRays = cull(packet, near, rays, tmin);
+                final float tNear = packet.entry();
+                long farRays = cull(packet, far, rays, tmin);
+                final float tFar = packet.entry();
+                if (nearRays == 0 || tFar < tNear) {
+                    final int n = near;
+                    near = far;
+                    far = n;
+                    final long r = nearRays;
+                    nearRays = farRays;
+                    farRays = r;
+                }
+                if (nearRays != 0) {
+                    if (farRays != 0) {
+                        stack[top] = far;
+                        masks[top++] = farRays;
+                    }
+                    node = near;
+                    rays = nearRays;
+                    continue;
+                }
+            }
+
+            // pop the next node with the rays closer hits have not pruned yet:
+            node = -1;
+            while (top > 0) {
+                top--;
+                rays = cull(packet, stack[top], masks[top], tmin);
+                if (rays != 0) {
+                    node = stack[top];
+                    break;
+                }
+            }
+            if (node < 0) {
+                return found;
+            }
+        }
+    }
+
+    // the packet test of the node's box, see RayPacket.cull:
+    private long cull(final RayPacket packet, final int node, final long active, final float tmin) {
+        final int b = BOUNDS * node;
+        return packet.cull(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5],
+                active, tmin);
+    }
+
+    // the slab test of BBox.entry on the flat bounds (NaN on a miss):
+    private static float entry(final float[] bounds, final int node, final float ox, final float oy,
+            final float oz, final float ix, final float iy, final float iz, final int nx, final int ny, final int nz,
+            float tmin, float tmax) {
+        final int b = BOUNDS * node;
+        float t0 = (bounds[b + nx] - ox) * ix;
+        float t1 = (bounds[b + 3 - nx] - ox) * ix;
+        if (t0 > tmin)
+            tmin = t0;
+        if (t1 < tmax)
+            tmax = t1;
+        t0 = (bounds[b + ny] - oy) * iy;
+        t1 = (bounds[b + 5 - ny] - oy) * iy;
+        if (t0 > tmin)
+            tmin = t0;
+        if (t1 < tmax)
+            tmax = t1;
+        t0 = (bounds[b + nz] - oz) * iz;
+        t1 = (bounds[b + 7 - nz] - oz) * iz;
+        if (t0 > tmin)
+            tmin = t0;
+        if (t1 < tmax)
+            tmax = t1;
+        return tmin <= tmax ? tmin : Float.NaN;
+    }
+}
@@ -0,0 +1,384 @@
+package raytracer.core.def;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.geom.BBox;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a uniform grid over the bounded objects of a scene. The grid
+ * resolution follows from the number of objects and the extent of the scene,
+ * rays march through the cells with a 3D-DDA and stop as soon as the nearest
+ * hit lies within the current cell. Unbounded objects (such as planes) are
+ * kept out of the grid and tested separately.
+ *
+ * The grid has to be built with {@link #build()} after all objects have been
+ * added.
+ */
+public class Grid extends Accelerator {
+
+    /**
+     * The default number of cells per object
+     */
+    public static final float DEFAULT_DENSITY = 4;
+
+    /**
+     * The maximum number of cells along one axis
+     */
+    public static final int MAX_RESOLUTION = 256;
+
+    private final float density;
+
+    private final List<Obj> objects = new ArrayList<>();
+    private final List<Obj> unbounded = new ArrayList<>();
+    private BBox box = null;
+
+    // the built grid, every cell refers to the range cellStart[c] to
+    // cellStart[c + 1] of cellObjects, which index into prims:
+    private Obj[] prims = null;
+    private int[] cellStart;
+    private int[] cellObjects;
+    private final int[] res = new int[3];
+    private final float[] min = new float[3];
+    private final float[] cellSize = new float[3];
+
+    // remembers per thread which object was tested by which ray:
+    private final ThreadLocal<Mailbox> mailboxes = new ThreadLocal<>();
+
+    /**
+     * Creates a grid with the default density
+     */
+    public Grid() {
+        this(DEFAULT_DENSITY);
+    }
+
+    /**
+     * Creates a grid with the given density
+     *
+     * @param density
+     *            The number of cells per object
+     */
+    public Grid(final float density) {
+        if (!(density > 0) || Float.isInfinite(density)) {
+            throw new IllegalArgumentException("density must be positive and finite");
+        }
+        this.density = density;
+    }
+
+    /**
+     * Adds an object to the grid, the grid has to be (re)built afterwards
+     *
+     * @param prim
+     *            The object to add
+     */
+    @Override
+    public void add(final Obj prim) {
+        final BBox bbox = prim.bbox();
+        if (!bbox.isFinite()) {
+            unbounded.add(prim);
+            return;
+        }
+        objects.add(prim);
+        box = box == null ? bbox : BBox.surround(box, bbox);
+        prims = null;
+    }
+
+    /**
+     * Adds all given objects to the grid, the grid has to be (re)built afterwards
+     *
+     * @param prims
+     *            The objects to add
+     */
+    @Override
+    public void addAll(final Collection<? extends Obj> prims) {
+        if (prims == null) {
+            throw new IllegalArgumentException("prims must not be null");
+        }
+        final List<Obj> bounded = new ArrayList<>(prims.size());
+        for (final Obj prim : prims) {
+            (prim.bbox().isFinite() ? bounded : unbounded).add(prim);
+        }
+        if (bounded.isEmpty()) {
+            return;
+        }
+        objects.addAll(bounded);
+        final BBox added = surround(bounded);
+        box = box == null ? added : BBox.surround(box, added);
+        this.prims = null;
+    }
+
+    /**
+     * Returns the bounding box of all objects (infinite if there are unbounded
+     * objects)
+     */
+    @Override
+    public BBox bbox() {
+        if (!unbounded.isEmpty()) {
+            return BBox.INF;
+        }
+        return box != null ? box : BBox.EMPTY;
+    }
+
+    /**
+     * Returns the number of cells along the given axis
+     *
+     * @param dim
+     *            The axis
+     * @return The number of cells
+     */
+    public int getResolution(final int dim) {
+        return res[dim];
+    }
+
+    /**
+     * Builds the grid, see {@link #build()}
+     */
+    @Override
+    public void commit() {
+        build();
+    }
+
+    /**
+     * Builds the grid over all bounded objects added so far
+     */
+    public void build() {
+        final Obj[] all = objects.toArray(new Obj[0]);
+        if (all.length == 0) {
+            Arrays.fill(res, 0);
+            cellStart = new int[1];
+            cellObjects = new int[0];
+            prims = all;
+            return;
+        }
+
+        resolve(all.length);
+        final int cells = res[0] * res[1] * res[2];
+
+        // count the references of every cell, then fill them in (CSR layout):
+        final int[] range = new int[6];
+        final int[] start = new int[cells + 1];
+        for (final Obj obj : all) {
+            cells(obj.bbox(), range);
+            for (int z = range[2]; z <= range[5]; z++)
+                for (int y = range[1]; y <= range[4]; y++)
+                    for (int x = range[0]; x <= range[3]; x++)
+                        start[cell(x, y, z) + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            start[c + 1] += start[c];
+        }
+
+        final int[] refs = new int[start[cells]];
+        final int[] fill = Arrays.copyOf(start, cells);
+        for (int i = 0; i < all.length; i++) {
+            cells(all[i].bbox(), range);
+            for (int z = range[2]; z <= range[5]; z++)
+                for (int y = range[1]; y <= range[4]; y++)
+                    for (int x = range[0]; x <= range[3]; x++)
+                        refs[fill[cell(x, y, z)]++] = i;
+        }
+
+        cellStart = start;
+        cellObjects = refs;
+        prims = all;
+    }
+
+    // chooses the resolution so that there are about density cells per object:
+    private void resolve(final int n) {
+        final Point lo = box.getMin(), hi = box.getMax();
+        float maxExtent = 0;
+        for (int dim = 0; dim < 3; dim++) {
+            maxExtent = Math.max(maxExtent, hi.get(dim) - lo.get(dim));
+        }
+        // flat scenes still get a volume, the thin axes simply get one cell:
+        final float minExtent = maxExtent > 0 ? maxExtent * 1e-3f : 1;
+        float volume = 1;
+        for (int dim = 0; dim < 3; dim++) {
+            volume *= Math.max(hi.get(dim) - lo.get(dim), minExtent);
+        }
+        final double cellsPerUnit = Math.cbrt(density * n / volume);
+
+        for (int dim = 0; dim < 3; dim++) {
+            final float extent = hi.get(dim) - lo.get(dim);
+            res[dim] = (int) Math.max(1, Math.min(MAX_RESOLUTION, Math.round(extent * cellsPerUnit)));
+            min[dim] = lo.get(dim);
+            cellSize[dim] = extent > 0 ? extent / res[dim] : 1;
+        }
+    }
+
+    private int cell(final int x, final int y, final int z) {
+        return (z * res[1] + y) * res[0] + x;
+    }
+
+    private int index(final float v, final int dim) {
+        final int i = (int) Math.floor((v - min[dim]) / cellSize[dim]);
+        return Math.max(0, Math.min(res[dim] - 1, i));
+    }
+
+    // computes the cell range overlapped by the box as min x, y, z, max x, y, z:
+    private void cells(final BBox bbox, final int[] range) {
+        for (int dim = 0; dim < 3; dim++) {
+            range[dim] = index(bbox.getMin().get(dim), dim);
+            range[3 + dim] = index(bbox.getMax().get(dim), dim);
+        }
+    }
+
+    /**
+     * Remembers the last ray every object was tested with
+     */
+    private static final class Mailbox {
+        private final int[] rays;
+        private int ray = 0;
+
+        private Mailbox(final int n) {
+            rays = new int[n];
+        }
+
+        private int next() {
+            if (++ray == 0) {
+                Arrays.fill(rays, 0);
+                ray = 1;
+            }
+            return ray;
+        }
+    }
+
+    /**
+     * Computes a hit point with the given parameters
+     *
+     * @param ray
+     *            The ray to compute the intersection with
+     * @param obj
+     *            The object to compute the intersection with
+     * @param tmin
+     *            The minimum distance
+     * @param tmax
+     *            The maximum distance
+     * @return The computed hit
+     */
+    @Override
+    public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+        final HitRecord record = new HitRecord(tmax);
+        return intersect(ray, obj, tmin, record) ? record.toHit(ray) : Hit.No.get();
+    }
+
+    /**
+     * Records the closest hit of the ray with the objects, only testing the
+     * objects the ray may reach before the closest hit found so far
+     */
+    @Override
+    public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+        return traverse(ray, tmin, record.getParameter(), record);
+    }
+
+    /**
+     * Checks whether any object is hit between tmin and tmax, stopping at the
+     * first hit found
+     */
+    @Override
+    public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+        return traverse(ray, tmin, tmax, null);
+    }
+
+    // records the closest hit, or only looks for any hit if record is null:
+    private boolean traverse(final Ray ray, final float tmin, float tmax, final HitRecord record) {
+        final Obj[] prims = this.prims;
+        if (prims == null) {
+            throw new IllegalStateException("hit called on a grid that has not been built");
+        }
+
+        boolean found = false;
+        for (final Obj p : unbounded) {
+            if (record == null) {
+                if (p.occluded(ray, tmin, tmax)) {
+                    return true;
+                }
+            } else if (p.intersect(ray, p, tmin, record)) {
+                found = true;
+                tmax = record.getParameter();
+            }
+        }
+        if (prims.length == 0) {
+            return found;
+        }
+        final float entry = box.entry(ray, tmin, tmax);
+        if (Float.isNaN(entry)) {
+            return found;
+        }
+
+        final Point base = ray.base();
+        final Vec3 dir = ray.dir();
+        final Point start = ray.eval(entry);
+        final int[] cell = new int[3];
+        final int[] step = new int[3];
+        final float[] next = new float[3];
+        final float[] delta = new float[3];
+        for (int dim = 0; dim < 3; dim++) {
+            cell[dim] = index(start.get(dim), dim);
+            final float d = dir.get(dim);
+            final float inv = ray.inv(dim);
+            if (d > 0) {
+                step[dim] = 1;
+                next[dim] = (min[dim] + (cell[dim] + 1) * cellSize[dim] - base.get(dim)) * inv;
+                delta[dim] = cellSize[dim] * inv;
+            } else if (d < 0) {
+                step[dim] = -1;
+                next[dim] = (min[dim] + cell[dim] * cellSize[dim] - base.get(dim)) * inv;
+                delta[dim] = -cellSize[dim] * inv;
+            } else {
+                step[dim] = 0;
+                next[dim] = Float.POSITIVE_INFINITY;
+                delta[dim] = Float.POSITIVE_INFINITY;
+            }
+        }
+
+        Mailbox mailbox = mailboxes.get();
+        if (mailbox == null || mailbox.rays.length != prims.length) {
+            mailbox = new Mailbox(prims.length);
+            mailboxes.set(mailbox);
+        }
+        final int id = mailbox.next();
+        while (true) {
+            final int c = cell(cell[0], cell[1], cell[2]);
+            for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                final int k = cellObjects[i];
+                if (mailbox.rays[k] == id) {
+                    continue;
+                }
+                mailbox.rays[k] = id;
+                final Obj p = prims[k];
+                if (record == null) {
+                    if (p.occluded(ray, tmin, tmax)) {
+                        return true;
+                    }
+                } else if (p.intersect(ray, p, tmin, record)) {
+                    found = true;
+                    tmax = record.getParameter();
+                }
+            }
+
+            // step along the axis whose cell boundary is crossed first:
+            final int dim = next[0] < next[1] ? (next[0] < next[2] ? 0 : 2) : (next[1] < next[2] ? 1 : 2);
+            final float exit = next[dim];
+            // a hit inside the current cell cannot be beaten by any later cell:
+            if (tmax <= exit) {
+                break;
+            }
+            cell[dim] += step[dim];
+            if (cell[dim] < 0 || cell[dim] >= res[dim]) {
+                break;
+            }
+            next[dim] += delta[dim];
+        }
+
+        return found;
+    }
+}
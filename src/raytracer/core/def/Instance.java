@@ -0,0 +1,214 @@
+package raytracer.core.def;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.core.Trace;
+import raytracer.geom.BBox;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Transform;
+import raytracer.math.Vec2;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a placed copy of an object, usually a bottom-level acceleration
+ * structure built once per mesh. Rays are transformed into the object space
+ * of the instance and the resulting hits back into world space, so any number
+ * of instances share the same geometry. Instances are added to a top-level
+ * acceleration structure like any other object.
+ */
+public class Instance implements Obj {
+
+	private final Obj object;
+	private final Transform transform;
+	private final BBox bbox;
+
+	/**
+	 * Creates a new instance
+	 *
+	 * @param object
+	 *            The shared object (in object space)
+	 * @param transform
+	 *            The transformation from object space to world space
+	 */
+	public Instance(final Obj object, final Transform transform) {
+		if (object == null || transform == null)
+			throw new IllegalArgumentException("object and transform must not be null");
+		this.object = object;
+		this.transform = transform;
+		this.bbox = transformBBox(object.bbox(), transform);
+	}
+
+	// the world space box surrounding the eight transformed corners:
+	private static BBox transformBBox(final BBox box, final Transform transform) {
+		if (!box.isFinite())
+			return BBox.INF;
+		BBox result = null;
+		for (int corner = 0; corner < 8; corner++) {
+			final Point p = transform.apply(new Point(
+					(corner & 1) == 0 ? box.getMin().x() : box.getMax().x(),
+					(corner & 2) == 0 ? box.getMin().y() : box.getMax().y(),
+					(corner & 4) == 0 ? box.getMin().z() : box.getMax().z()));
+			final BBox b = BBox.create(p, p);
+			result = result == null ? b : BBox.surround(result, b);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the shared object
+	 *
+	 * @return The shared object
+	 */
+	public Obj getObject() {
+		return object;
+	}
+
+	/**
+	 * Returns the transformation from object space to world space
+	 *
+	 * @return The transformation
+	 */
+	public Transform getTransform() {
+		return transform;
+	}
+
+	/**
+	 * Returns the world space bounding box of the instance
+	 */
+	@Override
+	public BBox bbox() {
+		return bbox;
+	}
+
+	/**
+	 * Throws an IllegalStateException, the hits of an instance refer to the
+	 * objects of the shared geometry
+	 */
+	@Override
+	public Color shade(final Hit hit, final Trace trace) {
+		throw new IllegalStateException("shade called on an instance");
+	}
+
+	/**
+	 * Computes a hit point with the given parameters
+	 *
+	 * @param ray
+	 *            The ray to compute the intersection with
+	 * @param obj
+	 *            The object to compute the intersection with
+	 * @param tmin
+	 *            The minimum distance
+	 * @param tmax
+	 *            The maximum distance
+	 * @return The computed hit
+	 */
+	@Override
+	public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+		final Vec3 dir = transform.applyInverse(ray.dir());
+		// distances along the normalized object space ray are scaled by this:
+		final float scale = dir.norm();
+		final Ray local = new Ray(transform.applyInverse(ray.base()), dir.scale(1 / scale));
+		final Hit hit = object.hit(local, object, tmin * scale, tmax * scale);
+		if (!hit.hits())
+			return Hit.No.get();
+		return new InstanceHit(hit, scale);
+	}
+
+	/**
+	 * Intersects the shared geometry through its own allocation-free path and
+	 * records the closest hit with this instance as the primitive. The record
+	 * keeps the world space distance and normal; the object space distance is
+	 * kept as the first surface parameter, so that
+	 * {@link #toHit(Ray, HitRecord)} finds the hit again.
+	 */
+	@Override
+	public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		final Vec3 dir = transform.applyInverse(ray.dir());
+		final float scale = dir.norm();
+		final Ray local = new Ray(transform.applyInverse(ray.base()), dir.scale(1 / scale));
+		final HitRecord inner = new HitRecord(record.getParameter() * scale);
+		if (!object.intersect(local, object, tmin * scale, inner) || !record.accepts(inner.getParameter() / scale))
+			return false;
+		final Vec3 normal = transform.applyNormal(inner.getNormal()).normalized();
+		record.set(inner.getParameter() / scale, inner.getParameter(), 0, normal.x(), normal.y(), normal.z(), this,
+				inner.get());
+		return true;
+	}
+
+	/**
+	 * Creates the hit recorded by {@link #intersect(Ray, Obj, float, HitRecord)}
+	 * by intersecting the shared geometry again at the recorded object space
+	 * distance
+	 */
+	@Override
+	public Hit toHit(final Ray ray, final HitRecord record) {
+		final Vec3 dir = transform.applyInverse(ray.dir());
+		final float scale = dir.norm();
+		final Ray local = new Ray(transform.applyInverse(ray.base()), dir.scale(1 / scale));
+		final Hit hit = object.hit(local, object, record.getU(), record.getU());
+		if (!hit.hits())
+			return Hit.No.get();
+		return new InstanceHit(hit, scale);
+	}
+
+	/**
+	 * Checks whether the shared geometry is hit between tmin and tmax, with
+	 * the distances scaled like in {@link #hit(Ray, Obj, float, float)}
+	 */
+	@Override
+	public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+		final Vec3 dir = transform.applyInverse(ray.dir());
+		final float scale = dir.norm();
+		final Ray local = new Ray(transform.applyInverse(ray.base()), dir.scale(1 / scale));
+		return object.occluded(local, tmin * scale, tmax * scale);
+	}
+
+	/**
+	 * Represents a hit of the shared geometry, transformed into world space
+	 */
+	private final class InstanceHit implements Hit {
+		private final Hit hit;
+		private final float scale;
+		private Point point = null;
+
+		private InstanceHit(final Hit hit, final float scale) {
+			this.hit = hit;
+			this.scale = scale;
+		}
+
+		@Override
+		public float getParameter() {
+			return hit.getParameter() / scale;
+		}
+
+		@Override
+		public Point getPoint() {
+			if (point == null)
+				point = transform.apply(hit.getPoint());
+			return point;
+		}
+
+		@Override
+		public Vec3 getNormal() {
+			return transform.applyNormal(hit.getNormal()).normalized();
+		}
+
+		@Override
+		public Vec2 getUV() {
+			return hit.getUV();
+		}
+
+		@Override
+		public Obj get() {
+			return hit.get();
+		}
+
+		@Override
+		public boolean hits() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,558 @@
+package raytracer.core.def;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.geom.BBox;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a kd-tree over the bounded objects of a scene. Split planes are
+ * chosen with the surface area heuristic by sweeping over the sorted start,
+ * end and planar events of the object boxes. The events are sorted once and
+ * split in order while descending, so the build takes O(n log n). Objects
+ * straddling a split plane are referenced by both children, their boxes are
+ * clipped to the child voxels. Unbounded objects (such as planes) are kept out
+ * of the tree and tested separately.
+ *
+ * The tree has to be built with {@link #build()} after all objects have been
+ * added.
+ */
+public class KdTree extends Accelerator {
+
+    /**
+     * The estimated cost of traversing an inner node
+     */
+    public static final float TRAVERSAL_COST = 15;
+
+    /**
+     * The estimated cost of intersecting an object
+     */
+    public static final float INTERSECTION_COST = 20;
+
+    /**
+     * The factor the cost of a split with an empty side is reduced by
+     */
+    public static final float EMPTY_BONUS = 0.8f;
+
+    private static final int END = 0, PLANAR = 1, START = 2;
+    private static final int BOTH = 0, LEFT = 1, RIGHT = 2;
+
+    private final List<Obj> objects = new ArrayList<>();
+    private final List<Obj> unbounded = new ArrayList<>();
+    private BBox box = null;
+
+    // every node stores two links: inner nodes keep the split axis and the
+    // index of the child above the split (the child below directly follows),
+    // leaves keep -(count + 1) and the index of their first object
+    private int[] links = null;
+    private float[] splits;
+    private Obj[] leafObjects;
+    private int depth;
+
+    /**
+     * Adds an object to the tree, the tree has to be (re)built afterwards
+     *
+     * @param prim
+     *            The object to add
+     */
+    @Override
+    public void add(final Obj prim) {
+        final BBox bbox = prim.bbox();
+        if (!bbox.isFinite()) {
+            unbounded.add(prim);
+            return;
+        }
+        objects.add(prim);
+        box = box == null ? bbox : BBox.surround(box, bbox);
+        links = null;
+    }
+
+    /**
+     * Adds all given objects to the tree, the tree has to be (re)built afterwards
+     *
+     * @param prims
+     *            The objects to add
+     */
+    @Override
+    public void addAll(final Collection<? extends Obj> prims) {
+        if (prims == null) {
+            throw new IllegalArgumentException("prims must not be null");
+        }
+        final List<Obj> bounded = new ArrayList<>(prims.size());
+        for (final Obj prim : prims) {
+            (prim.bbox().isFinite() ? bounded : unbounded).add(prim);
+        }
+        if (bounded.isEmpty()) {
+            return;
+        }
+        objects.addAll(bounded);
+        final BBox added = surround(bounded);
+        box = box == null ? added : BBox.surround(box, added);
+        links = null;
+    }
+
+    /**
+     * Returns the bounding box of all objects (infinite if there are unbounded
+     * objects)
+     */
+    @Override
+    public BBox bbox() {
+        if (!unbounded.isEmpty()) {
+            return BBox.INF;
+        }
+        return box != null ? box : BBox.EMPTY;
+    }
+
+    /**
+     * Returns the number of nodes
+     *
+     * @return The number of nodes
+     */
+    public int getNodeCount() {
+        return links == null ? 0 : splits.length;
+    }
+
+    /**
+     * Builds the tree, see {@link #build()}
+     */
+    @Override
+    public void commit() {
+        build();
+    }
+
+    /**
+     * Builds the tree over all bounded objects added so far
+     */
+    public void build() {
+        final Builder builder = new Builder(objects.toArray(new Obj[0]));
+        if (builder.objs.length > 0) {
+            builder.build();
+        }
+        links = Arrays.copyOf(builder.links, 2 * builder.nodes);
+        splits = Arrays.copyOf(builder.splits, builder.nodes);
+        leafObjects = builder.leafObjects.toArray(new Obj[0]);
+        depth = builder.depth;
+    }
+
+    /**
+     * A start, end or planar event of an object box along one axis
+     */
+    private static final class Event implements Comparable<Event> {
+        private final int obj;
+        private final int axis;
+        private final int type;
+        private final float pos;
+
+        private Event(final int obj, final int axis, final int type, final float pos) {
+            this.obj = obj;
+            this.axis = axis;
+            this.type = type;
+            this.pos = pos;
+        }
+
+        @Override
+        public int compareTo(final Event e) {
+            if (axis != e.axis) {
+                return axis - e.axis;
+            }
+            final int c = Float.compare(pos, e.pos);
+            return c != 0 ? c : type - e.type;
+        }
+    }
+
+    /**
+     * Builds the nodes depth-first
+     */
+    private static final class Builder {
+        private final Obj[] objs;
+        private final int maxDepth;
+
+        // per object scratch space of the node that is currently split:
+        private final int[] sides;
+        private final float[] clipped;
+
+        private int[] links = new int[2 * 64];
+        private float[] splits = new float[64];
+        private int nodes = 0;
+        private int depth = 0;
+        private final List<Obj> leafObjects = new ArrayList<>();
+
+        // the best split of the node that is currently split:
+        private int bestAxis;
+        private float bestPos;
+        private int bestSide;
+
+        private Builder(final Obj[] objs) {
+            this.objs = objs;
+            this.maxDepth = (int) (8 + 1.3 * Math.log(Math.max(1, objs.length)) / Math.log(2));
+            this.sides = new int[objs.length];
+            this.clipped = new float[6 * objs.length];
+        }
+
+        private void build() {
+            final float[] voxel = new float[6];
+            Arrays.fill(voxel, 0, 3, Float.POSITIVE_INFINITY);
+            Arrays.fill(voxel, 3, 6, Float.NEGATIVE_INFINITY);
+            final List<Event> events = new ArrayList<>(6 * objs.length);
+            final float[] bounds = new float[6];
+            for (int i = 0; i < objs.length; i++) {
+                final BBox bbox = objs[i].bbox();
+                for (int dim = 0; dim < 3; dim++) {
+                    bounds[dim] = bbox.getMin().get(dim);
+                    bounds[3 + dim] = bbox.getMax().get(dim);
+                    voxel[dim] = Math.min(voxel[dim], bounds[dim]);
+                    voxel[3 + dim] = Math.max(voxel[3 + dim], bounds[3 + dim]);
+                }
+                addEvents(i, bounds, events);
+            }
+            events.sort(null);
+            node(events, objs.length, voxel, 1);
+        }
+
+        private static void addEvents(final int obj, final float[] bounds, final List<Event> events) {
+            for (int dim = 0; dim < 3; dim++) {
+                if (bounds[dim] == bounds[3 + dim]) {
+                    events.add(new Event(obj, dim, PLANAR, bounds[dim]));
+                } else {
+                    events.add(new Event(obj, dim, START, bounds[dim]));
+                    events.add(new Event(obj, dim, END, bounds[3 + dim]));
+                }
+            }
+        }
+
+        private int allocate() {
+            final int node = nodes++;
+            if (nodes > splits.length) {
+                splits = Arrays.copyOf(splits, 2 * splits.length);
+                links = Arrays.copyOf(links, 2 * links.length);
+            }
+            return node;
+        }
+
+        // appends the subtree over the given (sorted) events:
+        private void node(final List<Event> events, final int n, final float[] voxel, final int level) {
+            final int node = allocate();
+            depth = Math.max(depth, level);
+
+            if (level >= maxDepth || !findSplit(events, n, voxel)) {
+                links[2 * node] = -(n + 1);
+                links[2 * node + 1] = leafObjects.size();
+                for (final Event e : events) {
+                    // every object has exactly one start or planar event along x:
+                    if (e.axis == 0 && e.type != END) {
+                        leafObjects.add(objs[e.obj]);
+                    }
+                }
+                return;
+            }
+
+            final int axis = bestAxis;
+            final float pos = bestPos;
+            final int side = bestSide;
+
+            // classify the objects and remember the clipped boxes of the straddling ones:
+            for (final Event e : events) {
+                sides[e.obj] = BOTH;
+            }
+            for (final Event e : events) {
+                if (e.type != END) {
+                    clipped[6 * e.obj + e.axis] = e.pos;
+                }
+                if (e.type != START) {
+                    clipped[6 * e.obj + 3 + e.axis] = e.pos;
+                }
+                if (e.axis != axis) {
+                    continue;
+                }
+                if (e.type == END && e.pos <= pos) {
+                    sides[e.obj] = LEFT;
+                } else if (e.type == START && e.pos >= pos) {
+                    sides[e.obj] = RIGHT;
+                } else if (e.type == PLANAR) {
+                    sides[e.obj] = e.pos < pos || (e.pos == pos && side == LEFT) ? LEFT : RIGHT;
+                }
+            }
+
+            // split the events in order, clipping the straddling objects:
+            final List<Event> left = new ArrayList<>(), right = new ArrayList<>();
+            final List<Event> bothLeft = new ArrayList<>(), bothRight = new ArrayList<>();
+            int nl = 0, nr = 0;
+            final float[] bounds = new float[6];
+            for (final Event e : events) {
+                final int s = sides[e.obj];
+                if (s == LEFT) {
+                    left.add(e);
+                } else if (s == RIGHT) {
+                    right.add(e);
+                }
+                // count every object once, generating the clipped events of straddling ones:
+                if (e.axis != 0 || e.type == END) {
+                    continue;
+                }
+                if (s == LEFT) {
+                    nl++;
+                } else if (s == RIGHT) {
+                    nr++;
+                } else {
+                    nl++;
+                    nr++;
+                    System.arraycopy(clipped, 6 * e.obj, bounds, 0, 6);
+                    bounds[3 + axis] = pos;
+                    addEvents(e.obj, bounds, bothLeft);
+                    System.arraycopy(clipped, 6 * e.obj, bounds, 0, 6);
+                    bounds[axis] = pos;
+                    addEvents(e.obj, bounds, bothRight);
+                }
+            }
+            bothLeft.sort(null);
+            bothRight.sort(null);
+
+            final float[] leftVoxel = voxel.clone(), rightVoxel = voxel.clone();
+            leftVoxel[3 + axis] = pos;
+            rightVoxel[axis] = pos;
+
+            final List<Event> leftEvents = merge(left, bothLeft), rightEvents = merge(right, bothRight);
+            // release the parent's events before descending:
+            events.clear();
+            left.clear();
+            right.clear();
+            bothLeft.clear();
+            bothRight.clear();
+            node(leftEvents, nl, leftVoxel, level + 1);
+            leftEvents.clear();
+            final int above = nodes;
+            node(rightEvents, nr, rightVoxel, level + 1);
+            links[2 * node] = axis;
+            links[2 * node + 1] = above;
+            splits[node] = pos;
+        }
+
+        private static List<Event> merge(final List<Event> a, final List<Event> b) {
+            final List<Event> merged = new ArrayList<>(a.size() + b.size());
+            int i = 0, j = 0;
+            while (i < a.size() && j < b.size()) {
+                merged.add(a.get(i).compareTo(b.get(j)) <= 0 ? a.get(i++) : b.get(j++));
+            }
+            merged.addAll(a.subList(i, a.size()));
+            merged.addAll(b.subList(j, b.size()));
+            return merged;
+        }
+
+        // sweeps over the events of every axis, returns false if a leaf is cheaper:
+        private boolean findSplit(final List<Event> events, final int n, final float[] voxel) {
+            final float dx = voxel[3] - voxel[0], dy = voxel[4] - voxel[1], dz = voxel[5] - voxel[2];
+            final float area = 2 * (dx * dy + dy * dz + dz * dx);
+            if (!(area > 0)) {
+                return false;
+            }
+
+            float bestCost = INTERSECTION_COST * n;
+            boolean found = false;
+            final int[] nl = new int[3], np = new int[3], nr = { n, n, n };
+            int i = 0;
+            while (i < events.size()) {
+                final Event first = events.get(i);
+                final int axis = first.axis;
+                final float pos = first.pos;
+                int ends = 0, planars = 0, starts = 0;
+                while (i < events.size() && events.get(i).axis == axis && events.get(i).pos == pos
+                        && events.get(i).type == END) {
+                    ends++;
+                    i++;
+                }
+                while (i < events.size() && events.get(i).axis == axis && events.get(i).pos == pos
+                        && events.get(i).type == PLANAR) {
+                    planars++;
+                    i++;
+                }
+                while (i < events.size() && events.get(i).axis == axis && events.get(i).pos == pos
+                        && events.get(i).type == START) {
+                    starts++;
+                    i++;
+                }
+
+                np[axis] = planars;
+                nr[axis] -= planars + ends;
+
+                // planes on the voxel border do not split anything:
+                if (pos > voxel[axis] && pos < voxel[3 + axis]) {
+                    final float[] extent = { dx, dy, dz };
+                    extent[axis] = pos - voxel[axis];
+                    final float leftArea = 2 * (extent[0] * extent[1] + extent[1] * extent[2] + extent[2] * extent[0]);
+                    extent[axis] = voxel[3 + axis] - pos;
+                    final float rightArea = 2 * (extent[0] * extent[1] + extent[1] * extent[2] + extent[2] * extent[0]);
+                    final float pl = leftArea / area, pr = rightArea / area;
+
+                    final float toLeft = cost(pl, pr, nl[axis] + np[axis], nr[axis]);
+                    final float toRight = cost(pl, pr, nl[axis], nr[axis] + np[axis]);
+                    if (toLeft < bestCost || toRight < bestCost) {
+                        bestCost = Math.min(toLeft, toRight);
+                        bestAxis = axis;
+                        bestPos = pos;
+                        bestSide = toLeft <= toRight ? LEFT : RIGHT;
+                        found = true;
+                    }
+                }
+
+                nl[axis] += starts + planars;
+                np[axis] = 0;
+            }
+            return found;
+        }
+
+        private static float cost(final float pl, final float pr, final int nl, final int nr) {
+            final float cost = TRAVERSAL_COST + INTERSECTION_COST * (pl * nl + pr * nr);
+            return nl == 0 || nr == 0 ? EMPTY_BONUS * cost : cost;
+        }
+    }
+
+    /**
+     * Computes a hit point with the given parameters
+     *
+     * @param ray
+     *            The ray to compute the intersection with
+     * @param obj
+     *            The object to compute the intersection with
+     * @param tmin
+     *            The minimum distance
+     * @param tmax
+     *            The maximum distance
+     * @return The computed hit
+     */
+    @Override
+    public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+        final HitRecord record = new HitRecord(tmax);
+        return intersect(ray, obj, tmin, record) ? record.toHit(ray) : Hit.No.get();
+    }
+
+    /**
+     * Records the closest hit of the ray with the objects, only testing the
+     * objects the ray may reach before the closest hit found so far
+     */
+    @Override
+    public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+        return traverse(ray, tmin, record.getParameter(), record);
+    }
+
+    /**
+     * Checks whether any object is hit between tmin and tmax, stopping at the
+     * first hit found
+     */
+    @Override
+    public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+        return traverse(ray, tmin, tmax, null);
+    }
+
+    // records the closest hit, or only looks for any hit if record is null:
+    private boolean traverse(final Ray ray, final float tmin, float tmax, final HitRecord record) {
+        final int[] links = this.links;
+        if (links == null) {
+            throw new IllegalStateException("hit called on a kd-tree that has not been built");
+        }
+
+        boolean found = false;
+        for (final Obj p : unbounded) {
+            if (record == null) {
+                if (p.occluded(ray, tmin, tmax)) {
+                    return true;
+                }
+            } else if (p.intersect(ray, p, tmin, record)) {
+                found = true;
+                tmax = record.getParameter();
+            }
+        }
+        if (links.length == 0) {
+            return found;
+        }
+
+        // the parametric range of the ray within the root voxel:
+        final Point base = ray.base();
+        final Vec3 dir = ray.dir();
+        float nodeMin = tmin, nodeMax = tmax;
+        for (int dim = 0; dim < 3; dim++) {
+            final int neg = dir.isNeg(dim);
+            final float t0 = ((neg == 0 ? box.getMin() : box.getMax()).get(dim) - base.get(dim)) * ray.inv(dim);
+            final float t1 = ((neg == 0 ? box.getMax() : box.getMin()).get(dim) - base.get(dim)) * ray.inv(dim);
+            if (t0 > nodeMin)
+                nodeMin = t0;
+            if (t1 < nodeMax)
+                nodeMax = t1;
+            if (nodeMin > nodeMax)
+                return found;
+        }
+
+        // the stack holds the far children still to visit, nearest on top:
+        final int[] stack = new int[depth + 1];
+        final float[] stackMin = new float[depth + 1];
+        final float[] stackMax = new float[depth + 1];
+        int top = 0;
+        int node = 0;
+
+        while (true) {
+            // every remaining node lies behind the nearest hit:
+            if (nodeMin > tmax) {
+                break;
+            }
+
+            final int axis = links[2 * node];
+            if (axis >= 0) {
+                final float split = splits[node];
+                final float o = base.get(axis);
+                final float tPlane = (split - o) * ray.inv(axis);
+                final boolean belowFirst = o < split || (o == split && dir.get(axis) <= 0);
+                final int first = belowFirst ? node + 1 : links[2 * node + 1];
+                final int second = belowFirst ? links[2 * node + 1] : node + 1;
+
+                if (Float.isNaN(tPlane)) {
+                    // the ray runs within the split plane, both children are needed:
+                    stack[top] = second;
+                    stackMin[top] = nodeMin;
+                    stackMax[top++] = nodeMax;
+                    node = first;
+                } else if (tPlane > nodeMax || tPlane <= 0) {
+                    node = first;
+                } else if (tPlane < nodeMin) {
+                    node = second;
+                } else {
+                    stack[top] = second;
+                    stackMin[top] = tPlane;
+                    stackMax[top++] = nodeMax;
+                    node = first;
+                    nodeMax = tPlane;
+                }
+                continue;
+            }
+
+            final int first = links[2 * node + 1];
+            final int last = first - axis - 1;
+            for (int i = first; i < last; i++) {
+                final Obj p = leafObjects[i];
+                if (record == null) {
+                    if (p.occluded(ray, tmin, tmax)) {
+                        return true;
+                    }
+                } else if (p.intersect(ray, p, tmin, record)) {
+                    found = true;
+                    tmax = record.getParameter();
+                }
+            }
+
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            nodeMin = stackMin[top];
+            nodeMax = stackMax[top];
+        }
+
+        return found;
+    }
+}
@@ -0,0 +1,505 @@
+package raytracer.core.def;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import raytracer.core.Obj;
+import raytracer.geom.BBox;
+import raytracer.math.Point;
+
+/**
+ * Represents a linear bounding volume hierarchy (LBVH). Instead of splitting
+ * top-down, the centroids of the objects are sorted along a Morton (Z-order)
+ * curve with a parallel radix sort, and every inner node of the hierarchy is
+ * derived independently from the sorted codes (Karras 2012). Building is
+ * roughly linear in the number of objects, at the price of a somewhat worse
+ * tree than the SAH builder produces. Optional rounds of treelet
+ * restructuring (Karras and Aila 2013) recover part of the quality.
+ */
+public class LBVH extends BVH {
+
+    /**
+     * Morton codes with 10 bits per axis
+     */
+    public static final int CODE_BITS_30 = 30;
+
+    /**
+     * Morton codes with 21 bits per axis
+     */
+    public static final int CODE_BITS_63 = 63;
+
+    /**
+     * The number of subtrees a treelet is formed of
+     */
+    public static final int TREELET_SIZE = 5;
+
+    /**
+     * Leaves with more objects than this are never formed
+     */
+    public static final int MAX_LEAF_SIZE = 8;
+
+    private final int codeBits;
+    private final int treeletRounds;
+
+    /**
+     * Creates a new LBVH with 63 bit codes and without restructuring
+     */
+    public LBVH() {
+        this(CODE_BITS_63, 0);
+    }
+
+    /**
+     * Creates a new LBVH
+     *
+     * @param codeBits
+     *            The length of the Morton codes, either CODE_BITS_30 or
+     *            CODE_BITS_63
+     * @param treeletRounds
+     *            The number of treelet restructuring rounds after the build
+     * @throws IllegalArgumentException
+     *             If the code length is not supported or the number of rounds
+     *             is negative
+     */
+    public LBVH(final int codeBits, final int treeletRounds) {
+        if (codeBits != CODE_BITS_30 && codeBits != CODE_BITS_63) {
+            throw new IllegalArgumentException("Only 30 or 63 bit Morton codes are supported");
+        }
+        if (treeletRounds < 0) {
+            throw new IllegalArgumentException("The number of treelet rounds must not be negative");
+        }
+        this.codeBits = codeBits;
+        this.treeletRounds = treeletRounds;
+    }
+
+    // the nodes below the root share the sorted objects of the root:
+    private LBVH(final List<Obj> objects, final BBox box, final int codeBits) {
+        super(objects, box);
+        this.codeBits = codeBits;
+        this.treeletRounds = 0;
+    }
+
+    @Override
+    protected BVH createSubBVH() {
+        return new LBVH(codeBits, treeletRounds);
+    }
+
+    // buildWhole() links the whole tree at once instead of splitting node by node:
+    @Override
+    protected boolean buildsTopDown() {
+        return false;
+    }
+
+    /**
+     * Builds the hierarchy from the Morton order of the objects
+     */
+    @Override
+    protected void buildWhole() {
+        final List<Obj> objects = getObjects();
+        // the top-down machinery handles the trivial cases:
+        if (objects.size() <= 1) {
+            super.buildWhole();
+            return;
+        }
+
+        final Tree tree = new Tree(objects.toArray(new Obj[0]), codeBits);
+        tree.sort();
+        tree.link();
+        tree.fit();
+        for (int round = 0; round < treeletRounds; round++) {
+            tree.restructure();
+        }
+
+        final Obj[] ordered = new Obj[tree.n];
+        tree.order(0, ordered, 0);
+        final List<Obj> sorted = Arrays.asList(ordered);
+        setChildren(tree.emit(tree.left[0], sorted, 0), tree.emit(tree.right[0], sorted, tree.count[tree.left[0]]));
+    }
+
+    /**
+     * The hierarchy under construction, stored in flat arrays. The n - 1 inner
+     * nodes come first (the root is node 0), followed by one node per object.
+     */
+    private static final class Tree {
+        private final int n;
+        private final int codeBits;
+        private final Obj[] objects;
+        private final int[] left, right, parent, count;
+        private final float[] bounds;
+        private final float[] cost;
+        private float[] boxes;
+        private long[] codes;
+        private int[] order;
+
+        private Tree(final Obj[] objects, final int codeBits) {
+            this.n = objects.length;
+            this.codeBits = codeBits;
+            this.objects = objects;
+            final int nodes = 2 * n - 1;
+            this.left = new int[n - 1];
+            this.right = new int[n - 1];
+            this.parent = new int[nodes];
+            this.count = new int[nodes];
+            this.bounds = new float[6 * nodes];
+            this.cost = new float[nodes];
+            parent[0] = -1;
+        }
+
+        private int leaf(final int i) {
+            return n - 1 + i;
+        }
+
+        private boolean isLeaf(final int node) {
+            return node >= n - 1;
+        }
+
+        // computes the Morton code of every centroid and sorts the objects by it:
+        private void sort() {
+            final float[] centroids = new float[3 * n];
+            final float[] cmin = { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY };
+            final float[] cmax = { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+            boxes = new float[6 * n];
+            for (int i = 0; i < n; i++) {
+                final BBox box = objects[i].bbox();
+                for (int dim = 0; dim < 3; dim++) {
+                    boxes[6 * i + dim] = box.getMin().get(dim);
+                    boxes[6 * i + 3 + dim] = box.getMax().get(dim);
+                    final float c = 0.5f * (boxes[6 * i + dim] + boxes[6 * i + 3 + dim]);
+                    centroids[3 * i + dim] = c;
+                    cmin[dim] = Math.min(cmin[dim], c);
+                    cmax[dim] = Math.max(cmax[dim], c);
+                }
+            }
+
+            final int bitsPerAxis = codeBits / 3;
+            final float cells = (1 << bitsPerAxis) - 1;
+            final float[] scale = new float[3];
+            for (int dim = 0; dim < 3; dim++) {
+                final float extent = cmax[dim] - cmin[dim];
+                scale[dim] = extent > 0 && !Float.isInfinite(extent) ? cells / extent : 0;
+            }
+
+            codes = new long[n];
+            order = new int[n];
+            IntStream.range(0, n).parallel().forEach(i -> {
+                long code = 0;
+                for (int dim = 0; dim < 3; dim++) {
+                    final long cell = (long) ((centroids[3 * i + dim] - cmin[dim]) * scale[dim]);
+                    code |= spread(cell, bitsPerAxis) << (2 - dim);
+                }
+                codes[i] = code;
+                order[i] = i;
+            });
+            radixSort(codes, order, codeBits);
+        }
+
+        // the common prefix length of codes i and j, ties are broken by the index:
+        private int delta(final int i, final int j) {
+            if (j < 0 || j >= n) {
+                return -1;
+            }
+            final long x = codes[i] ^ codes[j];
+            return x != 0 ? Long.numberOfLeadingZeros(x) : 64 + Integer.numberOfLeadingZeros(i ^ j);
+        }
+
+        // derives the children of every inner node from the sorted codes:
+        private void link() {
+            IntStream.range(0, n - 1).parallel().forEach(i -> {
+                // the direction in which the range of node i extends:
+                final int d = delta(i, i + 1) - delta(i, i - 1) >= 0 ? 1 : -1;
+                final int minDelta = delta(i, i - d);
+
+                int maxLength = 2;
+                while (delta(i, i + maxLength * d) > minDelta) {
+                    maxLength *= 2;
+                }
+                int length = 0;
+                for (int t = maxLength / 2; t >= 1; t /= 2) {
+                    if (delta(i, i + (length + t) * d) > minDelta) {
+                        length += t;
+                    }
+                }
+                final int j = i + length * d;
+
+                // the split is where the common prefix of the range ends:
+                final int nodeDelta = delta(i, j);
+                int split = 0;
+                int t = length;
+                do {
+                    t = (t + 1) / 2;
+                    if (delta(i, i + (split + t) * d) > nodeDelta) {
+                        split += t;
+                    }
+                } while (t > 1);
+                final int gamma = i + split * d + Math.min(d, 0);
+
+                left[i] = Math.min(i, j) == gamma ? leaf(gamma) : gamma;
+                right[i] = Math.max(i, j) == gamma + 1 ? leaf(gamma + 1) : gamma + 1;
+                parent[left[i]] = i;
+                parent[right[i]] = i;
+            });
+        }
+
+        // computes boxes, object counts and costs from the leaves upwards; the
+        // second child to finish continues with the parent
+        private void fit() {
+            final AtomicIntegerArray visits = new AtomicIntegerArray(n - 1);
+            IntStream.range(0, n).parallel().forEach(i -> {
+                final int node = leaf(i);
+                System.arraycopy(boxes, 6 * order[i], bounds, 6 * node, 6);
+                count[node] = 1;
+                cost[node] = SAH.INTERSECTION_COST * area(node);
+
+                int p = parent[node];
+                while (p >= 0 && visits.getAndIncrement(p) == 1) {
+                    update(p);
+                    p = parent[p];
+                }
+            });
+        }
+
+        // recomputes an inner node from its children:
+        private void update(final int node) {
+            final int l = left[node], r = right[node];
+            for (int dim = 0; dim < 3; dim++) {
+                bounds[6 * node + dim] = Math.min(bounds[6 * l + dim], bounds[6 * r + dim]);
+                bounds[6 * node + 3 + dim] = Math.max(bounds[6 * l + 3 + dim], bounds[6 * r + 3 + dim]);
+            }
+            count[node] = count[l] + count[r];
+            cost[node] = SAH.TRAVERSAL_COST * area(node) + cost[l] + cost[r];
+        }
+
+        private float area(final int node) {
+            return boxArea(bounds, 6 * node);
+        }
+
+        // restructures the treelets of all nodes, children before their parents:
+        private void restructure() {
+            final AtomicIntegerArray visits = new AtomicIntegerArray(n - 1);
+            IntStream.range(0, n).parallel().forEach(i -> {
+                int p = parent[leaf(i)];
+                while (p >= 0 && visits.getAndIncrement(p) == 1) {
+                    restructure(p);
+                    p = parent[p];
+                }
+            });
+        }
+
+        // replaces the treelet below the given root by the cheapest binary tree
+        // over the same subtrees
+        private void restructure(final int root) {
+            // the subtrees below may have been restructured already:
+            update(root);
+            if (count[root] < TREELET_SIZE) {
+                return;
+            }
+
+            // grow the treelet by expanding the subtree with the largest area:
+            final int[] leaves = new int[TREELET_SIZE];
+            final int[] inner = new int[TREELET_SIZE - 1];
+            leaves[0] = left[root];
+            leaves[1] = right[root];
+            int size = 2;
+            int innerSize = 0;
+            while (size < TREELET_SIZE) {
+                int largest = -1;
+                for (int k = 0; k < size; k++) {
+                    if (!isLeaf(leaves[k]) && (largest < 0 || area(leaves[k]) > area(leaves[largest]))) {
+                        largest = k;
+                    }
+                }
+                if (largest < 0) {
+                    return;
+                }
+                final int node = leaves[largest];
+                inner[innerSize++] = node;
+                leaves[largest] = left[node];
+                leaves[size++] = right[node];
+            }
+
+            // the optimal cost of every subset of the treelet leaves:
+            final int subsets = 1 << TREELET_SIZE;
+            final float[] subsetArea = new float[subsets];
+            final float[] best = new float[subsets];
+            final int[] partition = new int[subsets];
+            // every subset grows the box of the subset without its lowest leaf:
+            final float[] boxes = new float[6 * subsets];
+            Arrays.fill(boxes, 0, 3, Float.POSITIVE_INFINITY);
+            Arrays.fill(boxes, 3, 6, Float.NEGATIVE_INFINITY);
+            for (int s = 1; s < subsets; s++) {
+                final int rest = s & (s - 1);
+                final int leaf = leaves[Integer.numberOfTrailingZeros(s)];
+                for (int dim = 0; dim < 3; dim++) {
+                    boxes[6 * s + dim] = Math.min(boxes[6 * rest + dim], bounds[6 * leaf + dim]);
+                    boxes[6 * s + 3 + dim] = Math.max(boxes[6 * rest + 3 + dim], bounds[6 * leaf + 3 + dim]);
+                }
+                subsetArea[s] = boxArea(boxes, 6 * s);
+            }
+            for (int k = 0; k < TREELET_SIZE; k++) {
+                best[1 << k] = cost[leaves[k]];
+            }
+            for (int s = 1; s < subsets; s++) {
+                if (Integer.bitCount(s) < 2) {
+                    continue;
+                }
+                float cheapest = Float.POSITIVE_INFINITY;
+                // every split of s into two non-empty halves, each one once:
+                final int lowest = s & -s;
+                for (int p = (s - 1) & s; p != 0; p = (p - 1) & s) {
+                    if ((p & lowest) == 0) {
+                        continue;
+                    }
+                    final float c = best[p] + best[s ^ p];
+                    if (c < cheapest) {
+                        cheapest = c;
+                        partition[s] = p;
+                    }
+                }
+                best[s] = SAH.TRAVERSAL_COST * subsetArea[s] + cheapest;
+            }
+
+            if (!(best[subsets - 1] < cost[root])) {
+                return;
+            }
+            final int[] pool = { 0 };
+            rebuild(root, subsets - 1, partition, leaves, inner, pool);
+        }
+
+        // links the subset s of the treelet leaves below the given node:
+        private void rebuild(final int node, final int s, final int[] partition, final int[] leaves,
+                final int[] inner, final int[] pool) {
+            final int p = partition[s];
+            left[node] = child(s & p, partition, leaves, inner, pool);
+            right[node] = child(s & ~p, partition, leaves, inner, pool);
+            parent[left[node]] = node;
+            parent[right[node]] = node;
+            update(node);
+        }
+
+        private int child(final int s, final int[] partition, final int[] leaves, final int[] inner,
+                final int[] pool) {
+            if (Integer.bitCount(s) == 1) {
+                return leaves[Integer.numberOfTrailingZeros(s)];
+            }
+            final int node = inner[pool[0]++];
+            rebuild(node, s, partition, leaves, inner, pool);
+            return node;
+        }
+
+        // stores the objects in depth-first order of their leaves:
+        private int order(final int node, final Obj[] ordered, final int start) {
+            if (isLeaf(node)) {
+                ordered[start] = objects[order[node - (n - 1)]];
+                return start + 1;
+            }
+            return order(right[node], ordered, order(left[node], ordered, start));
+        }
+
+        // creates the BVH node for the given tree node, whose objects start at
+        // the given index of the depth-first order
+        private LBVH emit(final int node, final List<Obj> sorted, final int start) {
+            final List<Obj> objects = sorted.subList(start, start + count[node]);
+            final LBVH bvh = new LBVH(objects, box(node), codeBits);
+            // collapse small subtrees into a leaf where that is estimated to be cheaper:
+            if (isLeaf(node) || count[node] <= MAX_LEAF_SIZE
+                    && SAH.INTERSECTION_COST * area(node) * count[node] <= cost[node]) {
+                return bvh;
+            }
+            bvh.setChildren(emit(left[node], sorted, start), emit(right[node], sorted, start + count[left[node]]));
+            return bvh;
+        }
+
+        private BBox box(final int node) {
+            final int b = 6 * node;
+            return BBox.create(new Point(bounds[b], bounds[b + 1], bounds[b + 2]),
+                    new Point(bounds[b + 3], bounds[b + 4], bounds[b + 5]));
+        }
+    }
+
+    private static float boxArea(final float[] bounds, final int b) {
+        final float dx = bounds[b + 3] - bounds[b];
+        final float dy = bounds[b + 4] - bounds[b + 1];
+        final float dz = bounds[b + 5] - bounds[b + 2];
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    // inserts two zero bits between each of the lowest bits of the value:
+    private static long spread(final long value, final int bits) {
+        long result = 0;
+        for (int bit = 0; bit < bits; bit++) {
+            result |= ((value >>> bit) & 1L) << (3 * bit);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts the keys together with their values by a least significant digit
+     * radix sort. Every pass counts the digits of chunks of the keys in parallel
+     * and scatters the chunks in parallel to their precomputed offsets.
+     */
+    private static void radixSort(long[] keys, int[] values, final int bits) {
+        final int n = keys.length;
+        final int chunks = Math.max(1, Math.min(4 * Runtime.getRuntime().availableProcessors(), n / 4096));
+        final int chunkSize = (n + chunks - 1) / chunks;
+        long[] keysOut = new long[n];
+        int[] valuesOut = new int[n];
+        final long[] in = keys;
+
+        for (int shift = 0; shift < bits; shift += 8) {
+            final int digitShift = shift;
+            final long[] srcKeys = keys;
+            final int[] histogram = new int[chunks * 256];
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                for (int i = c * chunkSize; i < Math.min(n, (c + 1) * chunkSize); i++) {
+                    histogram[c * 256 + (int) ((srcKeys[i] >>> digitShift) & 0xff)]++;
+                }
+            });
+
+            // all keys share this digit, nothing to reorder:
+            boolean single = false;
+            for (int d = 0; d < 256 && !single; d++) {
+                int total = 0;
+                for (int c = 0; c < chunks; c++) {
+                    total += histogram[c * 256 + d];
+                }
+                single = total == n;
+            }
+            if (single) {
+                continue;
+            }
+
+            // turn the counts into the first output index of every chunk and digit:
+            int offset = 0;
+            for (int d = 0; d < 256; d++) {
+                for (int c = 0; c < chunks; c++) {
+                    final int num = histogram[c * 256 + d];
+                    histogram[c * 256 + d] = offset;
+                    offset += num;
+                }
+            }
+
+            final int[] srcValues = values;
+            final long[] dstKeys = keysOut;
+            final int[] dstValues = valuesOut;
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                for (int i = c * chunkSize; i < Math.min(n, (c + 1) * chunkSize); i++) {
+                    final int pos = histogram[c * 256 + (int) ((srcKeys[i] >>> digitShift) & 0xff)]++;
+                    dstKeys[pos] = srcKeys[i];
+                    dstValues[pos] = srcValues[i];
+                }
+            });
+
+            keysOut = keys;
+            valuesOut = values;
+            keys = dstKeys;
+            values = dstValues;
+        }
+
+        // the result has to end up in the arrays of the caller:
+        if (keys != in) {
+            System.arraycopy(keys, 0, keysOut, 0, n);
+            System.arraycopy(values, 0, valuesOut, 0, n);
+        }
+    }
+}
@@ -6,11 +6,6 @@ import java.awt.image.BufferedImage;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Executors;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -21,6 +16,9 @@ import raytracer.core.LightSource;
 import raytracer.core.OBJReader;
 import raytracer.core.Obj;
 import raytracer.core.PerspectiveCamera;
+import raytracer.core.ProgressiveRenderer;
+import raytracer.core.RenderScheduler;
+import raytracer.core.RenderScheduler.Tile;
 import raytracer.core.Renderer;
 import raytracer.core.Scene;
 import raytracer.core.Shader;
@@ -59,7 +57,7 @@ public class Main {
 	}
 
 	public static void main(final String[] args) {
-		final int xRes = 640, yRes = 480, packet = 16;
+		final int xRes = 640, yRes = 480;
 		final MyPanel panel = new MyPanel(xRes, yRes);
 
 		SwingUtilities.invokeLater(new Runnable() {
@@ -72,6 +70,58 @@ public class Main {
 				f.setVisible(true);
 			}
 		});
+		final Scene scene;
+		try {
+			scene = createScene();
+		} catch (final FileNotFoundException e) {
+			System.err.println(e);
+			return;
+		}
+		final Renderer r = new Renderer(scene, xRes, yRes, 2);
+
+		final RenderScheduler scheduler = new RenderScheduler(r);
+		// -progressive shows a preview and refines it pass by pass:
+		if (args.length > 0 && args[0].equals("-progressive")) {
+			new ProgressiveRenderer(scheduler).render(new ProgressiveRenderer.Listener() {
+				@Override
+				public void tileDone(final Tile tile, final int[] pixels) {
+					synchronized (panel) {
+						panel.drawPacket(tile.x, tile.y, tile.w, tile.h, pixels);
+					}
+					panel.repaint();
+				}
+
+				@Override
+				public void passDone(final int samples, final long nanos) {
+					System.out.printf("%d samples per pixel (%.1f ms)%n", samples, nanos / 1e6);
+				}
+			}, Long.MAX_VALUE, Integer.MAX_VALUE);
+		} else {
+			scheduler.render(new RenderScheduler.Listener() {
+				@Override
+				public void tileDone(final Tile tile, final int[] pixels) {
+					synchronized (panel) {
+						panel.drawPacket(tile.x, tile.y, tile.w, tile.h, pixels);
+					}
+					panel.repaint();
+				}
+			});
+		}
+		scheduler.shutdown();
+
+		panel.repaint();
+		System.out.println("done");
+	}
+
+	/**
+	 * Creates the demo scene: a triangle, a checkerboard plane, two spheres
+	 * and the bunny
+	 *
+	 * @return The demo scene
+	 * @throws FileNotFoundException
+	 *             If the bunny model cannot be read
+	 */
+	public static Scene createScene() throws FileNotFoundException {
 		final boolean implementedPlane = true; // TODO implement Plane
 		final boolean implementedCheckerBoard = true; // TODO implement CheckerBoard
 		final boolean implementedSphere = true; // TODO implement Sphere
@@ -121,26 +171,21 @@ public class Main {
 
 		if (implementedOBJReader) {
 			final BVH bvh = implementedBVH ? new BVH() : null;
-			try {
-				final String filename;
-				final float scale;
-				if (implementedBVH) {
-					filename = "obj/bunny.obj";
-					scale = 25;
-				} else {
-					filename = "obj/pyramid.obj";
-					scale = 1;
-				}
-
-				final Shader green = new SingleColor(Color.GREEN);
-				final Shader shader = implementedPhong ? ShaderFactory.createPhong(green, ambient, 1.f, .5f, 50)
-						: green;
-				OBJReader.read(filename, bvh != null ? bvh : accel, shader, scale, new Vec3(-3, 0, 0));
-			} catch (final FileNotFoundException e) {
-				System.err.println(e);
-				return;
+			final String filename;
+			final float scale;
+			if (implementedBVH) {
+				filename = "obj/bunny.obj";
+				scale = 25;
+			} else {
+				filename = "obj/pyramid.obj";
+				scale = 1;
 			}
 
+			final Shader green = new SingleColor(Color.GREEN);
+			final Shader shader = implementedPhong ? ShaderFactory.createPhong(green, ambient, 1.f, .5f, 50)
+					: green;
+			OBJReader.read(filename, bvh != null ? bvh : accel, shader, scale, new Vec3(-3, 0, 0));
+
 			if (bvh != null) {
 				bvh.buildBVH();
 				accel.add(bvh);
@@ -150,34 +195,7 @@ public class Main {
 		final List<LightSource> lights = new ArrayList<LightSource>();
 		lights.add(ls);
 
-		final Scene scene = new StandardScene(cam, lights, accel);
-		final Renderer r = new Renderer(scene, xRes, yRes, 2);
-
-		final Executor exe = Executors.newFixedThreadPool(2);
-		final CompletionService<Renderer.Work> ecs = new ExecutorCompletionService<Renderer.Work>(exe);
-		int num = 0;
-		for (int x = 0; x < xRes; x += packet) {
-			for (int y = 0; y < yRes; y += packet) {
-				ecs.submit(r.render(x, y, packet, packet));
-				num = num + 1;
-			}
-		}
-
-		for (int i = 0; i < num; i++) {
-			try {
-				final Renderer.Work w = ecs.take().get();
-				panel.drawPacket(w.x, w.y, packet, packet, w.pixels);
-				if (i % 100 == 0)
-					panel.repaint();
-			} catch (final InterruptedException e) {
-				e.printStackTrace();
-			} catch (final ExecutionException e) {
-				e.printStackTrace();
-			}
-		}
-
-		panel.repaint();
-		System.out.println("done");
+		return new StandardScene(cam, lights, accel);
 	}
 
 }
@@ -0,0 +1,129 @@
+package raytracer.core.def;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import raytracer.core.Obj;
+
+/**
+ * Builds bounding volume hierarchies on a fork/join pool. A node is split on
+ * the calling worker, and its two subtrees are built as parallel tasks as long
+ * as the node holds more objects than the cutoff; smaller subtrees are built
+ * sequentially. Only hierarchies built top-down by the split of their class
+ * (see {@link BVH#buildsTopDown()}) are built this way. Hierarchies with a
+ * builder of their own (like {@link LBVH} and {@link SBVH}) are built by
+ * buildBVH() on the pool. Either way the resulting tree is the one buildBVH()
+ * produces.
+ */
+public class ParallelBVHBuilder {
+
+    /**
+     * Subtrees with at most this many objects are built sequentially by default
+     */
+    public static final int DEFAULT_CUTOFF = 1024;
+
+    private final ForkJoinPool pool;
+    private final int cutoff;
+    private volatile long buildTime;
+
+    /**
+     * Creates a builder using the common pool and the default cutoff
+     */
+    public ParallelBVHBuilder() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CUTOFF);
+    }
+
+    /**
+     * Creates a new builder
+     *
+     * @param pool
+     *            The pool to build on
+     * @param cutoff
+     *            Subtrees with at most this many objects are built sequentially
+     * @throws IllegalArgumentException
+     *             If the pool is null or the cutoff is negative
+     */
+    public ParallelBVHBuilder(final ForkJoinPool pool, final int cutoff) {
+        if (pool == null) {
+            throw new IllegalArgumentException("The pool is null");
+        }
+        if (cutoff < 0) {
+            throw new IllegalArgumentException("The cutoff must not be negative");
+        }
+        this.pool = pool;
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Builds a SAH hierarchy over all the given objects
+     *
+     * @param objects
+     *            The objects to insert
+     * @return The built hierarchy
+     */
+    public BVH build(final Collection<? extends Obj> objects) {
+        final BVH bvh = new SAHBVH();
+        bvh.addAll(objects);
+        build(bvh);
+        return bvh;
+    }
+
+    /**
+     * Builds the given hierarchy, which already contains its objects. This
+     * replaces a call to buildBVH().
+     *
+     * @param bvh
+     *            The hierarchy to build
+     */
+    public void build(final BVH bvh) {
+        final long start = System.nanoTime();
+        if (bvh.buildsTopDown()) {
+            pool.invoke(new BuildTask(bvh));
+        } else {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    bvh.buildBVH();
+                }
+            });
+        }
+        buildTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the wall-clock time the last build took
+     *
+     * @return The time of the last build in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    private final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BVH node;
+
+        private BuildTask(final BVH node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (!node.partition()) {
+                return;
+            }
+            final BVH left = (BVH) node.getLeft();
+            final BVH right = (BVH) node.getRight();
+            if (node.getObjects().size() > cutoff) {
+                invokeAll(new BuildTask(left), new BuildTask(right));
+            } else {
+                left.buildBVH();
+                right.buildBVH();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package raytracer.core.def;
+
+import raytracer.geom.BBox;
+
+/**
+ * The surface area heuristic (SAH) cost model for bounding volume hierarchies
+ */
+public final class SAH {
+
+    /**
+     * The estimated cost of visiting an inner node, relative to testing one
+     * object
+     */
+    public static final float TRAVERSAL_COST = 1.0f;
+
+    /**
+     * The estimated cost of testing a ray against one object
+     */
+    public static final float INTERSECTION_COST = 1.0f;
+
+    private SAH() {
+    }
+
+    /**
+     * Estimates the cost of tracing a ray through the given hierarchy. Every node
+     * is weighted with the probability that a ray hitting the root box also hits
+     * the box of the node, which is the ratio of the two surface areas.
+     *
+     * @param bvh
+     *            The (built) hierarchy to estimate
+     * @return The estimated cost of the hierarchy, leaving out the unbounded
+     *         objects (see {@link BVHBase#getUnbounded()})
+     */
+    public static float cost(final BVHBase bvh) {
+        final BBox box = bvh.getBounds();
+        if (box == null) {
+            return 0;
+        }
+        final float area = box.area();
+        // a flat root makes every ray that hits it hit all the objects:
+        if (area == 0) {
+            return INTERSECTION_COST * bvh.getObjects().size();
+        }
+        return weightedCost(bvh) / area;
+    }
+
+    /**
+     * Measures how much the children of the inner nodes overlap. The surface
+     * areas of the intersections of sibling boxes are summed up and normalized
+     * by the root area, so 0 means that no two siblings overlap.
+     *
+     * @param bvh
+     *            The (built) hierarchy to measure
+     * @return The normalized overlap
+     */
+    public static float overlap(final BVHBase bvh) {
+        final BBox box = bvh.getBounds();
+        if (box == null || !(box.area() > 0)) {
+            return 0;
+        }
+        return overlapArea(bvh) / box.area();
+    }
+
+    private static float overlapArea(final BVHBase node) {
+        if (node.getLeft() == null) {
+            return 0;
+        }
+        return BBox.intersection(node.getLeft().getBounds(), node.getRight().getBounds()).area()
+                + overlapArea(node.getLeft()) + overlapArea(node.getRight());
+    }
+
+    // the cost of the subtree with every node weighted by its surface area:
+    private static float weightedCost(final BVHBase node) {
+        final float area = node.getBounds().area();
+        if (node.getLeft() == null) {
+            return INTERSECTION_COST * area * node.getObjects().size();
+        }
+        return TRAVERSAL_COST * area + weightedCost(node.getLeft()) + weightedCost(node.getRight());
+    }
+}
@@ -0,0 +1,287 @@
+package raytracer.core.def;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import raytracer.core.Obj;
+import raytracer.geom.BBox;
+import raytracer.math.Point;
+
+/**
+ * Represents a bounding volume hierarchy whose splits are chosen by the surface
+ * area heuristic. The centroids of the objects are sorted into bins along each
+ * axis and the bin boundary with the lowest estimated cost is used, unless
+ * keeping all objects in a leaf is estimated to be cheaper.
+ */
+public class SAHBVH extends BVH {
+
+    /**
+     * The default number of bins per axis
+     */
+    public static final int DEFAULT_BINS = 16;
+
+    /**
+     * Leaves with more objects than this are split even if the heuristic
+     * prefers a leaf
+     */
+    public static final int MAX_LEAF_SIZE = 16;
+
+    private final int bins;
+
+    /**
+     * Creates a new SAH BVH using the default number of bins
+     */
+    public SAHBVH() {
+        this(DEFAULT_BINS);
+    }
+
+    /**
+     * Creates a new SAH BVH
+     *
+     * @param bins
+     *            The number of bins per axis
+     * @throws IllegalArgumentException
+     *             If fewer than two bins are requested
+     */
+    public SAHBVH(final int bins) {
+        if (bins < 2) {
+            throw new IllegalArgumentException("At least two bins are needed to split");
+        }
+        this.bins = bins;
+    }
+
+    /**
+     * Creates a node over the given objects using the default number of bins,
+     * the objects are used without copying
+     *
+     * @param objects
+     *            The objects of the node
+     * @param box
+     *            The bounding box of the objects
+     */
+    protected SAHBVH(final List<Obj> objects, final BBox box) {
+        super(objects, box);
+        this.bins = DEFAULT_BINS;
+    }
+
+    @Override
+    protected BVH createSubBVH() {
+        return new SAHBVH(bins);
+    }
+
+    @Override
+    protected boolean split(final BVH left, final BVH right) {
+        final List<Obj> objects = getObjects();
+        final boolean[] sides = sides(i -> objects.get(i).bbox(), objects.size(), getBounds().area());
+        if (sides == null) {
+            return false;
+        }
+        for (int i = 0; i < sides.length; i++) {
+            (sides[i] ? left : right).add(objects.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Builds a hierarchy over bare boxes, split exactly like the objects of a
+     * SAHBVH with the same boxes, and appends its nodes to the given builder.
+     * The leaves refer to ranges of the ids, which are reordered into leaf
+     * order, so no object is needed per box (see {@link TriangleMesh}).
+     *
+     * @param boxes
+     *            The boxes, indexed by id
+     * @param ids
+     *            The ids of the boxes to build over
+     * @param builder
+     *            The builder receiving the nodes
+     */
+    void build(final BBox[] boxes, final int[] ids, final FlatBVH.Builder builder) {
+        if (ids.length > 0) {
+            build(boxes, ids, 0, ids.length, builder, 1);
+        }
+    }
+
+    // appends the node over ids[from, to) and its subtree:
+    private int build(final BBox[] boxes, final int[] ids, final int from, final int to,
+            final FlatBVH.Builder builder, final int level) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            final BBox box = boxes[ids[i]];
+            minX = Math.min(minX, box.getMin().x());
+            minY = Math.min(minY, box.getMin().y());
+            minZ = Math.min(minZ, box.getMin().z());
+            maxX = Math.max(maxX, box.getMax().x());
+            maxY = Math.max(maxY, box.getMax().y());
+            maxZ = Math.max(maxZ, box.getMax().z());
+        }
+        final BBox box = BBox.create(new Point(minX, minY, minZ), new Point(maxX, maxY, maxZ));
+        final int node = builder.node(box, level);
+
+        final boolean[] sides = sides(i -> boxes[ids[from + i]], to - from, box.area());
+        if (sides == null) {
+            builder.leaf(node, from, to - from);
+            return node;
+        }
+
+        // move the left ids to the front, keeping the order on both sides:
+        final int[] range = Arrays.copyOfRange(ids, from, to);
+        int mid = from;
+        for (int i = 0; i < range.length; i++) {
+            if (sides[i]) {
+                ids[mid++] = range[i];
+            }
+        }
+        int next = mid;
+        for (int i = 0; i < range.length; i++) {
+            if (!sides[i]) {
+                ids[next++] = range[i];
+            }
+        }
+
+        build(boxes, ids, from, mid, builder, level + 1);
+        builder.inner(node, build(boxes, ids, mid, to, builder, level + 1));
+        return node;
+    }
+
+    /**
+     * Chooses the cheapest binned split of the given boxes
+     *
+     * @param boxes
+     *            The box of every index
+     * @param n
+     *            The number of boxes
+     * @param area
+     *            The surface area of the box surrounding all of them
+     * @return For every box whether it goes left, or null if the boxes should
+     *         stay together in a leaf
+     */
+    private boolean[] sides(final IntFunction<BBox> boxes, final int n, final float area) {
+        if (n <= 1) {
+            return null;
+        }
+
+        // the centroids and their bounds, the bins are laid out over the centroids:
+        final float[] centroids = new float[3 * n];
+        final float[] cmin = { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY };
+        final float[] cmax = { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+        for (int i = 0; i < n; i++) {
+            final BBox box = boxes.apply(i);
+            for (int dim = 0; dim < 3; dim++) {
+                final float c = 0.5f * (box.getMin().get(dim) + box.getMax().get(dim));
+                centroids[3 * i + dim] = c;
+                cmin[dim] = Math.min(cmin[dim], c);
+                cmax[dim] = Math.max(cmax[dim], c);
+            }
+        }
+
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestDim = -1;
+        int bestBin = 0;
+
+        final int[] counts = new int[bins];
+        final float[] bounds = new float[6 * bins];
+        final float[] rightAreas = new float[bins];
+        for (int dim = 0; dim < 3; dim++) {
+            final float extent = cmax[dim] - cmin[dim];
+            // all centroids coincide on this axis, nothing to split:
+            if (!(extent > 0) || Float.isInfinite(extent)) {
+                continue;
+            }
+
+            Arrays.fill(counts, 0);
+            for (int b = 0; b < bins; b++) {
+                resetBounds(bounds, b);
+            }
+            for (int i = 0; i < n; i++) {
+                final int b = bin(centroids[3 * i + dim], cmin[dim], extent);
+                counts[b]++;
+                growBounds(bounds, b, boxes.apply(i));
+            }
+
+            // sweep from the right to know the area right of every boundary:
+            final float[] acc = new float[6];
+            resetBounds(acc, 0);
+            for (int b = bins - 1; b > 0; b--) {
+                mergeBounds(acc, bounds, b);
+                rightAreas[b] = area(acc);
+            }
+
+            // and from the left to evaluate every boundary b (bins < b go left):
+            resetBounds(acc, 0);
+            int leftCount = 0;
+            for (int b = 1; b < bins; b++) {
+                mergeBounds(acc, bounds, b - 1);
+                leftCount += counts[b - 1];
+                final int rightCount = n - leftCount;
+                if (leftCount == 0 || rightCount == 0) {
+                    continue;
+                }
+                final float cost = leftCount * area(acc) + rightCount * rightAreas[b];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestDim = dim;
+                    bestBin = b;
+                }
+            }
+        }
+
+        // no axis can separate the centroids:
+        if (bestDim < 0) {
+            return null;
+        }
+
+        final float splitCost = area > 0 ? SAH.TRAVERSAL_COST + SAH.INTERSECTION_COST * bestCost / area
+                : Float.POSITIVE_INFINITY;
+        final float leafCost = SAH.INTERSECTION_COST * n;
+        if (leafCost <= splitCost && n <= MAX_LEAF_SIZE) {
+            return null;
+        }
+
+        final float extent = cmax[bestDim] - cmin[bestDim];
+        final boolean[] sides = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            sides[i] = bin(centroids[3 * i + bestDim], cmin[bestDim], extent) < bestBin;
+        }
+        return sides;
+    }
+
+    // the bin a centroid falls into:
+    private int bin(final float centroid, final float min, final float extent) {
+        final int b = (int) (bins * ((centroid - min) / extent));
+        return b < bins ? b : bins - 1;
+    }
+
+    // bins store their bounds as min x, y, z followed by max x, y, z:
+    private static void resetBounds(final float[] bounds, final int b) {
+        for (int dim = 0; dim < 3; dim++) {
+            bounds[6 * b + dim] = Float.POSITIVE_INFINITY;
+            bounds[6 * b + 3 + dim] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static void growBounds(final float[] bounds, final int b, final BBox box) {
+        for (int dim = 0; dim < 3; dim++) {
+            bounds[6 * b + dim] = Math.min(bounds[6 * b + dim], box.getMin().get(dim));
+            bounds[6 * b + 3 + dim] = Math.max(bounds[6 * b + 3 + dim], box.getMax().get(dim));
+        }
+    }
+
+    private static void mergeBounds(final float[] acc, final float[] bounds, final int b) {
+        for (int dim = 0; dim < 3; dim++) {
+            acc[dim] = Math.min(acc[dim], bounds[6 * b + dim]);
+            acc[3 + dim] = Math.max(acc[3 + dim], bounds[6 * b + 3 + dim]);
+        }
+    }
+
+    private static float area(final float[] acc) {
+        final float dx = acc[3] - acc[0];
+        final float dy = acc[4] - acc[1];
+        final float dz = acc[5] - acc[2];
+        if (dx < 0 || dy < 0 || dz < 0) {
+            return 0;
+        }
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+}
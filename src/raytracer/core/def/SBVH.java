@@ -0,0 +1,402 @@
+package raytracer.core.def;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import raytracer.core.Obj;
+import raytracer.geom.BBox;
+import raytracer.math.Point;
+
+/**
+ * Represents a bounding volume hierarchy with spatial splits (SBVH). Besides
+ * the binned object splits of {@link SAHBVH}, every node whose object split
+ * leaves overlapping children also tries splitting space: objects straddling
+ * the split plane are then referenced by both children, each reference
+ * clipped to its side (see {@link raytracer.geom.Primitive#clip(BBox)}). The
+ * number of additional references is limited by a budget relative to the
+ * number of objects.
+ */
+public class SBVH extends SAHBVH {
+
+    /**
+     * The default number of additional references, relative to the number of
+     * objects
+     */
+    public static final float DEFAULT_DUPLICATION = 0.3f;
+
+    /**
+     * Spatial splits are only tried for nodes whose object split children
+     * overlap by more than this fraction of the root surface area
+     */
+    public static final float MIN_OVERLAP = 1e-5f;
+
+    /**
+     * The number of bins per axis, both for object and spatial splits
+     */
+    public static final int BINS = 16;
+
+    private final float duplication;
+
+    /**
+     * Creates a new SBVH with the default duplication budget
+     */
+    public SBVH() {
+        this(DEFAULT_DUPLICATION);
+    }
+
+    /**
+     * Creates a new SBVH
+     *
+     * @param duplication
+     *            The number of additional references allowed, relative to the
+     *            number of objects (0 disables spatial splits)
+     */
+    public SBVH(final float duplication) {
+        if (!(duplication >= 0) || Float.isInfinite(duplication)) {
+            throw new IllegalArgumentException("duplication must be non-negative and finite");
+        }
+        this.duplication = duplication;
+    }
+
+    private SBVH(final List<Obj> objects, final BBox box) {
+        super(objects, box);
+        this.duplication = 0;
+    }
+
+    @Override
+    protected BVH createSubBVH() {
+        return new SBVH(duplication);
+    }
+
+    // buildWhole() links the whole tree at once instead of splitting node by node:
+    @Override
+    protected boolean buildsTopDown() {
+        return false;
+    }
+
+    /**
+     * Builds the hierarchy top-down, choosing the cheaper of the best object
+     * and the best spatial split in every node
+     */
+    @Override
+    protected void buildWhole() {
+        final List<Obj> objects = getObjects();
+        // the top-down machinery handles the trivial cases:
+        if (objects.size() <= 1) {
+            super.buildWhole();
+            return;
+        }
+
+        final List<Ref> refs = new ArrayList<>(objects.size());
+        BBox box = null;
+        for (final Obj obj : objects) {
+            refs.add(new Ref(obj, obj.bbox()));
+            box = box == null ? obj.bbox() : BBox.surround(box, obj.bbox());
+        }
+
+        final Builder builder = new Builder(box.area(), (int) (duplication * objects.size()));
+        final List<Ref> left = new ArrayList<>(), right = new ArrayList<>();
+        if (!builder.split(refs, box, left, right)) {
+            super.buildWhole();
+            return;
+        }
+        setChildren(builder.node(left), builder.node(right));
+    }
+
+    /**
+     * A reference to an object together with the part of its box it covers
+     */
+    private static final class Ref {
+        private final Obj obj;
+        private final BBox box;
+
+        private Ref(final Obj obj, final BBox box) {
+            this.obj = obj;
+            this.box = box;
+        }
+
+        private float centroid(final int dim) {
+            return 0.5f * (box.getMin().get(dim) + box.getMax().get(dim));
+        }
+    }
+
+    /**
+     * Holds the state of one build
+     */
+    private static final class Builder {
+        private final float rootArea;
+        private int budget;
+
+        private Builder(final float rootArea, final int budget) {
+            this.rootArea = rootArea;
+            this.budget = budget;
+        }
+
+        private BVH node(final List<Ref> refs) {
+            BBox box = refs.get(0).box;
+            final List<Obj> objects = new ArrayList<>(refs.size());
+            for (final Ref ref : refs) {
+                box = BBox.surround(box, ref.box);
+                objects.add(ref.obj);
+            }
+
+            final SBVH node = new SBVH(objects, box);
+            final List<Ref> left = new ArrayList<>(), right = new ArrayList<>();
+            if (split(refs, box, left, right)) {
+                refs.clear();
+                node.setChildren(node(left), node(right));
+            }
+            return node;
+        }
+
+        // fills left and right with the references of the best split, returns
+        // false if the node should stay a leaf:
+        private boolean split(final List<Ref> refs, final BBox box, final List<Ref> left, final List<Ref> right) {
+            final int n = refs.size();
+            final float area = box.area();
+            if (n <= 1 || !(area > 0)) {
+                return false;
+            }
+
+            final ObjectSplit object = new ObjectSplit(refs);
+            SpatialSplit spatial = null;
+            if (budget > 0 && object.overlap() > MIN_OVERLAP * rootArea) {
+                spatial = new SpatialSplit(refs, box);
+            }
+
+            final float objectCost = object.dim >= 0 ? object.cost : Float.POSITIVE_INFINITY;
+            final float spatialCost = spatial != null && spatial.dim >= 0 ? spatial.cost : Float.POSITIVE_INFINITY;
+            final float best = Math.min(objectCost, spatialCost);
+            if (Float.isInfinite(best)) {
+                return false;
+            }
+
+            final float splitCost = SAH.TRAVERSAL_COST + SAH.INTERSECTION_COST * best / area;
+            final float leafCost = SAH.INTERSECTION_COST * n;
+            if (leafCost <= splitCost && n <= MAX_LEAF_SIZE) {
+                return false;
+            }
+
+            if (spatialCost < objectCost && spatial.partition(refs, left, right)) {
+                return true;
+            }
+            left.clear();
+            right.clear();
+            if (object.dim < 0) {
+                return false;
+            }
+            object.partition(refs, left, right);
+            return true;
+        }
+
+        /**
+         * The best binned split of the reference centroids
+         */
+        private final class ObjectSplit {
+            private int dim = -1;
+            private int bin;
+            private float cost = Float.POSITIVE_INFINITY;
+            private final float[] cmin = new float[3], extent = new float[3];
+            private BBox leftBox, rightBox;
+
+            private ObjectSplit(final List<Ref> refs) {
+                for (int d = 0; d < 3; d++) {
+                    float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+                    for (final Ref ref : refs) {
+                        lo = Math.min(lo, ref.centroid(d));
+                        hi = Math.max(hi, ref.centroid(d));
+                    }
+                    cmin[d] = lo;
+                    extent[d] = hi - lo;
+                    if (!(extent[d] > 0)) {
+                        continue;
+                    }
+
+                    final int[] counts = new int[BINS];
+                    final BBox[] bounds = new BBox[BINS];
+                    for (final Ref ref : refs) {
+                        final int b = bin(ref, d);
+                        counts[b]++;
+                        bounds[b] = bounds[b] == null ? ref.box : BBox.surround(bounds[b], ref.box);
+                    }
+                    sweep(counts, bounds, d, refs.size());
+                }
+            }
+
+            private int bin(final Ref ref, final int d) {
+                final int b = (int) (BINS * ((ref.centroid(d) - cmin[d]) / extent[d]));
+                return b < BINS ? b : BINS - 1;
+            }
+
+            // evaluates every bin boundary of one axis:
+            private void sweep(final int[] counts, final BBox[] bounds, final int d, final int n) {
+                final BBox[] rightBoxes = new BBox[BINS];
+                BBox acc = null;
+                for (int b = BINS - 1; b > 0; b--) {
+                    if (bounds[b] != null) {
+                        acc = acc == null ? bounds[b] : BBox.surround(acc, bounds[b]);
+                    }
+                    rightBoxes[b] = acc;
+                }
+                acc = null;
+                int leftCount = 0;
+                for (int b = 1; b < BINS; b++) {
+                    if (bounds[b - 1] != null) {
+                        acc = acc == null ? bounds[b - 1] : BBox.surround(acc, bounds[b - 1]);
+                    }
+                    leftCount += counts[b - 1];
+                    final int rightCount = n - leftCount;
+                    if (leftCount == 0 || rightCount == 0) {
+                        continue;
+                    }
+                    final float c = leftCount * acc.area() + rightCount * rightBoxes[b].area();
+                    if (c < cost) {
+                        cost = c;
+                        dim = d;
+                        bin = b;
+                        leftBox = acc;
+                        rightBox = rightBoxes[b];
+                    }
+                }
+            }
+
+            // the surface area of the overlap of the two children:
+            private float overlap() {
+                return dim < 0 ? 0 : BBox.intersection(leftBox, rightBox).area();
+            }
+
+            private void partition(final List<Ref> refs, final List<Ref> left, final List<Ref> right) {
+                for (final Ref ref : refs) {
+                    (bin(ref, dim) < bin ? left : right).add(ref);
+                }
+            }
+        }
+
+        /**
+         * The best binned split of space, references are clipped into every
+         * bin they overlap
+         */
+        private final class SpatialSplit {
+            private int dim = -1;
+            private float pos;
+            private float cost = Float.POSITIVE_INFINITY;
+
+            private SpatialSplit(final List<Ref> refs, final BBox box) {
+                for (int d = 0; d < 3; d++) {
+                    final float lo = box.getMin().get(d), hi = box.getMax().get(d);
+                    final float width = (hi - lo) / BINS;
+                    if (!(width > 0)) {
+                        continue;
+                    }
+
+                    final int[] entries = new int[BINS], exits = new int[BINS];
+                    final BBox[] bounds = new BBox[BINS];
+                    for (final Ref ref : refs) {
+                        final int first = bin(ref.box.getMin().get(d), lo, width);
+                        final int last = bin(ref.box.getMax().get(d), lo, width);
+                        entries[first]++;
+                        exits[last]++;
+                        for (int b = first; b <= last; b++) {
+                            final BBox slab = first == last ? ref.box
+                                    : ref.obj.clip(BBox.intersection(ref.box, slab(box, d, lo, width, b)));
+                            if (slab.isFinite()) {
+                                bounds[b] = bounds[b] == null ? slab : BBox.surround(bounds[b], slab);
+                            }
+                        }
+                    }
+
+                    final BBox[] rightBoxes = new BBox[BINS];
+                    BBox acc = null;
+                    for (int b = BINS - 1; b > 0; b--) {
+                        if (bounds[b] != null) {
+                            acc = acc == null ? bounds[b] : BBox.surround(acc, bounds[b]);
+                        }
+                        rightBoxes[b] = acc;
+                    }
+                    acc = null;
+                    int leftCount = 0, rightCount = refs.size();
+                    for (int b = 1; b < BINS; b++) {
+                        if (bounds[b - 1] != null) {
+                            acc = acc == null ? bounds[b - 1] : BBox.surround(acc, bounds[b - 1]);
+                        }
+                        leftCount += entries[b - 1];
+                        rightCount -= exits[b - 1];
+                        if (leftCount == 0 || rightCount == 0 || acc == null || rightBoxes[b] == null) {
+                            continue;
+                        }
+                        final float c = leftCount * acc.area() + rightCount * rightBoxes[b].area();
+                        if (c < cost) {
+                            cost = c;
+                            dim = d;
+                            pos = lo + b * width;
+                        }
+                    }
+                }
+            }
+
+            private int bin(final float v, final float lo, final float width) {
+                final int b = (int) ((v - lo) / width);
+                return b < 0 ? 0 : b < BINS ? b : BINS - 1;
+            }
+
+            private BBox slab(final BBox box, final int d, final float lo, final float width, final int b) {
+                final float[] min = { box.getMin().x(), box.getMin().y(), box.getMin().z() };
+                final float[] max = { box.getMax().x(), box.getMax().y(), box.getMax().z() };
+                min[d] = b == 0 ? min[d] : lo + b * width;
+                max[d] = b == BINS - 1 ? max[d] : lo + (b + 1) * width;
+                return BBox.create(new Point(min[0], min[1], min[2]), new Point(max[0], max[1], max[2]));
+            }
+
+            // returns false if the split would not separate anything or
+            // exceeds the duplication budget:
+            private boolean partition(final List<Ref> refs, final List<Ref> left, final List<Ref> right) {
+                int straddling = 0;
+                for (final Ref ref : refs) {
+                    if (ref.box.getMin().get(dim) < pos && ref.box.getMax().get(dim) > pos) {
+                        straddling++;
+                    }
+                }
+                if (straddling > budget) {
+                    return false;
+                }
+
+                for (final Ref ref : refs) {
+                    final float min = ref.box.getMin().get(dim), max = ref.box.getMax().get(dim);
+                    if (max <= pos) {
+                        left.add(ref);
+                    } else if (min >= pos) {
+                        right.add(ref);
+                    } else {
+                        final BBox l = ref.obj.clip(BBox.intersection(ref.box, half(ref.box, true)));
+                        final BBox r = ref.obj.clip(BBox.intersection(ref.box, half(ref.box, false)));
+                        final boolean inLeft = l.isFinite(), inRight = r.isFinite();
+                        // rounding may leave nothing on one side, keep the other:
+                        if (inLeft) {
+                            left.add(new Ref(ref.obj, l));
+                        }
+                        if (inRight || !inLeft) {
+                            right.add(new Ref(ref.obj, inRight ? r : ref.box));
+                        }
+                    }
+                }
+                if (left.isEmpty() || right.isEmpty() || left.size() == refs.size() || right.size() == refs.size()) {
+                    return false;
+                }
+                budget -= left.size() + right.size() - refs.size();
+                return true;
+            }
+
+            // the part of the box on one side of the split plane:
+            private BBox half(final BBox box, final boolean lower) {
+                final float[] min = { box.getMin().x(), box.getMin().y(), box.getMin().z() };
+                final float[] max = { box.getMax().x(), box.getMax().y(), box.getMax().z() };
+                if (lower) {
+                    max[dim] = pos;
+                } else {
+                    min[dim] = pos;
+                }
+                return BBox.create(new Point(min[0], min[1], min[2]), new Point(max[0], max[1], max[2]));
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package raytracer.core.def;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
+import raytracer.core.RayPacket;
 import raytracer.geom.BBox;
 import raytracer.math.Ray;
 
@@ -14,7 +17,7 @@ import raytracer.math.Ray;
  */
 public class SimpleAccelerator extends Accelerator {
 
-	private final List<Obj> prims = new LinkedList<Obj>();
+	private final List<Obj> prims = new ArrayList<Obj>();
 
 	/**
 	 * Returns the infinity bounding box
@@ -35,6 +38,19 @@ public class SimpleAccelerator extends Accelerator {
 		prims.add(prim);
 	}
 
+	/**
+	 * Adds all given objects to the acceleration structure
+	 *
+	 * @param prims
+	 *            The objects to add
+	 */
+	@Override
+	public void addAll(final Collection<? extends Obj> prims) {
+		if (prims == null)
+			throw new IllegalArgumentException("prims must not be null");
+		this.prims.addAll(prims);
+	}
+
 	/**
 	 * Computes a hit point with the given parameters
 	 *
@@ -48,20 +64,49 @@ public class SimpleAccelerator extends Accelerator {
 	 *            The maximum distance
 	 * @return The computed hit
 	 */
-	public Hit hit(final Ray ray, final Obj obj, final float tmin, float tmax) {
-		Hit nearest = Hit.No.get();
+	public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+		final HitRecord record = new HitRecord(tmax);
+		return intersect(ray, obj, tmin, record) ? record.toHit(ray) : Hit.No.get();
+	}
+
+	/**
+	 * Checks whether any object is hit between tmin and tmax, stopping at the
+	 * first hit found
+	 */
+	@Override
+	public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+		for (final Obj p : prims) {
+			if (p.occluded(ray, tmin, tmax))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records the closest hit of the ray with all objects
+	 */
+	@Override
+	public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		boolean found = false;
 		for (final Obj p : prims) {
-			final Hit hit = p.hit(ray, p, tmin, tmax);
-			if (hit.hits()) {
-				final float t = hit.getParameter();
-				if (t < tmax) {
-					nearest = hit;
-					tmax = t;
-				}
-			}
+			if (p.intersect(ray, p, tmin, record))
+				found = true;
 		}
 
-		return nearest;
+		return found;
+	}
+
+	/**
+	 * Records the closest hits of the active rays of the packet with all
+	 * objects
+	 */
+	@Override
+	public long intersect(final RayPacket packet, final long active, final Obj obj, final float tmin) {
+		long found = 0;
+		for (final Obj p : prims)
+			found |= p.intersect(packet, active, p, tmin);
+
+		return found;
 	}
 
 }
@@ -0,0 +1,73 @@
+package raytracer.core.def;
+
+import raytracer.core.Hit;
+import raytracer.core.Obj;
+import raytracer.math.Point;
+import raytracer.math.Vec2;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a hit whose values have already been computed, usually from a
+ * {@link raytracer.core.HitRecord}
+ */
+public final class StandardHit implements Hit {
+
+	private final Obj obj;
+	private final float parameter;
+	private final Point point;
+	private final Vec3 normal;
+	private final Vec2 uv;
+
+	/**
+	 * Creates a new hit
+	 *
+	 * @param obj
+	 *            The hit object
+	 * @param parameter
+	 *            The distance of the hit
+	 * @param point
+	 *            The hit point
+	 * @param normal
+	 *            The normal
+	 * @param uv
+	 *            The texture coordinates
+	 */
+	public StandardHit(final Obj obj, final float parameter, final Point point, final Vec3 normal,
+			final Vec2 uv) {
+		this.obj = obj;
+		this.parameter = parameter;
+		this.point = point;
+		this.normal = normal;
+		this.uv = uv;
+	}
+
+	@Override
+	public boolean hits() {
+		return true;
+	}
+
+	@Override
+	public float getParameter() {
+		return parameter;
+	}
+
+	@Override
+	public Point getPoint() {
+		return point;
+	}
+
+	@Override
+	public Vec3 getNormal() {
+		return normal;
+	}
+
+	@Override
+	public Vec2 getUV() {
+		return uv;
+	}
+
+	@Override
+	public Obj get() {
+		return obj;
+	}
+}
@@ -1,6 +1,7 @@
 package raytracer.core.def;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
 import raytracer.core.Shader;
 import raytracer.core.Trace;
@@ -46,6 +47,14 @@ public class StandardObj implements Obj {
 		return primitive.bbox();
 	}
 
+	/**
+	 * Clips the encapsulated primitive
+	 */
+	@Override
+	public BBox clip(final BBox box) {
+		return primitive.clip(box);
+	}
+
 	/**
 	 * Computes a hit point with the given parameters
 	 *
@@ -64,6 +73,16 @@ public class StandardObj implements Obj {
 		return primitive.hit(ray, this, tmin, tmax);
 	}
 
+	@Override
+	public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+		return primitive.occluded(ray, tmin, tmax);
+	}
+
+	@Override
+	public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		return primitive.intersect(ray, this, tmin, record);
+	}
+
 	@Override
 	public int hashCode() {
 		return primitive.hashCode();
@@ -4,7 +4,9 @@ import java.util.Collection;
 
 import raytracer.core.Camera;
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.LightSource;
+import raytracer.core.RayPacket;
 import raytracer.core.Scene;
 import raytracer.geom.Primitive;
 import raytracer.math.Color;
@@ -19,6 +21,8 @@ public class StandardScene implements Scene {
 	private final Primitive accel;
 	private final Color background = Color.BLACK;
 	private final Camera camera;
+	// every tracing thread reuses its own record for the closest hit:
+	private final ThreadLocal<HitRecord> records = ThreadLocal.withInitial(HitRecord::new);
 
 	/**
 	 * Creates a new standard scene
@@ -76,7 +80,35 @@ public class StandardScene implements Scene {
 	 */
 	@Override
 	public Hit hit(final Ray ray) {
-		return accel.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+		final HitRecord record = records.get().reset(Float.POSITIVE_INFINITY);
+		return accel.intersect(ray, null, 0, record) ? record.toHit(ray) : Hit.No.get();
+	}
+
+	/**
+	 * Computes the closest hits of all rays of the packet, tracing them
+	 * through the acceleration structure together
+	 *
+	 * @param packet
+	 *            The packet of rays
+	 */
+	@Override
+	public void hit(final RayPacket packet) {
+		accel.intersect(packet, packet.all(), null, 0);
+	}
+
+	/**
+	 * Checks whether the given ray hits anything before the given distance,
+	 * stopping at the first hit found
+	 *
+	 * @param ray
+	 *            The ray used for intersection computation
+	 * @param tmax
+	 *            The maximum distance
+	 * @return True if anything is hit before tmax
+	 */
+	@Override
+	public boolean occluded(final Ray ray, final float tmax) {
+		return accel.occluded(ray, 0, tmax);
 	}
 
 }
@@ -0,0 +1,196 @@
+package raytracer.core.def;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.core.Shader;
+import raytracer.core.Trace;
+import raytracer.geom.BBox;
+import raytracer.geom.Util;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec2;
+import raytracer.math.Vec3;
+
+/**
+ * Represents a triangle mesh stored in flat arrays: the vertex positions and
+ * three vertex indices per triangle are stored once for the whole mesh, which
+ * has a single shader. The mesh keeps its own hierarchy in the layout of
+ * {@link FlatBVH} whose leaves refer to triangle indices, so no object is
+ * allocated per triangle. Hits report the mesh as their object and the same
+ * point, normal and UV as a {@link raytracer.geom.GeomFactory#createTriangle
+ * triangle} over the same vertices.
+ */
+public class TriangleMesh implements Obj {
+
+    private final float[] positions;
+    private final int[] indices;
+    private final Shader shader;
+
+    // the hierarchy, see FlatBVH, with the triangle indices in leaf order:
+    private final float[] bounds;
+    private final int[] links;
+    private final int[] triangles;
+    private final BBox box;
+    private final int depth;
+    private final FlatBVH.Leaf leaves = this::testLeaf;
+
+    /**
+     * Creates a new mesh and builds its hierarchy with the SAH builder
+     *
+     * @param positions
+     *            The vertex positions, x, y and z per vertex
+     * @param indices
+     *            The indices of the three vertices of every triangle
+     * @param shader
+     *            The shader used by all triangles
+     * @throws IllegalArgumentException
+     *             If an argument is null, the arrays do not consist of
+     *             triples or an index does not refer to a vertex
+     */
+    public TriangleMesh(final float[] positions, final int[] indices, final Shader shader) {
+        if (positions == null || indices == null || shader == null) {
+            throw new IllegalArgumentException("positions, indices and shader must not be null");
+        }
+        if (positions.length % 3 != 0 || indices.length % 3 != 0) {
+            throw new IllegalArgumentException("positions and indices must consist of triples");
+        }
+        for (final int index : indices) {
+            if (index < 0 || 3 * index >= positions.length) {
+                throw new IllegalArgumentException("index " + index + " does not refer to a vertex");
+            }
+        }
+        this.positions = positions;
+        this.indices = indices;
+        this.shader = shader;
+
+        // the hierarchy is built over the boxes of the triangles, the ids end up in leaf order:
+        final BBox[] boxes = new BBox[indices.length / 3];
+        final int[] ids = new int[boxes.length];
+        for (int id = 0; id < boxes.length; id++) {
+            boxes[id] = triangleBox(id);
+            ids[id] = id;
+        }
+        final FlatBVH.Builder builder = new FlatBVH.Builder();
+        new SAHBVH().build(boxes, ids, builder);
+
+        this.bounds = builder.bounds();
+        this.links = builder.links();
+        this.triangles = ids;
+        this.box = ids.length == 0 ? BBox.EMPTY
+                : BBox.create(new Point(bounds[0], bounds[1], bounds[2]), new Point(bounds[3], bounds[4], bounds[5]));
+        this.depth = builder.depth;
+    }
+
+    private BBox triangleBox(final int id) {
+        final Point a = vertex(indices[3 * id]);
+        final Point b = vertex(indices[3 * id + 1]);
+        final Point c = vertex(indices[3 * id + 2]);
+        return BBox.create(a.min(b, c), a.max(b, c));
+    }
+
+    private Point vertex(final int index) {
+        return new Point(positions[3 * index], positions[3 * index + 1], positions[3 * index + 2]);
+    }
+
+    /**
+     * Returns the number of triangles
+     *
+     * @return The number of triangles
+     */
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    /**
+     * Returns the number of vertices
+     *
+     * @return The number of vertices
+     */
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    /**
+     * Returns the bounding box of all triangles
+     */
+    @Override
+    public BBox bbox() {
+        return box;
+    }
+
+    /**
+     * Returns the color computed by the shader of the mesh
+     */
+    @Override
+    public Color shade(final Hit hit, final Trace trace) {
+        return shader.shade(hit, trace);
+    }
+
+    /**
+     * Computes a hit point with the given parameters, the mesh is the object
+     * of the hit
+     *
+     * @param ray
+     *            The ray to compute the intersection with
+     * @param obj
+     *            The object to compute the intersection with (ignored)
+     * @param tmin
+     *            The minimum distance
+     * @param tmax
+     *            The maximum distance
+     * @return The computed hit
+     */
+    @Override
+    public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+        final HitRecord record = new HitRecord(tmax);
+        return intersect(ray, obj, tmin, record) ? record.toHit(ray) : Hit.No.get();
+    }
+
+    /**
+     * Records the closest hit of the ray with the triangles
+     */
+    @Override
+    public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+        return FlatBVH.traverse(bounds, links, depth, ray, tmin, record.getParameter(), record, leaves);
+    }
+
+    /**
+     * Checks whether any triangle is hit between tmin and tmax, stopping at the
+     * first hit found
+     */
+    @Override
+    public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+        return FlatBVH.traverse(bounds, links, depth, ray, tmin, tmax, null, leaves);
+    }
+
+    @Override
+    public Hit toHit(final Ray ray, final HitRecord record) {
+        final float r = record.getParameter();
+        final Vec3 n = record.getNormal();
+        return new StandardHit(this, r, Util.offsetHitPoint(ray, r, n.x(), n.y(), n.z()), n,
+                new Vec2(record.getU(), record.getV()));
+    }
+
+    // the leaf test of FlatBVH's traversal, testing the triangles directly:
+    private boolean testLeaf(final int first, final int count, final Ray ray, final float tmin, float tmax,
+            final HitRecord record) {
+        boolean found = false;
+        for (int i = first; i < first + count; i++) {
+            final int id = triangles[i];
+            final int a = 3 * indices[3 * id], b = 3 * indices[3 * id + 1], c = 3 * indices[3 * id + 2];
+            final float mx = positions[a], my = positions[a + 1], mz = positions[a + 2];
+            if (Util.intersectTriangle(ray, mx, my, mz, positions[b] - mx, positions[b + 1] - my,
+                    positions[b + 2] - mz, positions[c] - mx, positions[c + 1] - my, positions[c + 2] - mz, tmin,
+                    tmax, record, this, this)) {
+                if (record == null) {
+                    return true;
+                }
+                found = true;
+                tmax = record.getParameter();
+            }
+        }
+        return found;
+    }
+}
@@ -62,6 +62,26 @@ public class BBox {
 		return new BBox(min, max);
 	}
 
+	/**
+	 * Computes the intersection of the two given bounding boxes
+	 *
+	 * @param a
+	 *            The first bounding box
+	 * @param b
+	 *            The second bounding box
+	 * @return The box covered by both boxes, the empty box if they do not
+	 *         overlap
+	 */
+	public static BBox intersection(final BBox a, final BBox b) {
+		final Point min = a.pp[MIN].max(b.pp[MIN]);
+		final Point max = a.pp[MAX].min(b.pp[MAX]);
+		for (int i = 0; i != 3; ++i) {
+			if (min.get(i) > max.get(i))
+				return EMPTY;
+		}
+		return new BBox(min, max);
+	}
+
 	/**
 	 * Checks whether the given box intersects the current once
 	 *
@@ -96,6 +116,29 @@ public class BBox {
 		return pp[MAX];
 	}
 
+	/**
+	 * Checks whether the box is bounded
+	 *
+	 * @return True if all coordinates of the box are finite
+	 */
+	public final boolean isFinite() {
+		return pp[MIN].isFinite() && pp[MAX].isFinite();
+	}
+
+	/**
+	 * Computes the surface area of the box
+	 *
+	 * @return The surface area of the box (zero for the empty box)
+	 */
+	public final float area() {
+		final float dx = pp[MAX].x() - pp[MIN].x();
+		final float dy = pp[MAX].y() - pp[MIN].y();
+		final float dz = pp[MAX].z() - pp[MIN].z();
+		if (dx < 0 || dy < 0 || dz < 0)
+			return 0;
+		return 2 * (dx * dy + dy * dz + dz * dx);
+	}
+
 	/**
 	 * Computes a hit point with the given parameters
 	 *
@@ -109,12 +152,11 @@ public class BBox {
 	 */
 	public Hit hit(final Ray ray, float tmin, float tmax) {
 		final Vec3 /* normalized */dir = ray.dir();
-		final Vec3 invDir = ray.invDir();
 		final Point base = ray.base();
 		for (int i = 0; i < 3; i++) {
 			final int neg = dir.isNeg(i);
 			final float ba = base.get(i);
-			final float inv = invDir.get(i);
+			final float inv = ray.inv(i);
 			final float t0 = (pp[neg].get(i) - ba) * inv;
 			final float t1 = (pp[1 - neg].get(i) - ba) * inv;
 			if (t0 > tmin)
@@ -128,6 +170,38 @@ public class BBox {
 		return Hit.Yes.get();
 	}
 
+	/**
+	 * Computes the distance at which the given ray enters the box
+	 *
+	 * @param ray
+	 *            The ray to compute the intersection with
+	 * @param tmin
+	 *            The minimum distance
+	 * @param tmax
+	 *            The maximum distance
+	 * @return The entry distance clamped to tmin, or NaN if the ray misses the
+	 *         box within [tmin, tmax]
+	 */
+	public float entry(final Ray ray, float tmin, float tmax) {
+		final Vec3 /* normalized */dir = ray.dir();
+		final Point base = ray.base();
+		for (int i = 0; i < 3; i++) {
+			final int neg = dir.isNeg(i);
+			final float ba = base.get(i);
+			final float inv = ray.inv(i);
+			final float t0 = (pp[neg].get(i) - ba) * inv;
+			final float t1 = (pp[1 - neg].get(i) - ba) * inv;
+			if (t0 > tmin)
+				tmin = t0;
+			if (t1 < tmax)
+				tmax = t1;
+			if (tmin > tmax)
+				return Float.NaN;
+		}
+
+		return tmin;
+	}
+
 	@Override
 	public final int hashCode() {
 		int result = 0xf6a2810d;
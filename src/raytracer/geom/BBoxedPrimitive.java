@@ -1,6 +1,7 @@
 package raytracer.geom;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
 import raytracer.math.Ray;
 
@@ -85,4 +86,41 @@ public abstract class BBoxedPrimitive implements Primitive {
 	 */
 	public abstract Hit hitTest(Ray ray, Obj obj, float tmin, float tmax);
 
+	@Override
+	public final boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		if (bbox.hit(ray, tmin, record.getParameter()).hits())
+			return intersectTest(ray, obj, tmin, record);
+		return false;
+	}
+
+	@Override
+	public final boolean occluded(final Ray ray, final float tmin, final float tmax) {
+		if (bbox.hit(ray, tmin, tmax).hits())
+			return occludedTest(ray, tmin, tmax);
+		return false;
+	}
+
+	/**
+	 * Checks whether the ray hits this primitive once its bounding box is
+	 * known to be hit, see {@link Primitive#occluded(Ray, float, float)}. The
+	 * default computes a {@link Hit} with
+	 * {@link #hitTest(Ray, Obj, float, float)}.
+	 */
+	protected boolean occludedTest(final Ray ray, final float tmin, final float tmax) {
+		return hitTest(ray, null, tmin, tmax).hits();
+	}
+
+	/**
+	 * Intersects the ray with this primitive once its bounding box is known to
+	 * be hit, see {@link Primitive#intersect(Ray, Obj, float, HitRecord)}. The
+	 * default computes a {@link Hit} with {@link #hitTest(Ray, Obj, float, float)}.
+	 */
+	protected boolean intersectTest(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		final Hit hit = hitTest(ray, obj, tmin, record.getParameter());
+		if (!hit.hits() || !record.accepts(hit.getParameter()))
+			return false;
+		record.set(hit);
+		return true;
+	}
+
 }
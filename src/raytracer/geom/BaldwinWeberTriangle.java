@@ -0,0 +1,97 @@
+package raytracer.geom;
+
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.math.Constants;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * A triangle tested with the Baldwin-Weber kernel. The triangle stores the
+ * affine transformation mapping a point p = a + s * (b - a) + t * (c - a) + w
+ * * k to (s, t, w), where k is the axis along the largest component of the
+ * normal. A test transforms the ray, intersects it with the plane w = 0 and
+ * checks the barycentric coordinates of the intersection, which needs no
+ * cross product.
+ */
+class BaldwinWeberTriangle extends KernelTriangle {
+
+	// the rows of the 3x4 matrix, the last column is the translation:
+	private final float m00, m01, m02, m03;
+	private final float m10, m11, m12, m13;
+	private final float m20, m21, m22, m23;
+
+	BaldwinWeberTriangle(final Point a, final Point b, final Point c) {
+		super(a, b, c);
+		final Vec3 u = b.sub(a), v = c.sub(a);
+		final Vec3 n = u.cross(v);
+		final int axis = Math.abs(n.x()) > Math.abs(n.y()) && Math.abs(n.x()) > Math.abs(n.z()) ? 0
+				: Math.abs(n.y()) > Math.abs(n.z()) ? 1 : 2;
+
+		// invert the matrix with the columns u, v and k (in double precision):
+		final double[][] cols = { { u.x(), u.y(), u.z() }, { v.x(), v.y(), v.z() },
+				{ axis == 0 ? 1 : 0, axis == 1 ? 1 : 0, axis == 2 ? 1 : 0 } };
+		final double[][] inv = new double[3][4];
+		// the rows of the inverse are the cross products of the other columns
+		// divided by the determinant:
+		final double det = dot(cols[0], cross(cols[1], cols[2]));
+		for (int row = 0; row < 3; row++) {
+			final double[] r = cross(cols[(row + 1) % 3], cols[(row + 2) % 3]);
+			for (int i = 0; i < 3; i++)
+				inv[row][i] = r[i] / det;
+			inv[row][3] = -(inv[row][0] * a.x() + inv[row][1] * a.y() + inv[row][2] * a.z());
+		}
+		if (det == 0 || !Double.isFinite(det)) {
+			// a degenerate triangle, which is never hit:
+			inv[2][0] = inv[2][1] = inv[2][2] = 0;
+			inv[2][3] = 1;
+		}
+		m00 = (float) inv[0][0];
+		m01 = (float) inv[0][1];
+		m02 = (float) inv[0][2];
+		m03 = (float) inv[0][3];
+		m10 = (float) inv[1][0];
+		m11 = (float) inv[1][1];
+		m12 = (float) inv[1][2];
+		m13 = (float) inv[1][3];
+		m20 = (float) inv[2][0];
+		m21 = (float) inv[2][1];
+		m22 = (float) inv[2][2];
+		m23 = (float) inv[2][3];
+	}
+
+	private static double[] cross(final double[] a, final double[] b) {
+		return new double[] { a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0] };
+	}
+
+	private static double dot(final double[] a, final double[] b) {
+		return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+	}
+
+	@Override
+	protected boolean test(final Ray ray, final Obj obj, final float tmin, final float tmax,
+			final HitRecord record) {
+		final Point o = ray.base();
+		final Vec3 d = ray.dir();
+		final float ox = o.x(), oy = o.y(), oz = o.z();
+		final float dx = d.x(), dy = d.y(), dz = d.z();
+
+		// the distance to the plane w = 0:
+		final float wo = m20 * ox + m21 * oy + m22 * oz + m23;
+		final float wd = m20 * dx + m21 * dy + m22 * dz;
+		if (wd == 0)
+			return false;
+		final float r = -wo / wd;
+		if (!(r >= Constants.EPS && r >= tmin && r <= tmax))
+			return false;
+
+		final float s = m00 * (ox + r * dx) + m01 * (oy + r * dy) + m02 * (oz + r * dz) + m03;
+		if (s < 0.0 || s > 1.0)
+			return false;
+		final float t = m10 * (ox + r * dx) + m11 * (oy + r * dy) + m12 * (oz + r * dz) + m13;
+		if (t < 0.0 || (s + t) > 1.0)
+			return false;
+		return record(record, obj, r, s, t);
+	}
+}
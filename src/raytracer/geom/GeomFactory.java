@@ -56,4 +56,39 @@ public final class GeomFactory {
 	public static Triangle createTriangle(final Point a, final Point b, final Point c) {
 		return new Triangle(a, b, c);
 	}
+
+	/**
+	 * Generates a triangle from given three points which is tested with the
+	 * given kernel.
+	 *
+	 * @param a      First point
+	 * @param b      Second point
+	 * @param c      Third point
+	 * @param kernel The intersection test to use
+	 * @return The new triangle
+	 * @throws IllegalArgumentException If the kernel is null
+	 */
+	public static Primitive createTriangle(final Point a, final Point b, final Point c,
+			final TriangleKernel kernel) {
+		if (kernel == null)
+			throw new IllegalArgumentException("kernel must not be null");
+		switch (kernel) {
+		case BALDWIN_WEBER:
+			return new BaldwinWeberTriangle(a, b, c);
+		case WATERTIGHT:
+			return new WatertightTriangle(a, b, c);
+		default:
+			return new Triangle(a, b, c);
+		}
+	}
+
+	/**
+	 * Wraps the given primitive so that it can be replaced later on.
+	 *
+	 * @param p The initial primitive
+	 * @return The new updatable primitive
+	 */
+	public static UpdatablePrimitive createUpdatable(final Primitive p) {
+		return new UpdatablePrimitive(p);
+	}
 }
@@ -0,0 +1,88 @@
+package raytracer.geom;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.core.def.StandardHit;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec2;
+import raytracer.math.Vec3;
+import raytracer.math.VecMath;
+
+/**
+ * Represents a triangle with a precomputed intersection kernel (see
+ * {@link TriangleKernel}). Subclasses implement the test on their own data,
+ * the hits are built like those of the Moeller-Trumbore {@link Triangle}.
+ */
+abstract class KernelTriangle extends BBoxedPrimitive {
+
+	// the normal of the triangle (v x u, normalized like Triangle's):
+	private final float nx, ny, nz;
+
+	protected KernelTriangle(final Point a, final Point b, final Point c) {
+		super(BBox.create(a.min(b, c), a.max(b, c)));
+		final float[] n = new float[3];
+		VecMath.cross(c.x() - a.x(), c.y() - a.y(), c.z() - a.z(), b.x() - a.x(), b.y() - a.y(), b.z() - a.z(), n,
+				0);
+		VecMath.normalize(n, 0);
+		this.nx = n[0];
+		this.ny = n[1];
+		this.nz = n[2];
+	}
+
+	/**
+	 * Intersects the ray with the triangle. The hit is recorded with its
+	 * distance, the weights of the second and third point as UV and the
+	 * normal, unless record is null.
+	 *
+	 * @param ray
+	 *            The ray to compute the intersection with
+	 * @param obj
+	 *            The object to record
+	 * @param tmin
+	 *            The minimum distance
+	 * @param tmax
+	 *            The maximum distance
+	 * @param record
+	 *            The record or null if only a hit has to be found
+	 * @return True if the triangle is hit (and the record has been updated)
+	 */
+	protected abstract boolean test(Ray ray, Obj obj, float tmin, float tmax, HitRecord record);
+
+	/**
+	 * Records a hit the test has found if the record accepts it
+	 */
+	protected final boolean record(final HitRecord record, final Obj obj, final float r, final float s,
+			final float t) {
+		if (record == null)
+			return true;
+		if (!record.accepts(r))
+			return false;
+		record.set(r, s, t, nx, ny, nz, this, obj);
+		return true;
+	}
+
+	@Override
+	public Hit hitTest(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+		final HitRecord record = new HitRecord(tmax);
+		return test(ray, obj, tmin, tmax, record) ? toHit(ray, record) : Hit.No.get();
+	}
+
+	@Override
+	protected boolean intersectTest(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		return test(ray, obj, tmin, record.getParameter(), record);
+	}
+
+	@Override
+	protected boolean occludedTest(final Ray ray, final float tmin, final float tmax) {
+		return test(ray, null, tmin, tmax, null);
+	}
+
+	@Override
+	public Hit toHit(final Ray ray, final HitRecord record) {
+		final float r = record.getParameter();
+		return new StandardHit(record.get(), r, Util.offsetHitPoint(ray, r, nx, ny, nz), new Vec3(nx, ny, nz),
+				new Vec2(record.getU(), record.getV()));
+	}
+}
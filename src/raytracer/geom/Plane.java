@@ -1,24 +1,29 @@
 package raytracer.geom;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
-import raytracer.core.def.LazyHitTest;
-import raytracer.math.Constants;
+import raytracer.core.def.StandardHit;
+import raytracer.math.ONB;
 import raytracer.math.Point;
 import raytracer.math.Ray;
 import raytracer.math.Vec2;
 import raytracer.math.Vec3;
+import raytracer.math.VecMath;
 
 public class Plane extends BBoxedPrimitive {
     private final Vec3 norm; // The normal variable represents the normal vector of the plane.
     private final Point supp; // The support variable represents a point on the plane that provides support
                               // for defining the plane.
+    // the basis of Util.computePlaneUV, which only depends on the normal:
+    private final ONB uvBasis;
 
     // Constructor using three span points
     public Plane(Point a, Point b, Point c) {
         super(BBox.INF);
         this.norm = computeNormal(a, b, c);
         this.supp = a;
+        this.uvBasis = ONB.fromW(norm);
     }
 
     // Constructor using normal vector and support point
@@ -26,80 +31,62 @@ public class Plane extends BBoxedPrimitive {
         super(BBox.INF);
         this.norm = normal.normalized();
         this.supp = support;
+        this.uvBasis = ONB.fromW(norm);
     }
 
+    // the hit is found by the allocation-free test below:
     @Override
     public Hit hitTest(Ray ray, Obj obj, float tmin, float tmax) {
-        return new LazyHitTest(obj) {
-            private Point point = null;
-            private Vec3 planeNorm = null;
-            private float parameter = Constants.EPS;
-
-            // The getParameter method returns the intersection parameter.
-            @Override
-            public float getParameter() {
-                return parameter;
-            }
-
-            // The getPoint method calculates and returns the intersection point by
-            // evaluating the ray equation ray.eval(parameter) if it hasn't been calculated
-            // yet.
-            @Override
-            public Point getPoint() {
-                if (point == null) {
-                    point = ray.eval(parameter);
-                }
-                return point;
-            }
-
-            // The getUV method calculates and returns the UV coordinates on the plane's
-            // surface based on the normal, support point, and intersection point by calling
-            // the computePlaneUV method from the Util class.
-            @Override
-            public Vec2 getUV() {
-                return Util.computePlaneUV(norm, supp, point);
-
-            }
+        HitRecord record = new HitRecord(tmax);
+        return test(ray, obj, tmin, tmax, record) ? toHit(ray, record) : Hit.No.get();
+    }
 
-            // The getNormal method returns the surface normal, which is the same as the
-            // plane's normal.
-            @Override
-            public Vec3 getNormal() {
-                if (planeNorm == null) {
-                    planeNorm = norm;
-                }
-                return planeNorm;
-            }
+    @Override
+    protected boolean intersectTest(Ray ray, Obj obj, float tmin, HitRecord record) {
+        return test(ray, obj, tmin, record.getParameter(), record);
+    }
 
-            @Override
-            protected boolean calculateHit() {
-                float den;
-                den = ray.dir().dot(norm);
-                // If denom is zero, it means that the ray is parallel to the plane, so there is
-                // no intersection. In this case, the method returns false.
-                if (den == 0) {
-                    return false; // Ray is parallel to the plane
-                }
-                // If denom is not zero, it calculates the intersection parameter t by taking
-                // the dot product of the difference between the ray's base point and the
-                // support point with the plane's normal and dividing it by denom.
-                float bro = (supp.sub(ray.base())).dot(norm) / den;
+    @Override
+    protected boolean occludedTest(Ray ray, float tmin, float tmax) {
+        return test(ray, null, tmin, tmax, null);
+    }
 
-                // It then checks if t is within the valid range defined by tmin and tmax. If
-                // it's outside the range, there is no valid intersection, so the method returns
-                // false.
-                if (bro < tmin || bro > tmax) {
-                    return false; // Hit point is outside the valid range
-                }
+    // the ray-plane test, computed on the components of the vectors so that
+    // no temporary vectors are created (the hit is recorded unless record is
+    // null):
+    private boolean test(Ray ray, Obj obj, float tmin, float tmax, HitRecord record) {
+        final Vec3 dir = ray.dir();
+        final Point base = ray.base();
+        float den = dir.x() * norm.x() + dir.y() * norm.y() + dir.z() * norm.z();
+        if (den == 0) {
+            return false; // Ray is parallel to the plane
+        }
+        float bro = ((supp.x() - base.x()) * norm.x() + (supp.y() - base.y()) * norm.y()
+                + (supp.z() - base.z()) * norm.z()) / den;
+        if (bro < tmin || bro > tmax) {
+            return false;
+        }
+        if (record == null) {
+            return true;
+        }
+        if (!record.accepts(bro)) {
+            return false;
+        }
+        record.set(bro, 0, 0, norm.x(), norm.y(), norm.z(), this, obj);
+        return true;
+    }
 
-                // If there is a valid intersection, it assigns the intersection parameter,
-                // calculates the intersection point by evaluating the ray equation
-                // ray.eval(parameter), and returns true to indicate a successful hit.
-                parameter = bro;
-                point = ray.eval(parameter);
-                return true;
-            }
-        };
+    @Override
+    public Hit toHit(Ray ray, HitRecord record) {
+        float r = record.getParameter();
+        Point o = ray.base();
+        Vec3 dir = ray.dir();
+        Point point = new Point(o.x() + r * dir.x(), o.y() + r * dir.y(), o.z() + r * dir.z());
+        // Util.computePlaneUV with the precomputed basis:
+        float px = point.x() - supp.x(), py = point.y() - supp.y(), pz = point.z() - supp.z();
+        Vec3 u = uvBasis.u(), v = uvBasis.v();
+        return new StandardHit(record.get(), r, point, norm, new Vec2(VecMath.dot(px, py, pz, u.x(), u.y(), u.z()),
+                VecMath.dot(px, py, pz, v.x(), v.y(), v.z())));
     }
 
     @Override
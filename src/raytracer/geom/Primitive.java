@@ -1,7 +1,9 @@
 package raytracer.geom;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
+import raytracer.core.RayPacket;
 import raytracer.math.Ray;
 
 /**
@@ -31,4 +33,106 @@ public interface Primitive {
 	 */
 	Hit hit(Ray ray, Obj obj, float tmin, float tmax);
 
+	/**
+	 * Intersects the ray with this primitive and records the hit if it is
+	 * closer than the one in the record. The default computes a {@link Hit}
+	 * (see {@link #hit(Ray, Obj, float, float)}); primitives override this to
+	 * fill the record without allocating, together with
+	 * {@link #toHit(Ray, HitRecord)}.
+	 *
+	 * @param ray
+	 *            The ray to compute the intersection with
+	 * @param obj
+	 *            The object to compute the intersection with
+	 * @param tmin
+	 *            The minimum distance
+	 * @param record
+	 *            The closest hit so far, its distance is the maximum distance
+	 * @return True if the record has been updated
+	 */
+	default boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		final Hit hit = hit(ray, obj, tmin, record.getParameter());
+		if (!hit.hits() || !record.accepts(hit.getParameter()))
+			return false;
+		record.set(hit);
+		return true;
+	}
+
+	/**
+	 * Intersects the active rays of a packet with this primitive and records
+	 * their hits like {@link #intersect(Ray, Obj, float, HitRecord)}, each in
+	 * the record of its ray. The default tests the rays one by one;
+	 * acceleration structures override this to share their node visits
+	 * between the rays.
+	 *
+	 * @param packet
+	 *            The packet
+	 * @param active
+	 *            The mask of the rays to intersect
+	 * @param obj
+	 *            The object to compute the intersection with
+	 * @param tmin
+	 *            The minimum distance
+	 * @return The mask of the rays whose records have been updated
+	 */
+	default long intersect(final RayPacket packet, final long active, final Obj obj, final float tmin) {
+		long found = 0;
+		for (long rest = active; rest != 0; rest &= rest - 1) {
+			final int i = Long.numberOfTrailingZeros(rest);
+			if (intersect(packet.ray(i), obj, tmin, packet.record(i)))
+				found |= 1L << i;
+		}
+		return found;
+	}
+
+	/**
+	 * Checks whether the ray hits this primitive anywhere between tmin and
+	 * tmax, as needed for shadow rays. Unlike
+	 * {@link #hit(Ray, Obj, float, float)} it may stop at the first
+	 * intersection found instead of searching for the closest one. The default
+	 * computes a {@link Hit}.
+	 *
+	 * @param ray
+	 *            The ray to compute the intersection with
+	 * @param tmin
+	 *            The minimum distance
+	 * @param tmax
+	 *            The maximum distance (for shadow rays the distance to the
+	 *            light)
+	 * @return True if anything is hit between tmin and tmax
+	 */
+	default boolean occluded(final Ray ray, final float tmin, final float tmax) {
+		return hit(ray, null, tmin, tmax).hits();
+	}
+
+	/**
+	 * Creates the hit described by a record this primitive has filled in
+	 * {@link #intersect(Ray, Obj, float, HitRecord)} without allocating. The
+	 * default intersects the ray again at exactly the recorded distance;
+	 * primitives override this to build the hit from the record directly.
+	 *
+	 * @param ray
+	 *            The ray the record was filled with
+	 * @param record
+	 *            The record
+	 * @return The hit
+	 */
+	default Hit toHit(final Ray ray, final HitRecord record) {
+		return hit(ray, record.get(), record.getParameter(), record.getParameter());
+	}
+
+	/**
+	 * Computes the bounding box of the part of this primitive that lies within
+	 * the given box. The default is the intersection of both boxes, which is
+	 * conservative for every primitive.
+	 *
+	 * @param box
+	 *            The box to clip this primitive to
+	 * @return The bounding box of the clipped primitive, the empty box if
+	 *         nothing is left
+	 */
+	default BBox clip(final BBox box) {
+		return BBox.intersection(bbox(), box);
+	}
+
 }
@@ -3,12 +3,11 @@ package raytracer.geom;
 //import java.lang.invoke.ConstantCallSite;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
-import raytracer.core.def.LazyHitTest;
-import raytracer.math.Constants;
+import raytracer.core.def.StandardHit;
 import raytracer.math.Point;
 import raytracer.math.Ray;
-import raytracer.math.Vec2;
 import raytracer.math.Vec3;
 
 public class Sphere extends BBoxedPrimitive {
@@ -22,98 +21,74 @@ public class Sphere extends BBoxedPrimitive {
         this.rad = radius;
     }
 
-    // the fun begins here :D :
-    // The hitTest method is overridden from the superclass BBoxedPrimitive to
-    // perform the actual ray-sphere intersection test
-    // It returns a Hit object that contains information about the intersection.
-
+    // the hit is found by the allocation-free test below:
     @Override
     public Hit hitTest(Ray ray, Obj obj, float tmin, float tmax) {
-        return new LazyHitTest(obj) {
-            private Point intpoint = null; // just initialisation of the intersection point
-            private Vec3 norm = null; // same here, initialisation of the surface normal
-            private float para = Constants.EPS; // initialise a small constant value
+        HitRecord record = new HitRecord(tmax);
+        return test(ray, obj, tmin, tmax, record) ? toHit(ray, record) : Hit.No.get();
+    }
 
-            @Override
-            public float getParameter() {
-                return para;
-            }
+    @Override
+    protected boolean intersectTest(Ray ray, Obj obj, float tmin, HitRecord record) {
+        return test(ray, obj, tmin, record.getParameter(), record);
+    }
 
-            // method calculates and returns the intersection point by evaluating the ray
-            // equation:
-            @Override
-            public Point getPoint() {
-                if (intpoint == null) {
-                    intpoint = ray.eval(para);
-                }
-                return intpoint;
-            }
+    @Override
+    protected boolean occludedTest(Ray ray, float tmin, float tmax) {
+        return test(ray, null, tmin, tmax, null);
+    }
 
-            // method calculates and returns the UV coordinates on the sphere's surface
-            // based on the radial vector from the center to the intersection point.
-            @Override
-            public Vec2 getUV() {
-                Vec3 radial = intpoint.sub(cent);
-                return Util.computeSphereUV(radial);
-            }
+    // the ray-sphere test, computed on the components of the vectors so that
+    // no temporary vectors are created (the hit is recorded unless record is
+    // null):
+    private boolean test(Ray ray, Obj obj, float tmin, float tmax, HitRecord record) {
+        final Vec3 dir = ray.dir();
+        final Point base = ray.base();
+        final float dx = dir.x(), dy = dir.y(), dz = dir.z();
+        final float ox = base.x() - cent.x(), oy = base.y() - cent.y(), oz = base.z() - cent.z();
+
+        float a = dx * dx + dy * dy + dz * dz;
+        float b = 2.0f * (ox * dx + oy * dy + oz * dz);
+        float c = (ox * ox + oy * oy + oz * oz) - rad * rad;
+        float disc = b * b - 4 * a * c;
+        if (disc < 0) {
+            return false;
+        }
 
-            // calculates and returns the surface normal vector at the intersection point.
-            // If it hasn't been calculated yet, it subtracts the center from the
-            // intersection point and normalizes the resulting vector.
-            @Override
-            public Vec3 getNormal() {
-                if (norm == null) {
-                    norm = intpoint.sub(cent).normalized();
-                }
-                return norm;
+        float sqrtDisc = (float) Math.sqrt(disc);
+        float denom = 2 * a;
+        float rootL = (-b - sqrtDisc) / denom;
+        if (rootL < tmin || rootL > tmax) {
+            rootL = (-b + sqrtDisc) / denom;
+            if (rootL < tmin || rootL > tmax) {
+                return false;
             }
+        }
+        if (record == null) {
+            return true;
+        }
+        if (!record.accepts(rootL)) {
+            return false;
+        }
 
-            @Override
-            protected boolean calculateHit() {
-
-                float a = Constants.EPS;
-                float b = Constants.EPS;
-                float c = Constants.EPS;
-
-                a = ray.dir().dot(ray.dir());
-
-                b = 2.0f * ray.base().sub(cent).dot(ray.dir());
-                c = ray.base().sub(cent).dot(ray.base().sub(cent)) - rad * rad;
-
-                float disc;
-                disc = b * b - 4 * a * c;
-
-                // It calculates the discriminant and checks if it's negative, indicating no
-                // intersection.
-                if (disc < 0) {
-                    return false;
-                }
-
-                float sqrtDisc = (float) Math.sqrt(disc);
-                float denom = 2 * a;
-                float rootL = (-b - sqrtDisc) / denom;
-
-                // If there is an intersection, it calculates the closest root and checks if
-                // it's within the valid range defined by tmin and tmax. If not, it calculates
-                // the other root and performs the range check again.
-
-                if (rootL < tmin || rootL > tmax) {
-
-                    rootL = (-b + sqrtDisc) / denom;
+        // the normal points from the center to the hit point:
+        float rx = (base.x() + rootL * dx) - cent.x();
+        float ry = (base.y() + rootL * dy) - cent.y();
+        float rz = (base.z() + rootL * dz) - cent.z();
+        float sdot = rx * rx + ry * ry + rz * rz;
+        float factor = 1.0f / (sdot == 1.0f ? 1.0f : (float) Math.sqrt(sdot));
+        record.set(rootL, 0, 0, factor * rx, factor * ry, factor * rz, this, obj);
+        return true;
+    }
 
-                    if (rootL < tmin || rootL > tmax) {
-                        return false;
-                    }
-                }
-                // Finally, it assigns the intersection parameter, intersection point, and
-                // surface normal to the corresponding variables and returns true to indicate a
-                // valid intersection.
-                para = rootL;
-                intpoint = ray.eval(para);
-                norm = intpoint.sub(cent).normalized();
-                return true;
-            }
-        };
+    @Override
+    public Hit toHit(Ray ray, HitRecord record) {
+        float r = record.getParameter();
+        Point base = ray.base();
+        Vec3 dir = ray.dir();
+        Point intpoint = new Point(base.x() + r * dir.x(), base.y() + r * dir.y(), base.z() + r * dir.z());
+        return new StandardHit(record.get(), r, intpoint, record.getNormal(), Util.computeSphereUV(
+                intpoint.x() - cent.x(), intpoint.y() - cent.y(), intpoint.z() - cent.z()));
     }
 
     @Override
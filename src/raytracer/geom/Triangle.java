@@ -1,8 +1,9 @@
 package raytracer.geom;
 
 import raytracer.core.Hit;
+import raytracer.core.HitRecord;
 import raytracer.core.Obj;
-import raytracer.core.def.LazyHitTest;
+import raytracer.core.def.StandardHit;
 import raytracer.math.Constants;
 import raytracer.math.Point;
 import raytracer.math.Ray;
@@ -11,97 +12,142 @@ import raytracer.math.Vec3;
 
 class Triangle extends BBoxedPrimitive {
 
-	private final Point m;
-	private final Vec3 u, v, n;
+	// the first point m and the edges u and v to the second and third point:
+	private final float mx, my, mz, ux, uy, uz, vx, vy, vz;
 
 	public Triangle(final Point a, final Point b, final Point c) {
 		super(BBox.create(a.min(b, c), a.max(b, c)));
-		this.m = a;
-		this.u = b.sub(a);
-		this.v = c.sub(a);
-		this.n = v.cross(u).normalized();
+		this.mx = a.x();
+		this.my = a.y();
+		this.mz = a.z();
+		this.ux = b.x() - a.x();
+		this.uy = b.y() - a.y();
+		this.uz = b.z() - a.z();
+		this.vx = c.x() - a.x();
+		this.vy = c.y() - a.y();
+		this.vz = c.z() - a.z();
 	}
 
 	@Override
 	public Hit hitTest(final Ray ray, final Obj obj, final float tmin, final float tmax) {
-        /* We use an anonymous class:
-         * instead of implementing a class that extends LazyHitTest 
-         * we implement all abstract methods of LazyHitTest on-the-fly.
-         * This is possible since we don't need the class anywhere else and don't need to refer to it anywhere by name.
-         */
-		return new LazyHitTest(obj) {
-            /* 
-            * The abstract class LazyHitTest itself is not specific to the geometric object triangle.
-            * This implementation of the class on the other hand is specific to it.
-            */
-			private Point point = null;
-			private float r, s, t;
-
-			@Override
-			public float getParameter() {
-				return r;
-			}
-
-			@Override
-			public Point getPoint() {
-				if (point == null)
-					point = ray.eval(r).add(n.scale(0.0001f));
-				return point;
-			}
-
-			@Override
-			protected boolean calculateHit() {
-				final Vec3 /* normalized */dir = ray.dir();
-				final Vec3 pvec = dir.cross(v);
-				final float det = pvec.dot(u);
-
-				if (Constants.isZero(det))
-					return false;
-
-				final float invDet = 1 / det;
-				final Vec3 tvec = ray.base().sub(m);
-
-				s = tvec.dot(pvec) * invDet;
-				if (s < 0.0 || s > 1.0)
-					return false;
-
-				final Vec3 qvec = tvec.cross(u);
-				t = dir.dot(qvec) * invDet;
-				if (t < 0.0 || (s + t) > 1.0)
-					return false;
+		final HitRecord record = new HitRecord(tmax);
+		return Util.intersectTriangle(ray, mx, my, mz, ux, uy, uz, vx, vy, vz, tmin, tmax, record, this, obj)
+				? toHit(ray, record)
+				: Hit.No.get();
+	}
 
-				if (t < tmin || t > tmax)
-					return false;
+	@Override
+	protected boolean intersectTest(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		return Util.intersectTriangle(ray, mx, my, mz, ux, uy, uz, vx, vy, vz, tmin, record.getParameter(), record,
+				this, obj);
+	}
 
-				r = v.dot(qvec) * invDet;
-				return r >= Constants.EPS;
-			}
+	@Override
+	protected boolean occludedTest(final Ray ray, final float tmin, final float tmax) {
+		return Util.intersectTriangle(ray, mx, my, mz, ux, uy, uz, vx, vy, vz, tmin, tmax, null, this, null);
+	}
 
-			@Override
-			public Vec2 getUV() {
-				return new Vec2(s, t);
-			}
+	@Override
+	public Hit toHit(final Ray ray, final HitRecord record) {
+		final float r = record.getParameter();
+		final Vec3 n = record.getNormal();
+		return new StandardHit(record.get(), r, Util.offsetHitPoint(ray, r, n.x(), n.y(), n.z()), n,
+				new Vec2(record.getU(), record.getV()));
+	}
 
-			@Override
-			public Vec3 getNormal() {
-				return n;
+	/**
+	 * Clips the triangle against the six planes of the box and returns the
+	 * bounds of the remaining polygon
+	 */
+	@Override
+	public BBox clip(final BBox box) {
+		// every plane adds at most one vertex to the polygon:
+		float[] poly = new float[3 * 9], next = new float[3 * 9];
+		int count = 3;
+		poly[0] = mx;
+		poly[1] = my;
+		poly[2] = mz;
+		poly[3] = mx + ux;
+		poly[4] = my + uy;
+		poly[5] = mz + uz;
+		poly[6] = mx + vx;
+		poly[7] = my + vy;
+		poly[8] = mz + vz;
+
+		for (int plane = 0; plane < 6 && count > 0; plane++) {
+			final int dim = plane % 3;
+			final boolean lower = plane < 3;
+			final float pos = (lower ? box.getMin() : box.getMax()).get(dim);
+			int nextCount = 0;
+			for (int k = 0; k < count; k++) {
+				final int a = 3 * k, b = 3 * ((k + 1) % count);
+				final float da = lower ? poly[a + dim] - pos : pos - poly[a + dim];
+				final float db = lower ? poly[b + dim] - pos : pos - poly[b + dim];
+				if (da >= 0) {
+					System.arraycopy(poly, a, next, 3 * nextCount++, 3);
+				}
+				// the edge crosses the plane:
+				if ((da >= 0) != (db >= 0)) {
+					final float t = da / (da - db);
+					for (int i = 0; i < 3; i++)
+						next[3 * nextCount + i] = poly[a + i] + t * (poly[b + i] - poly[a + i]);
+					next[3 * nextCount + dim] = pos;
+					nextCount++;
+				}
 			}
+			final float[] tmp = poly;
+			poly = next;
+			next = tmp;
+			count = nextCount;
+		}
 
-		};
+		if (count == 0)
+			return BBox.EMPTY;
+		Point min = new Point(poly[0], poly[1], poly[2]);
+		Point max = min;
+		for (int k = 1; k < count; k++) {
+			final Point p = new Point(poly[3 * k], poly[3 * k + 1], poly[3 * k + 2]);
+			min = min.min(p);
+			max = max.max(p);
+		}
+		// rounding must not push the bounds out of the box:
+		return BBox.intersection(BBox.create(min, max), box);
 	}
 
+	/**
+	 * Returns the hash of m, u and v, the same as that of the Point and the two
+	 * Vec3 (see {@link raytracer.math.Vec4#hashCode()})
+	 */
 	@Override
 	public int hashCode() {
-		return m.hashCode() ^ u.hashCode() ^ v.hashCode();
+		// the w of m is 1, that of u and v is 0, and two of the three seeds cancel out:
+		return Float.floatToIntBits(mx) ^ Float.floatToIntBits(my) ^ Float.floatToIntBits(mz)
+				^ Float.floatToIntBits(1.0f) ^ Float.floatToIntBits(ux) ^ Float.floatToIntBits(uy)
+				^ Float.floatToIntBits(uz) ^ Float.floatToIntBits(vx) ^ Float.floatToIntBits(vy)
+				^ Float.floatToIntBits(vz) ^ 0x75CA01D3;
 	}
 
+	/**
+	 * Compares m, u and v like {@link raytracer.math.Vec4#equals(Object)}
+	 */
 	@Override
 	public boolean equals(final Object other) {
 		if (other instanceof Triangle) {
 			final Triangle cobj = (Triangle) other;
-			return cobj.m.equals(m) && cobj.u.equals(u) && cobj.v.equals(v);
+			return equal(cobj.mx, cobj.my, cobj.mz, mx, my, mz) && equal(cobj.ux, cobj.uy, cobj.uz, ux, uy, uz)
+					&& equal(cobj.vx, cobj.vy, cobj.vz, vx, vy, vz);
 		}
 		return false;
 	}
 
+	// two vectors are equal if both contain a NaN or neither does and all components are equal:
+	private static boolean equal(final float ax, final float ay, final float az, final float bx, final float by,
+			final float bz) {
+		final boolean f = Float.isNaN(ax) || Float.isNaN(ay) || Float.isNaN(az);
+		final boolean s = Float.isNaN(bx) || Float.isNaN(by) || Float.isNaN(bz);
+		if (f || s)
+			return f && s;
+		return Constants.isEqual(ax, bx) && Constants.isEqual(ay, by) && Constants.isEqual(az, bz);
+	}
+
 }
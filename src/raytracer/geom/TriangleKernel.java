@@ -0,0 +1,31 @@
+package raytracer.geom;
+
+/**
+ * The ray-triangle intersection tests triangles can be created with (see
+ * {@link GeomFactory#createTriangle(raytracer.math.Point, raytracer.math.Point, raytracer.math.Point, TriangleKernel)}).
+ * All of them report the same distance, normal and UV (the weights of the
+ * second and third point) up to rounding; they differ in the data stored per
+ * triangle, the cost of a test and the handling of rays through shared edges.
+ */
+public enum TriangleKernel {
+
+	/**
+	 * The Moeller-Trumbore test, which stores an edge origin and two edges and
+	 * computes two cross products per test
+	 */
+	MOLLER_TRUMBORE,
+
+	/**
+	 * The Baldwin-Weber test, which stores the affine transformation into the
+	 * space of the triangle as a 3x4 matrix and needs no cross product per
+	 * test
+	 */
+	BALDWIN_WEBER,
+
+	/**
+	 * The watertight test of Woop, Benthin and Wald, which shears the vertices
+	 * into the space of the ray. A ray through an edge shared by two triangles
+	 * hits at least one of them, so there are no cracks between triangles.
+	 */
+	WATERTIGHT;
+}
@@ -0,0 +1,92 @@
+package raytracer.geom;
+
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.math.Ray;
+
+/**
+ * Represents a primitive that can be replaced after it has been added to a
+ * scene, e.g. to move a sphere between two frames. The primitives themselves
+ * stay immutable, an update swaps the wrapped one. Acceleration structures
+ * containing the primitive have to be refitted or rebuilt afterwards.
+ */
+public final class UpdatablePrimitive implements Primitive {
+
+	private volatile Primitive primitive;
+
+	UpdatablePrimitive(final Primitive primitive) {
+		set(primitive);
+	}
+
+	/**
+	 * Returns the current primitive
+	 *
+	 * @return The current primitive
+	 */
+	public Primitive get() {
+		return primitive;
+	}
+
+	/**
+	 * Replaces the current primitive
+	 *
+	 * @param primitive
+	 *            The new primitive
+	 */
+	public void set(final Primitive primitive) {
+		if (primitive == null)
+			throw new IllegalArgumentException("primitive must not be null");
+		this.primitive = primitive;
+	}
+
+	/**
+	 * Returns the bounding box of the current primitive
+	 */
+	@Override
+	public BBox bbox() {
+		return primitive.bbox();
+	}
+
+	/**
+	 * Clips the current primitive
+	 */
+	@Override
+	public BBox clip(final BBox box) {
+		return primitive.clip(box);
+	}
+
+	/**
+	 * Computes a hit point with the given parameters
+	 *
+	 * @param ray
+	 *            The ray to compute the intersection with
+	 * @param obj
+	 *            The object to compute the intersection with
+	 * @param tmin
+	 *            The minimum distance
+	 * @param tmax
+	 *            The maximum distance
+	 * @return The computed hit
+	 */
+	@Override
+	public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+		return primitive.hit(ray, obj, tmin, tmax);
+	}
+
+	/**
+	 * Checks whether the current primitive occludes the ray
+	 */
+	@Override
+	public boolean occluded(final Ray ray, final float tmin, final float tmax) {
+		return primitive.occluded(ray, tmin, tmax);
+	}
+
+	/**
+	 * Intersects the current primitive without allocating
+	 */
+	@Override
+	public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+		return primitive.intersect(ray, obj, tmin, record);
+	}
+}
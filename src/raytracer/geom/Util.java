@@ -1,9 +1,14 @@
 package raytracer.geom;
 
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.math.Constants;
 import raytracer.math.ONB;
 import raytracer.math.Point;
+import raytracer.math.Ray;
 import raytracer.math.Vec2;
 import raytracer.math.Vec3;
+import raytracer.math.VecMath;
 
 public final class Util {
 	private Util() {}
@@ -30,10 +35,112 @@ public final class Util {
 	 * @return        The texture coordinates
 	 */
 	public static Vec2 computeSphereUV(final Vec3 radial) {
-		final double phi   = Math.acos(radial.z());
-		final double theta = Math.atan2(radial.y(), radial.x());
+		return computeSphereUV(radial.x(), radial.y(), radial.z());
+	}
+
+	/**
+	 * Calculates texture coordinates for a sphere
+	 *
+	 * @param x  The x component of the vector from the center to the point
+	 * @param y  The y component of the vector from the center to the point
+	 * @param z  The z component of the vector from the center to the point
+	 * @return   The texture coordinates
+	 */
+	public static Vec2 computeSphereUV(final float x, final float y, final float z) {
+		final double phi   = Math.acos(z);
+		final double theta = Math.atan2(y, x);
 		final float  u     = (float)(phi / (2 * Math.PI));
 		final float  v     = (float)((Math.PI - theta) / Math.PI);
 		return new Vec2(u, v);
 	}
+
+	/**
+	 * Calculates the point of a hit moved slightly off the surface along the
+	 * normal, which is ray.eval(r).add(n.scale(0.0001f)) without the temporary
+	 * vectors
+	 *
+	 * @param ray  The ray
+	 * @param r    The distance of the hit
+	 * @param nx   The x component of the normal
+	 * @param ny   The y component of the normal
+	 * @param nz   The z component of the normal
+	 * @return     The moved hit point
+	 */
+	public static Point offsetHitPoint(final Ray ray, final float r, final float nx, final float ny,
+			final float nz) {
+		final Point base = ray.base();
+		final Vec3 dir = ray.dir();
+		return new Point((base.x() + r * dir.x()) + 0.0001f * nx, (base.y() + r * dir.y()) + 0.0001f * ny,
+				(base.z() + r * dir.z()) + 0.0001f * nz);
+	}
+
+	/**
+	 * Intersects a ray with a triangle by the Moeller-Trumbore test on the
+	 * components, so no temporary vectors are created. The triangle is given
+	 * by its first point m and the edges u and v to the second and third
+	 * point. The hit is recorded with its distance, the weights of the second
+	 * and third point as UV and the normal v x u, unless record is null.
+	 *
+	 * @param ray        The ray to compute the intersection with
+	 * @param mx         The x coordinate of the first point
+	 * @param my         The y coordinate of the first point
+	 * @param mz         The z coordinate of the first point
+	 * @param ux         The x component of the edge to the second point
+	 * @param uy         The y component of the edge to the second point
+	 * @param uz         The z component of the edge to the second point
+	 * @param vx         The x component of the edge to the third point
+	 * @param vy         The y component of the edge to the third point
+	 * @param vz         The z component of the edge to the third point
+	 * @param tmin       The minimum distance
+	 * @param tmax       The maximum distance
+	 * @param record     The record or null if only a hit has to be found
+	 * @param primitive  The primitive to record
+	 * @param obj        The object to record
+	 * @return           True if the triangle is hit (and the record has been updated)
+	 */
+	public static boolean intersectTriangle(final Ray ray, final float mx, final float my, final float mz,
+			final float ux, final float uy, final float uz, final float vx, final float vy, final float vz,
+			final float tmin, final float tmax, final HitRecord record, final Primitive primitive, final Obj obj) {
+		final Vec3 dir = ray.dir();
+		final Point base = ray.base();
+		final float dx = dir.x(), dy = dir.y(), dz = dir.z();
+
+		// pvec = dir x v
+		final float px = dy * vz - dz * vy;
+		final float py = dz * vx - dx * vz;
+		final float pz = dx * vy - dy * vx;
+		final float det = px * ux + py * uy + pz * uz;
+		if (Constants.isZero(det))
+			return false;
+
+		final float invDet = 1 / det;
+		final float tx = base.x() - mx, ty = base.y() - my, tz = base.z() - mz;
+		final float s = (tx * px + ty * py + tz * pz) * invDet;
+		if (s < 0.0 || s > 1.0)
+			return false;
+
+		// qvec = tvec x u
+		final float qx = ty * uz - tz * uy;
+		final float qy = tz * ux - tx * uz;
+		final float qz = tx * uy - ty * ux;
+		final float t = (dx * qx + dy * qy + dz * qz) * invDet;
+		if (t < 0.0 || (s + t) > 1.0)
+			return false;
+
+		final float r = (vx * qx + vy * qy + vz * qz) * invDet;
+		if (r < Constants.EPS || r < tmin || r > tmax)
+			return false;
+		if (record == null)
+			return true;
+		if (!record.accepts(r))
+			return false;
+
+		// the normal v x u, normalized like VecMath.normalize:
+		final float nx = vy * uz - vz * uy;
+		final float ny = vz * ux - vx * uz;
+		final float nz = vx * uy - vy * ux;
+		final float factor = 1.0f / VecMath.norm(nx, ny, nz);
+		record.set(r, s, t, factor * nx, factor * ny, factor * nz, primitive, obj);
+		return true;
+	}
 }
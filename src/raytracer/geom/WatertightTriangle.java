@@ -0,0 +1,95 @@
+package raytracer.geom;
+
+import raytracer.core.HitRecord;
+import raytracer.core.Obj;
+import raytracer.math.Constants;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Vec3;
+
+/**
+ * A triangle tested with the watertight kernel of Woop, Benthin and Wald. The
+ * vertices are translated to the ray origin and sheared so that the ray runs
+ * along the z axis; the edge functions of the projected triangle then decide
+ * about the hit. Edge functions that are exactly zero are recomputed in double
+ * precision, so a ray through an edge or vertex shared by several triangles
+ * hits at least one of them. The bounding box is enlarged slightly, otherwise
+ * the rounding of the box tests in front of the kernel (of flat boxes in
+ * particular) would let such rays slip through again.
+ */
+class WatertightTriangle extends KernelTriangle {
+
+	private final float ax, ay, az, bx, by, bz, cx, cy, cz;
+
+	WatertightTriangle(final Point a, final Point b, final Point c) {
+		super(a, b, c);
+		final BBox box = bbox();
+		final Vec3 pad = new Vec3(1, 1, 1).scale(1e-5f * Math.max(1, box.getMax().sub(box.getMin()).norm()));
+		setBBox(BBox.create(box.getMin().sub(pad), box.getMax().add(pad)));
+		this.ax = a.x();
+		this.ay = a.y();
+		this.az = a.z();
+		this.bx = b.x();
+		this.by = b.y();
+		this.bz = b.z();
+		this.cx = c.x();
+		this.cy = c.y();
+		this.cz = c.z();
+	}
+
+	@Override
+	protected boolean test(final Ray ray, final Obj obj, final float tmin, final float tmax,
+			final HitRecord record) {
+		final Point o = ray.base();
+		final Vec3 d = ray.dir();
+
+		// the dimension in which the ray is largest becomes z, the winding is
+		// kept by swapping x and y for negative directions:
+		final float adx = Math.abs(d.x()), ady = Math.abs(d.y()), adz = Math.abs(d.z());
+		final int kz = adx > ady ? (adx > adz ? 0 : 2) : (ady > adz ? 1 : 2);
+		int kx = kz == 2 ? 0 : kz + 1;
+		int ky = kx == 2 ? 0 : kx + 1;
+		if (d.get(kz) < 0) {
+			final int k = kx;
+			kx = ky;
+			ky = k;
+		}
+		final float sz = 1 / d.get(kz);
+		final float sx = d.get(kx) * sz;
+		final float sy = d.get(ky) * sz;
+
+		// the vertices relative to the origin, sheared:
+		final float okx = o.get(kx), oky = o.get(ky), okz = o.get(kz);
+		final float aKz = get(ax, ay, az, kz) - okz;
+		final float bKz = get(bx, by, bz, kz) - okz;
+		final float cKz = get(cx, cy, cz, kz) - okz;
+		final float aX = get(ax, ay, az, kx) - okx - sx * aKz, aY = get(ax, ay, az, ky) - oky - sy * aKz;
+		final float bX = get(bx, by, bz, kx) - okx - sx * bKz, bY = get(bx, by, bz, ky) - oky - sy * bKz;
+		final float cX = get(cx, cy, cz, kx) - okx - sx * cKz, cY = get(cx, cy, cz, ky) - oky - sy * cKz;
+
+		// the scaled barycentric coordinates:
+		float u = cX * bY - cY * bX;
+		float v = aX * cY - aY * cX;
+		float w = bX * aY - bY * aX;
+		if (u == 0 || v == 0 || w == 0) {
+			u = (float) ((double) cX * bY - (double) cY * bX);
+			v = (float) ((double) aX * cY - (double) aY * cX);
+			w = (float) ((double) bX * aY - (double) bY * aX);
+		}
+		if ((u < 0 || v < 0 || w < 0) && (u > 0 || v > 0 || w > 0))
+			return false;
+		final float det = u + v + w;
+		if (det == 0)
+			return false;
+
+		final float invDet = 1 / det;
+		final float r = (u * sz * aKz + v * sz * bKz + w * sz * cKz) * invDet;
+		if (!(r >= Constants.EPS && r >= tmin && r <= tmax))
+			return false;
+		return record(record, obj, r, v * invDet, w * invDet);
+	}
+
+	private static float get(final float x, final float y, final float z, final int dim) {
+		return dim == 0 ? x : dim == 1 ? y : z;
+	}
+}
@@ -15,6 +15,8 @@ public final class Color extends Vec4<Color, Color> {
 	public static final Color GRAY    = new Color(0.5f, 0.5f, 0.5f);
 	public static final Color WHITE   = new Color(1, 1, 1);
 
+	private final float x, y, z;
+
 	/**
 	 * Creates a new color
 	 *
@@ -26,22 +28,214 @@ public final class Color extends Vec4<Color, Color> {
 	 *            The blue part
 	 */
 	public Color(final float r, final float g, final float b) {
-		super(sat(r), sat(g), sat(b), 0);
+		this.x = VecMath.saturate(r);
+		this.y = VecMath.saturate(g);
+		this.z = VecMath.saturate(b);
 	}
 
+	/**
+	 * Returns the i-th entry (x=0, y=1, z=2, w=3) of this vector.
+	 *
+	 * @param i index of the entry
+	 * @return value of the i-ths entry
+	 */
 	@Override
-	protected Color create(final float r, final float g, final float b, final float a) {
-		return new Color(r, g, b);
+	public final float get(final int i) {
+		assert 0 <= i && i < 4;
+		switch (i) {
+			case 0:
+				return x;
+			case 1:
+				return y;
+			case 2:
+				return z;
+			case 3:
+				return 0;
+		}
+		throw new IllegalArgumentException(
+				"Vector component index out of range");
 	}
 
-	private static float sat(final float x) {
-		if (x > 1.0f)
-			return 1.0f;
-		if (x < 0.0f)
-			return 0.0f;
+	@Override
+	public final float x() {
 		return x;
 	}
 
+	@Override
+	public final float y() {
+		return y;
+	}
+
+	@Override
+	public final float z() {
+		return z;
+	}
+
+	@Override
+	public final float w() {
+		return 0.0f;
+	}
+
+	@Override
+	public final int isNeg(final int i) {
+		return get(i) < 0 ? 1 : 0;
+	}
+
+	@Override
+	public final float dot(final float vx, final float vy, final float vz, final float vw) {
+		return x * vx + y * vy + z * vz;
+	}
+
+	@Override
+	public final float dot(final Vec4<?, ?> v) {
+		return x * v.x() + y * v.y() + z * v.z();
+	}
+
+	@Override
+	public final float dot(final Vec3 v) {
+		return x * v.x() + y * v.y() + z * v.z();
+	}
+
+	@Override
+	public final Color combine(final float r, final Color b) {
+		return new Color(x + r * b.x(), y + r * b.y(), z + r * b.z());
+	}
+
+	@Override
+	public final Color combine(final float s, final float r, final Color b) {
+		return new Color(s * x + r * b.x(), s * y + r * b.y(), s * z + r * b.z());
+	}
+
+	@Override
+	public final Color blend(final float r, final Color b) {
+		return combine(r, 1 - r, b);
+	}
+
+	/**
+	 * Scales vector by the given factor.
+	 *
+	 * @param r scaling factor
+	 * @return scaled vector
+	 */
+	@Override
+	public final Color scale(final float r) {
+		return new Color(r * x, r * y, r * z);
+	}
+
+	/**
+	 * Computes the element-wise sum of this vector and the given vector b.
+	 *
+	 * @param b the second vector
+	 * @return element-wise sum of this and the given vector b
+	 */
+	@Override
+	public final Color add(final Color b) {
+		return new Color(x + b.x(), y + b.y(), z + b.z());
+	}
+
+	/**
+	 * Subtracts the given vector element-wise from this vector.
+	 *
+	 * @param b the second vector
+	 * @return element-wise difference of this and the given vector b
+	 */
+	@Override
+	public final Color sub(final Color b) {
+		return new Color(x - b.x(), y - b.y(), z - b.z());
+	}
+
+	/**
+	 * Computes the element-wise product of this vector and the given vector b.
+	 *
+	 * @param b the second vector
+	 * @return element-wise product of this and the given vector b
+	 */
+	@Override
+	public final Color mul(final Color b) {
+		return new Color(x * b.x(), y * b.y(), z * b.z());
+	}
+
+	@Override
+	public final Color avg(final Color v, final int n) {
+		return blend(n / (n + 1.0f), v);
+	}
+
+	@Override
+	public final Color inv() {
+		return new Color(1.0f / x, 1.0f / y, 1.0f / z);
+	}
+
+	@Override
+	public final Color neg() {
+		return scale(-1);
+	}
+
+	@Override
+	public final Color avg(final Color v) {
+		return new Color((x + v.x) * (1.0f / 2), (y + v.y) * (1.0f / 2), (z + v.z) * (1.0f / 2));
+	}
+
+	@Override
+	public final Color avg(final Color v, final Color v2) {
+		return new Color((x + v.x + v2.x) * (1.0f / 3), (y + v.y + v2.y) * (1.0f / 3), (z + v.z + v2.z) * (1.0f / 3));
+	}
+
+	/**
+	 * Computes the element-wise minimum of this vector and the given vector b.
+	 *
+	 * @param b the second vector
+	 * @return element-wise minimum of this and the given vector b
+	 */
+	@Override
+	public final Color min(final Color v) {
+		return new Color(v.x < x ? v.x : x, v.y < y ? v.y : y, v.z < z ? v.z : z);
+	}
+
+	/**
+	 * Computes the element-wise minimum of this vector and the given vectors.
+	 *
+	 * @param v the second vector
+	 * @param w the third vector
+	 * @return element-wise minimum of this and the given vectors
+	 */
+	@Override
+	public final Color min(final Color v, final Color v2) {
+		return new Color(minOf(minOf(x, v.x), v2.x), minOf(minOf(y, v.y), v2.y), minOf(minOf(z, v.z), v2.z));
+	}
+
+	/**
+	 * Computes the element-wise maximum of this vector and the given vector b.
+	 *
+	 * @param b the second vector
+	 * @return element-wise maximum of this and the given vector b
+	 */
+	@Override
+	public final Color max(final Color v) {
+		return new Color(v.x > x ? v.x : x, v.y > y ? v.y : y, v.z > z ? v.z : z);
+	}
+
+	/**
+	 * Computes the element-wise maximum of this vector and the given vectors.
+	 *
+	 * @param v the second vector
+	 * @param w the third vector
+	 * @return element-wise maximum of this and the given vector b
+	 */
+	@Override
+	public final Color max(final Color v, final Color v2) {
+		return new Color(maxOf(maxOf(x, v.x), v2.x), maxOf(maxOf(y, v.y), v2.y), maxOf(maxOf(z, v.z), v2.z));
+	}
+
+	// the minimum and maximum of the element-wise operations, which keep the
+	// first value unless the second one is smaller (larger):
+	private static float minOf(final float a, final float b) {
+		return b < a ? b : a;
+	}
+
+	private static float maxOf(final float a, final float b) {
+		return b > a ? b : a;
+	}
+
 	/**
 	 * Converts the color into a single RGB integer value
 	 *
@@ -27,7 +27,7 @@ public class ONB {
 	public static ONB fromU(final Vec3 u_) {
 		final Vec3 /* normalized */u = u_.normalized();
 		Vec3 /* normalized */v = u.cross(Vec3.X);
-		if (v.sdot < EPS)
+		if (v.sdot() < EPS)
 			v = u.cross(Vec3.Y);
 		final Vec3 /* normalized */w = u.cross(v);
 		return new ONB(u, v, w);
@@ -36,7 +36,7 @@ public class ONB {
 	public static ONB fromV(final Vec3 v_) {
 		final Vec3 /* normalized */v = v_.normalized();
 		Vec3 /* normalized */u = v.cross(Vec3.X);
-		if (u.sdot < EPS)
+		if (u.sdot() < EPS)
 			u = v.cross(Vec3.Y);
 		final Vec3 /* normalized */w = u.cross(v);
 		return new ONB(u, v, w);
@@ -45,7 +45,7 @@ public class ONB {
 	public static ONB fromW(final Vec3 w_) {
 		final Vec3 /* normalized */w = w_.normalized();
 		Vec3 /* normalized */u = w.cross(Vec3.X);
-		if (u.sdot < EPS)
+		if (u.sdot() < EPS)
 			u = w.cross(Vec3.Y);
 		final Vec3 /* normalized */v = w.cross(u);
 		return new ONB(u, v, w);
@@ -7,6 +7,8 @@ public final class Point extends Vec4<Point, Vec3> {
      */
     public static final Point ORIGIN = new Point(0, 0, 0);
 
+    private final float x, y, z;
+
     /**
      * Creates a point at the given coordinates.
      *
@@ -15,12 +17,212 @@ public final class Point extends Vec4<Point, Vec3> {
      * @param z z-position
      */
     public Point(final float x, final float y, final float z) {
-        super(x, y, z, 1.0f);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Returns the i-th entry (x=0, y=1, z=2, w=3) of this vector.
+     *
+     * @param i index of the entry
+     * @return value of the i-ths entry
+     */
+    @Override
+    public final float get(final int i) {
+        assert 0 <= i && i < 4;
+        switch (i) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            case 2:
+                return z;
+            case 3:
+                return 1;
+        }
+        throw new IllegalArgumentException(
+                "Vector component index out of range");
+    }
+
+    @Override
+    public final float x() {
+        return x;
+    }
+
+    @Override
+    public final float y() {
+        return y;
+    }
+
+    @Override
+    public final float z() {
+        return z;
+    }
+
+    @Override
+    public final float w() {
+        return 1.0f;
+    }
+
+    @Override
+    public final int isNeg(final int i) {
+        return get(i) < 0 ? 1 : 0;
+    }
+
+    @Override
+    public final float dot(final float vx, final float vy, final float vz, final float vw) {
+        return x * vx + y * vy + z * vz + vw;
+    }
+
+    @Override
+    public final float dot(final Vec4<?, ?> v) {
+        return x * v.x() + y * v.y() + z * v.z() + v.w();
+    }
+
+    @Override
+    public final float dot(final Vec3 v) {
+        return x * v.x() + y * v.y() + z * v.z();
+    }
+
+    @Override
+    public final Point combine(final float r, final Vec3 b) {
+        return new Point(x + r * b.x(), y + r * b.y(), z + r * b.z());
+    }
+
+    @Override
+    public final Point combine(final float s, final float r, final Vec3 b) {
+        return new Point(s * x + r * b.x(), s * y + r * b.y(), s * z + r * b.z());
+    }
+
+    @Override
+    public final Point blend(final float r, final Vec3 b) {
+        return combine(r, 1 - r, b);
+    }
+
+    /**
+     * Scales vector by the given factor.
+     *
+     * @param r scaling factor
+     * @return scaled vector
+     */
+    @Override
+    public final Point scale(final float r) {
+        return new Point(r * x, r * y, r * z);
+    }
+
+    /**
+     * Computes the element-wise sum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise sum of this and the given vector b
+     */
+    @Override
+    public final Point add(final Vec3 b) {
+        return new Point(x + b.x(), y + b.y(), z + b.z());
     }
 
+    /**
+     * Subtracts the given vector element-wise from this vector.
+     *
+     * @param b the second vector
+     * @return element-wise difference of this and the given vector b
+     */
+    @Override
+    public final Point sub(final Vec3 b) {
+        return new Point(x - b.x(), y - b.y(), z - b.z());
+    }
+
+    /**
+     * Computes the element-wise product of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise product of this and the given vector b
+     */
+    @Override
+    public final Point mul(final Vec3 b) {
+        return new Point(x * b.x(), y * b.y(), z * b.z());
+    }
+
+    @Override
+    public final Point avg(final Vec3 v, final int n) {
+        return blend(n / (n + 1.0f), v);
+    }
+
+    @Override
+    public final Point inv() {
+        return new Point(1.0f / x, 1.0f / y, 1.0f / z);
+    }
+
+    @Override
+    public final Point neg() {
+        return scale(-1);
+    }
+
+    @Override
+    public final Point avg(final Point v) {
+        return new Point((x + v.x) * (1.0f / 2), (y + v.y) * (1.0f / 2), (z + v.z) * (1.0f / 2));
+    }
+
+    @Override
+    public final Point avg(final Point v, final Point v2) {
+        return new Point((x + v.x + v2.x) * (1.0f / 3), (y + v.y + v2.y) * (1.0f / 3), (z + v.z + v2.z) * (1.0f / 3));
+    }
+
+    /**
+     * Computes the element-wise minimum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise minimum of this and the given vector b
+     */
+    @Override
+    public final Point min(final Point v) {
+        return new Point(v.x < x ? v.x : x, v.y < y ? v.y : y, v.z < z ? v.z : z);
+    }
+
+    /**
+     * Computes the element-wise minimum of this vector and the given vectors.
+     *
+     * @param v the second vector
+     * @param w the third vector
+     * @return element-wise minimum of this and the given vectors
+     */
+    @Override
+    public final Point min(final Point v, final Point v2) {
+        return new Point(minOf(minOf(x, v.x), v2.x), minOf(minOf(y, v.y), v2.y), minOf(minOf(z, v.z), v2.z));
+    }
+
+    /**
+     * Computes the element-wise maximum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise maximum of this and the given vector b
+     */
     @Override
-    protected Point create(final float x, final float y, final float z, final float w) {
-        return new Point(x, y, z);
+    public final Point max(final Point v) {
+        return new Point(v.x > x ? v.x : x, v.y > y ? v.y : y, v.z > z ? v.z : z);
+    }
+
+    /**
+     * Computes the element-wise maximum of this vector and the given vectors.
+     *
+     * @param v the second vector
+     * @param w the third vector
+     * @return element-wise maximum of this and the given vector b
+     */
+    @Override
+    public final Point max(final Point v, final Point v2) {
+        return new Point(maxOf(maxOf(x, v.x), v2.x), maxOf(maxOf(y, v.y), v2.y), maxOf(maxOf(z, v.z), v2.z));
+    }
+
+    // the minimum and maximum of the element-wise operations, which keep the
+    // first value unless the second one is smaller (larger):
+    private static float minOf(final float a, final float b) {
+        return b < a ? b : a;
+    }
+
+    private static float maxOf(final float a, final float b) {
+        return b > a ? b : a;
     }
 
     /**
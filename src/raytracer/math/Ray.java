@@ -7,7 +7,9 @@ public class Ray {
 
 	private final Point base;
 	private final Vec3 /* normalized */dir;
-	private final Vec3 invDir;
+	// the inverse of the direction, kept as components so that no vector is
+	// allocated per ray:
+	private final float ix, iy, iz;
 
 	/**
 	 * Creates a new ray
@@ -20,7 +22,9 @@ public class Ray {
 	public Ray(final Point base, final Vec3 /* normalized */direction) {
 		this.base = base;
 		this.dir = direction;
-		this.invDir = dir.inv();
+		this.ix = 1.0f / dir.x();
+		this.iy = 1.0f / dir.y();
+		this.iz = 1.0f / dir.z();
 	}
 
 	/**
@@ -42,12 +46,41 @@ public class Ray {
 	}
 
 	/**
-	 * Returns the inverse of the direction vector
+	 * Returns a component of the inverse of the direction vector
 	 *
-	 * @return The inverse of the direction vector
+	 * @param i
+	 *            The index of the component (x=0, y=1, z=2)
+	 * @return The inverse of the i-th direction component
 	 */
-	public final Vec3 invDir() {
-		return invDir;
+	public final float inv(final int i) {
+		return i == 0 ? ix : i == 1 ? iy : iz;
+	}
+
+	/**
+	 * Returns the x component of the inverse of the direction vector
+	 *
+	 * @return The inverse of the x direction component
+	 */
+	public final float invX() {
+		return ix;
+	}
+
+	/**
+	 * Returns the y component of the inverse of the direction vector
+	 *
+	 * @return The inverse of the y direction component
+	 */
+	public final float invY() {
+		return iy;
+	}
+
+	/**
+	 * Returns the z component of the inverse of the direction vector
+	 *
+	 * @return The inverse of the z direction component
+	 */
+	public final float invZ() {
+		return iz;
 	}
 
 	/**
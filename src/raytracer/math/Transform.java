@@ -0,0 +1,187 @@
+package raytracer.math;
+
+/**
+ * Represents an affine transformation (a 3x4 matrix) together with its
+ * inverse. Transformations are immutable, composing them creates new ones.
+ */
+public final class Transform {
+
+    /**
+     * The identity transformation.
+     */
+    public static final Transform IDENTITY = new Transform(
+            new float[] { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0 },
+            new float[] { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0 });
+
+    // row-major 3x4 matrices, the last column holds the translation:
+    private final float[] m;
+    private final float[] inv;
+
+    private Transform(final float[] m, final float[] inv) {
+        this.m = m;
+        this.inv = inv;
+    }
+
+    /**
+     * Creates a translation.
+     *
+     * @param t the translation vector
+     * @return the translation
+     */
+    public static Transform translate(final Vec3 t) {
+        return new Transform(
+                new float[] { 1, 0, 0, t.x(), 0, 1, 0, t.y(), 0, 0, 1, t.z() },
+                new float[] { 1, 0, 0, -t.x(), 0, 1, 0, -t.y(), 0, 0, 1, -t.z() });
+    }
+
+    /**
+     * Creates a uniform scaling.
+     *
+     * @param s the scale factor, must not be zero
+     * @return the scaling
+     */
+    public static Transform scale(final float s) {
+        return scale(s, s, s);
+    }
+
+    /**
+     * Creates a non-uniform scaling.
+     *
+     * @param sx the scale factor along x, must not be zero
+     * @param sy the scale factor along y, must not be zero
+     * @param sz the scale factor along z, must not be zero
+     * @return the scaling
+     */
+    public static Transform scale(final float sx, final float sy, final float sz) {
+        if (sx == 0 || sy == 0 || sz == 0 || !Float.isFinite(sx) || !Float.isFinite(sy)
+                || !Float.isFinite(sz)) {
+            throw new IllegalArgumentException("scale factors must be finite and non-zero");
+        }
+        return new Transform(
+                new float[] { sx, 0, 0, 0, 0, sy, 0, 0, 0, 0, sz, 0 },
+                new float[] { 1 / sx, 0, 0, 0, 0, 1 / sy, 0, 0, 0, 0, 1 / sz, 0 });
+    }
+
+    /**
+     * Creates a rotation around the given axis.
+     *
+     * @param axis  the rotation axis, must not be the zero vector
+     * @param angle the angle in radians
+     * @return the rotation
+     */
+    public static Transform rotate(final Vec3 axis, final float angle) {
+        final Vec3 a = axis.normalized();
+        if (!a.isFinite()) {
+            throw new IllegalArgumentException("the rotation axis must not be the zero vector");
+        }
+        final float c = (float) Math.cos(angle), s = (float) Math.sin(angle), t = 1 - c;
+        final float x = a.x(), y = a.y(), z = a.z();
+        final float[] r = {
+                t * x * x + c, t * x * y - s * z, t * x * z + s * y, 0,
+                t * x * y + s * z, t * y * y + c, t * y * z - s * x, 0,
+                t * x * z - s * y, t * y * z + s * x, t * z * z + c, 0 };
+        // the inverse of a rotation is its transpose:
+        final float[] ri = {
+                r[0], r[4], r[8], 0,
+                r[1], r[5], r[9], 0,
+                r[2], r[6], r[10], 0 };
+        return new Transform(r, ri);
+    }
+
+    /**
+     * Composes this transformation with the given one, which is applied after
+     * this one.
+     *
+     * @param next the transformation to apply afterwards
+     * @return the composed transformation
+     */
+    public Transform then(final Transform next) {
+        return new Transform(mul(next.m, m), mul(inv, next.inv));
+    }
+
+    /**
+     * Returns the inverse transformation.
+     *
+     * @return the inverse transformation
+     */
+    public Transform inverse() {
+        return new Transform(inv, m);
+    }
+
+    // computes a * b for two affine 3x4 matrices:
+    private static float[] mul(final float[] a, final float[] b) {
+        final float[] r = new float[12];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 4; j++) {
+                r[4 * i + j] = a[4 * i] * b[j] + a[4 * i + 1] * b[4 + j] + a[4 * i + 2] * b[8 + j];
+            }
+            r[4 * i + 3] += a[4 * i + 3];
+        }
+        return r;
+    }
+
+    /**
+     * Transforms a point.
+     *
+     * @param p the point
+     * @return the transformed point
+     */
+    public Point apply(final Point p) {
+        return point(m, p);
+    }
+
+    /**
+     * Transforms a direction, ignoring the translation.
+     *
+     * @param v the direction
+     * @return the transformed direction (not normalized)
+     */
+    public Vec3 apply(final Vec3 v) {
+        return vector(m, v);
+    }
+
+    /**
+     * Transforms a normal with the inverse transpose, so that it stays
+     * perpendicular to transformed surfaces.
+     *
+     * @param n the normal
+     * @return the transformed normal (not normalized)
+     */
+    public Vec3 applyNormal(final Vec3 n) {
+        return new Vec3(inv[0] * n.x() + inv[4] * n.y() + inv[8] * n.z(),
+                inv[1] * n.x() + inv[5] * n.y() + inv[9] * n.z(),
+                inv[2] * n.x() + inv[6] * n.y() + inv[10] * n.z());
+    }
+
+    /**
+     * Transforms a point with the inverse transformation.
+     *
+     * @param p the point
+     * @return the transformed point
+     */
+    public Point applyInverse(final Point p) {
+        return point(inv, p);
+    }
+
+    /**
+     * Transforms a direction with the inverse transformation.
+     *
+     * @param v the direction
+     * @return the transformed direction (not normalized)
+     */
+    public Vec3 applyInverse(final Vec3 v) {
+        return vector(inv, v);
+    }
+
+    private static Point point(final float[] a, final Point p) {
+        return new Point(a[0] * p.x() + a[1] * p.y() + a[2] * p.z() + a[3],
+                a[4] * p.x() + a[5] * p.y() + a[6] * p.z() + a[7],
+                a[8] * p.x() + a[9] * p.y() + a[10] * p.z() + a[11]);
+    }
+
+    private static Vec3 vector(final float[] a, final Vec3 v) {
+        return new Vec3(a[0] * v.x() + a[1] * v.y() + a[2] * v.z(),
+                a[4] * v.x() + a[5] * v.y() + a[6] * v.z(),
+                a[8] * v.x() + a[9] * v.y() + a[10] * v.z());
+    }
+}
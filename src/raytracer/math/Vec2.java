@@ -2,6 +2,8 @@ package raytracer.math;
 
 public final class Vec2 extends Vec4<Vec2, Vec2> {
 
+    private final float x, y;
+
     /**
      * Creates a two-dimensional vector.
      *
@@ -9,12 +11,211 @@ public final class Vec2 extends Vec4<Vec2, Vec2> {
      * @param v the y-translation
      */
     public Vec2(final float u, final float v) {
-        super(u, v, 0, 0);
+        this.x = u;
+        this.y = v;
+    }
+
+    /**
+     * Returns the i-th entry (x=0, y=1, z=2, w=3) of this vector.
+     *
+     * @param i index of the entry
+     * @return value of the i-ths entry
+     */
+    @Override
+    public final float get(final int i) {
+        assert 0 <= i && i < 4;
+        switch (i) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            case 2:
+                return 0;
+            case 3:
+                return 0;
+        }
+        throw new IllegalArgumentException(
+                "Vector component index out of range");
+    }
+
+    @Override
+    public final float x() {
+        return x;
+    }
+
+    @Override
+    public final float y() {
+        return y;
+    }
+
+    @Override
+    public final float z() {
+        return 0.0f;
+    }
+
+    @Override
+    public final float w() {
+        return 0.0f;
+    }
+
+    @Override
+    public final int isNeg(final int i) {
+        return get(i) < 0 ? 1 : 0;
+    }
+
+    @Override
+    public final float dot(final float vx, final float vy, final float vz, final float vw) {
+        return x * vx + y * vy;
+    }
+
+    @Override
+    public final float dot(final Vec4<?, ?> v) {
+        return x * v.x() + y * v.y();
+    }
+
+    @Override
+    public final float dot(final Vec3 v) {
+        return x * v.x() + y * v.y();
+    }
+
+    @Override
+    public final Vec2 combine(final float r, final Vec2 b) {
+        return new Vec2(x + r * b.x(), y + r * b.y());
+    }
+
+    @Override
+    public final Vec2 combine(final float s, final float r, final Vec2 b) {
+        return new Vec2(s * x + r * b.x(), s * y + r * b.y());
+    }
+
+    @Override
+    public final Vec2 blend(final float r, final Vec2 b) {
+        return combine(r, 1 - r, b);
+    }
+
+    /**
+     * Scales vector by the given factor.
+     *
+     * @param r scaling factor
+     * @return scaled vector
+     */
+    @Override
+    public final Vec2 scale(final float r) {
+        return new Vec2(r * x, r * y);
+    }
+
+    /**
+     * Computes the element-wise sum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise sum of this and the given vector b
+     */
+    @Override
+    public final Vec2 add(final Vec2 b) {
+        return new Vec2(x + b.x(), y + b.y());
     }
 
+    /**
+     * Subtracts the given vector element-wise from this vector.
+     *
+     * @param b the second vector
+     * @return element-wise difference of this and the given vector b
+     */
+    @Override
+    public final Vec2 sub(final Vec2 b) {
+        return new Vec2(x - b.x(), y - b.y());
+    }
+
+    /**
+     * Computes the element-wise product of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise product of this and the given vector b
+     */
+    @Override
+    public final Vec2 mul(final Vec2 b) {
+        return new Vec2(x * b.x(), y * b.y());
+    }
+
+    @Override
+    public final Vec2 avg(final Vec2 v, final int n) {
+        return blend(n / (n + 1.0f), v);
+    }
+
+    @Override
+    public final Vec2 inv() {
+        return new Vec2(1.0f / x, 1.0f / y);
+    }
+
+    @Override
+    public final Vec2 neg() {
+        return scale(-1);
+    }
+
+    @Override
+    public final Vec2 avg(final Vec2 v) {
+        return new Vec2((x + v.x) * (1.0f / 2), (y + v.y) * (1.0f / 2));
+    }
+
+    @Override
+    public final Vec2 avg(final Vec2 v, final Vec2 v2) {
+        return new Vec2((x + v.x + v2.x) * (1.0f / 3), (y + v.y + v2.y) * (1.0f / 3));
+    }
+
+    /**
+     * Computes the element-wise minimum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise minimum of this and the given vector b
+     */
+    @Override
+    public final Vec2 min(final Vec2 v) {
+        return new Vec2(v.x < x ? v.x : x, v.y < y ? v.y : y);
+    }
+
+    /**
+     * Computes the element-wise minimum of this vector and the given vectors.
+     *
+     * @param v the second vector
+     * @param w the third vector
+     * @return element-wise minimum of this and the given vectors
+     */
+    @Override
+    public final Vec2 min(final Vec2 v, final Vec2 v2) {
+        return new Vec2(minOf(minOf(x, v.x), v2.x), minOf(minOf(y, v.y), v2.y));
+    }
+
+    /**
+     * Computes the element-wise maximum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise maximum of this and the given vector b
+     */
     @Override
-    protected Vec2 create(final float x, final float y, final float z, final float w) {
-        return new Vec2(x, y);
+    public final Vec2 max(final Vec2 v) {
+        return new Vec2(v.x > x ? v.x : x, v.y > y ? v.y : y);
+    }
+
+    /**
+     * Computes the element-wise maximum of this vector and the given vectors.
+     *
+     * @param v the second vector
+     * @param w the third vector
+     * @return element-wise maximum of this and the given vector b
+     */
+    @Override
+    public final Vec2 max(final Vec2 v, final Vec2 v2) {
+        return new Vec2(maxOf(maxOf(x, v.x), v2.x), maxOf(maxOf(y, v.y), v2.y));
+    }
+
+    // the minimum and maximum of the element-wise operations, which keep the
+    // first value unless the second one is smaller (larger):
+    private static float minOf(final float a, final float b) {
+        return b < a ? b : a;
+    }
+
+    private static float maxOf(final float a, final float b) {
+        return b > a ? b : a;
     }
 
     @Override
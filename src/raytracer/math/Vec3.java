@@ -25,7 +25,7 @@ public final class Vec3 extends Vec4<Vec3, Vec3> {
      */
     public static final Vec3 /* normalized */ Z = new Vec3(0.0f, 0.0f, 1.0f);
 
-    protected final float sdot;
+    private final float x, y, z;
 
     /**
      * Creates a three dimensional vector.
@@ -35,13 +35,212 @@ public final class Vec3 extends Vec4<Vec3, Vec3> {
      * @param z z translation
      */
     public Vec3(final float x, final float y, final float z) {
-        super(x, y, z, 0);
-        this.sdot = x * x + y * y + z * z;
+        this.x = x;
+        this.y = y;
+        this.z = z;
     }
 
+    /**
+     * Returns the i-th entry (x=0, y=1, z=2, w=3) of this vector.
+     *
+     * @param i index of the entry
+     * @return value of the i-ths entry
+     */
+    @Override
+    public final float get(final int i) {
+        assert 0 <= i && i < 4;
+        switch (i) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            case 2:
+                return z;
+            case 3:
+                return 0;
+        }
+        throw new IllegalArgumentException(
+                "Vector component index out of range");
+    }
+
+    @Override
+    public final float x() {
+        return x;
+    }
+
+    @Override
+    public final float y() {
+        return y;
+    }
+
+    @Override
+    public final float z() {
+        return z;
+    }
+
+    @Override
+    public final float w() {
+        return 0.0f;
+    }
+
+    @Override
+    public final int isNeg(final int i) {
+        return get(i) < 0 ? 1 : 0;
+    }
+
+    @Override
+    public final float dot(final float vx, final float vy, final float vz, final float vw) {
+        return x * vx + y * vy + z * vz;
+    }
+
+    @Override
+    public final float dot(final Vec4<?, ?> v) {
+        return x * v.x() + y * v.y() + z * v.z();
+    }
+
+    @Override
+    public final float dot(final Vec3 v) {
+        return x * v.x() + y * v.y() + z * v.z();
+    }
+
+    @Override
+    public final Vec3 combine(final float r, final Vec3 b) {
+        return new Vec3(x + r * b.x(), y + r * b.y(), z + r * b.z());
+    }
+
+    @Override
+    public final Vec3 combine(final float s, final float r, final Vec3 b) {
+        return new Vec3(s * x + r * b.x(), s * y + r * b.y(), s * z + r * b.z());
+    }
+
+    @Override
+    public final Vec3 blend(final float r, final Vec3 b) {
+        return combine(r, 1 - r, b);
+    }
+
+    /**
+     * Scales vector by the given factor.
+     *
+     * @param r scaling factor
+     * @return scaled vector
+     */
+    @Override
+    public final Vec3 scale(final float r) {
+        return new Vec3(r * x, r * y, r * z);
+    }
+
+    /**
+     * Computes the element-wise sum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise sum of this and the given vector b
+     */
+    @Override
+    public final Vec3 add(final Vec3 b) {
+        return new Vec3(x + b.x(), y + b.y(), z + b.z());
+    }
+
+    /**
+     * Subtracts the given vector element-wise from this vector.
+     *
+     * @param b the second vector
+     * @return element-wise difference of this and the given vector b
+     */
+    @Override
+    public final Vec3 sub(final Vec3 b) {
+        return new Vec3(x - b.x(), y - b.y(), z - b.z());
+    }
+
+    /**
+     * Computes the element-wise product of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise product of this and the given vector b
+     */
+    @Override
+    public final Vec3 mul(final Vec3 b) {
+        return new Vec3(x * b.x(), y * b.y(), z * b.z());
+    }
+
+    @Override
+    public final Vec3 avg(final Vec3 v, final int n) {
+        return blend(n / (n + 1.0f), v);
+    }
+
+    @Override
+    public final Vec3 inv() {
+        return new Vec3(1.0f / x, 1.0f / y, 1.0f / z);
+    }
+
+    @Override
+    public final Vec3 neg() {
+        return scale(-1);
+    }
+
+    @Override
+    public final Vec3 avg(final Vec3 v) {
+        return new Vec3((x + v.x) * (1.0f / 2), (y + v.y) * (1.0f / 2), (z + v.z) * (1.0f / 2));
+    }
+
+    @Override
+    public final Vec3 avg(final Vec3 v, final Vec3 v2) {
+        return new Vec3((x + v.x + v2.x) * (1.0f / 3), (y + v.y + v2.y) * (1.0f / 3), (z + v.z + v2.z) * (1.0f / 3));
+    }
+
+    /**
+     * Computes the element-wise minimum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise minimum of this and the given vector b
+     */
+    @Override
+    public final Vec3 min(final Vec3 v) {
+        return new Vec3(v.x < x ? v.x : x, v.y < y ? v.y : y, v.z < z ? v.z : z);
+    }
+
+    /**
+     * Computes the element-wise minimum of this vector and the given vectors.
+     *
+     * @param v the second vector
+     * @param w the third vector
+     * @return element-wise minimum of this and the given vectors
+     */
     @Override
-    protected Vec3 create(final float x, final float y, final float z, final float w) {
-        return new Vec3(x, y, z);
+    public final Vec3 min(final Vec3 v, final Vec3 v2) {
+        return new Vec3(minOf(minOf(x, v.x), v2.x), minOf(minOf(y, v.y), v2.y), minOf(minOf(z, v.z), v2.z));
+    }
+
+    /**
+     * Computes the element-wise maximum of this vector and the given vector b.
+     *
+     * @param b the second vector
+     * @return element-wise maximum of this and the given vector b
+     */
+    @Override
+    public final Vec3 max(final Vec3 v) {
+        return new Vec3(v.x > x ? v.x : x, v.y > y ? v.y : y, v.z > z ? v.z : z);
+    }
+
+    /**
+     * Computes the element-wise maximum of this vector and the given vectors.
+     *
+     * @param v the second vector
+     * @param w the third vector
+     * @return element-wise maximum of this and the given vector b
+     */
+    @Override
+    public final Vec3 max(final Vec3 v, final Vec3 v2) {
+        return new Vec3(maxOf(maxOf(x, v.x), v2.x), maxOf(maxOf(y, v.y), v2.y), maxOf(maxOf(z, v.z), v2.z));
+    }
+
+    // the minimum and maximum of the element-wise operations, which keep the
+    // first value unless the second one is smaller (larger):
+    private static float minOf(final float a, final float b) {
+        return b < a ? b : a;
+    }
+
+    private static float maxOf(final float a, final float b) {
+        return b > a ? b : a;
     }
 
     /**
@@ -59,7 +258,7 @@ public final class Vec3 extends Vec4<Vec3, Vec3> {
     }
 
     public final float sdot() {
-        return sdot;
+        return x * x + y * y + z * z;
     }
 
     /**
@@ -68,6 +267,7 @@ public final class Vec3 extends Vec4<Vec3, Vec3> {
      * @return length of this vector
      */
     public final float norm() {
+        final float sdot = sdot();
         return sdot == 1.0f ? 1.0f : (float) Math.sqrt(sdot);
     }
 
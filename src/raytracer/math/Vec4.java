@@ -1,105 +1,70 @@
 package raytracer.math;
 
+/**
+ * The operations shared by the vector types. Every concrete type is final,
+ * stores only the components it needs and implements the arithmetic itself,
+ * so a call on a Vec3, Point, Color or Vec2 is bound to exactly one method
+ * (which the JIT inlines) and no generic factory is dispatched per result.
+ * This class only keeps what does not create vectors: the component access,
+ * the checks, hashCode and equals.
+ *
+ * @param <T>
+ *            The type of the vector and of the results of its operations
+ * @param <A>
+ *            The type of the second operand of the element-wise operations
+ */
 public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
 
-    protected final float x, y, z, w;
-
-    protected Vec4(final float x, final float y, final float z, final float w) {
-        this.x = x;
-        this.y = y;
-        this.z = z;
-        this.w = w;
-    }
-
-    protected Vec4(final T v) {
-        this.x = v.x;
-        this.y = v.y;
-        this.z = v.z;
-        this.w = v.w;
+    /**
+     * Creates a vector. The components are stored by the subclass, which
+     * implements the accessors and the operations over its own fields.
+     */
+    protected Vec4() {
     }
 
-    protected abstract T create(float x, float y, float z, float w);
-
     /**
      * Returns the i-th entry (x=0, y=1, z=2, w=3) of this vector.
      *
      * @param i index of the entry
      * @return value of the i-ths entry
      */
-    public final float get(final int i) {
-        assert 0 <= i && i < 4;
-        switch (i) {
-            case 0:
-                return x;
-            case 1:
-                return y;
-            case 2:
-                return z;
-            case 3:
-                return w;
-        }
-        throw new IllegalArgumentException(
-                "Vector component index out of range");
-    }
+    public abstract float get(int i);
 
-    public final float x() {
-        return x;
-    }
+    public abstract float x();
 
-    public final float y() {
-        return y;
-    }
+    public abstract float y();
 
-    public final float z() {
-        return z;
-    }
+    public abstract float z();
 
-    public final float w() {
-        return w;
-    }
+    public abstract float w();
 
     public final boolean isNan() {
-        return Float.isNaN(x) || Float.isNaN(y) || Float.isNaN(z)
-                || Float.isNaN(w);
+        return Float.isNaN(x()) || Float.isNaN(y()) || Float.isNaN(z())
+                || Float.isNaN(w());
     }
 
     public final boolean isInfinity() {
-        return Float.isInfinite(x) || Float.isInfinite(y)
-                || Float.isInfinite(z) || Float.isInfinite(w);
+        return Float.isInfinite(x()) || Float.isInfinite(y())
+                || Float.isInfinite(z()) || Float.isInfinite(w());
     }
 
     public final boolean isFinite() {
         return !isNan() && !isInfinity();
     }
 
-    public final int isNeg(final int i) {
-        return get(i) < 0 ? 1 : 0;
-    }
+    public abstract int isNeg(int i);
 
-    public final float dot(final float vx, final float vy, final float vz, final float vw) {
-        return x * vx + y * vy + z * vz + w * vw;
-    }
+    public abstract float dot(float vx, float vy, float vz, float vw);
 
-    public final float dot(final Vec4<?, ?> v) {
-        return x * v.x + y * v.y + z * v.z + w * v.w;
-    }
+    public abstract float dot(Vec4<?, ?> v);
 
-    public final float dot(final Vec3 v) {
-        return x * v.x + y * v.y + z * v.z;
-    }
+    public abstract float dot(Vec3 v);
 
-    public final T combine(final float r, final A b) {
-        return create(x + r * b.x, y + r * b.y, z + r * b.z, w + r * b.w);
-    }
+    public abstract T combine(float r, A b);
 
-    public final T combine(final float s, final float r, final A b) {
-        return create(s * x + r * b.x, s * y + r * b.y, s * z + r * b.z, s * w
-                + r * b.w);
-    }
+    public abstract T combine(float s, float r, A b);
 
-    public final T blend(final float r, final A b) {
-        return combine(r, 1 - r, b);
-    }
+    public abstract T blend(float r, A b);
 
     /**
      * Scales vector by the given factor.
@@ -107,9 +72,7 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
      * @param r scaling factor
      * @return scaled vector
      */
-    public final T scale(final float r) {
-        return create(r * x, r * y, r * z, r * w);
-    }
+    public abstract T scale(float r);
 
     /**
      * Computes the element-wise sum of this vector and the given vector b.
@@ -117,9 +80,7 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
      * @param b the second vector
      * @return element-wise sum of this and the given vector b
      */
-    public final T add(final A b) {
-        return create(x + b.x, y + b.y, z + b.z, w + b.w);
-    }
+    public abstract T add(A b);
 
     /**
      * Subtracts the given vector element-wise from this vector.
@@ -127,9 +88,7 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
      * @param b the second vector
      * @return element-wise difference of this and the given vector b
      */
-    public final T sub(final A b) {
-        return create(x - b.x, y - b.y, z - b.z, w - b.w);
-    }
+    public abstract T sub(A b);
 
     /**
      * Computes the element-wise product of this vector and the given vector b.
@@ -137,71 +96,22 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
      * @param b the second vector
      * @return element-wise product of this and the given vector b
      */
-    public final T mul(final A b) {
-        return create(x * b.x, y * b.y, z * b.z, w * b.w);
-    }
+    public abstract T mul(A b);
 
-    public final T avg(final A v, final int n) {
-        return blend(n / (n + 1.0f), v);
-    }
+    public abstract T avg(A v, int n);
 
-    public final T inv() {
-        return create(1.0f / x, 1.0f / y, 1.0f / z, 1.0f / w);
-    }
+    public abstract T inv();
 
-    public final T neg() {
-        return scale(-1);
-    }
+    public abstract T neg();
 
     @Override
     public String toString() {
-        return String.format("[%f %f %f %f]", x, y, z, w);
+        return String.format("[%f %f %f %f]", x(), y(), z(), w());
     }
 
-    public final T avg(final T v) {
-        float x = this.x;
-        float y = this.y;
-        float z = this.z;
-        float w = this.w;
-
-        x += v.x;
-        y += v.y;
-        z += v.z;
-        w += v.w;
+    public abstract T avg(T v);
 
-        final float scale = 1.0f / 2;
-        x *= scale;
-        y *= scale;
-        z *= scale;
-        w *= scale;
-
-        return create(x, y, z, w);
-    }
-
-    public final T avg(final T v, final T v2) {
-        float x = this.x;
-        float y = this.y;
-        float z = this.z;
-        float w = this.w;
-
-        x += v.x;
-        y += v.y;
-        z += v.z;
-        w += v.w;
-
-        x += v2.x;
-        y += v2.y;
-        z += v2.z;
-        w += v2.w;
-
-        final float scale = 1.0f / 3;
-        x *= scale;
-        y *= scale;
-        z *= scale;
-        w *= scale;
-
-        return create(x, y, z, w);
-    }
+    public abstract T avg(T v, T v2);
 
     /**
      * Computes the element-wise minimum of this vector and the given vector b.
@@ -209,23 +119,7 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
      * @param b the second vector
      * @return element-wise minimum of this and the given vector b
      */
-    public final T min(final T v) {
-        float x = this.x;
-        float y = this.y;
-        float z = this.z;
-        float w = this.w;
-
-        if (v.x < x)
-            x = v.x;
-        if (v.y < y)
-            y = v.y;
-        if (v.z < z)
-            z = v.z;
-        if (v.w < w)
-            w = v.w;
-
-        return create(x, y, z, w);
-    }
+    public abstract T min(T v);
 
     /**
      * Computes the element-wise minimum of this vector and the given vectors.
@@ -234,32 +128,7 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
      * @param w the third vector
      * @return element-wise minimum of this and the given vectors
      */
-    public final T min(final T v, final T v2) {
-        float x = this.x;
-        float y = this.y;
-        float z = this.z;
-        float w = this.w;
-
-        if (v.x < x)
-            x = v.x;
-        if (v.y < y)
-            y = v.y;
-        if (v.z < z)
-            z = v.z;
-        if (v.w < w)
-            w = v.w;
-
-        if (v2.x < x)
-            x = v2.x;
-        if (v2.y < y)
-            y = v2.y;
-        if (v2.z < z)
-            z = v2.z;
-        if (v2.w < w)
-            w = v2.w;
-
-        return create(x, y, z, w);
-    }
+    public abstract T min(T v, T v2);
 
     /**
      * Computes the element-wise maximum of this vector and the given vector b.
@@ -267,63 +136,21 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
      * @param b the second vector
      * @return element-wise maximum of this and the given vector b
      */
-    public final T max(final T v) {
-        float x = this.x;
-        float y = this.y;
-        float z = this.z;
-        float w = this.w;
-
-        if (v.x > x)
-            x = v.x;
-        if (v.y > y)
-            y = v.y;
-        if (v.z > z)
-            z = v.z;
-        if (v.w > w)
-            w = v.w;
-
-        return create(x, y, z, w);
-    }
+    public abstract T max(T v);
 
     /**
-     * /**
      * Computes the element-wise maximum of this vector and the given vectors.
      *
      * @param v the second vector
      * @param w the third vector
      * @return element-wise maximum of this and the given vector b
      */
-    public final T max(final T v, final T v2) {
-        float x = this.x;
-        float y = this.y;
-        float z = this.z;
-        float w = this.w;
-
-        if (v.x > x)
-            x = v.x;
-        if (v.y > y)
-            y = v.y;
-        if (v.z > z)
-            z = v.z;
-        if (v.w > w)
-            w = v.w;
-
-        if (v2.x > x)
-            x = v2.x;
-        if (v2.y > y)
-            y = v2.y;
-        if (v2.z > z)
-            z = v2.z;
-        if (v2.w > w)
-            w = v2.w;
-
-        return create(x, y, z, w);
-    }
+    public abstract T max(T v, T v2);
 
     @Override
     public final int hashCode() {
-        return Float.floatToIntBits(x) ^ Float.floatToIntBits(y)
-                ^ Float.floatToIntBits(z) ^ Float.floatToIntBits(w)
+        return Float.floatToIntBits(x()) ^ Float.floatToIntBits(y())
+                ^ Float.floatToIntBits(z()) ^ Float.floatToIntBits(w())
                 ^ 0x75CA01D3;
     }
 
@@ -336,10 +163,10 @@ public abstract class Vec4<T extends Vec4<?, ?>, A extends Vec4<?, ?>> {
             if (f && !s || !f && s)
                 return false;
             return (f && s)
-                    || (!f && !s && (Constants.isEqual(cobj.x, x)
-                            && Constants.isEqual(cobj.y, y)
-                            && Constants.isEqual(cobj.z, z) && Constants
-                                    .isEqual(cobj.w, w)));
+                    || (!f && !s && (Constants.isEqual(cobj.x(), x())
+                            && Constants.isEqual(cobj.y(), y())
+                            && Constants.isEqual(cobj.z(), z()) && Constants
+                                    .isEqual(cobj.w(), w())));
         }
         return false;
     }
@@ -0,0 +1,79 @@
+package raytracer.math;
+
+/**
+ * Allocation-free vector kernels on float components, for the hot paths
+ * (intersection, camera and shading) which would otherwise create a temporary
+ * {@link Vec3} or {@link Point} per operation. Every routine computes exactly
+ * what the corresponding method of the vector classes computes, in the same
+ * order of operations, so both give the same floats.
+ */
+public final class VecMath {
+
+	private VecMath() {
+	}
+
+	/**
+	 * Computes the dot product of two vectors, see {@link Vec4#dot(Vec3)}
+	 *
+	 * @return The dot product
+	 */
+	public static float dot(final float ax, final float ay, final float az, final float bx, final float by,
+			final float bz) {
+		return ax * bx + ay * by + az * bz;
+	}
+
+	/**
+	 * Computes the cross product of two vectors, see {@link Vec3#cross(Vec3)}
+	 *
+	 * @param out
+	 *            The array receiving x, y and z of the product
+	 * @param ofs
+	 *            The index of x in out
+	 */
+	public static void cross(final float ax, final float ay, final float az, final float bx, final float by,
+			final float bz, final float[] out, final int ofs) {
+		out[ofs] = ay * bz - az * by;
+		out[ofs + 1] = az * bx - ax * bz;
+		out[ofs + 2] = ax * by - ay * bx;
+	}
+
+	/**
+	 * Computes the length of a vector, see {@link Vec3#norm()}
+	 *
+	 * @return The length of the vector
+	 */
+	public static float norm(final float x, final float y, final float z) {
+		final float sdot = x * x + y * y + z * z;
+		return sdot == 1.0f ? 1.0f : (float) Math.sqrt(sdot);
+	}
+
+	/**
+	 * Normalizes a vector in place, see {@link Vec3#normalized()}
+	 *
+	 * @param v
+	 *            The array holding x, y and z of the vector
+	 * @param ofs
+	 *            The index of x in v
+	 */
+	public static void normalize(final float[] v, final int ofs) {
+		final float factor = 1.0f / norm(v[ofs], v[ofs + 1], v[ofs + 2]);
+		v[ofs] = factor * v[ofs];
+		v[ofs + 1] = factor * v[ofs + 1];
+		v[ofs + 2] = factor * v[ofs + 2];
+	}
+
+	/**
+	 * Clamps a color component to [0, 1] like {@link Color} does
+	 *
+	 * @param x
+	 *            The component
+	 * @return The clamped component
+	 */
+	public static float saturate(final float x) {
+		if (x > 1.0f)
+			return 1.0f;
+		if (x < 0.0f)
+			return 0.0f;
+		return x;
+	}
+}
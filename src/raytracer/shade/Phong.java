@@ -1,5 +1,7 @@
 package raytracer.shade;
 
+import static raytracer.math.VecMath.saturate;
+
 import raytracer.core.Hit;
 import raytracer.core.Shader;
 import raytracer.core.Trace;
@@ -8,6 +10,7 @@ import raytracer.math.Vec3;
 import raytracer.core.LightSource;
 import raytracer.math.Point;
 import raytracer.math.Ray;
+import raytracer.math.VecMath;
 
 public class Phong implements Shader {
 
@@ -25,21 +28,32 @@ public class Phong implements Shader {
         this.shininess = shininess;
     }
 
+    // The same shading as composing Vec3 and Color operations, computed on the
+    // components so that only the shadow rays and the result are allocated.
+    // Every color operation clamps its result like Color does.
     @Override
     public Color shade(Hit hit, Trace trace) {
         // Calculate the normalized surface normal vector
-        Vec3 N = hit.getNormal().normalized();
+        Vec3 n = hit.getNormal();
+        float nf = 1.0f / VecMath.norm(n.x(), n.y(), n.z());
+        float nx = nf * n.x(), ny = nf * n.y(), nz = nf * n.z();
 
         // Calculate the normalized view direction vector
-        Vec3 V = trace.getRay().dir().normalized();
+        Vec3 d = trace.getRay().dir();
+        float vf = 1.0f / VecMath.norm(d.x(), d.y(), d.z());
+        float vx = vf * d.x(), vy = vf * d.y(), vz = vf * d.z();
 
         // Calculate the ambient color contribution
-        Color ambient = ambientColor.mul(trace.getScene().getBackground());
+        Color background = trace.getScene().getBackground();
+        float ambientR = saturate(ambientColor.x() * background.x());
+        float ambientG = saturate(ambientColor.y() * background.y());
+        float ambientB = saturate(ambientColor.z() * background.z());
 
         // Initialize diffuse and specular colors
-        Color diffuse = Color.BLACK;
-        Color specular = Color.BLACK;
+        float diffuseR = 0, diffuseG = 0, diffuseB = 0;
+        float specularR = 0, specularG = 0, specularB = 0;
 
+        Point p = hit.getPoint();
         // Iterate over each light source in the scene
         for (LightSource lightSource : trace.getScene().getLightSources()) {
             // Get the position of the light source
@@ -47,50 +61,64 @@ public class Phong implements Shader {
 
             // Calculate the direction from the hit point to the light source and normalize
             // it
-            Vec3 L = lightPosition.sub(hit.getPoint()).normalized();
+            float lx = lightPosition.x() - p.x(), ly = lightPosition.y() - p.y(), lz = lightPosition.z() - p.z();
+            float lf = 1.0f / VecMath.norm(lx, ly, lz);
+            lx = lf * lx;
+            ly = lf * ly;
+            lz = lf * lz;
 
             // Create the shadow ray with an offset origin and the light direction
-            Ray shadowRay = new Ray(hit.getPoint().add(N.scale(0.0001f)), L);
+            Point shadowBase = new Point(p.x() + 0.0001f * nx, p.y() + 0.0001f * ny, p.z() + 0.0001f * nz);
+            Ray shadowRay = new Ray(shadowBase, new Vec3(lx, ly, lz));
 
-            // Check if the shadow ray is obstructed by other objects
-            boolean Obsray = trace.getScene().hit(shadowRay).hits();
+            // Check if the shadow ray is obstructed by other objects between
+            // the hit point and the light source
+            boolean Obsray = trace.getScene().occluded(shadowRay, VecMath.norm(lightPosition.x() - shadowBase.x(),
+                    lightPosition.y() - shadowBase.y(), lightPosition.z() - shadowBase.z()));
 
             if (!Obsray) {
                 // Calculate the diffuse reflection factor
-                float diffuseFactor = Math.max(0, N.dot(L));
+                float diffuseFactor = Math.max(0, VecMath.dot(nx, ny, nz, lx, ly, lz));
 
                 // Get the color of the light source
                 Color lightColor = lightSource.getColor();
 
-                // Calculate the diffuse contribution based on the diffuse color, light color,
-                // and diffuse factor
-                Color diffuseContribution = diffuseColor.mul(lightColor).scale(diffuseFactor);
-
-                // Add the diffuse contribution to the overall diffuse color
-                diffuse = diffuse.add(diffuseContribution);
+                // Add the diffuse contribution, based on the diffuse color, light color,
+                // and diffuse factor, to the overall diffuse color
+                diffuseR = addScaled(diffuseR, diffuseFactor, saturate(diffuseColor.x() * lightColor.x()));
+                diffuseG = addScaled(diffuseG, diffuseFactor, saturate(diffuseColor.y() * lightColor.y()));
+                diffuseB = addScaled(diffuseB, diffuseFactor, saturate(diffuseColor.z() * lightColor.z()));
 
                 // Calculate the reflection vector
-                Vec3 R = L.reflect(N);
+                float r = 2 * VecMath.dot(lx, ly, lz, nx, ny, nz);
+                float rx = lx - r * nx, ry = ly - r * ny, rz = lz - r * nz;
 
                 // Calculate the specular reflection factor
-                float specularFactor = (float) Math.pow(Math.max(0, R.dot(V)), shininess);
-
-                // Calculate the specular contribution based on the specular color and specular
-                // factor
-                Color specularContribution = specularColor.scale(specularFactor);
+                float specularFactor = (float) Math.pow(Math.max(0, VecMath.dot(rx, ry, rz, vx, vy, vz)), shininess);
 
-                // Add the specular contribution to the overall specular color
-                specular = specular.add(specularContribution);
+                // Add the specular contribution, based on the specular color and specular
+                // factor, to the overall specular color
+                specularR = addScaled(specularR, specularFactor, specularColor.x());
+                specularG = addScaled(specularG, specularFactor, specularColor.y());
+                specularB = addScaled(specularB, specularFactor, specularColor.z());
             }
         }
 
         // Apply the inner shader's contribution only to the diffuse component
         Color innerShading = innerShader.shade(hit, trace);
-        diffuse = diffuse.mul(innerShading);
+        diffuseR = saturate(diffuseR * innerShading.x());
+        diffuseG = saturate(diffuseG * innerShading.y());
+        diffuseB = saturate(diffuseB * innerShading.z());
 
         // Combine the ambient, diffuse, and specular colors to obtain the final shading
         // result
-        return ambient.add(diffuse).add(specular);
+        return new Color(saturate(ambientR + diffuseR) + specularR, saturate(ambientG + diffuseG) + specularG,
+                saturate(ambientB + diffuseB) + specularB);
+    }
+
+    // one channel of sum.add(color.scale(factor)), clamped like Color:
+    private static float addScaled(float sum, float factor, float color) {
+        return saturate(sum + saturate(factor * color));
     }
 
 }
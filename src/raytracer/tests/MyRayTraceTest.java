@@ -1,16 +1,34 @@
 package raytracer.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
 
 import org.junit.Test;
 
+import raytracer.core.Hit;
+import raytracer.core.Obj;
+import raytracer.core.def.Accelerator;
+import raytracer.core.def.BVH;
+import raytracer.core.def.SimpleAccelerator;
+import raytracer.core.def.StandardObj;
+import raytracer.geom.GeomFactory;
+import raytracer.geom.Primitive;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.shade.SingleColor;
+
 
 /**
  * Within this class and/or package you can implement your own tests that will
  * be run with the reference implementation.
  *
  * Note that no classes or interfaces will be available, except those initially
- * provided. 
+ * provided. Tests of the types added on top of them are in
+ * {@link RayTraceExtensionsTest}.
  */
 public class MyRayTraceTest {
 
@@ -19,4 +37,52 @@ public class MyRayTraceTest {
 		assert(42 == 42);
 	}
 
+	static Point randomPoint(final Random rnd, final float size) {
+		return new Point(rnd.nextFloat() * size, rnd.nextFloat() * size, rnd.nextFloat() * size);
+	}
+
+	/**
+	 * Fills the given accelerators with the same random spheres and triangles
+	 */
+	static void fillRandom(final Random rnd, final int n, final Accelerator... accels) {
+		for (int i = 0; i < n; i++) {
+			final Point p = randomPoint(rnd, 20);
+			final Primitive prim = i % 2 == 0 ? GeomFactory.createSphere(p, rnd.nextFloat())
+					: GeomFactory.createTriangle(p, p.add(randomPoint(rnd, 2).sub(Point.ORIGIN)),
+							p.add(randomPoint(rnd, 2).sub(Point.ORIGIN)));
+			final Obj obj = new StandardObj(prim, new SingleColor(Color.WHITE));
+			for (final Accelerator accel : accels)
+				accel.add(obj);
+		}
+	}
+
+	/**
+	 * Checks that the accelerator finds the same closest hits as the simple one
+	 */
+	static void assertSameHits(final Random rnd, final Accelerator ref, final Accelerator accel) {
+		for (int i = 0; i < 1000; i++) {
+			final Point base = randomPoint(rnd, 40).sub(randomPoint(rnd, 10).sub(Point.ORIGIN));
+			final Ray ray = new Ray(base, randomPoint(rnd, 20).sub(base).normalized());
+			final Hit expected = ref.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			final Hit actual = accel.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			assertNotNull(actual);
+			assertEquals(expected.hits(), actual.hits());
+			if (expected.hits()) {
+				assertEquals(expected.getParameter(), actual.getParameter(), 0);
+				assertSame(expected.get(), actual.get());
+			}
+		}
+	}
+
+	@Test
+	public void testBVHSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(42);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final BVH bvh = new BVH();
+		fillRandom(rnd, 500, simple, bvh);
+		bvh.buildBVH();
+		assertSameHits(rnd, simple, bvh);
+	}
+
+
 }
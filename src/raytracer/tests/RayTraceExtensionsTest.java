@@ -0,0 +1,891 @@
+package raytracer.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNotNull;
+import static raytracer.tests.MyRayTraceTest.assertSameHits;
+import static raytracer.tests.MyRayTraceTest.fillRandom;
+import static raytracer.tests.MyRayTraceTest.randomPoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import raytracer.core.FrameBuffer;
+import raytracer.core.Hit;
+import raytracer.core.HitRecord;
+import raytracer.core.OBJReader;
+import raytracer.core.LightSource;
+import raytracer.core.Obj;
+import raytracer.core.PerspectiveCamera;
+import raytracer.core.ProgressiveRenderer;
+import raytracer.core.RayPacket;
+import raytracer.core.RenderScheduler;
+import raytracer.core.Renderer;
+import raytracer.core.ToneMap;
+import raytracer.core.def.Accelerator;
+import raytracer.core.def.BVH;
+import raytracer.core.def.BVH4;
+import raytracer.core.def.BVH4Kernel;
+import raytracer.core.def.BVHSnapshot;
+import raytracer.core.def.BVHStats;
+import raytracer.core.def.FlatBVH;
+import raytracer.core.def.Grid;
+import raytracer.core.def.Instance;
+import raytracer.core.def.KdTree;
+import raytracer.core.def.LBVH;
+import raytracer.core.def.ParallelBVHBuilder;
+import raytracer.core.def.PointLightSource;
+import raytracer.core.def.SAH;
+import raytracer.core.def.SAHBVH;
+import raytracer.core.def.SBVH;
+import raytracer.core.def.SimpleAccelerator;
+import raytracer.core.def.StandardObj;
+import raytracer.core.def.StandardScene;
+import raytracer.core.def.TriangleMesh;
+import raytracer.geom.BBox;
+import raytracer.geom.GeomFactory;
+import raytracer.geom.Primitive;
+import raytracer.geom.TriangleKernel;
+import raytracer.geom.UpdatablePrimitive;
+import raytracer.math.Color;
+import raytracer.math.Point;
+import raytracer.math.Ray;
+import raytracer.math.Transform;
+import raytracer.math.Vec2;
+import raytracer.math.Vec3;
+import raytracer.math.Vec4;
+import raytracer.math.VecMath;
+import raytracer.shade.SingleColor;
+
+/**
+ * Tests of the types and methods added on top of the provided classes. Unlike
+ * {@link MyRayTraceTest} these cannot run with the reference implementation.
+ */
+public class RayTraceExtensionsTest {
+
+	/**
+	 * Reads the bunny into the given accelerators
+	 */
+	private static void readBunny(final Accelerator... accels) throws IOException {
+		for (final Accelerator accel : accels)
+			OBJReader.read("obj/bunny.obj", accel, new SingleColor(Color.WHITE), 25, Vec3.ZERO);
+	}
+
+	/**
+	 * Checks that the accelerator finds the same closest hits on the bunny as
+	 * the simple one, with rays from in front of it at random spots of it. The
+	 * accelerators read the bunny on their own, so only the distances are
+	 * compared.
+	 */
+	private static void assertSameBunnyHits(final Random rnd, final Accelerator ref, final Accelerator accel) {
+		for (int i = 0; i < 1000; i++) {
+			final Point base = randomPoint(rnd, 10).sub(new Vec3(5, 0, 10));
+			final Point target = randomPoint(rnd, 4).sub(new Vec3(2, 0, 2));
+			final Ray ray = new Ray(base, target.sub(base).normalized());
+			final Hit expected = ref.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			final Hit actual = accel.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			assertEquals(expected.hits(), actual.hits());
+			if (expected.hits())
+				assertEquals(expected.getParameter(), actual.getParameter(), 0);
+		}
+	}
+
+	@Test
+	public void testSAHBVHBeatsMidpointSplitsOnBunny() throws IOException {
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final BVH midpoint = new BVH();
+		final SAHBVH sah = new SAHBVH();
+		readBunny(simple, midpoint, sah);
+		midpoint.buildBVH();
+		sah.buildBVH();
+		assertTrue(SAH.cost(sah) <= SAH.cost(midpoint));
+		assertSameBunnyHits(new Random(3), simple, sah);
+	}
+
+	@Test
+	public void testSAHBVHSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(5);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		fillRandom(rnd, 500, simple, bvh);
+		bvh.buildBVH();
+		assertSameHits(rnd, simple, bvh);
+	}
+
+	@Test
+	public void testParallelBuildMatchesSequentialBuild() {
+		final ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			final BVH[][] pairs = { { new BVH(), new BVH() }, { new SAHBVH(), new SAHBVH() },
+					{ new LBVH(), new LBVH() }, { new LBVH(LBVH.CODE_BITS_30, 2), new LBVH(LBVH.CODE_BITS_30, 2) },
+					{ new SBVH(1), new SBVH(1) } };
+			for (final BVH[] pair : pairs) {
+				final Random rnd = new Random(47);
+				final SimpleAccelerator simple = new SimpleAccelerator();
+				fillRandom(rnd, 2000, simple, pair[0], pair[1]);
+				pair[0].buildBVH();
+				// a small cutoff, so that the subtrees are built by many tasks:
+				new ParallelBVHBuilder(pool, 16).build(pair[1]);
+				assertEquals(SAH.cost(pair[0]), SAH.cost(pair[1]), 0);
+				assertSameHits(rnd, simple, pair[1]);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testLBVHSameHitsAsSimpleAccelerator() {
+		for (final int bits : new int[] { LBVH.CODE_BITS_30, LBVH.CODE_BITS_63 }) {
+			for (final int rounds : new int[] { 0, 3 }) {
+				final Random rnd = new Random(53);
+				final SimpleAccelerator simple = new SimpleAccelerator();
+				final LBVH bvh = new LBVH(bits, rounds);
+				fillRandom(rnd, 1000, simple, bvh);
+				bvh.buildBVH();
+				assertSameHits(rnd, simple, bvh);
+			}
+		}
+	}
+
+	@Test
+	public void testLBVHWithFewObjects() {
+		for (final int bits : new int[] { LBVH.CODE_BITS_30, LBVH.CODE_BITS_63 }) {
+			for (int n = 0; n <= 3; n++) {
+				final Random rnd = new Random(59 + n);
+				final SimpleAccelerator simple = new SimpleAccelerator();
+				final LBVH bvh = new LBVH(bits, 1);
+				fillRandom(rnd, n, simple, bvh);
+				bvh.buildBVH();
+				assertSameHits(rnd, simple, bvh);
+			}
+		}
+	}
+
+	@Test
+	public void testLBVHWithIdenticalCentroids() {
+		for (final int bits : new int[] { LBVH.CODE_BITS_30, LBVH.CODE_BITS_63 }) {
+			final Random rnd = new Random(61);
+			final SimpleAccelerator simple = new SimpleAccelerator();
+			final LBVH bvh = new LBVH(bits, 2);
+			fillRandom(rnd, 200, simple, bvh);
+			// many objects with equal Morton codes, which the link step has to
+			// tell apart by their index:
+			for (int i = 0; i < 300; i++) {
+				final Obj obj = new StandardObj(GeomFactory.createSphere(new Point(10, 10, 10), 0.5f + rnd.nextFloat()),
+						new SingleColor(Color.WHITE));
+				simple.add(obj);
+				bvh.add(obj);
+			}
+			bvh.buildBVH();
+			assertSameHits(rnd, simple, bvh);
+		}
+	}
+
+	@Test
+	public void testTreeletRestructuringNeverRaisesCost() {
+		for (final int bits : new int[] { LBVH.CODE_BITS_30, LBVH.CODE_BITS_63 }) {
+			float previous = Float.POSITIVE_INFINITY;
+			for (int rounds = 0; rounds <= 3; rounds++) {
+				final LBVH bvh = new LBVH(bits, rounds);
+				fillRandom(new Random(67), 2000, bvh);
+				bvh.buildBVH();
+				final float cost = SAH.cost(bvh);
+				assertTrue(cost <= previous);
+				previous = cost;
+			}
+		}
+	}
+
+	@Test
+	public void testFlatBVHSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(7);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		fillRandom(rnd, 500, simple, bvh);
+		bvh.buildBVH();
+		assertSameHits(rnd, simple, new FlatBVH(bvh));
+	}
+
+	@Test
+	public void testBVH4SameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(11);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		fillRandom(rnd, 500, simple, bvh);
+		bvh.buildBVH();
+		assertSameHits(rnd, simple, new BVH4(bvh));
+	}
+
+	@Test
+	public void testBVH4KernelsComputeSameEntries() {
+		// only runs with --add-modules jdk.incubator.vector and the vector folder compiled:
+		final BVH4Kernel vector = BVH4Kernel.vector();
+		assumeNotNull(vector);
+		final Random rnd = new Random(61);
+		final float[] bounds = new float[6 * BVH4.WIDTH];
+		final float[] scalarLanes = new float[BVH4.WIDTH], vectorLanes = new float[BVH4.WIDTH];
+		for (int i = 0; i < 10000; i++) {
+			for (int k = 0; k < BVH4.WIDTH; k++) {
+				final boolean unused = rnd.nextInt(8) == 0;
+				for (int dim = 0; dim < 3; dim++) {
+					final float a = rnd.nextFloat() * 20 - 10, b = rnd.nextFloat() * 20 - 10;
+					bounds[BVH4.WIDTH * dim + k] = unused ? Float.POSITIVE_INFINITY : Math.min(a, b);
+					bounds[BVH4.WIDTH * (3 + dim) + k] = unused ? Float.NEGATIVE_INFINITY : Math.max(a, b);
+				}
+			}
+			// axis-aligned rays have infinite inverse components:
+			final Vec3 dir = new Vec3(rnd.nextInt(4) == 0 ? 0 : rnd.nextFloat() - 0.5f, rnd.nextFloat() - 0.5f,
+					rnd.nextInt(4) == 0 ? 0 : rnd.nextFloat() - 0.5f);
+			final Point base = new Point(rnd.nextFloat() * 30 - 15, rnd.nextFloat() * 30 - 15, rnd.nextFloat() * 30 - 15);
+			final Ray ray = new Ray(base, dir.normalized());
+			final int nx = BVH4.WIDTH * (dir.isNeg(0) * 3), ny = BVH4.WIDTH * (1 + dir.isNeg(1) * 3),
+					nz = BVH4.WIDTH * (2 + dir.isNeg(2) * 3);
+			final float tmax = rnd.nextBoolean() ? Float.POSITIVE_INFINITY : rnd.nextFloat() * 20;
+			for (final BVH4Kernel kernel : new BVH4Kernel[] { BVH4Kernel.SCALAR, vector }) {
+				kernel.entries(bounds, 0, ray.base().x(), ray.base().y(), ray.base().z(), ray.invX(), ray.invY(),
+						ray.invZ(), nx, ny, nz, 0, tmax, kernel == vector ? vectorLanes : scalarLanes);
+			}
+			for (int k = 0; k < BVH4.WIDTH; k++) {
+				assertEquals(scalarLanes[k], vectorLanes[k], 0);
+			}
+		}
+
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		fillRandom(rnd, 500, simple, bvh);
+		bvh.buildBVH();
+		assertSameHits(rnd, simple, new BVH4(bvh, vector));
+	}
+
+	@Test
+	public void testGridSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(13);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final Grid grid = new Grid();
+		fillRandom(rnd, 500, simple, grid);
+		final Obj plane = new StandardObj(GeomFactory.createPlane(Vec3.Y, new Point(0, 5, 0)),
+				new SingleColor(Color.WHITE));
+		simple.add(plane);
+		grid.add(plane);
+		grid.build();
+		assertSameHits(rnd, simple, grid);
+	}
+
+	@Test
+	public void testKdTreeSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(17);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final KdTree tree = new KdTree();
+		fillRandom(rnd, 500, simple, tree);
+		tree.build();
+		assertSameHits(rnd, simple, tree);
+	}
+
+	@Test
+	public void testAddAllSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(19);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final List<Obj> objects = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			final Obj obj = new StandardObj(GeomFactory.createSphere(randomPoint(rnd, 20), rnd.nextFloat()),
+					new SingleColor(Color.WHITE));
+			simple.add(obj);
+			objects.add(obj);
+		}
+		final BVH bvh = new SAHBVH();
+		bvh.addAll(objects);
+		bvh.commit();
+		assertSameHits(rnd, simple, bvh);
+
+		final Obj plane = new StandardObj(GeomFactory.createPlane(Vec3.Y, new Point(0, 5, 0)),
+				new SingleColor(Color.WHITE));
+		simple.add(plane);
+		final KdTree tree = new KdTree();
+		tree.addAll(objects.stream());
+		tree.addAll(plane);
+		tree.commit();
+		assertSameHits(rnd, simple, tree);
+	}
+
+	@Test
+	public void testBVHStatsAddUp() {
+		final Random rnd = new Random(23);
+		final SAHBVH bvh = new SAHBVH();
+		fillRandom(rnd, 500, bvh);
+		bvh.commit();
+		final BVHStats stats = new BVHStats(bvh);
+
+		int leaves = 0, references = 0;
+		final int[] sizes = stats.getLeafSizeHistogram();
+		for (int size = 0; size < sizes.length; size++) {
+			leaves += sizes[size];
+			references += size * sizes[size];
+		}
+		int atDepth = 0;
+		for (final int count : stats.getDepthHistogram())
+			atDepth += count;
+		float cost = 0;
+		for (final float levelCost : stats.getLevelCosts())
+			cost += levelCost;
+
+		assertEquals(stats.getLeafCount(), leaves);
+		assertEquals(stats.getLeafCount(), atDepth);
+		assertEquals(2 * stats.getLeafCount() - 1, stats.getNodeCount());
+		assertEquals(500, references);
+		assertEquals(0, stats.getEmptyNodeCount());
+		assertEquals(SAH.cost(bvh), stats.getCost(), 1e-3f * stats.getCost());
+		assertEquals(stats.getCost(), cost, 1e-3f * stats.getCost());
+		assertTrue(stats.getFlatMemoryEstimate() < stats.getMemoryEstimate());
+	}
+
+	@Test
+	public void testUnboundedObjectsKeptOutOfBVH() {
+		final Random rnd = new Random(31);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		fillRandom(rnd, 500, simple, bvh);
+		final Obj plane = new StandardObj(GeomFactory.createPlane(Vec3.Y, new Point(0, 5, 0)),
+				new SingleColor(Color.WHITE));
+		simple.add(plane);
+		bvh.add(plane);
+		bvh.commit();
+
+		assertTrue(bvh.getBounds().isFinite());
+		assertSame(BBox.INF, bvh.bbox());
+		assertEquals(1, bvh.getUnbounded().size());
+		assertTrue(SAH.cost(bvh) < Float.POSITIVE_INFINITY);
+		assertSameHits(rnd, simple, bvh);
+		assertSameHits(rnd, simple, new FlatBVH(bvh));
+		assertSameHits(rnd, simple, new BVH4(bvh));
+	}
+
+	@Test
+	public void testHitRecordMatchesHit() {
+		final Random rnd = new Random(37);
+		final Primitive sphere = GeomFactory.createSphere(new Point(-2, 6, 1), 3);
+		// records the hit without keeping it, so toHit falls back to the default:
+		final Primitive recordOnly = new Primitive() {
+			@Override
+			public BBox bbox() {
+				return sphere.bbox();
+			}
+
+			@Override
+			public Hit hit(final Ray ray, final Obj obj, final float tmin, final float tmax) {
+				return sphere.hit(ray, obj, tmin, tmax);
+			}
+
+			@Override
+			public boolean intersect(final Ray ray, final Obj obj, final float tmin, final HitRecord record) {
+				final Hit hit = hit(ray, obj, tmin, record.getParameter());
+				if (!hit.hits() || !record.accepts(hit.getParameter()))
+					return false;
+				final Vec3 n = hit.getNormal();
+				record.set(hit.getParameter(), 0, 0, n.x(), n.y(), n.z(), this, obj);
+				return true;
+			}
+		};
+		final Primitive[] prims = { GeomFactory.createSphere(new Point(3, 4, 5), 2),
+				GeomFactory.createTriangle(new Point(0, 0, 0), new Point(8, 1, 2), new Point(2, 9, 4)),
+				GeomFactory.createPlane(new Vec3(1, 2, 3), new Point(1, 1, 1)), recordOnly,
+				new Instance(new StandardObj(sphere, new SingleColor(Color.WHITE)),
+						Transform.scale(2).then(Transform.translate(new Vec3(1, -3, 2)))) };
+		final HitRecord record = new HitRecord();
+		for (int i = 0; i < 1000; i++) {
+			final Point base = randomPoint(rnd, 20).sub(new Vec3(5, 5, 5));
+			final Ray ray = new Ray(base, randomPoint(rnd, 10).sub(base).normalized());
+			for (final Primitive prim : prims) {
+				final Hit expected = prim.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+				record.reset(Float.POSITIVE_INFINITY);
+				assertEquals(expected.hits(), prim.intersect(ray, null, 0, record));
+				if (!expected.hits())
+					continue;
+				final Hit actual = record.toHit(ray);
+				assertEquals(expected.getParameter(), actual.getParameter(), 0);
+				assertEquals(expected.getPoint(), actual.getPoint());
+				assertEquals(expected.getNormal(), actual.getNormal());
+				assertEquals(expected.getUV(), actual.getUV());
+			}
+		}
+	}
+
+	@Test
+	public void testOccludedMatchesClosestHit() {
+		final Random rnd = new Random(41);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		final Grid grid = new Grid();
+		final KdTree tree = new KdTree();
+		fillRandom(rnd, 500, simple, bvh, grid, tree);
+		bvh.buildBVH();
+		grid.build();
+		tree.build();
+		final Accelerator[] accels = { simple, bvh, new FlatBVH(bvh), new BVH4(bvh), grid, tree };
+		for (int i = 0; i < 1000; i++) {
+			final Point base = randomPoint(rnd, 40).sub(randomPoint(rnd, 10).sub(Point.ORIGIN));
+			final Ray ray = new Ray(base, randomPoint(rnd, 20).sub(base).normalized());
+			final float tmax = 40 * rnd.nextFloat();
+			final Hit closest = simple.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			final boolean expected = closest.hits() && closest.getParameter() <= tmax;
+			for (final Accelerator accel : accels)
+				assertEquals(expected, accel.occluded(ray, 0, tmax));
+		}
+	}
+
+	@Test
+	public void testSBVHSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(29);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SBVH bvh = new SBVH(1);
+		fillRandom(rnd, 500, simple, bvh);
+		// long, skinny triangles make spatial splits worthwhile:
+		for (int i = 0; i < 100; i++) {
+			final Point p = randomPoint(rnd, 20);
+			final Obj obj = new StandardObj(GeomFactory.createTriangle(p, randomPoint(rnd, 20),
+					p.add(new Vec3(0.1f, 0.1f, 0))), new SingleColor(Color.WHITE));
+			simple.add(obj);
+			bvh.add(obj);
+		}
+		bvh.buildBVH();
+		assertSameHits(rnd, simple, bvh);
+	}
+
+	@Test
+	public void testSnapshotSameHitsAsSimpleAccelerator() throws IOException {
+		final Path model = Paths.get("obj/bunny.obj");
+		final Path snapshot = Files.createTempFile("bunny", ".bvh");
+		final SingleColor shader = new SingleColor(Color.WHITE);
+		try {
+			final SimpleAccelerator simple = new SimpleAccelerator();
+			OBJReader.read(model.toString(), simple, shader, 25, Vec3.ZERO);
+
+			// the empty temporary file does not match, so the snapshot is written:
+			final FlatBVH written = BVHSnapshot.load(model, snapshot, shader, 25, Vec3.ZERO);
+			final byte[] key = BVHSnapshot.key(Files.readAllBytes(model), 25, Vec3.ZERO);
+			final FlatBVH mapped = BVHSnapshot.read(snapshot, key, shader);
+			assertNotNull(mapped);
+			assertEquals(written.getNodeCount(), mapped.getNodeCount());
+			assertNull(BVHSnapshot.read(snapshot, BVHSnapshot.key(Files.readAllBytes(model), 20, Vec3.ZERO), shader));
+
+			final Random rnd = new Random(31);
+			for (int i = 0; i < 1000; i++) {
+				final Point base = randomPoint(rnd, 10).sub(new Vec3(5, 0, 10));
+				final Ray ray = new Ray(base, randomPoint(rnd, 4).sub(base).normalized());
+				final Hit expected = simple.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+				final Hit actual = mapped.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+				assertEquals(expected.hits(), actual.hits());
+				if (expected.hits())
+					assertEquals(expected.getParameter(), actual.getParameter(), 0);
+			}
+		} finally {
+			Files.deleteIfExists(snapshot);
+		}
+	}
+
+	@Test
+	public void testCorruptSnapshotIsRebuilt() throws IOException {
+		final Path model = Paths.get("obj/bunny.obj");
+		final Path snapshot = Files.createTempFile("bunny", ".bvh");
+		final SingleColor shader = new SingleColor(Color.WHITE);
+		try {
+			final FlatBVH written = BVHSnapshot.load(model, snapshot, shader, 25, Vec3.ZERO);
+			final byte[] key = BVHSnapshot.key(Files.readAllBytes(model), 25, Vec3.ZERO);
+			final byte[] valid = Files.readAllBytes(snapshot);
+			final ByteBuffer header = ByteBuffer.wrap(valid).order(ByteOrder.LITTLE_ENDIAN);
+			// the key is followed by the node count, depth, triangle count and reference count:
+			final int nodes = header.getInt(40), depth = header.getInt(44), references = header.getInt(52);
+			assertEquals(written.getNodeCount(), nodes);
+			// the header is followed by the bounds and the links (offset and count) of the nodes:
+			final int links = 56 + 4 * 6 * nodes;
+			int leaf = 0;
+			while (header.getInt(links + 8 * leaf + 4) < 0)
+				leaf++;
+			// the first child of the root is split as well:
+			assertTrue(header.getInt(links + 8 + 4) < 0);
+			// pairs of position and value: a child of the root beyond the last node, a leaf beyond the last
+			// reference, a too small depth, a root sharing its second child with its first child and a first
+			// child turned into an empty leaf, which leaves its children unreached:
+			final int[][] patches = { { links, nodes }, { links + 8 * leaf + 4, references + 1 }, { 44, depth - 1 },
+					{ links, 2 }, { links + 8, 0, links + 8 + 4, 0 } };
+			for (final int[] patch : patches) {
+				final byte[] corrupt = valid.clone();
+				for (int i = 0; i < patch.length; i += 2)
+					ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(patch[i], patch[i + 1]);
+				Files.write(snapshot, corrupt);
+				try {
+					BVHSnapshot.read(snapshot, key, shader);
+					fail("corrupt snapshot was read");
+				} catch (final IOException e) {
+					// expected
+				}
+				final FlatBVH rebuilt = BVHSnapshot.load(model, snapshot, shader, 25, Vec3.ZERO);
+				assertEquals(nodes, rebuilt.getNodeCount());
+				assertTrue(Arrays.equals(valid, Files.readAllBytes(snapshot)));
+			}
+		} finally {
+			Files.deleteIfExists(snapshot);
+		}
+	}
+
+	@Test
+	public void testRefitSameHitsAsSimpleAccelerator() {
+		final Random rnd = new Random(19);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		final UpdatablePrimitive[] spheres = new UpdatablePrimitive[500];
+		for (int i = 0; i < spheres.length; i++) {
+			spheres[i] = GeomFactory.createUpdatable(GeomFactory.createSphere(randomPoint(rnd, 20), 0.5f));
+			final Obj obj = new StandardObj(spheres[i], new SingleColor(Color.WHITE));
+			simple.add(obj);
+			bvh.add(obj);
+		}
+		bvh.buildBVH();
+
+		// scatter the spheres, which degrades the hierarchy far beyond the threshold:
+		for (final UpdatablePrimitive sphere : spheres)
+			sphere.set(GeomFactory.createSphere(randomPoint(rnd, 20), 0.5f));
+		bvh.refit();
+		assertSameHits(rnd, simple, bvh);
+		assertTrue(bvh.refitOrRebuild(1.5f));
+		assertSameHits(rnd, simple, bvh);
+	}
+
+	@Test
+	public void testInstanceMatchesPlacedGeometry() {
+		final Random rnd = new Random(23);
+		final Vec3 offset = new Vec3(3, -2, 5);
+		final SAHBVH mesh = new SAHBVH();
+		final SimpleAccelerator placed = new SimpleAccelerator();
+		for (int i = 0; i < 200; i++) {
+			final Point p = randomPoint(rnd, 20);
+			final float r = 0.2f + rnd.nextFloat();
+			mesh.add(new StandardObj(GeomFactory.createSphere(p, r), new SingleColor(Color.WHITE)));
+			placed.add(new StandardObj(GeomFactory.createSphere(p.scale(2).add(offset), 2 * r),
+					new SingleColor(Color.WHITE)));
+		}
+		mesh.buildBVH();
+		final Instance instance = new Instance(mesh, Transform.scale(2).then(Transform.translate(offset)));
+
+		for (int i = 0; i < 1000; i++) {
+			final Point base = randomPoint(rnd, 60).sub(new Vec3(10, 10, 10));
+			final Ray ray = new Ray(base, randomPoint(rnd, 40).sub(base).normalized());
+			final Hit expected = placed.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			final Hit actual = instance.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			assertEquals(expected.hits(), actual.hits());
+			if (expected.hits()) {
+				assertEquals(expected.getParameter(), actual.getParameter(), 1e-3f);
+				assertEquals(0, expected.getPoint().sub(actual.getPoint()).norm(), 1e-3f);
+				assertEquals(0, expected.getNormal().sub(actual.getNormal()).norm(), 1e-3f);
+			}
+		}
+	}
+
+	@Test
+	public void testPacketsSameHitsAsSingleRays() {
+		final Random rnd = new Random(43);
+		final SimpleAccelerator simple = new SimpleAccelerator();
+		final SAHBVH bvh = new SAHBVH();
+		fillRandom(rnd, 500, simple, bvh);
+		final Obj plane = new StandardObj(GeomFactory.createPlane(Vec3.Y, new Point(0, 5, 0)),
+				new SingleColor(Color.WHITE));
+		simple.add(plane);
+		bvh.add(plane);
+		bvh.buildBVH();
+		final Accelerator[] accels = { simple, bvh, new FlatBVH(bvh), new BVH4(bvh) };
+
+		final RayPacket packet = new RayPacket();
+		for (int n = 0; n < 100; n++) {
+			// a pinhole looking at a random spot, with a few incoherent rays mixed in:
+			final Point eye = randomPoint(rnd, 40).sub(new Vec3(10, 10, 10));
+			final Point target = randomPoint(rnd, 20);
+			for (final Accelerator accel : accels) {
+				packet.clear();
+				final Random rays = new Random(n);
+				for (int i = 0; i < RayPacket.CAPACITY; i++) {
+					final Point p = i % 16 == 0 ? randomPoint(rays, 40)
+							: target.add(randomPoint(rays, 2).sub(Point.ORIGIN));
+					packet.add(new Ray(eye, p.sub(eye).normalized()));
+				}
+				final long found = accel.intersect(packet, packet.all() & ~2L, null, 0);
+				assertEquals(0, found & 2L);
+				for (int i = 0; i < packet.size(); i++) {
+					final Ray ray = packet.ray(i);
+					final Hit expected = i == 1 ? Hit.No.get() : simple.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+					final Hit actual = packet.record(i).toHit(ray);
+					assertEquals(expected.hits(), actual.hits());
+					assertEquals(expected.hits(), (found & (1L << i)) != 0);
+					if (expected.hits()) {
+						assertEquals(expected.getParameter(), actual.getParameter(), 0);
+						assertSame(expected.get(), actual.get());
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTriangleMeshMatchesTriangles() throws IOException {
+		final SingleColor shader = new SingleColor(Color.WHITE);
+		final SAHBVH triangles = new SAHBVH();
+		OBJReader.read("obj/bunny.obj", triangles, shader, 25, Vec3.ZERO);
+		triangles.commit();
+		final TriangleMesh mesh = OBJReader.readMesh("obj/bunny.obj", shader, 25, Vec3.ZERO);
+		assertEquals(triangles.getObjects().size(), mesh.getTriangleCount());
+		assertEquals(triangles.bbox(), mesh.bbox());
+
+		final Random rnd = new Random(47);
+		for (int i = 0; i < 1000; i++) {
+			final Point base = randomPoint(rnd, 10).sub(new Vec3(5, 0, 10));
+			final Ray ray = new Ray(base, randomPoint(rnd, 4).sub(base).normalized());
+			final Hit expected = triangles.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			final Hit actual = mesh.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+			assertEquals(expected.hits(), actual.hits());
+			assertEquals(expected.hits(), mesh.occluded(ray, 0, Float.POSITIVE_INFINITY));
+			if (!expected.hits())
+				continue;
+			assertSame(mesh, actual.get());
+			assertEquals(expected.getParameter(), actual.getParameter(), 0);
+			assertEquals(expected.getPoint(), actual.getPoint());
+			assertEquals(expected.getNormal(), actual.getNormal());
+			assertEquals(expected.getUV(), actual.getUV());
+		}
+	}
+
+	@Test
+	public void testTriangleKernelsMatchMollerTrumbore() {
+		final Random rnd = new Random(53);
+		for (int n = 0; n < 200; n++) {
+			final Point a = randomPoint(rnd, 10), b = randomPoint(rnd, 10), c = randomPoint(rnd, 10);
+			final Primitive reference = GeomFactory.createTriangle(a, b, c);
+			final Vec3 normal = b.sub(a).cross(c.sub(a)).normalized();
+			for (final TriangleKernel kernel : TriangleKernel.values()) {
+				final Primitive triangle = GeomFactory.createTriangle(a, b, c, kernel);
+				for (int i = 0; i < 20; i++) {
+					final Point base = randomPoint(rnd, 30).sub(new Vec3(10, 10, 10));
+					// aim well inside or well outside, away from the edges:
+					final float s = rnd.nextFloat(), t = rnd.nextFloat() * (1 - s);
+					final boolean inside = s > 0.05f && t > 0.05f && s + t < 0.95f;
+					final float scale = inside ? 1 : 3;
+					final Point target = a.add(b.sub(a).scale(scale * s)).add(c.sub(a).scale(scale * t));
+					final Ray ray = new Ray(base, target.sub(base).normalized());
+					// the kernels round differently for grazing rays:
+					if (Math.abs(ray.dir().dot(normal)) < 0.1f)
+						continue;
+					final Hit expected = reference.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+					final Hit actual = triangle.hit(ray, null, 0, Float.POSITIVE_INFINITY);
+					if (!inside && expected.hits() != actual.hits())
+						continue;
+					assertEquals(expected.hits(), actual.hits());
+					if (!expected.hits())
+						continue;
+					assertEquals(expected.getParameter(), actual.getParameter(), 1e-3f * expected.getParameter());
+					assertEquals(0, expected.getNormal().sub(actual.getNormal()).norm(), 1e-5f);
+					assertEquals(0, expected.getPoint().sub(actual.getPoint()).norm(), 1e-3f);
+					assertEquals(expected.getUV().x(), actual.getUV().x(), 1e-3f);
+					assertEquals(expected.getUV().y(), actual.getUV().y(), 1e-3f);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testWatertightKernelHasNoCracks() {
+		// a fan of triangles around the origin covering a polygon:
+		final int fan = 7;
+		final Point[] rim = new Point[fan];
+		for (int i = 0; i < fan; i++)
+			rim[i] = new Point((float) Math.cos(2 * Math.PI * i / fan), (float) Math.sin(2 * Math.PI * i / fan), 0);
+		final Accelerator mesh = new BVH();
+		for (int i = 0; i < fan; i++)
+			mesh.add(new StandardObj(GeomFactory.createTriangle(Point.ORIGIN, rim[i], rim[(i + 1) % fan],
+					TriangleKernel.WATERTIGHT), new SingleColor(Color.WHITE)));
+		mesh.commit();
+
+		// rays at the shared edges and the shared vertex must not slip through:
+		final Random rnd = new Random(59);
+		for (int i = 0; i < 10000; i++) {
+			final Point target = i % 10 == 0 ? Point.ORIGIN
+					: Point.ORIGIN.add(rim[rnd.nextInt(fan)].sub(Point.ORIGIN).scale(0.9f * rnd.nextFloat()));
+			final Point base = randomPoint(rnd, 10).sub(new Vec3(5, 5, 10));
+			final Ray ray = new Ray(base, target.sub(base).normalized());
+			assertTrue(mesh.hit(ray, null, 0, Float.POSITIVE_INFINITY).hits());
+		}
+	}
+
+	@Test
+	public void testVecMathMatchesVectors() {
+		final Random rnd = new Random(61);
+		final float[] out = new float[4];
+		for (int i = 0; i < 1000; i++) {
+			final Vec3 a = randomPoint(rnd, 10).sub(new Point(5, 5, 5));
+			final Vec3 b = randomPoint(rnd, 10).sub(new Point(5, 5, 5));
+			assertEquals(a.dot(b), VecMath.dot(a.x(), a.y(), a.z(), b.x(), b.y(), b.z()), 0);
+			assertEquals(a.norm(), VecMath.norm(a.x(), a.y(), a.z()), 0);
+
+			final Vec3 cross = a.cross(b);
+			VecMath.cross(a.x(), a.y(), a.z(), b.x(), b.y(), b.z(), out, 1);
+			assertEquals(cross.x(), out[1], 0);
+			assertEquals(cross.y(), out[2], 0);
+			assertEquals(cross.z(), out[3], 0);
+
+			final Vec3 normalized = cross.normalized();
+			VecMath.normalize(out, 1);
+			assertEquals(normalized.x(), out[1], 0);
+			assertEquals(normalized.y(), out[2], 0);
+			assertEquals(normalized.z(), out[3], 0);
+		}
+	}
+
+	@Test
+	public void testVectorTypesKeepTheirComponents() {
+		final Point p = new Point(1, 2, 3);
+		final Vec3 v = new Vec3(4, 5, 6);
+		assertEquals(1, p.w(), 0);
+		assertEquals(1, p.get(3), 0);
+		assertEquals(0, v.w(), 0);
+		assertEquals(0, new Vec2(1, 2).get(2), 0);
+		// a point has the implicit w of 1, a vector of 0:
+		assertEquals(1 * 4 + 2 * 5 + 3 * 6, p.dot(v), 0);
+		assertEquals(1 + 4 + 9 + 1, p.dot((Vec4<?, ?>) p), 0);
+		assertEquals(new Point(5, 7, 9), p.add(v));
+		assertEquals(new Vec3(-3, -3, -3), p.sub(new Point(4, 5, 6)));
+		assertEquals(16 + 25 + 36, v.sdot(), 0);
+		// colors stay saturated through every operation:
+		assertEquals(new Color(1, 0.5f, 0), new Color(0.75f, 0.25f, 0).add(new Color(0.5f, 0.25f, -1)));
+		assertEquals(new Color(1, 1, 0), Color.WHITE.scale(-1).neg().add(Color.YELLOW).mul(Color.YELLOW));
+		// the component layout does not change hashCode and equality:
+		final int xyz = Float.floatToIntBits(1) ^ Float.floatToIntBits(2) ^ Float.floatToIntBits(3) ^ 0x75CA01D3;
+		assertEquals(xyz ^ Float.floatToIntBits(0), new Vec3(1, 2, 3).hashCode());
+		assertEquals(xyz ^ Float.floatToIntBits(1), p.hashCode());
+		assertTrue(new Vec3(0.5f, 0.25f, 0).equals(new Color(0.5f, 0.25f, 0)));
+	}
+
+	@Test
+	public void testFrameBufferAveragesSamples() {
+		final FrameBuffer fb = new FrameBuffer(2, 1);
+		fb.add(0, 0, new Color(1, 0.5f, 0));
+		fb.add(0, 0, new Color(0, 0.5f, 0.25f));
+		// samples are summed unclamped and averaged when resolved:
+		fb.add(1, 0, 3, -1, 0.5f);
+		assertEquals(2, fb.getSamples(0, 0));
+		assertEquals(0.5f, fb.getAverage(0, 0, 0), 0);
+		assertEquals(3, fb.getAverage(1, 0, 0), 0);
+		final int[] pixels = fb.resolve();
+		assertEquals(new Color(0.5f, 0.5f, 0.125f).rgb(), pixels[0]);
+		assertEquals(new Color(1, 0, 0.5f).rgb(), pixels[1]);
+
+		final FrameBuffer reinhard = new FrameBuffer(1, 2, ToneMap.REINHARD);
+		reinhard.add(0, 0, 3, 1, 0);
+		assertEquals(new Color(0.75f, 0.5f, 0).rgb(), reinhard.resolve()[0]);
+		// pixels without samples are black:
+		assertEquals(0, reinhard.resolve()[1]);
+		fb.clear();
+		assertEquals(0, fb.getSamples(0, 0));
+		assertEquals(0, fb.resolve()[0]);
+	}
+
+	@Test
+	public void testSchedulerRendersEveryPixelOnce() throws Exception {
+		// odd sizes, so the tiles at the borders are cut:
+		final int w = 37, h = 23;
+		final Renderer renderer = new Renderer(sphereScene(), w, h, 2);
+		final int[] expected = renderer.render(0, 0, w, h).call().pixels;
+
+		final RenderScheduler scheduler = new RenderScheduler(renderer, 3, 4, 16);
+		final int[] image = new int[w * h];
+		final int[] rendered = new int[w * h];
+		final List<RenderScheduler.Tile> tiles = scheduler.render(new RenderScheduler.Listener() {
+			@Override
+			public void tileDone(final RenderScheduler.Tile tile, final int[] pixels) {
+				for (int y = 0; y < tile.h; y++) {
+					for (int x = 0; x < tile.w; x++) {
+						image[(tile.y + y) * w + tile.x + x] = pixels[y * tile.w + x];
+						rendered[(tile.y + y) * w + tile.x + x]++;
+					}
+				}
+			}
+		});
+		scheduler.shutdown();
+		for (final RenderScheduler.Tile tile : tiles)
+			assertTrue(tile.w <= 16 && tile.h <= 16);
+		for (int i = 0; i < w * h; i++) {
+			assertEquals(1, rendered[i]);
+			// the image does not depend on the tiles:
+			assertEquals(expected[i], image[i]);
+		}
+	}
+
+	@Test
+	public void testProgressivePassesGiveTheFullImage() throws Exception {
+		final int w = 21, h = 13;
+		final Renderer renderer = new Renderer(sphereScene(), w, h, 3, 4);
+		final RenderScheduler scheduler = new RenderScheduler(renderer, 2, 4, 8);
+		final ProgressiveRenderer progressive = new ProgressiveRenderer(scheduler, 4);
+		final List<Integer> passes = new ArrayList<Integer>();
+		final ProgressiveRenderer.Listener listener = new ProgressiveRenderer.Listener() {
+			@Override
+			public void tileDone(final RenderScheduler.Tile tile, final int[] pixels) {
+			}
+
+			@Override
+			public void passDone(final int samples, final long nanos) {
+				passes.add(samples);
+			}
+		};
+		// the preview and two passes, then the rest:
+		assertEquals(2, progressive.render(listener, Long.MAX_VALUE, 2));
+		assertEquals(2, progressive.getImage().getSamples(w - 1, h - 1));
+		assertEquals(9, progressive.render(listener, Long.MAX_VALUE, Integer.MAX_VALUE));
+		assertTrue(progressive.isDone());
+		assertEquals(9, progressive.render(listener, 0, Integer.MAX_VALUE));
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), passes);
+		scheduler.shutdown();
+
+		final int[] expected = renderer.render(0, 0, w, h).call().pixels;
+		final int[] image = progressive.getImage().resolve();
+		for (int i = 0; i < w * h; i++)
+			assertEquals(expected[i], image[i]);
+	}
+
+	@Test(timeout = 10000)
+	public void testAccumulateWithoutSamples() {
+		final Renderer renderer = new Renderer(sphereScene(), 8, 8, 2, 4);
+		final FrameBuffer fb = new FrameBuffer(8, 8);
+		renderer.accumulate(0, 0, 8, 8, fb, 0, 0, 0, 0);
+		renderer.accumulate(0, 0, 8, 8, fb, 0, 0, 4, 0);
+		final RenderScheduler scheduler = new RenderScheduler(renderer, 2, 4, 8);
+		scheduler.render(fb, 0, 0, null);
+		scheduler.shutdown();
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++)
+				assertEquals(0, fb.getSamples(x, y));
+	}
+
+	// a red sphere on a white plane, lit from the top left:
+	private static StandardScene sphereScene() {
+		final SimpleAccelerator accel = new SimpleAccelerator();
+		accel.add(new StandardObj(GeomFactory.createSphere(new Point(0, 1, 0), 1), new SingleColor(Color.RED)));
+		accel.add(new StandardObj(GeomFactory.createPlane(Vec3.Y, Point.ORIGIN), new SingleColor(Color.WHITE)));
+		final List<LightSource> lights = new ArrayList<LightSource>();
+		lights.add(new PointLightSource(new Point(-10, 10, -10), Color.WHITE));
+		return new StandardScene(new PerspectiveCamera(new Point(0, 4, -10), Point.ORIGIN, new Vec3(0, 5, 0), 3, 4,
+				3), lights, accel);
+	}
+
+}
@@ -0,0 +1,60 @@
+package raytracer.core.def;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The slab test of {@link BVH4Kernel} on all four lanes at once with the
+ * Vector API. Every plane of a node is loaded as one vector of four floats.
+ * Distances are only taken over where they compare greater (or less), so a
+ * NaN distance is skipped just like in the scalar kernel.
+ * <p>
+ * Compile and run with {@code --add-modules jdk.incubator.vector}, see
+ * {@link BVH4Kernel} for the commands; the kernel is loaded by
+ * {@link BVH4Kernel#best()} only if the module is present.
+ */
+final class VectorBVH4Kernel extends BVH4Kernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_128;
+
+    private static final FloatVector MISS = FloatVector.broadcast(SPECIES, Float.NaN);
+
+    VectorBVH4Kernel() {
+        if (SPECIES.length() != BVH4.WIDTH) {
+            throw new IllegalStateException("the species does not match the node width");
+        }
+    }
+
+    @Override
+    public void entries(final float[] bounds, final int b, final float ox, final float oy, final float oz,
+            final float ix, final float iy, final float iz, final int nx, final int ny, final int nz,
+            final float tmin, final float tmax, final float[] lanes) {
+        final int fx = BVH4.WIDTH * 3 - nx, fy = BVH4.WIDTH * 5 - ny, fz = BVH4.WIDTH * 7 - nz;
+        FloatVector near = FloatVector.broadcast(SPECIES, tmin);
+        FloatVector far = FloatVector.broadcast(SPECIES, tmax);
+
+        FloatVector t = FloatVector.fromArray(SPECIES, bounds, b + nx).sub(ox).mul(ix);
+        near = near.blend(t, t.compare(VectorOperators.GT, near));
+        t = FloatVector.fromArray(SPECIES, bounds, b + ny).sub(oy).mul(iy);
+        near = near.blend(t, t.compare(VectorOperators.GT, near));
+        t = FloatVector.fromArray(SPECIES, bounds, b + nz).sub(oz).mul(iz);
+        near = near.blend(t, t.compare(VectorOperators.GT, near));
+
+        t = FloatVector.fromArray(SPECIES, bounds, b + fx).sub(ox).mul(ix);
+        far = far.blend(t, t.compare(VectorOperators.LT, far));
+        t = FloatVector.fromArray(SPECIES, bounds, b + fy).sub(oy).mul(iy);
+        far = far.blend(t, t.compare(VectorOperators.LT, far));
+        t = FloatVector.fromArray(SPECIES, bounds, b + fz).sub(oz).mul(iz);
+        far = far.blend(t, t.compare(VectorOperators.LT, far));
+
+        final VectorMask<Float> entered = near.compare(VectorOperators.LE, far);
+        MISS.blend(near, entered).intoArray(lanes, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "vector";
+    }
+}